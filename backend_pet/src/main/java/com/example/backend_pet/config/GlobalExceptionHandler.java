@@ -1,11 +1,13 @@
 package com.example.backend_pet.config;
 
+import com.example.backend_pet.service.SlotFullException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -25,6 +27,19 @@ public class GlobalExceptionHandler {
                 .body(Map.of("error", message));
     }
 
+    // Khung giờ đã đủ chỗ → 409, kèm các khung giờ còn trống gần nhất để FE gợi ý cho user
+    @ExceptionHandler(SlotFullException.class)
+    public ResponseEntity<Map<String, Object>> handleSlotFullException(SlotFullException ex) {
+        List<Map<String, Object>> suggestions = ex.getSuggestions().stream()
+                .map(slot -> Map.<String, Object>of(
+                        "date", slot.date().toString(),
+                        "time", slot.time().toString(),
+                        "remaining", slot.remaining()))
+                .collect(Collectors.toList());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", ex.getMessage(), "suggestions", suggestions));
+    }
+
     @ExceptionHandler(RuntimeException.class) // khai báo method này sẽ xử lý khi có RuntimException bị throw, spring tự gọi method này
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex) {
         String message = ex.getMessage();
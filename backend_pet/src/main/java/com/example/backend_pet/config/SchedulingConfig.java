@@ -0,0 +1,10 @@
+package com.example.backend_pet.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Bật các job chạy nền dùng @Scheduled
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
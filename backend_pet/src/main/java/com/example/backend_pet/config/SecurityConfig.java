@@ -49,10 +49,14 @@ public class SecurityConfig {
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 .requestMatchers("/oauth2/**", "/login/**").permitAll()
+                // Tìm bệnh án toàn phòng khám — chỉ bác sĩ và admin, khách hàng chỉ xem bệnh án thú cưng của mình
+                .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/medical/search").hasAnyRole("DOCTOR", "ADMIN")
                 // Health check cho UptimeRobot ping giu Render va Neon DB song
                 .requestMatchers("/api/health").permitAll()
                 // Webhook SePay — không có JWT, tự bảo vệ bằng API key riêng trong PaymentService
                 .requestMatchers("/api/payment/webhook").permitAll()
+                // Feed lịch ICS — app lịch không gửi JWT, bảo vệ bằng calendarToken trong URL
+                .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/calendar/feed/**").permitAll()
                 // Public GET — khách chưa đăng nhập vẫn xem được
                 .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/products/**").permitAll()
                 .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/services/**").permitAll()
@@ -1,19 +1,36 @@
 package com.example.backend_pet.controller;
 
 import com.example.backend_pet.dto.AppointmentResponse;
+import com.example.backend_pet.dto.AutoAssignResponse;
+import com.example.backend_pet.dto.BookingGroupResponse;
+import com.example.backend_pet.dto.BookingImportResponse;
+import com.example.backend_pet.dto.CartCoalescingStats;
+import com.example.backend_pet.dto.CursorPage;
 import com.example.backend_pet.dto.DashboardResponse;
+import com.example.backend_pet.dto.DoctorAvailabilityResponse;
 import com.example.backend_pet.dto.DoctorResponse;
 import com.example.backend_pet.dto.OrderResponse;
 import com.example.backend_pet.dto.UserResponse;
+import com.example.backend_pet.entity.CartAbandonmentStat;
 import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.CartAbandonmentStatRepository;
 import com.example.backend_pet.repository.UserRepository;
 import com.example.backend_pet.service.AppointmentService;
+import com.example.backend_pet.service.BookingGroupService;
+import com.example.backend_pet.service.BookingImportService;
+import com.example.backend_pet.service.CartUpdateCoalescer;
 import com.example.backend_pet.service.DashboardService;
+import com.example.backend_pet.service.DoctorAutoAssignService;
 import com.example.backend_pet.service.OrderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -26,6 +43,11 @@ public class AdminController {
     private final UserRepository userRepository;
     private final OrderService orderService;
     private final DashboardService dashboardService;
+    private final CartUpdateCoalescer cartUpdateCoalescer;
+    private final CartAbandonmentStatRepository cartAbandonmentStatRepository;
+    private final DoctorAutoAssignService doctorAutoAssignService;
+    private final BookingGroupService bookingGroupService;
+    private final BookingImportService bookingImportService;
 
     // GET /api/admin/dashboard - Số liệu tổng quan
     @GetMapping("/dashboard")
@@ -40,6 +62,24 @@ public class AdminController {
         return ResponseEntity.ok(dashboardService.getRevenue(period));
     }
 
+    // GET /api/admin/cart/coalescing-stats - Số lần cập nhật giỏ hàng được gộp / thực sự ghi
+    @GetMapping("/cart/coalescing-stats")
+    public ResponseEntity<CartCoalescingStats> getCartCoalescingStats() {
+        return ResponseEntity.ok(cartUpdateCoalescer.getStats());
+    }
+
+    // GET /api/admin/cart/abandonment-stats?from=2025-01-01&to=2025-01-31
+    // Sản phẩm nằm trong giỏ bị bỏ quên (đã dọn), theo ngày hoạt động cuối của giỏ — mặc định 30 ngày gần nhất
+    @GetMapping("/cart/abandonment-stats")
+    public ResponseEntity<List<CartAbandonmentStat>> getCartAbandonmentStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(30);
+        return ResponseEntity.ok(cartAbandonmentStatRepository
+                .findByStatDateBetweenOrderByStatDateDescTotalValueDesc(start, end));
+    }
+
     // GET /api/admin/orders - Lấy tất cả đơn hàng
     @GetMapping("/orders")
     public ResponseEntity<List<OrderResponse>> getAllOrders() {
@@ -60,6 +100,33 @@ public class AdminController {
         return ResponseEntity.ok(appointmentService.getAllAppointments());
     }
 
+    // GET /api/admin/appointments/page?from=&to=&status=&doctorId=&category=&q=&cursor=&size=20
+    // Lịch khám phân trang theo con trỏ, lọc theo khoảng ngày / trạng thái / bác sĩ / nhóm dịch vụ / mã booking hoặc tên chủ
+    @GetMapping("/appointments/page")
+    public ResponseEntity<CursorPage<AppointmentResponse>> getAppointmentPage(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long doctorId,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(appointmentService.getAdminAppointmentPage(
+                from, to, status, doctorId, category, q, cursor, size));
+    }
+
+    // GET /api/admin/appointments/groups?from=&to=&doctorId=&cursor=&size=10 - 1 dòng / nhóm booking
+    @GetMapping("/appointments/groups")
+    public ResponseEntity<CursorPage<BookingGroupResponse>> getAppointmentGroups(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long doctorId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(bookingGroupService.getAllGroups(from, to, doctorId, cursor, size));
+    }
+
     // PUT /api/admin/appointments/{id}/assign-doctor?doctorId=2
     @PutMapping("/appointments/{id}/assign-doctor")
     public ResponseEntity<List<AppointmentResponse>> assignDoctor(
@@ -68,6 +135,35 @@ public class AdminController {
         return ResponseEntity.ok(appointmentService.assignDoctor(id, doctorId));
     }
 
+    // GET /api/admin/appointments/{id}/doctor-availability - Bác sĩ rảnh / bận trong khung giờ của nhóm
+    @GetMapping("/appointments/{id}/doctor-availability")
+    public ResponseEntity<DoctorAvailabilityResponse> getDoctorAvailability(@PathVariable Long id) {
+        return ResponseEntity.ok(appointmentService.getDoctorAvailability(id));
+    }
+
+    // POST /api/admin/appointments/auto-assign?from=2026-03-02&to=2026-03-08&dryRun=true
+    // Phân công bác sĩ cho mọi nhóm chưa có bác sĩ trong khoảng ngày; dryRun=false mới ghi DB
+    @PostMapping("/appointments/auto-assign")
+    public ResponseEntity<AutoAssignResponse> autoAssign(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "true") boolean dryRun) {
+        return ResponseEntity.ok(doctorAutoAssignService.autoAssign(from, to, dryRun));
+    }
+
+    // POST /api/admin/appointments/import (multipart: file=lich.csv | lich.json)
+    // Nhập lịch khám hàng loạt cho lễ tân; trả về kết quả từng dòng
+    @PostMapping("/appointments/import")
+    public ResponseEntity<BookingImportResponse> importAppointments(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        String name = file.getOriginalFilename() != null ? file.getOriginalFilename().toLowerCase() : "";
+        String contentType = file.getContentType() != null ? file.getContentType() : "";
+        String format = name.endsWith(".json") || contentType.contains("json") ? "json" : "csv";
+        try (InputStream input = file.getInputStream()) {
+            return ResponseEntity.ok(bookingImportService.importBookings(input, format));
+        }
+    }
+
     // PUT /api/admin/appointments/{id}/unassign-doctor
     @PutMapping("/appointments/{id}/unassign-doctor")
     public ResponseEntity<List<AppointmentResponse>> unassignDoctor(@PathVariable Long id) {
@@ -3,11 +3,24 @@ package com.example.backend_pet.controller;
 import com.example.backend_pet.config.JwtUtils;
 import com.example.backend_pet.dto.AppointmentRequest;
 import com.example.backend_pet.dto.AppointmentResponse;
+import com.example.backend_pet.dto.BookingGroupResponse;
+import com.example.backend_pet.dto.CursorPage;
+import com.example.backend_pet.dto.NextAvailableSlotResponse;
+import com.example.backend_pet.dto.SlotAvailabilityResponse;
+import com.example.backend_pet.dto.WaitlistRequest;
+import com.example.backend_pet.dto.WaitlistResponse;
 import com.example.backend_pet.service.AppointmentService;
+import com.example.backend_pet.service.BookingGroupService;
+import com.example.backend_pet.service.NextAvailableSlotService;
+import com.example.backend_pet.service.SlotAvailabilityService;
+import com.example.backend_pet.service.WaitlistService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 
 @RestController
@@ -16,6 +29,10 @@ import java.util.List;
 public class AppointmentController {
 
     private final AppointmentService appointmentService;
+    private final BookingGroupService bookingGroupService;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final NextAvailableSlotService nextAvailableSlotService;
+    private final WaitlistService waitlistService;
     private final JwtUtils jwtUtils;
 
     private Long extractUserId(String authHeader) {
@@ -36,6 +53,15 @@ public class AppointmentController {
         return ResponseEntity.ok(appointmentService.getAppointmentsByUser(extractUserId(authHeader)));
     }
 
+    // GET /api/appointments/groups?cursor=&size=10 - Lịch khám của tôi, 1 dòng / nhóm booking (userId lấy từ JWT)
+    @GetMapping("/groups")
+    public ResponseEntity<CursorPage<BookingGroupResponse>> getAppointmentGroups(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(bookingGroupService.getGroupsByUser(extractUserId(authHeader), cursor, size));
+    }
+
     // PUT /api/appointments/1/cancel - Hủy lịch khám (userId lấy từ JWT)
     @PutMapping("/{appointmentId}/cancel")
     public ResponseEntity<List<AppointmentResponse>> cancelAppointment(
@@ -43,4 +69,45 @@ public class AppointmentController {
             @RequestHeader("Authorization") String authHeader) {
         return ResponseEntity.ok(appointmentService.cancelAppointment(appointmentId, extractUserId(authHeader)));
     }
+
+    // GET /api/appointments/availability?month=2026-03 - Số chỗ còn lại theo từng ngày / khung giờ trong tháng
+    @GetMapping("/availability")
+    public ResponseEntity<SlotAvailabilityResponse> getAvailability(@RequestParam String month) {
+        return ResponseEntity.ok(slotAvailabilityService.getMonthAvailability(YearMonth.parse(month)));
+    }
+
+    // GET /api/appointments/next-available?serviceIds=1,2&petCount=2&from=2026-03-05&doctorId=3&limit=5
+    // - K giờ bắt đầu sớm nhất còn chỗ và có bác sĩ rảnh suốt thời lượng dịch vụ
+    @GetMapping("/next-available")
+    public ResponseEntity<NextAvailableSlotResponse> getNextAvailable(
+            @RequestParam List<Long> serviceIds,
+            @RequestParam(required = false) Integer petCount,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) Long doctorId,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(nextAvailableSlotService.findNextAvailable(serviceIds, petCount, from, doctorId, limit));
+    }
+
+    // POST /api/appointments/waitlist - Vào hàng đợi của khung giờ đã đầy (userId lấy từ JWT)
+    @PostMapping("/waitlist")
+    public ResponseEntity<WaitlistResponse> joinWaitlist(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestBody WaitlistRequest request) {
+        return ResponseEntity.ok(waitlistService.join(extractUserId(authHeader), request));
+    }
+
+    // GET /api/appointments/waitlist - Các lượt chờ đang mở của user (WAITING / OFFERED)
+    @GetMapping("/waitlist")
+    public ResponseEntity<List<WaitlistResponse>> getWaitlist(@RequestHeader("Authorization") String authHeader) {
+        return ResponseEntity.ok(waitlistService.getMyEntries(extractUserId(authHeader)));
+    }
+
+    // DELETE /api/appointments/waitlist/1 - Rời hàng đợi
+    @DeleteMapping("/waitlist/{entryId}")
+    public ResponseEntity<Void> leaveWaitlist(
+            @PathVariable Long entryId,
+            @RequestHeader("Authorization") String authHeader) {
+        waitlistService.leave(entryId, extractUserId(authHeader));
+        return ResponseEntity.noContent().build();
+    }
 }
@@ -0,0 +1,60 @@
+package com.example.backend_pet.controller;
+
+import com.example.backend_pet.config.JwtUtils;
+import com.example.backend_pet.service.CalendarFeedService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/calendar")
+@RequiredArgsConstructor
+public class CalendarController {
+
+    private static final MediaType TEXT_CALENDAR = MediaType.parseMediaType("text/calendar;charset=UTF-8");
+
+    private final CalendarFeedService calendarFeedService;
+    private final JwtUtils jwtUtils;
+
+    private Long extractUserId(String authHeader) {
+        String token = authHeader.substring(7);
+        return jwtUtils.extractClaims(token).get("userId", Long.class);
+    }
+
+    // GET /api/calendar/token - URL feed lịch của tôi (tạo token nếu chưa có, userId lấy từ JWT)
+    @GetMapping("/token")
+    public ResponseEntity<Map<String, String>> getFeedToken(@RequestHeader("Authorization") String authHeader) {
+        return ResponseEntity.ok(feedLink(calendarFeedService.getOrCreateToken(extractUserId(authHeader))));
+    }
+
+    // POST /api/calendar/token/rotate - Đổi token, URL cũ hết hiệu lực
+    @PostMapping("/token/rotate")
+    public ResponseEntity<Map<String, String>> rotateFeedToken(@RequestHeader("Authorization") String authHeader) {
+        return ResponseEntity.ok(feedLink(calendarFeedService.rotateToken(extractUserId(authHeader))));
+    }
+
+    // GET /api/calendar/feed/{token}.ics - Feed ICS cho app lịch (không cần JWT, hỗ trợ If-None-Match → 304)
+    @GetMapping("/feed/{token}.ics")
+    public ResponseEntity<StreamingResponseBody> getFeed(@PathVariable String token, WebRequest request) {
+        CalendarFeedService.Feed feed = calendarFeedService.open(token);
+        if (request.checkNotModified(feed.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(feed.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(TEXT_CALENDAR)
+                .eTag(feed.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(calendarFeedService.stream(feed));
+    }
+
+    private Map<String, String> feedLink(String token) {
+        return Map.of("token", token, "path", "/api/calendar/feed/" + token + ".ics");
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.backend_pet.controller;
 
+import com.example.backend_pet.dto.CartBatchRequest;
 import com.example.backend_pet.dto.CartItemRequest;
 import com.example.backend_pet.dto.CartResponse;
 import com.example.backend_pet.service.CartService;
+import com.example.backend_pet.service.CartUpdateCoalescer;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -14,11 +16,15 @@ import org.springframework.web.bind.annotation.*;
 public class CartController {
 
     private final CartService cartService;
+    private final CartUpdateCoalescer cartUpdateCoalescer;
 
-    // GET /api/cart?userId=1 - Lấy giỏ hàng của user
+    // GET /api/cart?userId=1&voucherCode=WELCOME50 - Lấy giỏ hàng của user (voucherCode tùy chọn, để xem trước giá)
     @GetMapping
-    public ResponseEntity<CartResponse> getCart(@RequestParam Long userId) {
-        return ResponseEntity.ok(cartService.getCart(userId));
+    public ResponseEntity<CartResponse> getCart(
+        @RequestParam Long userId,
+        @RequestParam(required = false) String voucherCode
+    ) {
+        return ResponseEntity.ok(cartService.getCart(userId, voucherCode));
     }
 
     // POST /api/cart/items?userId=1 - Thêm sản phẩm vào giỏ
@@ -27,6 +33,7 @@ public class CartController {
         @RequestParam Long userId,
         @Valid @RequestBody CartItemRequest request
     ) {
+        cartUpdateCoalescer.flushPending(userId);
         CartResponse cart = cartService.addItemToCart(
             userId,
             request.getProductId(),
@@ -36,13 +43,14 @@ public class CartController {
     }
 
     // PUT /api/cart/items/{productId}?userId=1 - Cập nhật số lượng
+    // Các lần bấm +/- liên tiếp được gộp thành 1 lần ghi (xem CartUpdateCoalescer)
     @PutMapping("/items/{productId}")
     public ResponseEntity<CartResponse> updateItemQuantity(
         @RequestParam Long userId,
         @PathVariable Long productId,
         @Valid @RequestBody CartItemRequest request
     ) {
-        CartResponse cart = cartService.updateItemQuantity(
+        CartResponse cart = cartUpdateCoalescer.updateItemQuantity(
             userId,
             productId,
             request.getQuantity()
@@ -56,13 +64,26 @@ public class CartController {
         @RequestParam Long userId,
         @PathVariable Long productId
     ) {
+        cartUpdateCoalescer.flushPending(userId);
         CartResponse cart = cartService.removeItemFromCart(userId, productId);
         return ResponseEntity.ok(cart);
     }
 
+    // PATCH /api/cart?userId=1 - Áp dụng nhiều thao tác (ADD/SET/REMOVE) trong 1 request
+    // Body: { "operations": [ { "type": "SET", "productId": 3, "quantity": 2 }, { "type": "REMOVE", "productId": 5 } ] }
+    @PatchMapping
+    public ResponseEntity<CartResponse> applyBatch(
+        @RequestParam Long userId,
+        @Valid @RequestBody CartBatchRequest request
+    ) {
+        cartUpdateCoalescer.flushPending(userId);
+        return ResponseEntity.ok(cartService.applyBatch(userId, request.getOperations()));
+    }
+
     // DELETE /api/cart?userId=1 - Xóa toàn bộ giỏ hàng
     @DeleteMapping
     public ResponseEntity<Void> clearCart(@RequestParam Long userId) {
+        cartUpdateCoalescer.flushPending(userId);
         cartService.clearCart(userId);
         return ResponseEntity.noContent().build();
     }
@@ -1,11 +1,18 @@
 package com.example.backend_pet.controller;
 
 import com.example.backend_pet.dto.AppointmentResponse;
+import com.example.backend_pet.dto.BookingGroupResponse;
+import com.example.backend_pet.dto.CursorPage;
+import com.example.backend_pet.dto.DoctorScheduleResponse;
 import com.example.backend_pet.service.AppointmentService;
+import com.example.backend_pet.service.BookingGroupService;
+import com.example.backend_pet.service.DoctorScheduleService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -14,6 +21,8 @@ import java.util.List;
 public class DoctorController {
 
     private final AppointmentService appointmentService;
+    private final BookingGroupService bookingGroupService;
+    private final DoctorScheduleService doctorScheduleService;
 
     // GET /api/doctor/appointments?doctorId=2
     @GetMapping("/appointments")
@@ -21,6 +30,28 @@ public class DoctorController {
         return ResponseEntity.ok(appointmentService.getAppointmentsByDoctor(doctorId));
     }
 
+    // GET /api/doctor/appointments/groups?doctorId=2&cursor=&size=10 - 1 dòng / nhóm booking
+    @GetMapping("/appointments/groups")
+    public ResponseEntity<CursorPage<BookingGroupResponse>> getMyAppointmentGroups(
+            @RequestParam Long doctorId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(bookingGroupService.getGroupsByDoctor(doctorId, cursor, size));
+    }
+
+    // GET /api/doctor/schedule?doctorId=2&view=day|week&date=2026-03-05
+    // GET /api/doctor/schedule?doctorId=2&view=range&from=2026-03-01&to=2026-03-14
+    // - Lịch trong khoảng + số lịch từng ngày cho mini-calendar + trạng thái bệnh án
+    @GetMapping("/schedule")
+    public ResponseEntity<DoctorScheduleResponse> getSchedule(
+            @RequestParam Long doctorId,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(doctorScheduleService.getSchedule(doctorId, view, date, from, to));
+    }
+
     // PUT /api/doctor/appointments/{id}/complete?doctorId=2
     @PutMapping("/appointments/{id}/complete")
     public ResponseEntity<List<AppointmentResponse>> completeAppointment(
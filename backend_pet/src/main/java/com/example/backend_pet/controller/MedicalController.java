@@ -1,12 +1,22 @@
 package com.example.backend_pet.controller;
 
+import com.example.backend_pet.dto.CursorPage;
 import com.example.backend_pet.dto.MedicalRequest;
 import com.example.backend_pet.dto.MedicalResponse;
+import com.example.backend_pet.dto.MedicalRevisionDiffResponse;
+import com.example.backend_pet.dto.MedicalRevisionResponse;
+import com.example.backend_pet.dto.MedicalSearchResponse;
+import com.example.backend_pet.dto.MedicalTimelineItem;
+import com.example.backend_pet.dto.PetMedicalSummaryResponse;
+import com.example.backend_pet.service.MedicalRecordHistoryService;
+import com.example.backend_pet.service.MedicalRecordSearchService;
 import com.example.backend_pet.service.MedicalService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -14,6 +24,8 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MedicalController  {
     private final MedicalService medicalService;
+    private final MedicalRecordSearchService medicalRecordSearchService;
+    private final MedicalRecordHistoryService medicalRecordHistoryService;
 
     @GetMapping("/{bookingCode}")
     public ResponseEntity<List<MedicalResponse>> getRecord(@PathVariable String bookingCode) {
@@ -24,6 +36,61 @@ public class MedicalController  {
     public ResponseEntity<List<MedicalResponse>> getRecordsByPet(@PathVariable Long petId) {
         return ResponseEntity.ok(medicalService.getRecordsByPet(petId));
     }
+    // GET /api/medical/pet/{petId}/timeline?cursor=&size=10 - Các lần khám (tóm tắt, số ảnh), mới nhất trước
+    @GetMapping("/pet/{petId}/timeline")
+    public ResponseEntity<CursorPage<MedicalTimelineItem>> getTimeline(
+            @PathVariable Long petId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(medicalService.getTimeline(petId, cursor, size));
+    }
+
+    // GET /api/medical/pet/{petId}/summary - Chỉ số đo gần nhất + chẩn đoán gần đây (đầu timeline)
+    @GetMapping("/pet/{petId}/summary")
+    public ResponseEntity<PetMedicalSummaryResponse> getSummary(@PathVariable Long petId) {
+        return ResponseEntity.ok(medicalService.getSummary(petId));
+    }
+
+    // GET /api/medical/search?q=viêm da&species=DOG&from=2025-01-01&to=2026-12-31&page=0&size=20
+    // - Tìm bệnh án theo triệu chứng / chẩn đoán / thuốc (không phân biệt dấu), xếp theo độ liên quan
+    @GetMapping("/search")
+    public ResponseEntity<MedicalSearchResponse> search(
+            @RequestParam String q,
+            @RequestParam(required = false) String species,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(medicalRecordSearchService.search(q, species, from, to, page, size));
+    }
+
+    // GET /api/medical/records/{id} - Chi tiết 1 bệnh án kèm ảnh
+    @GetMapping("/records/{id}")
+    public ResponseEntity<MedicalResponse> getRecordDetail(@PathVariable Long id) {
+        return ResponseEntity.ok(medicalService.getRecordDetail(id));
+    }
+
+    // GET /api/medical/records/{id}/revisions - Lịch sử sửa bệnh án (số phiên bản, trường đã đổi), mới nhất trước
+    @GetMapping("/records/{id}/revisions")
+    public ResponseEntity<List<MedicalRevisionResponse>> getRevisions(@PathVariable Long id) {
+        return ResponseEntity.ok(medicalRecordHistoryService.getRevisions(id));
+    }
+
+    // GET /api/medical/records/{id}/revisions/diff?from=1&to=3 - So sánh 2 phiên bản theo từng trường
+    @GetMapping("/records/{id}/revisions/diff")
+    public ResponseEntity<MedicalRevisionDiffResponse> diffRevisions(
+            @PathVariable Long id,
+            @RequestParam int from,
+            @RequestParam int to) {
+        return ResponseEntity.ok(medicalRecordHistoryService.diff(id, from, to));
+    }
+
+    // GET /api/medical/records/{id}/revisions/{revision} - Nội dung bệnh án tại 1 phiên bản (0 = hồ sơ rỗng lúc đặt lịch)
+    @GetMapping("/records/{id}/revisions/{revision}")
+    public ResponseEntity<MedicalRevisionResponse> getRevision(@PathVariable Long id, @PathVariable int revision) {
+        return ResponseEntity.ok(medicalRecordHistoryService.getRevision(id, revision));
+    }
+
     @PostMapping("/{appointmentId}")
     public ResponseEntity<MedicalResponse> saveRecord(@PathVariable Long appointmentId, @RequestBody MedicalRequest medicalRequest) {
         return ResponseEntity.ok(medicalService.saveRecord(appointmentId, medicalRequest));
@@ -1,7 +1,10 @@
 package com.example.backend_pet.controller;
 
+import com.example.backend_pet.dto.CursorPage;
 import com.example.backend_pet.dto.OrderRequest;
 import com.example.backend_pet.dto.OrderResponse;
+import com.example.backend_pet.dto.OrderSummaryResponse;
+import com.example.backend_pet.service.CartUpdateCoalescer;
 import com.example.backend_pet.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -15,16 +18,20 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final CartUpdateCoalescer cartUpdateCoalescer;
 
     // POST /api/orders - Tạo đơn hàng từ giỏ hàng
     @PostMapping
     public ResponseEntity<OrderResponse> createOrder(@RequestBody OrderRequest request) {
+        // Ghi nốt cập nhật số lượng đang chờ gộp để đơn hàng lấy đúng giỏ hiện tại
+        cartUpdateCoalescer.flushPending(request.getUserId());
         OrderResponse order = orderService.createOrderFromCart(
                 request.getUserId(),
                 request.getShippingAddress(),
                 request.getPaymentMethod(),
                 request.getNotes(),
-                request.getContactPhone()
+                request.getContactPhone(),
+                request.getVoucherCode()
         );
         return ResponseEntity.ok(order);
     }
@@ -36,6 +43,15 @@ public class OrderController {
         return ResponseEntity.ok(orders);
     }
 
+    // GET /api/orders/history?userId=1&cursor=&size=10 - Lịch sử đơn hàng dạng tóm tắt, phân trang theo con trỏ
+    @GetMapping("/history")
+    public ResponseEntity<CursorPage<OrderSummaryResponse>> getOrderHistory(
+            @RequestParam Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(orderService.getOrderHistory(userId, cursor, size));
+    }
+
     // GET /api/orders/1?userId=1 - Lấy chi tiết đơn hàng
     @GetMapping("/{orderId}")
     public ResponseEntity<OrderResponse> getOrderDetail(
@@ -0,0 +1,50 @@
+package com.example.backend_pet.controller;
+
+import com.example.backend_pet.entity.Promotion;
+import com.example.backend_pet.service.PromotionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/promotions")
+@RequiredArgsConstructor
+public class PromotionController {
+
+    private final PromotionService promotionService;
+
+    // GET /api/admin/promotions
+    @GetMapping
+    public ResponseEntity<List<Promotion>> getAllPromotions() {
+        return ResponseEntity.ok(promotionService.getAllPromotions());
+    }
+
+    // GET /api/admin/promotions/{id}
+    @GetMapping("/{id}")
+    public ResponseEntity<Promotion> getPromotionById(@PathVariable Long id) {
+        return ResponseEntity.ok(promotionService.getPromotionById(id));
+    }
+
+    // POST /api/admin/promotions
+    // Body ví dụ: { "name": "Giảm 10% thức ăn", "type": "PERCENT_OFF", "category": "Thức ăn", "percentOff": 10 }
+    //             { "name": "Mã chào mừng", "type": "VOUCHER", "voucherCode": "WELCOME50", "amountOff": 50000, "minOrderAmount": 300000 }
+    @PostMapping
+    public ResponseEntity<Promotion> createPromotion(@RequestBody Promotion promotion) {
+        return ResponseEntity.ok(promotionService.createPromotion(promotion));
+    }
+
+    // PUT /api/admin/promotions/{id}
+    @PutMapping("/{id}")
+    public ResponseEntity<Promotion> updatePromotion(@PathVariable Long id, @RequestBody Promotion promotion) {
+        return ResponseEntity.ok(promotionService.updatePromotion(id, promotion));
+    }
+
+    // DELETE /api/admin/promotions/{id}
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deletePromotion(@PathVariable Long id) {
+        promotionService.deletePromotion(id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -12,4 +12,5 @@ public class AppointmentRequest {
     private String appointmentDate;   // "2026-02-20"
     private String appointmentTime;   // "09:00"
     private String notes;
+    private Long waitlistEntryId;     // Đặt bằng chỗ được giữ từ hàng đợi (WaitlistService), nếu có
 }
@@ -0,0 +1,43 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Kết quả phân công bác sĩ tự động cho các nhóm booking chưa có bác sĩ trong 1 khoảng ngày
+@Data
+@Builder
+public class AutoAssignResponse {
+    private String from;
+    private String to;
+    private boolean dryRun;                // true = chỉ xem trước, chưa ghi DB
+    private int totalGroups;
+    private int assignedCount;
+    private int unassignedCount;
+    private long elapsedMillis;
+    private List<Assignment> assignments;
+    private List<Assignment> unassigned;   // doctorId null, reason cho biết lý do
+    private List<DoctorLoad> doctorLoads;
+
+    @Data
+    @Builder
+    public static class Assignment {
+        private String bookingCode;
+        private String appointmentDate;
+        private String startTime;
+        private String endTime;
+        private Long doctorId;
+        private String doctorName;
+        private String reason;
+    }
+
+    @Data
+    @Builder
+    public static class DoctorLoad {
+        private Long doctorId;
+        private String fullName;
+        private long busyMinutes;          // Tổng thời gian bận trong khoảng ngày (lịch cũ + phân công mới)
+        private int assignedGroups;        // Số nhóm được phân công thêm lần này
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// 1 dòng / nhóm booking (cùng bookingCode) thay cho 1 dòng / pet
+@Data
+@Builder
+public class BookingGroupResponse {
+    private String bookingCode;
+    private String appointmentDate;
+    private String appointmentTime;
+    private String status;             // Trạng thái chung của nhóm (xem BookingGroupService.groupStatus)
+    private Long doctorId;
+    private String doctorName;
+    private Long ownerId;
+    private String ownerName;
+    private String notes;
+    private int petCount;
+    private BigDecimal totalPrice;     // Tổng giá dịch vụ của mọi pet trong nhóm (không tính lịch đã hủy)
+    private List<PetInfo> pets;
+    private List<ServiceLine> services;
+    private LocalDateTime createdAt;
+
+    @Data
+    @Builder
+    public static class PetInfo {
+        private Long appointmentId;    // Dùng cho các API thao tác theo appointment (hủy, hoàn thành, ...)
+        private Long petId;
+        private String name;
+        private String species;
+        private String imageUrl;
+        private String status;
+    }
+
+    @Data
+    @Builder
+    public static class ServiceLine {
+        private Long id;
+        private String title;
+        private BigDecimal price;
+        private int quantity;          // Số pet dùng dịch vụ này
+        private BigDecimal lineTotal;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Báo cáo nhập lịch hàng loạt: kết quả từng dòng theo thứ tự trong file
+@Data
+@Builder
+public class BookingImportResponse {
+    private int totalRows;
+    private int createdCount;
+    private int failedCount;
+    private boolean truncated;         // File dài hơn giới hạn, các dòng sau không được xử lý
+    private String error;              // File lỗi định dạng giữa chừng (các dòng trước đó vẫn được xử lý)
+    private long elapsedMillis;
+    private List<RowResult> rows;
+
+    @Data
+    @Builder
+    public static class RowResult {
+        private int row;               // Số thứ tự dòng dữ liệu (bắt đầu từ 1, không tính dòng tiêu đề)
+        private String status;         // CREATED | FAILED
+        private String bookingCode;
+        private List<Long> appointmentIds;
+        private String message;        // Lý do lỗi
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.backend_pet.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+// 1 dòng trong file nhập lịch hàng loạt (CSV: cột cùng tên, danh sách ngăn cách bằng "|")
+@Data
+public class BookingImportRow {
+    private String ownerEmail;        // Chủ nuôi đã có tài khoản
+    private List<Long> petIds;        // Chọn pet theo id ...
+    private List<String> petNames;    // ... hoặc theo tên (trong số pet của chủ nuôi)
+    private List<Long> serviceIds;
+    private String appointmentDate;   // "2026-02-20"
+    private String appointmentTime;   // "09:00"
+    private String notes;
+}
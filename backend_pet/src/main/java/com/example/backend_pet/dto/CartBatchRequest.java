@@ -0,0 +1,35 @@
+package com.example.backend_pet.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+// Body của PATCH /api/cart — nhiều thao tác trên giỏ hàng áp dụng trong 1 transaction
+@Data
+public class CartBatchRequest {
+
+    @NotEmpty
+    @Valid
+    private List<Operation> operations;
+
+    @Data
+    public static class Operation {
+
+        @NotNull
+        private OperationType type;
+
+        @NotNull
+        private Long productId;
+
+        private Integer quantity; // bắt buộc với ADD (> 0) và SET (>= 0, 0 = xóa)
+    }
+
+    public enum OperationType {
+        ADD,    // cộng thêm số lượng
+        SET,    // đặt số lượng mới
+        REMOVE  // xóa khỏi giỏ
+    }
+}
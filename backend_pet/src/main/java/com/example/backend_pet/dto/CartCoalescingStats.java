@@ -0,0 +1,17 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// Thống kê gộp cập nhật số lượng giỏ hàng (PUT /api/cart/items/{productId}) kể từ lúc khởi động
+@Data
+@Builder
+public class CartCoalescingStats {
+    private long windowMillis;
+    private long requests;        // số request cập nhật nhận được
+    private long writes;          // số lần thực sự ghi xuống giỏ hàng
+    private long absorbed;        // số request được gộp vào lần ghi của request khác
+    private long failedWrites;
+    private int pending;          // số (user, sản phẩm) đang chờ ghi
+    private double absorbedRatio;
+}
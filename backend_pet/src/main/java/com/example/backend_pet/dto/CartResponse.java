@@ -18,7 +18,11 @@ public class CartResponse {
     private Long userId;
     private List<CartItemResponse> items;
     private Integer totalItems;
-    private BigDecimal totalPrice;
+    private BigDecimal subtotal;        // Tổng tiền theo giá gốc
+    private BigDecimal discountTotal;   // Tổng tiền được giảm
+    private BigDecimal totalPrice;      // Phải trả = subtotal - discountTotal
+    private String voucherCode;         // Mã voucher đã áp dụng (null nếu không có)
+    private List<AppliedPromotion> appliedPromotions;
 
     @Data
     @Builder
@@ -28,6 +32,19 @@ public class CartResponse {
         private Long id;
         private ProductResponse product;
         private Integer quantity;
+        private BigDecimal discount;    // Giảm giá cấp dòng (PERCENT_OFF / BUY_X_GET_Y)
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AppliedPromotion {
+        private Long id;
+        private String name;
+        private String type;
+        private String voucherCode;
+        private BigDecimal amount;
     }
 
     @Data
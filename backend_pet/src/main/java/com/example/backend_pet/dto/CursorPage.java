@@ -0,0 +1,15 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Trang dữ liệu phân trang theo con trỏ (keyset) — client gửi lại nextCursor để lấy trang kế tiếp
+@Data
+@Builder
+public class CursorPage<T> {
+    private List<T> items;
+    private String nextCursor; // null khi đã hết dữ liệu
+    private boolean hasMore;
+}
@@ -0,0 +1,39 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Lịch rảnh / bận của các bác sĩ trong khung giờ của 1 nhóm booking (dropdown phân công của admin)
+@Data
+@Builder
+public class DoctorAvailabilityResponse {
+    private String bookingCode;
+    private String appointmentDate;   // "2026-03-05"
+    private String startTime;         // "09:00"
+    private String endTime;           // giờ hẹn + tổng thời lượng dịch vụ của cả nhóm
+    private int durationMinutes;
+    private Long assignedDoctorId;
+    private List<DoctorSlot> doctors;
+
+    @Data
+    @Builder
+    public static class DoctorSlot {
+        private Long doctorId;
+        private String fullName;
+        private String email;
+        private boolean free;                // Không trùng lịch nào → có thể phân công
+        private int busyMinutes;             // Tổng thời gian đã bận trong ngày
+        private List<BusyInterval> conflicts; // Các lịch trùng giờ với nhóm này
+        private List<BusyInterval> busy;      // Toàn bộ lịch bận trong ngày
+    }
+
+    @Data
+    @Builder
+    public static class BusyInterval {
+        private String bookingCode;
+        private String startTime;
+        private String endTime;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Lịch làm việc của bác sĩ theo ngày / tuần / khoảng ngày, kèm số lịch từng ngày cho mini-calendar
+@Data
+@Builder
+public class DoctorScheduleResponse {
+    private String from;
+    private String to;
+    private List<DayCount> days;            // Các ngày có lịch trong (các) tháng chứa khoảng from..to
+    private List<ScheduleItem> appointments;
+
+    @Data
+    @Builder
+    public static class DayCount {
+        private String date;
+        private int total;
+        private int pending;
+        private int confirmed;
+        private int completed;
+        private int cancelled;
+    }
+
+    @Data
+    @Builder
+    public static class ScheduleItem {
+        private Long id;
+        private String bookingCode;
+        private String appointmentDate;
+        private String appointmentTime;
+        private String endTime;             // Giờ bắt đầu + tổng thời lượng dịch vụ
+        private String status;
+        private String notes;
+        private Long petId;
+        private String petName;
+        private String petSpecies;
+        private String petImageUrl;
+        private Long ownerId;
+        private String ownerName;
+        private String ownerPhone;
+        private List<AppointmentResponse.ServiceInfo> services;
+        private Long medicalRecordId;
+        private boolean recordCompleted;    // Bác sĩ đã ghi chẩn đoán (hồ sơ rỗng được tạo sẵn lúc đặt lịch)
+    }
+}
@@ -19,5 +19,7 @@ public class MedicalRequest {
     private String prescription;
     private String notes;
     private LocalDate followUpDate;
+    private Double weight;         // kg
+    private Double temperature;    // °C
     private List<String> imageUrls;
 }
@@ -23,5 +23,7 @@ public class MedicalResponse {
     private String prescription;
     private String notes;
     private LocalDate followUpDate;
+    private Double weight;         // kg
+    private Double temperature;    // °C
     private List<String> imageUrls;
 }
@@ -0,0 +1,24 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Các trường khác nhau giữa 2 phiên bản bệnh án (phiên bản 0 = hồ sơ rỗng lúc đặt lịch)
+@Data
+@Builder
+public class MedicalRevisionDiffResponse {
+    private Long recordId;
+    private int fromRevision;
+    private int toRevision;
+    private List<FieldChange> changes;
+
+    @Data
+    @Builder
+    public static class FieldChange {
+        private String field;
+        private Object before;
+        private Object after;
+    }
+}
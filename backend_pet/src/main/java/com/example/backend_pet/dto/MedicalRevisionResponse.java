@@ -0,0 +1,33 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// 1 phiên bản bệnh án: danh sách phiên bản chỉ có phần đầu, xem 1 phiên bản thì có thêm state
+@Data
+@Builder
+public class MedicalRevisionResponse {
+    private Long recordId;
+    private int revision;
+    private boolean snapshot;
+    private List<String> changedFields;
+    private LocalDateTime createdAt;
+    private RecordState state;
+
+    @Data
+    @Builder
+    public static class RecordState {
+        private String diagnosis;
+        private String treatment;
+        private String prescription;
+        private String notes;
+        private LocalDate followUpDate;
+        private Double weight;
+        private Double temperature;
+        private List<String> imageUrls;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Kết quả tìm bệnh án theo triệu chứng / chẩn đoán / thuốc, xếp theo độ liên quan
+@Data
+@Builder
+public class MedicalSearchResponse {
+    private String query;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private List<Hit> items;
+
+    @Data
+    @Builder
+    public static class Hit {
+        private Long recordId;             // Xem chi tiết qua GET /api/medical/records/{recordId}
+        private Long appointmentId;
+        private String bookingCode;
+        private String appointmentDate;
+        private Long petId;
+        private String petName;
+        private String petSpecies;
+        private String diagnosisExcerpt;
+        private double rank;
+    }
+}
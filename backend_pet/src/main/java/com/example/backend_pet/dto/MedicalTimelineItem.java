@@ -0,0 +1,22 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+// 1 lần khám trên timeline bệnh án của pet — chi tiết và ảnh lấy riêng qua GET /api/medical/records/{id}
+@Data
+@Builder
+public class MedicalTimelineItem {
+    private Long id;
+    private Long appointmentId;
+    private String bookingCode;
+    private LocalDate appointmentDate;
+    private String doctorName;
+    private String diagnosisExcerpt;   // Tối đa 160 ký tự đầu của chẩn đoán
+    private Double weight;
+    private Double temperature;
+    private LocalDate followUpDate;
+    private int imageCount;
+}
@@ -0,0 +1,26 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// K giờ bắt đầu sớm nhất còn đặt được cho 1 yêu cầu (dịch vụ, số pet, bác sĩ mong muốn)
+@Data
+@Builder
+public class NextAvailableSlotResponse {
+    private int durationMinutes;      // Tổng thời lượng dịch vụ × số pet
+    private int searchedDays;         // Số ngày đã phải xét
+    private List<AvailableSlot> slots;
+
+    @Data
+    @Builder
+    public static class AvailableSlot {
+        private String date;          // "2026-03-05"
+        private String startTime;     // "09:00"
+        private String endTime;
+        private int remaining;        // Số chỗ còn lại trong khung giờ
+        private Long doctorId;        // Bác sĩ rảnh suốt thời lượng (null nếu phòng khám chưa có bác sĩ)
+        private String doctorName;
+    }
+}
@@ -9,4 +9,5 @@ public class OrderRequest {
     private String paymentMethod; // "COD" hoặc "BANKING"
     private String notes;
     private String contactPhone;
+    private String voucherCode;   // Mã giảm giá (tùy chọn)
 }
@@ -14,6 +14,8 @@ public class OrderResponse {
     private String orderNumber;
     private String userName;
     private BigDecimal totalAmount;
+    private BigDecimal discountAmount;
+    private String voucherCode;
     private String status;
     private String shippingAddress;
     private String paymentMethod;
@@ -0,0 +1,22 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Bản tóm tắt 1 đơn hàng cho trang "Đơn hàng của tôi" — chi tiết items lấy qua GET /api/orders/{id}
+@Data
+@Builder
+public class OrderSummaryResponse {
+    private Long id;
+    private String orderNumber;
+    private LocalDateTime createdAt;
+    private BigDecimal totalAmount;
+    private String status;
+    private String paymentStatus;
+    private long itemCount;
+    private String thumbnailUrl;      // ảnh sản phẩm đầu tiên trong đơn
+    private String firstProductName;
+}
@@ -0,0 +1,28 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Phần đầu timeline bệnh án: chỉ số đo gần nhất và các chẩn đoán gần đây
+@Data
+@Builder
+public class PetMedicalSummaryResponse {
+    private Long petId;
+    private int visitCount;
+    private LocalDate lastVisitDate;
+    private Double latestWeight;
+    private Double latestTemperature;
+    private LocalDate vitalsDate;
+    private LocalDate nextFollowUpDate;
+    private List<RecentDiagnosis> recentDiagnoses;
+
+    @Data
+    @Builder
+    public static class RecentDiagnosis {
+        private LocalDate date;
+        private String diagnosis;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// Lịch trống theo tháng: mỗi ngày 1 mảng số chỗ còn lại, cùng thứ tự với danh sách slots
+@Data
+@Builder
+public class SlotAvailabilityResponse {
+    private String month;             // "2026-03"
+    private int slotMinutes;
+    private int capacity;             // Số nhóm booking tối đa mỗi khung giờ
+    private List<String> slots;       // ["08:00", "08:30", ..., "17:00"]
+    private List<DayAvailability> days;
+
+    @Data
+    @Builder
+    public static class DayAvailability {
+        private String date;          // "2026-03-05"
+        private int[] remaining;      // Số chỗ còn lại theo từng slot
+        private int freeSlots;        // Số slot còn ít nhất 1 chỗ
+        private boolean full;
+    }
+}
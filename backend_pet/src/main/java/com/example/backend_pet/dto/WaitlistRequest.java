@@ -0,0 +1,9 @@
+package com.example.backend_pet.dto;
+
+import lombok.Data;
+
+@Data
+public class WaitlistRequest {
+    private String appointmentDate;   // "2026-02-20"
+    private String appointmentTime;   // "09:00"
+}
@@ -0,0 +1,18 @@
+package com.example.backend_pet.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class WaitlistResponse {
+    private Long id;
+    private String appointmentDate;
+    private String appointmentTime;
+    private String status;             // WAITING, OFFERED, BOOKED, EXPIRED, CANCELLED
+    private Long position;             // Vị trí trong hàng đợi (chỉ khi WAITING)
+    private LocalDateTime holdUntil;   // Hạn đặt lịch bằng chỗ được giữ (chỉ khi OFFERED)
+    private LocalDateTime createdAt;
+}
@@ -10,7 +10,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "appointments")
+@Table(
+    name = "appointments",
+    indexes = {
+        @Index(name = "idx_appointments_date_time", columnList = "appointment_date, appointment_time"),
+        @Index(name = "idx_appointments_booking_code", columnList = "booking_code"),
+        @Index(name = "idx_appointments_doctor_date", columnList = "doctor_id, appointment_date, appointment_time"),
+        @Index(name = "idx_appointments_pet_date", columnList = "pet_id, appointment_date")
+    }
+)
 @Getter
 @Setter
 @NoArgsConstructor
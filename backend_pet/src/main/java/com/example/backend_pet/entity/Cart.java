@@ -7,7 +7,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "carts")
+@Table(
+    name = "carts",
+    indexes = @Index(name = "idx_carts_updated_at", columnList = "updated_at")
+)
 @Getter
 @Setter
 @NoArgsConstructor
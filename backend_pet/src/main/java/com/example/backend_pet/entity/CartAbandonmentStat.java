@@ -0,0 +1,40 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Thống kê giỏ hàng bị bỏ quên theo ngày hoạt động cuối của giỏ và sản phẩm.
+// Ghi bởi CartSweeper ngay trước khi xóa giỏ; không FK tới products để giữ số liệu khi sản phẩm bị xóa.
+@Entity
+@Table(
+    name = "cart_abandonment_stats",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"stat_date", "product_id"})
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartAbandonmentStat extends BaseEntity {
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "product_name")
+    private String productName;
+
+    @Column(name = "cart_count", nullable = false)
+    private Long cartCount;
+
+    @Column(name = "total_quantity", nullable = false)
+    private Long totalQuantity;
+
+    @Column(name = "total_value", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalValue;
+}
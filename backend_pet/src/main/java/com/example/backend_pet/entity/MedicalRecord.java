@@ -2,6 +2,7 @@ package com.example.backend_pet.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -15,10 +16,12 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @ToString
+@DynamicUpdate // Chỉ UPDATE các cột thực sự đổi, không ghi lại cả bệnh án mỗi lần lưu
 public class MedicalRecord extends BaseEntity {
 
     @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "appointment_id", nullable = false, unique = true)
+    @ToString.Exclude // Không kích hoạt lazy load khi in log
     private Appointment appointment;
 
     @Column(columnDefinition = "TEXT")
@@ -36,13 +39,28 @@ public class MedicalRecord extends BaseEntity {
     @Column(name = "follow_up_date")
     private LocalDate followUpDate; // Ngày tái khám
 
-    // Ảnh bệnh án (X-quang, xét nghiệm,...) — bảng phụ tự tạo: medical_record_images
-    @ElementCollection(fetch = FetchType.EAGER)
+    private Double weight; // Cân nặng lúc khám (kg)
+
+    private Double temperature; // Nhiệt độ lúc khám (°C)
+
+    // Chẩn đoán + điều trị + đơn thuốc + ghi chú đã bỏ dấu, dùng cho tìm kiếm toàn văn (GIN index, xem MedicalRecordSearchService)
+    @Column(name = "search_text", columnDefinition = "TEXT")
+    @ToString.Exclude
+    private String searchText;
+
+    // Số phiên bản mới nhất trong medical_record_revisions (null = chưa sửa lần nào, tương đương 0)
+    @Column(name = "revision")
+    private Integer revision;
+
+    // Ảnh bệnh án (X-quang, xét nghiệm,...) — bảng phụ tự tạo: medical_record_images.
+    // LAZY: danh sách / timeline chỉ cần số ảnh, ảnh được nạp theo lô khi xem chi tiết
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(
         name = "medical_record_images",
         joinColumns = @JoinColumn(name = "medical_record_id")
     )
     @Column(name = "image_url", columnDefinition = "TEXT")
+    @ToString.Exclude
     @Builder.Default
     private List<String> imageUrls = new ArrayList<>();
 }
@@ -0,0 +1,36 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+// 1 lần sửa bệnh án (chỉ thêm, không sửa / xóa). data là JSON: snapshot = toàn bộ các trường,
+// delta = chỉ các trường đổi so với phiên bản trước (xem MedicalRecordHistoryService)
+@Entity
+@Immutable
+@Table(
+    name = "medical_record_revisions",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"medical_record_id", "revision"})
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MedicalRecordRevision extends BaseEntity {
+
+    @Column(name = "medical_record_id", nullable = false)
+    private Long medicalRecordId;
+
+    @Column(nullable = false)
+    private int revision; // Bắt đầu từ 1, tăng dần theo từng bệnh án
+
+    @Column(nullable = false)
+    private boolean snapshot;
+
+    @Column(name = "changed_fields", length = 255)
+    private String changedFields; // Tên các trường đổi, ngăn cách bằng dấu phẩy
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String data;
+}
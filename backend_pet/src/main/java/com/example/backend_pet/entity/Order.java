@@ -10,7 +10,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(
+    name = "orders",
+    indexes = @Index(name = "idx_orders_user_id_id", columnList = "user_id, id")
+)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -30,6 +33,13 @@ public class Order extends BaseEntity {
     @Column(name = "total_amount", nullable = false, precision = 10, scale = 2)
     private BigDecimal totalAmount;
 
+    // Tổng tiền được giảm bởi khuyến mãi/voucher (totalAmount đã trừ khoản này)
+    @Column(name = "discount_amount", precision = 10, scale = 2)
+    private BigDecimal discountAmount;
+
+    @Column(name = "voucher_code")
+    private String voucherCode;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     @Builder.Default
@@ -0,0 +1,39 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+// Dòng tóm tắt hồ sơ sức khỏe của 1 pet (đầu timeline bệnh án), cập nhật khi bác sĩ lưu bệnh án
+// hoặc lịch khám của pet đổi trạng thái. Ngày tái khám sắp tới phụ thuộc ngày xem nên không lưu ở đây
+@Entity
+@Table(name = "pet_medical_summaries")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PetMedicalSummary extends BaseEntity {
+
+    @Column(name = "pet_id", nullable = false, unique = true)
+    private Long petId;
+
+    @Column(name = "visit_count", nullable = false)
+    private int visitCount; // Số lần khám đã có bệnh án
+
+    @Column(name = "last_visit_date")
+    private LocalDate lastVisitDate;
+
+    @Column(name = "latest_weight")
+    private Double latestWeight; // kg, lần đo gần nhất
+
+    @Column(name = "latest_temperature")
+    private Double latestTemperature; // °C, lần đo gần nhất
+
+    @Column(name = "vitals_date")
+    private LocalDate vitalsDate; // Ngày của lần đo gần nhất
+
+    @Column(name = "recent_diagnoses", columnDefinition = "TEXT")
+    private String recentDiagnoses; // Các chẩn đoán gần nhất, mỗi dòng "ngày|chẩn đoán rút gọn"
+}
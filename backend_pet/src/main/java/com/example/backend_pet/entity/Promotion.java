@@ -0,0 +1,72 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Khuyến mãi cho giỏ hàng / đơn hàng — được PricingEngine biên dịch thành index theo sản phẩm, danh mục, mã voucher
+@Entity
+@Table(name = "promotions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Promotion extends BaseEntity {
+
+    @Column(nullable = false)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PromotionType type;
+
+    // Phạm vi áp dụng cho PERCENT_OFF / BUY_X_GET_Y: 1 sản phẩm hoặc cả danh mục
+    @Column(name = "product_id")
+    private Long productId;
+
+    // Danh mục (Product.category); bắt buộc với CATEGORY_BUNDLE
+    private String category;
+
+    // Phần trăm giảm (0-100) cho PERCENT_OFF, CATEGORY_BUNDLE, VOUCHER dạng %
+    @Column(name = "percent_off", precision = 5, scale = 2)
+    private BigDecimal percentOff;
+
+    // Số tiền giảm cố định cho VOUCHER
+    @Column(name = "amount_off", precision = 10, scale = 2)
+    private BigDecimal amountOff;
+
+    // BUY_X_GET_Y: mua buyQuantity tặng freeQuantity (cùng sản phẩm)
+    @Column(name = "buy_quantity")
+    private Integer buyQuantity;
+
+    @Column(name = "free_quantity")
+    private Integer freeQuantity;
+
+    // CATEGORY_BUNDLE: tổng số lượng tối thiểu trong danh mục để được giảm
+    @Column(name = "min_quantity")
+    private Integer minQuantity;
+
+    // VOUCHER: giá trị đơn tối thiểu (sau các giảm giá khác)
+    @Column(name = "min_order_amount", precision = 10, scale = 2)
+    private BigDecimal minOrderAmount;
+
+    @Column(name = "voucher_code", unique = true)
+    private String voucherCode;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Boolean active = true;
+
+    @Column(name = "starts_at")
+    private LocalDateTime startsAt;
+
+    @Column(name = "ends_at")
+    private LocalDateTime endsAt;
+
+    public enum PromotionType {
+        PERCENT_OFF, BUY_X_GET_Y, CATEGORY_BUNDLE, VOUCHER
+    }
+}
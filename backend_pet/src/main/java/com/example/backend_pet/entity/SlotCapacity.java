@@ -0,0 +1,36 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Sức chứa của 1 khung giờ khám — booked chỉ tăng bằng UPDATE có điều kiện booked < capacity
+// (xem SlotCapacityRepository) nên không bao giờ vượt capacity dù nhiều node đặt lịch cùng lúc
+@Entity
+@Table(
+    name = "slot_capacities",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"slot_date", "slot_time"})
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SlotCapacity extends BaseEntity {
+
+    @Column(name = "slot_date", nullable = false)
+    private LocalDate slotDate;
+
+    @Column(name = "slot_time", nullable = false)
+    private LocalTime slotTime;
+
+    @Column(nullable = false)
+    private Integer capacity;
+
+    // Số nhóm booking (bookingCode) đang giữ chỗ
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer booked = 0;
+}
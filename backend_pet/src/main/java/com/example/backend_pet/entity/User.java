@@ -43,6 +43,10 @@ public class User extends BaseEntity {
     @Builder.Default
     private Status status = Status.ACTIVE;
 
+    // Token bí mật trong URL feed lịch ICS (app lịch không gửi được JWT); null = chưa bật feed
+    @Column(name = "calendar_token", unique = true, length = 64)
+    private String calendarToken;
+
     public enum Role {
         USER, ADMIN, DOCTOR
     }
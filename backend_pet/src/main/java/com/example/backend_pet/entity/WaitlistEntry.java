@@ -0,0 +1,53 @@
+package com.example.backend_pet.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+// 1 user chờ 1 khung giờ đã đầy. Hàng đợi của mỗi slot = các dòng WAITING cùng (slot_date, slot_time) theo id tăng dần
+@Entity
+@Table(
+    name = "waitlist_entries",
+    indexes = {
+        @Index(name = "idx_waitlist_slot_status", columnList = "slot_date, slot_time, status, id"),
+        @Index(name = "idx_waitlist_status_hold", columnList = "status, hold_until"),
+        @Index(name = "idx_waitlist_user", columnList = "user_id")
+    }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WaitlistEntry extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "slot_date", nullable = false)
+    private LocalDate slotDate;
+
+    @Column(name = "slot_time", nullable = false)
+    private LocalTime slotTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private WaitlistStatus status = WaitlistStatus.WAITING;
+
+    // Hạn giữ chỗ khi đang OFFERED: quá hạn thì chỗ chuyển cho người kế tiếp
+    @Column(name = "hold_until")
+    private LocalDateTime holdUntil;
+
+    public enum WaitlistStatus {
+        WAITING,    // Đang xếp hàng
+        OFFERED,    // Đã được giữ 1 chỗ, chờ user đặt lịch trước holdUntil
+        BOOKED,     // Đã dùng chỗ được giữ để đặt lịch
+        EXPIRED,    // Hết hạn giữ chỗ hoặc slot đã qua
+        CANCELLED   // User rời hàng đợi
+    }
+}
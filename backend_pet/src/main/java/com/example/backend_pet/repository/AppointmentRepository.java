@@ -1,21 +1,36 @@
 package com.example.backend_pet.repository;
 
 import com.example.backend_pet.entity.Appointment;
+import com.example.backend_pet.entity.Pet;
+import com.example.backend_pet.entity.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, AppointmentRepositoryCustom {
 
     List<Appointment> findByUserIdOrderByAppointmentDateDesc(Long userId);
 
     List<Appointment> findByBookingCode(String bookingCode);
 
+    @Query("SELECT a.pet.id FROM Appointment a WHERE a.bookingCode = :code")
+    List<Long> findPetIdsByBookingCode(@Param("code") String bookingCode);
+
     List<Appointment> findByDoctorIdOrderByAppointmentDateAsc(Long doctorId);
 
     List<Appointment> findByAppointmentDateBetween(LocalDate start, LocalDate end);
@@ -29,4 +44,465 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
            "WHERE a.appointmentDate = :date AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED " +
            "GROUP BY a.appointmentTime")
     List<Object[]> countActiveBookingsPerSlot(@Param("date") LocalDate date);
+
+    // Giống countActiveBookingsPerSlot nhưng cho cả 1 khoảng ngày (dựng lịch trống theo tháng trong 1 query).
+    // Trả về: [appointmentDate, appointmentTime, countDistinctBookingCode]
+    @Query("SELECT a.appointmentDate, a.appointmentTime, COUNT(DISTINCT a.bookingCode) " +
+           "FROM Appointment a " +
+           "WHERE a.appointmentDate BETWEEN :start AND :end " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED " +
+           "GROUP BY a.appointmentDate, a.appointmentTime")
+    List<Object[]> countActiveBookingsPerSlotBetween(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    // ── Thao tác theo nhóm booking (bookingCode, có index idx_appointments_booking_code) ──
+
+    // Khóa nhóm của 1 appointment + số dòng active / sắp khám (PENDING, CONFIRMED) / completed trong cả nhóm (1 query)
+    @Query("SELECT a.bookingCode AS bookingCode, a.user.id AS userId, d.id AS doctorId, " +
+           "a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, " +
+           "(SELECT COUNT(x) FROM Appointment x WHERE x.bookingCode = a.bookingCode " +
+           "AND x.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED) AS activeCount, " +
+           "(SELECT COUNT(x) FROM Appointment x WHERE x.bookingCode = a.bookingCode " +
+           "AND x.status IN (com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING, " +
+           "com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED)) AS upcomingCount, " +
+           "(SELECT COUNT(x) FROM Appointment x WHERE x.bookingCode = a.bookingCode " +
+           "AND x.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED) AS completedCount " +
+           "FROM Appointment a LEFT JOIN a.doctor d WHERE a.id = :id")
+    Optional<GroupKeyView> findGroupKey(@Param("id") Long id);
+
+    // User hủy nhóm của mình; không hủy được nếu trong nhóm đã có lịch hoàn thành
+    @Modifying
+    @Query("UPDATE Appointment a SET a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED, " +
+           "a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code AND a.user.id = :userId " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED " +
+           "AND NOT EXISTS (SELECT x.id FROM Appointment x WHERE x.bookingCode = :code " +
+           "AND x.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED)")
+    int cancelGroup(@Param("code") String bookingCode, @Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    // Bác sĩ được phân công hoàn thành các lịch đã xác nhận của nhóm
+    @Modifying
+    @Query("UPDATE Appointment a SET a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED, " +
+           "a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code AND a.doctor.id = :doctorId " +
+           "AND a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED")
+    int completeGroup(@Param("code") String bookingCode, @Param("doctorId") Long doctorId, @Param("now") LocalDateTime now);
+
+    // Chỉ phân công cho lịch chưa kết thúc (PENDING / CONFIRMED)
+    @Modifying
+    @Query("UPDATE Appointment a SET a.doctor = :doctor, a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code " +
+           "AND a.status IN (com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING, " +
+           "com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED)")
+    int assignDoctorToGroup(@Param("code") String bookingCode, @Param("doctor") User doctor, @Param("now") LocalDateTime now);
+
+    // Lịch đã hoàn thành giữ nguyên bác sĩ đã khám
+    @Modifying
+    @Query("UPDATE Appointment a SET a.doctor = NULL, a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code AND a.doctor IS NOT NULL " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED")
+    int unassignDoctorFromGroup(@Param("code") String bookingCode, @Param("now") LocalDateTime now);
+
+    // Admin hủy cả nhóm; 0 dòng = nhóm đã bị hủy bởi request khác
+    @Modifying
+    @Query("UPDATE Appointment a SET a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED, " +
+           "a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED")
+    int cancelGroupByAdmin(@Param("code") String bookingCode, @Param("now") LocalDateTime now);
+
+    // Mở lại nhóm đã hủy: chỉ khi cả nhóm vẫn đang CANCELLED; 0 dòng = request khác đã mở lại trước
+    @Modifying
+    @Query("UPDATE Appointment a SET a.status = :status, a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code " +
+           "AND a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED " +
+           "AND NOT EXISTS (SELECT x.id FROM Appointment x WHERE x.bookingCode = :code " +
+           "AND x.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED)")
+    int reactivateGroup(@Param("code") String bookingCode,
+                        @Param("status") Appointment.AppointmentStatus status,
+                        @Param("now") LocalDateTime now);
+
+    // Đổi trạng thái giữa các trạng thái active; dòng đã hủy giữ nguyên (không chiếm lại chỗ ngoài ý muốn)
+    @Modifying
+    @Query("UPDATE Appointment a SET a.status = :status, a.updatedAt = :now " +
+           "WHERE a.bookingCode = :code AND a.status <> :status " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED")
+    int updateActiveGroupStatus(@Param("code") String bookingCode,
+                                @Param("status") Appointment.AppointmentStatus status,
+                                @Param("now") LocalDateTime now);
+
+    // Các dòng (appointment × dịch vụ) của 1 nhóm — dựng response trong 1 query, không lazy load
+    @Query("SELECT a.id AS id, a.bookingCode AS bookingCode, p.name AS petName, p.species AS petSpecies, " +
+           "p.imageUrl AS petImageUrl, s.id AS serviceId, s.title AS serviceTitle, s.price AS servicePrice, " +
+           "d.id AS doctorId, d.fullName AS doctorName, u.fullName AS ownerName, " +
+           "a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, a.status AS status, " +
+           "a.notes AS notes, a.createdAt AS createdAt " +
+           "FROM Appointment a JOIN a.pet p JOIN a.user u LEFT JOIN a.doctor d LEFT JOIN a.services s " +
+           "WHERE a.bookingCode = :code ORDER BY a.id, s.id")
+    List<AppointmentRow> findRowsByBookingCode(@Param("code") String bookingCode);
+
+    // ── Danh sách lịch khám cho admin (phân trang theo con trỏ) ──
+
+    // Trang lịch khám mới nhất trước, con trỏ = (ngày, giờ, id) của dòng cuối trang trước.
+    // Bộ lọc tắt bằng cờ any* thay vì tham số null; khoảng ngày luôn có giá trị (mặc định rất rộng).
+    @Query("SELECT a.id AS id, a.bookingCode AS bookingCode, p.name AS petName, p.species AS petSpecies, " +
+           "p.imageUrl AS petImageUrl, d.id AS doctorId, d.fullName AS doctorName, u.fullName AS ownerName, " +
+           "a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, a.status AS status, " +
+           "a.notes AS notes, a.createdAt AS createdAt " +
+           "FROM Appointment a JOIN a.pet p JOIN a.user u LEFT JOIN a.doctor d " +
+           "WHERE a.appointmentDate BETWEEN :from AND :to " +
+           "AND (a.appointmentDate < :cursorDate OR (a.appointmentDate = :cursorDate " +
+           "AND (a.appointmentTime < :cursorTime OR (a.appointmentTime = :cursorTime AND a.id < :cursorId)))) " +
+           "AND a.status IN :statuses " +
+           "AND (:anyDoctor = true OR d.id = :doctorId) " +
+           "AND (:anyCategory = true OR EXISTS (SELECT s.id FROM a.services s WHERE s.category = :category)) " +
+           "AND (:anyText = true OR a.bookingCode LIKE :codePrefix ESCAPE '!' OR LOWER(u.fullName) LIKE :namePrefix ESCAPE '!') " +
+           "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.id DESC")
+    List<AppointmentSummaryView> findAdminPage(@Param("from") LocalDate from,
+                                               @Param("to") LocalDate to,
+                                               @Param("cursorDate") LocalDate cursorDate,
+                                               @Param("cursorTime") LocalTime cursorTime,
+                                               @Param("cursorId") Long cursorId,
+                                               @Param("statuses") Collection<Appointment.AppointmentStatus> statuses,
+                                               @Param("anyDoctor") boolean anyDoctor,
+                                               @Param("doctorId") Long doctorId,
+                                               @Param("anyCategory") boolean anyCategory,
+                                               @Param("category") String category,
+                                               @Param("anyText") boolean anyText,
+                                               @Param("codePrefix") String codePrefix,
+                                               @Param("namePrefix") String namePrefix,
+                                               Pageable pageable);
+
+    // Dịch vụ của các appointment trong 1 trang — 1 query cho cả trang
+    @Query("SELECT a.id AS appointmentId, s.id AS serviceId, s.title AS serviceTitle, s.price AS servicePrice " +
+           "FROM Appointment a JOIN a.services s WHERE a.id IN :ids ORDER BY a.id, s.id")
+    List<AppointmentServiceView> findServicesByAppointmentIds(@Param("ids") Collection<Long> appointmentIds);
+
+    // ── Danh sách theo nhóm booking (BookingGroupService) ──
+
+    // 1 dòng / nhóm booking, mới nhất trước; con trỏ = (ngày, giờ, bookingCode) của nhóm cuối trang trước.
+    // Ngày / giờ / chủ nuôi giống nhau trong cả nhóm nên điều kiện con trỏ đặt trên từng dòng.
+    @Query("SELECT a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, " +
+           "u.id AS ownerId, u.fullName AS ownerName, MAX(d.id) AS doctorId, MAX(d.fullName) AS doctorName, " +
+           "MAX(a.notes) AS notes, COUNT(a) AS petCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING THEN 1 ELSE 0 END) AS pendingCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED THEN 1 ELSE 0 END) AS confirmedCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED THEN 1 ELSE 0 END) AS completedCount, " +
+           "MIN(a.createdAt) AS createdAt " +
+           "FROM Appointment a JOIN a.user u LEFT JOIN a.doctor d " +
+           "WHERE a.appointmentDate BETWEEN :from AND :to " +
+           "AND (a.appointmentDate < :cursorDate OR (a.appointmentDate = :cursorDate " +
+           "AND (a.appointmentTime < :cursorTime OR (a.appointmentTime = :cursorTime AND a.bookingCode < :cursorCode)))) " +
+           "AND (:anyUser = true OR u.id = :userId) " +
+           "AND (:anyDoctor = true OR d.id = :doctorId) " +
+           "GROUP BY a.bookingCode, a.appointmentDate, a.appointmentTime, u.id, u.fullName " +
+           "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.bookingCode DESC")
+    List<BookingGroupView> findBookingGroupPage(@Param("from") LocalDate from,
+                                                @Param("to") LocalDate to,
+                                                @Param("cursorDate") LocalDate cursorDate,
+                                                @Param("cursorTime") LocalTime cursorTime,
+                                                @Param("cursorCode") String cursorCode,
+                                                @Param("anyUser") boolean anyUser,
+                                                @Param("userId") Long userId,
+                                                @Param("anyDoctor") boolean anyDoctor,
+                                                @Param("doctorId") Long doctorId,
+                                                Pageable pageable);
+
+    // Pet của các nhóm trong trang (cùng bộ lọc bác sĩ với trang)
+    @Query("SELECT a.bookingCode AS bookingCode, a.id AS appointmentId, p.id AS petId, p.name AS petName, " +
+           "p.species AS petSpecies, p.imageUrl AS petImageUrl, a.status AS status " +
+           "FROM Appointment a JOIN a.pet p " +
+           "WHERE a.bookingCode IN :codes AND (:anyDoctor = true OR a.doctor.id = :doctorId) ORDER BY a.id")
+    List<BookingGroupPetView> findBookingGroupPets(@Param("codes") Collection<String> bookingCodes,
+                                                   @Param("anyDoctor") boolean anyDoctor,
+                                                   @Param("doctorId") Long doctorId);
+
+    // Dịch vụ của các nhóm trong trang: quantity = số pet dùng dịch vụ, lineTotal bỏ qua lịch đã hủy
+    @Query("SELECT a.bookingCode AS bookingCode, s.id AS serviceId, s.title AS serviceTitle, s.price AS servicePrice, " +
+           "COUNT(a) AS quantity, " +
+           "COALESCE(SUM(CASE WHEN a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED THEN s.price ELSE 0 END), 0) AS lineTotal " +
+           "FROM Appointment a JOIN a.services s " +
+           "WHERE a.bookingCode IN :codes AND (:anyDoctor = true OR a.doctor.id = :doctorId) " +
+           "GROUP BY a.bookingCode, s.id, s.title, s.price ORDER BY a.bookingCode, s.id")
+    List<BookingGroupServiceView> findBookingGroupServices(@Param("codes") Collection<String> bookingCodes,
+                                                           @Param("anyDoctor") boolean anyDoctor,
+                                                           @Param("doctorId") Long doctorId);
+
+    // ── Nhắc lịch (AppointmentReminderScheduler) ──
+
+    // Các nhóm còn hiệu lực (PENDING / CONFIRMED) trong khoảng ngày, kèm thông tin liên hệ của chủ nuôi
+    @Query("SELECT a.bookingCode AS bookingCode, u.id AS ownerId, u.email AS ownerEmail, u.fullName AS ownerName, " +
+           "a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, COUNT(a) AS petCount " +
+           "FROM Appointment a JOIN a.user u " +
+           "WHERE a.appointmentDate BETWEEN :from AND :to " +
+           "AND a.status IN (com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING, com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED) " +
+           "GROUP BY a.bookingCode, u.id, u.email, u.fullName, a.appointmentDate, a.appointmentTime")
+    List<ReminderTargetView> findReminderTargets(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT a.bookingCode AS bookingCode, u.id AS ownerId, u.email AS ownerEmail, u.fullName AS ownerName, " +
+           "a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, COUNT(a) AS petCount " +
+           "FROM Appointment a JOIN a.user u " +
+           "WHERE a.bookingCode = :code " +
+           "AND a.status IN (com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING, com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED) " +
+           "GROUP BY a.bookingCode, u.id, u.email, u.fullName, a.appointmentDate, a.appointmentTime")
+    List<ReminderTargetView> findReminderTargetsByBookingCode(@Param("code") String bookingCode);
+
+    // ── Lịch làm việc của bác sĩ (DoctorTimelineIndex) ──
+
+    // Khoảng bận của các bác sĩ trong 1 ngày: mỗi nhóm booking chưa hủy 1 dòng,
+    // totalMinutes = tổng duration dịch vụ của mọi pet trong nhóm
+    @Query("SELECT a.doctor.id AS doctorId, a.bookingCode AS bookingCode, a.appointmentTime AS appointmentTime, " +
+           "COALESCE(SUM(s.duration), 0) AS totalMinutes " +
+           "FROM Appointment a LEFT JOIN a.services s " +
+           "WHERE a.doctor.id IN :doctorIds AND a.appointmentDate = :date " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED " +
+           "GROUP BY a.doctor.id, a.bookingCode, a.appointmentTime")
+    List<BusyIntervalView> findDoctorBusyIntervals(@Param("doctorIds") Collection<Long> doctorIds,
+                                                   @Param("date") LocalDate date);
+
+    // Các nhóm chưa phân công bác sĩ (PENDING / CONFIRMED) trong khoảng ngày, kèm tổng duration dịch vụ
+    @Query("SELECT a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, " +
+           "COALESCE(SUM(s.duration), 0) AS totalMinutes " +
+           "FROM Appointment a LEFT JOIN a.services s " +
+           "WHERE a.appointmentDate BETWEEN :from AND :to AND a.doctor IS NULL " +
+           "AND a.status IN (com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING, " +
+           "com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED) " +
+           "GROUP BY a.bookingCode, a.appointmentDate, a.appointmentTime " +
+           "ORDER BY a.appointmentDate, a.appointmentTime, a.bookingCode")
+    List<UnassignedGroupView> findUnassignedGroups(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Tổng thời lượng dịch vụ của cả nhóm (phút)
+    @Query("SELECT COALESCE(SUM(s.duration), 0) FROM Appointment a JOIN a.services s WHERE a.bookingCode = :code")
+    long sumGroupServiceMinutes(@Param("code") String bookingCode);
+
+    // ── Lịch làm việc theo ngày / tuần (DoctorScheduleService) — dùng idx_appointments_doctor_date ──
+
+    // Appointment của bác sĩ trong khoảng ngày, kèm tổng duration dịch vụ và bệnh án
+    // (hồ sơ rỗng được tạo sẵn lúc đặt lịch → coi là đã ghi khi có chẩn đoán)
+    @Query("SELECT a.id AS id, a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, " +
+           "a.appointmentTime AS appointmentTime, a.status AS status, a.notes AS notes, " +
+           "p.id AS petId, p.name AS petName, p.species AS petSpecies, p.imageUrl AS petImageUrl, " +
+           "u.id AS ownerId, u.fullName AS ownerName, u.phone AS ownerPhone, m.id AS medicalRecordId, " +
+           "MAX(CASE WHEN m.diagnosis IS NOT NULL AND m.diagnosis <> '' THEN 1 ELSE 0 END) AS recordFilled, " +
+           "COALESCE(SUM(s.duration), 0) AS totalMinutes " +
+           "FROM Appointment a JOIN a.pet p JOIN a.user u " +
+           "LEFT JOIN MedicalRecord m ON m.appointment.id = a.id LEFT JOIN a.services s " +
+           "WHERE a.doctor.id = :doctorId AND a.appointmentDate BETWEEN :from AND :to " +
+           "GROUP BY a.id, a.bookingCode, a.appointmentDate, a.appointmentTime, a.status, a.notes, " +
+           "p.id, p.name, p.species, p.imageUrl, u.id, u.fullName, u.phone, m.id " +
+           "ORDER BY a.appointmentDate, a.appointmentTime, a.bookingCode, a.id")
+    List<DoctorScheduleView> findDoctorSchedule(@Param("doctorId") Long doctorId,
+                                                @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Số appointment theo từng ngày / trạng thái cho mini-calendar (chỉ các ngày có lịch)
+    @Query("SELECT a.appointmentDate AS appointmentDate, COUNT(a) AS total, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.PENDING THEN 1 ELSE 0 END) AS pendingCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CONFIRMED THEN 1 ELSE 0 END) AS confirmedCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED THEN 1 ELSE 0 END) AS completedCount, " +
+           "SUM(CASE WHEN a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED THEN 1 ELSE 0 END) AS cancelledCount " +
+           "FROM Appointment a " +
+           "WHERE a.doctor.id = :doctorId AND a.appointmentDate BETWEEN :from AND :to " +
+           "GROUP BY a.appointmentDate ORDER BY a.appointmentDate")
+    List<DoctorDayCountView> countDoctorScheduleByDay(@Param("doctorId") Long doctorId,
+                                                      @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // ── Lịch ICS (CalendarFeedService) ──
+
+    // Phiên bản lịch = (số appointment, updatedAt mới nhất) trong cửa sổ của feed: đổi khi có lịch mới,
+    // hủy, đổi trạng thái hay phân công lại (mọi cập nhật đều set updatedAt)
+    @Query("SELECT COUNT(a) AS total, MAX(a.updatedAt) AS lastUpdated FROM Appointment a " +
+           "WHERE a.user.id = :userId AND a.appointmentDate BETWEEN :from AND :to")
+    CalendarVersionView findOwnerCalendarVersion(@Param("userId") Long userId,
+                                                 @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT COUNT(a) AS total, MAX(a.updatedAt) AS lastUpdated FROM Appointment a " +
+           "WHERE a.doctor.id = :doctorId AND a.appointmentDate BETWEEN :from AND :to")
+    CalendarVersionView findDoctorCalendarVersion(@Param("doctorId") Long doctorId,
+                                                  @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // 1 dòng / appointment, sắp theo nhóm để gộp thành VEVENT ngay khi đọc (caller phải đóng Stream trong transaction)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "200"))
+    @Query("SELECT a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, " +
+           "a.status AS status, a.notes AS notes, a.updatedAt AS updatedAt, p.name AS petName, " +
+           "u.fullName AS ownerName, u.phone AS ownerPhone, d.fullName AS doctorName, " +
+           "COALESCE(SUM(s.duration), 0) AS totalMinutes " +
+           "FROM Appointment a JOIN a.pet p JOIN a.user u LEFT JOIN a.doctor d LEFT JOIN a.services s " +
+           "WHERE a.user.id = :userId AND a.appointmentDate BETWEEN :from AND :to " +
+           "GROUP BY a.id, a.bookingCode, a.appointmentDate, a.appointmentTime, a.status, a.notes, a.updatedAt, " +
+           "p.name, u.fullName, u.phone, d.fullName " +
+           "ORDER BY a.appointmentDate, a.appointmentTime, a.bookingCode, a.id")
+    Stream<CalendarEventRow> streamOwnerCalendar(@Param("userId") Long userId,
+                                                 @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "200"))
+    @Query("SELECT a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, a.appointmentTime AS appointmentTime, " +
+           "a.status AS status, a.notes AS notes, a.updatedAt AS updatedAt, p.name AS petName, " +
+           "u.fullName AS ownerName, u.phone AS ownerPhone, d.fullName AS doctorName, " +
+           "COALESCE(SUM(s.duration), 0) AS totalMinutes " +
+           "FROM Appointment a JOIN a.pet p JOIN a.user u JOIN a.doctor d LEFT JOIN a.services s " +
+           "WHERE d.id = :doctorId AND a.appointmentDate BETWEEN :from AND :to " +
+           "GROUP BY a.id, a.bookingCode, a.appointmentDate, a.appointmentTime, a.status, a.notes, a.updatedAt, " +
+           "p.name, u.fullName, u.phone, d.fullName " +
+           "ORDER BY a.appointmentDate, a.appointmentTime, a.bookingCode, a.id")
+    Stream<CalendarEventRow> streamDoctorCalendar(@Param("doctorId") Long doctorId,
+                                                  @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    interface GroupKeyView {
+        String getBookingCode();
+        Long getUserId();
+        Long getDoctorId();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        long getActiveCount();
+        long getUpcomingCount();
+        long getCompletedCount();
+    }
+
+    // 1 dòng = 1 appointment × 1 dịch vụ (serviceId null nếu appointment không có dịch vụ)
+    interface AppointmentRow {
+        Long getId();
+        String getBookingCode();
+        String getPetName();
+        Pet.Species getPetSpecies();
+        String getPetImageUrl();
+        Long getServiceId();
+        String getServiceTitle();
+        BigDecimal getServicePrice();
+        Long getDoctorId();
+        String getDoctorName();
+        String getOwnerName();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        Appointment.AppointmentStatus getStatus();
+        String getNotes();
+        LocalDateTime getCreatedAt();
+    }
+
+    interface BusyIntervalView {
+        Long getDoctorId();
+        String getBookingCode();
+        LocalTime getAppointmentTime();
+        long getTotalMinutes();
+    }
+
+    interface UnassignedGroupView {
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        long getTotalMinutes();
+    }
+
+    interface AppointmentSummaryView {
+        Long getId();
+        String getBookingCode();
+        String getPetName();
+        Pet.Species getPetSpecies();
+        String getPetImageUrl();
+        Long getDoctorId();
+        String getDoctorName();
+        String getOwnerName();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        Appointment.AppointmentStatus getStatus();
+        String getNotes();
+        LocalDateTime getCreatedAt();
+    }
+
+    interface AppointmentServiceView {
+        Long getAppointmentId();
+        Long getServiceId();
+        String getServiceTitle();
+        BigDecimal getServicePrice();
+    }
+
+    interface BookingGroupView {
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        Long getOwnerId();
+        String getOwnerName();
+        Long getDoctorId();
+        String getDoctorName();
+        String getNotes();
+        long getPetCount();
+        long getPendingCount();
+        long getConfirmedCount();
+        long getCompletedCount();
+        LocalDateTime getCreatedAt();
+    }
+
+    interface BookingGroupPetView {
+        String getBookingCode();
+        Long getAppointmentId();
+        Long getPetId();
+        String getPetName();
+        Pet.Species getPetSpecies();
+        String getPetImageUrl();
+        Appointment.AppointmentStatus getStatus();
+    }
+
+    interface BookingGroupServiceView {
+        String getBookingCode();
+        Long getServiceId();
+        String getServiceTitle();
+        BigDecimal getServicePrice();
+        long getQuantity();
+        BigDecimal getLineTotal();
+    }
+
+    interface ReminderTargetView {
+        String getBookingCode();
+        Long getOwnerId();
+        String getOwnerEmail();
+        String getOwnerName();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        long getPetCount();
+    }
+
+    interface CalendarVersionView {
+        long getTotal();
+        LocalDateTime getLastUpdated();
+    }
+
+    interface CalendarEventRow {
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        Appointment.AppointmentStatus getStatus();
+        String getNotes();
+        LocalDateTime getUpdatedAt();
+        String getPetName();
+        String getOwnerName();
+        String getOwnerPhone();
+        String getDoctorName();
+        long getTotalMinutes();
+    }
+
+    interface DoctorScheduleView {
+        Long getId();
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        LocalTime getAppointmentTime();
+        Appointment.AppointmentStatus getStatus();
+        String getNotes();
+        Long getPetId();
+        String getPetName();
+        Pet.Species getPetSpecies();
+        String getPetImageUrl();
+        Long getOwnerId();
+        String getOwnerName();
+        String getOwnerPhone();
+        Long getMedicalRecordId();
+        int getRecordFilled();
+        long getTotalMinutes();
+    }
+
+    interface DoctorDayCountView {
+        LocalDate getAppointmentDate();
+        long getTotal();
+        long getPendingCount();
+        long getConfirmedCount();
+        long getCompletedCount();
+        long getCancelledCount();
+    }
 }
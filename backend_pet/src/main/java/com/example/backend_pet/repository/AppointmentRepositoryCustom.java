@@ -0,0 +1,33 @@
+package com.example.backend_pet.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+// Các thao tác ghi theo tập hợp trên appointments chạy bằng JDBC (xem AppointmentRepositoryImpl)
+public interface AppointmentRepositoryCustom {
+
+    // Tạo 1 nhóm booking (1 appointment / pet) cùng dòng appointment_services và medical_records rỗng:
+    // đúng 3 câu lệnh bất kể số pet và số dịch vụ
+    List<InsertedAppointment> insertBookingGroup(NewBookingGroup group);
+
+    // Tạo nhiều nhóm booking cùng lúc (nhập lịch hàng loạt): vẫn đúng 3 câu lệnh cho cả lô.
+    // Trả về appointment đã tạo theo bookingCode
+    Map<String, List<InsertedAppointment>> insertBookingGroups(List<NewBookingGroup> groups);
+
+    // Phân công bác sĩ cho nhiều nhóm trong 1 câu lệnh; chỉ ghi nhóm còn chưa có bác sĩ và đang PENDING / CONFIRMED.
+    // Trả về các bookingCode thực sự được cập nhật
+    List<String> assignDoctorsToGroups(List<GroupAssignment> assignments, LocalDateTime now);
+
+    record NewBookingGroup(Long userId, List<Long> petIds, List<Long> serviceIds,
+                           LocalDate date, LocalTime time, String bookingCode, String notes) {
+    }
+
+    record GroupAssignment(String bookingCode, Long doctorId) {
+    }
+
+    record InsertedAppointment(Long id, Long petId, LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.backend_pet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Spring Data tự ghép class này vào AppointmentRepository (hậu tố "Impl").
+// JdbcTemplate dùng chung connection với transaction JPA đang chạy.
+@RequiredArgsConstructor
+public class AppointmentRepositoryImpl implements AppointmentRepositoryCustom {
+
+    // 1 dòng / pet, id sinh bởi IDENTITY được trả về ngay qua RETURNING
+    private static final String INSERT_APPOINTMENTS_SQL =
+            "INSERT INTO appointments (user_id, pet_id, appointment_date, appointment_time, status, booking_code, notes, " +
+            "created_at, updated_at) " +
+            "SELECT ?, p.pet_id, ?, ?, 'PENDING', ?, ?, now(), now() " +
+            "FROM unnest(?::bigint[]) WITH ORDINALITY AS p(pet_id, ord) ORDER BY p.ord " +
+            "RETURNING id, pet_id, created_at";
+
+    // Mọi appointment của nhóm × mọi dịch vụ
+    private static final String INSERT_SERVICES_SQL =
+            "INSERT INTO appointment_services (appointment_id, service_id) " +
+            "SELECT a.id, s.service_id FROM unnest(?::bigint[]) AS a(id) CROSS JOIN unnest(?::bigint[]) AS s(service_id)";
+
+    // 1 hồ sơ bệnh án rỗng / appointment
+    private static final String INSERT_MEDICAL_RECORDS_SQL =
+            "INSERT INTO medical_records (appointment_id, diagnosis, treatment, prescription, notes, created_at, updated_at) " +
+            "SELECT a.id, '', '', '', '', now(), now() FROM unnest(?::bigint[]) AS a(id)";
+
+    // Nhiều nhóm: các cột ghép theo vị trí trong các mảng song song (ngày / giờ truyền dạng chuỗi rồi ép kiểu)
+    private static final String INSERT_APPOINTMENT_BATCH_SQL =
+            "INSERT INTO appointments (user_id, pet_id, appointment_date, appointment_time, status, booking_code, notes, " +
+            "created_at, updated_at) " +
+            "SELECT r.user_id, r.pet_id, r.appointment_date::date, r.appointment_time::time, 'PENDING', r.booking_code, r.notes, " +
+            "now(), now() " +
+            "FROM unnest(?::bigint[], ?::bigint[], ?::varchar[], ?::varchar[], ?::varchar[], ?::text[]) WITH ORDINALITY " +
+            "AS r(user_id, pet_id, appointment_date, appointment_time, booking_code, notes, ord) ORDER BY r.ord " +
+            "RETURNING id, booking_code, pet_id, created_at";
+
+    // Cặp (appointment, dịch vụ) ghép theo vị trí
+    private static final String INSERT_SERVICE_PAIRS_SQL =
+            "INSERT INTO appointment_services (appointment_id, service_id) " +
+            "SELECT x.appointment_id, x.service_id FROM unnest(?::bigint[], ?::bigint[]) AS x(appointment_id, service_id)";
+
+    // Ghép (bookingCode, doctorId) theo vị trí trong 2 mảng; điều kiện doctor_id IS NULL tránh ghi đè phân công vừa làm tay
+    private static final String ASSIGN_DOCTORS_SQL =
+            "UPDATE appointments a SET doctor_id = x.doctor_id, updated_at = ? " +
+            "FROM unnest(?::varchar[], ?::bigint[]) AS x(booking_code, doctor_id) " +
+            "WHERE a.booking_code = x.booking_code AND a.doctor_id IS NULL AND a.status IN ('PENDING', 'CONFIRMED') " +
+            "RETURNING a.booking_code";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<InsertedAppointment> insertBookingGroup(NewBookingGroup group) {
+        List<InsertedAppointment> inserted = jdbcTemplate.query(INSERT_APPOINTMENTS_SQL, ps -> {
+            ps.setLong(1, group.userId());
+            ps.setDate(2, Date.valueOf(group.date()));
+            ps.setTime(3, Time.valueOf(group.time()));
+            ps.setString(4, group.bookingCode());
+            ps.setString(5, group.notes());
+            ps.setArray(6, bigintArray(ps, group.petIds()));
+        }, (rs, rowNum) -> new InsertedAppointment(
+                rs.getLong("id"),
+                rs.getLong("pet_id"),
+                rs.getTimestamp("created_at").toLocalDateTime()));
+
+        List<Long> appointmentIds = inserted.stream().map(InsertedAppointment::id).toList();
+        if (!group.serviceIds().isEmpty()) {
+            jdbcTemplate.update(INSERT_SERVICES_SQL, ps -> {
+                ps.setArray(1, bigintArray(ps, appointmentIds));
+                ps.setArray(2, bigintArray(ps, group.serviceIds()));
+            });
+        }
+        jdbcTemplate.update(INSERT_MEDICAL_RECORDS_SQL, ps -> ps.setArray(1, bigintArray(ps, appointmentIds)));
+        return inserted;
+    }
+
+    @Override
+    public Map<String, List<InsertedAppointment>> insertBookingGroups(List<NewBookingGroup> groups) {
+        if (groups.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> userIds = new ArrayList<>();
+        List<Long> petIds = new ArrayList<>();
+        List<String> dates = new ArrayList<>();
+        List<String> times = new ArrayList<>();
+        List<String> codes = new ArrayList<>();
+        List<String> notes = new ArrayList<>();
+        for (NewBookingGroup group : groups) {
+            for (Long petId : group.petIds()) {
+                userIds.add(group.userId());
+                petIds.add(petId);
+                dates.add(group.date().toString());
+                times.add(group.time().toString());
+                codes.add(group.bookingCode());
+                notes.add(group.notes());
+            }
+        }
+
+        Map<String, List<InsertedAppointment>> inserted = new HashMap<>();
+        jdbcTemplate.query(INSERT_APPOINTMENT_BATCH_SQL, ps -> {
+            ps.setArray(1, bigintArray(ps, userIds));
+            ps.setArray(2, bigintArray(ps, petIds));
+            ps.setArray(3, ps.getConnection().createArrayOf("varchar", dates.toArray()));
+            ps.setArray(4, ps.getConnection().createArrayOf("varchar", times.toArray()));
+            ps.setArray(5, ps.getConnection().createArrayOf("varchar", codes.toArray()));
+            ps.setArray(6, ps.getConnection().createArrayOf("text", notes.toArray()));
+        }, rs -> {
+            inserted.computeIfAbsent(rs.getString("booking_code"), c -> new ArrayList<>())
+                    .add(new InsertedAppointment(
+                            rs.getLong("id"),
+                            rs.getLong("pet_id"),
+                            rs.getTimestamp("created_at").toLocalDateTime()));
+        });
+
+        List<Long> appointmentIds = new ArrayList<>();
+        List<Long> pairAppointmentIds = new ArrayList<>();
+        List<Long> pairServiceIds = new ArrayList<>();
+        for (NewBookingGroup group : groups) {
+            for (InsertedAppointment appointment : inserted.getOrDefault(group.bookingCode(), List.of())) {
+                appointmentIds.add(appointment.id());
+                for (Long serviceId : group.serviceIds()) {
+                    pairAppointmentIds.add(appointment.id());
+                    pairServiceIds.add(serviceId);
+                }
+            }
+        }
+        if (!pairServiceIds.isEmpty()) {
+            jdbcTemplate.update(INSERT_SERVICE_PAIRS_SQL, ps -> {
+                ps.setArray(1, bigintArray(ps, pairAppointmentIds));
+                ps.setArray(2, bigintArray(ps, pairServiceIds));
+            });
+        }
+        jdbcTemplate.update(INSERT_MEDICAL_RECORDS_SQL, ps -> ps.setArray(1, bigintArray(ps, appointmentIds)));
+        return inserted;
+    }
+
+    @Override
+    public List<String> assignDoctorsToGroups(List<GroupAssignment> assignments, LocalDateTime now) {
+        if (assignments.isEmpty()) {
+            return List.of();
+        }
+        List<String> updated = jdbcTemplate.query(ASSIGN_DOCTORS_SQL, ps -> {
+            ps.setTimestamp(1, Timestamp.valueOf(now));
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar",
+                    assignments.stream().map(GroupAssignment::bookingCode).toArray()));
+            ps.setArray(3, bigintArray(ps, assignments.stream().map(GroupAssignment::doctorId).toList()));
+        }, (rs, rowNum) -> rs.getString("booking_code"));
+        return updated.stream().distinct().toList();
+    }
+
+    private static Array bigintArray(PreparedStatement ps, List<Long> ids) throws SQLException {
+        return ps.getConnection().createArrayOf("bigint", ids.toArray());
+    }
+}
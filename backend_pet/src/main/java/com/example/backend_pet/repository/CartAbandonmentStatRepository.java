@@ -0,0 +1,14 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.CartAbandonmentStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface CartAbandonmentStatRepository extends JpaRepository<CartAbandonmentStat, Long> {
+
+    List<CartAbandonmentStat> findByStatDateBetweenOrderByStatDateDescTotalValueDesc(LocalDate from, LocalDate to);
+}
@@ -4,16 +4,103 @@ import com.example.backend_pet.entity.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+public interface CartItemRepository extends JpaRepository<CartItem, Long>, CartItemRepositoryCustom {
 
     Optional<CartItem> findByCartIdAndProductId(Long cartId, Long productId);
 
+    boolean existsByCart_User_IdAndProduct_Id(Long userId, Long productId);
+
     @Modifying
     @Query("DELETE FROM CartItem ci WHERE ci.cart.id = :cartId AND ci.product.id = :productId")
     void deleteByCartIdAndProductId(Long cartId, Long productId);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.id = :cartId AND ci.product.id IN :productIds")
+    int deleteByCartIdAndProductIdIn(@Param("cartId") Long cartId, @Param("productIds") Collection<Long> productIds);
+
+    // Tồn kho + số lượng đang có trong giỏ của nhiều sản phẩm — 1 query cho cả batch
+    @Query("SELECT p.id AS productId, p.name AS name, p.stock AS stock, ci.quantity AS quantity " +
+           "FROM Product p LEFT JOIN CartItem ci ON ci.product = p AND ci.cart.id = :cartId " +
+           "WHERE p.id IN :productIds")
+    List<CartLineStockView> findStockWithCartQuantity(@Param("cartId") Long cartId,
+                                                      @Param("productIds") Collection<Long> productIds);
+
+    // Số lượng từng sản phẩm trong giỏ của user, theo thứ tự thêm vào giỏ
+    @Query("SELECT ci.product.id AS productId, ci.quantity AS quantity " +
+           "FROM CartItem ci WHERE ci.cart.user.id = :userId ORDER BY ci.id")
+    List<CartQuantityView> findQuantitiesByUserId(@Param("userId") Long userId);
+
+    interface CartQuantityView {
+        Long getProductId();
+        Integer getQuantity();
+    }
+
+    interface CartLineStockView {
+        Long getProductId();
+        String getName();
+        Integer getStock();
+        Integer getQuantity(); // null nếu sản phẩm chưa có trong giỏ
+    }
+
+    // Các câu lệnh ghi giỏ hàng dưới đây đều là 1 statement duy nhất (PostgreSQL):
+    // - CTE "c" tạo cart nếu chưa có (hoặc chạm updated_at của cart) và trả về cart id
+    // - điều kiện tồn kho nằm ngay trong câu lệnh → trả về 0 dòng nếu thiếu hàng / không có sản phẩm
+    // Nhờ ON CONFLICT (cart_id, product_id) nên 2 request thêm cùng 1 sản phẩm chạy song song
+    // không còn vi phạm unique constraint, số lượng được cộng dồn nguyên tử.
+
+    // Thêm sản phẩm: insert mới hoặc cộng dồn số lượng nếu đã có trong giỏ
+    @Modifying
+    @Query(value = "WITH c AS (" +
+                   "  INSERT INTO carts (user_id, created_at, updated_at) VALUES (:userId, now(), now()) " +
+                   "  ON CONFLICT (user_id) DO UPDATE SET updated_at = now() " +
+                   "  RETURNING id) " +
+                   "INSERT INTO cart_items (cart_id, product_id, quantity, created_at, updated_at) " +
+                   "SELECT c.id, p.id, :quantity, now(), now() " +
+                   "FROM c JOIN products p ON p.id = :productId AND p.stock >= :quantity " +
+                   "ON CONFLICT (cart_id, product_id) DO UPDATE " +
+                   "SET quantity = cart_items.quantity + EXCLUDED.quantity, updated_at = now() " +
+                   "WHERE (SELECT stock FROM products WHERE id = EXCLUDED.product_id) " +
+                   "      >= cart_items.quantity + EXCLUDED.quantity",
+           nativeQuery = true)
+    int upsertAddQuantity(@Param("userId") Long userId,
+                          @Param("productId") Long productId,
+                          @Param("quantity") int quantity);
+
+    // Đặt số lượng cho sản phẩm đã có trong giỏ
+    @Modifying
+    @Query(value = "WITH c AS (" +
+                   "  UPDATE carts SET updated_at = now() WHERE user_id = :userId RETURNING id) " +
+                   "UPDATE cart_items SET quantity = :quantity, updated_at = now() " +
+                   "FROM c, products p " +
+                   "WHERE cart_items.cart_id = c.id AND cart_items.product_id = :productId " +
+                   "AND p.id = cart_items.product_id AND p.stock >= :quantity",
+           nativeQuery = true)
+    int updateQuantity(@Param("userId") Long userId,
+                       @Param("productId") Long productId,
+                       @Param("quantity") int quantity);
+
+    // Xóa 1 sản phẩm khỏi giỏ
+    @Modifying
+    @Query(value = "WITH c AS (" +
+                   "  UPDATE carts SET updated_at = now() WHERE user_id = :userId RETURNING id) " +
+                   "DELETE FROM cart_items USING c " +
+                   "WHERE cart_items.cart_id = c.id AND cart_items.product_id = :productId",
+           nativeQuery = true)
+    int deleteByUserIdAndProductId(@Param("userId") Long userId, @Param("productId") Long productId);
+
+    // Xóa toàn bộ item trong giỏ
+    @Modifying
+    @Query(value = "WITH c AS (" +
+                   "  UPDATE carts SET updated_at = now() WHERE user_id = :userId RETURNING id) " +
+                   "DELETE FROM cart_items USING c WHERE cart_items.cart_id = c.id",
+           nativeQuery = true)
+    int deleteAllByUserId(@Param("userId") Long userId);
 }
@@ -0,0 +1,20 @@
+package com.example.backend_pet.repository;
+
+import java.util.List;
+import java.util.Map;
+
+// Các thao tác ghi hàng loạt trên cart_items chạy bằng JDBC batch (xem CartItemRepositoryImpl)
+public interface CartItemRepositoryCustom {
+
+    // Đặt số lượng cho nhiều sản phẩm trong 1 giỏ: insert hoặc ghi đè số lượng, gửi 1 batch duy nhất
+    void batchSetQuantities(Long cartId, Map<Long, Integer> quantities);
+
+    // Ghi các thay đổi của nhiều giỏ hàng cùng lúc (dùng cho chế độ write-behind):
+    // tối đa 4 batch — tạo cart, xóa sạch giỏ bị reset, xóa dòng có số lượng 0, upsert các dòng còn lại
+    void applyDeltas(List<CartDelta> deltas);
+
+    // Thay đổi của 1 giỏ kể từ lần ghi trước.
+    // reset = true: xóa toàn bộ item cũ trước khi áp dụng changes; changes: productId → số lượng (0 = xóa)
+    record CartDelta(Long userId, boolean reset, Map<Long, Integer> changes) {
+    }
+}
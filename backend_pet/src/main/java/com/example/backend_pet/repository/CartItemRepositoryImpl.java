@@ -0,0 +1,94 @@
+package com.example.backend_pet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Spring Data tự ghép class này vào CartItemRepository (hậu tố "Impl").
+// JdbcTemplate dùng chung connection với transaction JPA đang chạy.
+@RequiredArgsConstructor
+public class CartItemRepositoryImpl implements CartItemRepositoryCustom {
+
+    private static final String UPSERT_QUANTITY_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity, created_at, updated_at) " +
+            "VALUES (?, ?, ?, now(), now()) " +
+            "ON CONFLICT (cart_id, product_id) DO UPDATE " +
+            "SET quantity = EXCLUDED.quantity, updated_at = now()";
+
+    private static final String UPSERT_CART_SQL =
+            "INSERT INTO carts (user_id, created_at, updated_at) VALUES (?, now(), now()) " +
+            "ON CONFLICT (user_id) DO UPDATE SET updated_at = now()";
+
+    private static final String DELETE_ALL_ITEMS_SQL =
+            "DELETE FROM cart_items WHERE cart_id = (SELECT id FROM carts WHERE user_id = ?)";
+
+    private static final String DELETE_ITEM_SQL =
+            "DELETE FROM cart_items WHERE cart_id = (SELECT id FROM carts WHERE user_id = ?) AND product_id = ?";
+
+    private static final String UPSERT_ITEM_BY_USER_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity, created_at, updated_at) " +
+            "SELECT id, ?, ?, now(), now() FROM carts WHERE user_id = ? " +
+            "ON CONFLICT (cart_id, product_id) DO UPDATE " +
+            "SET quantity = EXCLUDED.quantity, updated_at = now()";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void batchSetQuantities(Long cartId, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(quantities.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_QUANTITY_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, cartId);
+            ps.setLong(2, row.getKey());
+            ps.setInt(3, row.getValue());
+        });
+    }
+
+    @Override
+    public void applyDeltas(List<CartDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Long> resetUsers = new ArrayList<>();
+        List<long[]> deletes = new ArrayList<>();   // [userId, productId]
+        List<long[]> upserts = new ArrayList<>();   // [userId, productId, quantity]
+        for (CartDelta delta : deltas) {
+            if (delta.reset()) {
+                resetUsers.add(delta.userId());
+            }
+            delta.changes().forEach((productId, quantity) -> {
+                if (quantity > 0) {
+                    upserts.add(new long[]{delta.userId(), productId, quantity});
+                } else if (!delta.reset()) {
+                    deletes.add(new long[]{delta.userId(), productId});
+                }
+            });
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_CART_SQL, deltas, deltas.size(),
+                (ps, delta) -> ps.setLong(1, delta.userId()));
+        if (!resetUsers.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_ALL_ITEMS_SQL, resetUsers, resetUsers.size(),
+                    (ps, userId) -> ps.setLong(1, userId));
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_ITEM_SQL, deletes, deletes.size(), (ps, row) -> {
+                ps.setLong(1, row[0]);
+                ps.setLong(2, row[1]);
+            });
+        }
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_ITEM_BY_USER_SQL, upserts, upserts.size(), (ps, row) -> {
+                ps.setLong(1, row[1]);
+                ps.setInt(2, (int) row[2]);
+                ps.setLong(3, row[0]);
+            });
+        }
+    }
+}
@@ -2,9 +2,14 @@ package com.example.backend_pet.repository;
 
 import com.example.backend_pet.entity.Cart;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,8 +17,66 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
 
     Optional<Cart> findByUserId(Long userId);
 
-    @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.items WHERE c.user.id = :userId")
+    // Fetch luôn product của từng item để map response trong đúng 1 query
+    @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.items i LEFT JOIN FETCH i.product WHERE c.user.id = :userId")
     Optional<Cart> findByUserIdWithItems(Long userId);
 
     boolean existsByUserId(Long userId);
+
+    // Tạo cart cho user nếu chưa có — an toàn khi nhiều request tạo cùng lúc
+    @Modifying
+    @Query(value = "INSERT INTO carts (user_id, created_at, updated_at) VALUES (:userId, now(), now()) " +
+                   "ON CONFLICT (user_id) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+
+    // Tạo cart nếu chưa có và trả về id; DO UPDATE giữ khóa dòng cart tới hết transaction
+    // nên các thao tác ghi khác lên cùng giỏ sẽ phải chờ
+    @Query(value = "INSERT INTO carts (user_id, created_at, updated_at) VALUES (:userId, now(), now()) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET updated_at = now() RETURNING id",
+           nativeQuery = true)
+    Long upsertAndGetId(@Param("userId") Long userId);
+
+    // ── Dọn giỏ hàng bị bỏ quên (CartSweeper) ──────────────────────────────
+
+    // Khóa 1 lô giỏ không hoạt động từ trước cutoff (dùng idx_carts_updated_at).
+    // SKIP LOCKED: giỏ đang được user sửa thì bỏ qua, không chờ
+    @Query(value = "SELECT id AS \"id\", user_id AS \"userId\" FROM carts WHERE updated_at < :cutoff " +
+                   "ORDER BY updated_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<AbandonedCartView> lockAbandoned(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    // Cộng dồn thống kê (số giỏ, số lượng, giá trị theo giá hiện tại) của các giỏ sắp xóa
+    // vào cart_abandonment_stats, gom theo ngày hoạt động cuối của giỏ + sản phẩm
+    @Modifying
+    @Query(value = "INSERT INTO cart_abandonment_stats " +
+                   "(stat_date, product_id, product_name, cart_count, total_quantity, total_value, created_at, updated_at) " +
+                   "SELECT CAST(c.updated_at AS date), p.id, p.name, COUNT(*), SUM(ci.quantity), " +
+                   "SUM(ci.quantity * p.price), now(), now() " +
+                   "FROM carts c " +
+                   "JOIN cart_items ci ON ci.cart_id = c.id " +
+                   "JOIN products p ON p.id = ci.product_id " +
+                   "WHERE c.id IN (:cartIds) " +
+                   "GROUP BY CAST(c.updated_at AS date), p.id, p.name " +
+                   "ON CONFLICT (stat_date, product_id) DO UPDATE SET " +
+                   "product_name = EXCLUDED.product_name, " +
+                   "cart_count = cart_abandonment_stats.cart_count + EXCLUDED.cart_count, " +
+                   "total_quantity = cart_abandonment_stats.total_quantity + EXCLUDED.total_quantity, " +
+                   "total_value = cart_abandonment_stats.total_value + EXCLUDED.total_value, " +
+                   "updated_at = now()",
+           nativeQuery = true)
+    int accumulateAbandonmentStats(@Param("cartIds") Collection<Long> cartIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM cart_items WHERE cart_id IN (:cartIds)", nativeQuery = true)
+    int deleteItemsByCartIds(@Param("cartIds") Collection<Long> cartIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM carts WHERE id IN (:cartIds)", nativeQuery = true)
+    int deleteByIds(@Param("cartIds") Collection<Long> cartIds);
+
+    interface AbandonedCartView {
+        Long getId();
+        Long getUserId();
+    }
 }
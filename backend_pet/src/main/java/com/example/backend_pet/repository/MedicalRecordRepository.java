@@ -1,16 +1,29 @@
 package com.example.backend_pet.repository;
 
 import com.example.backend_pet.entity.MedicalRecord;
+import com.example.backend_pet.entity.Pet;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface MedicalRecordRepository extends JpaRepository<MedicalRecord, Long> {
+public interface MedicalRecordRepository extends JpaRepository<MedicalRecord, Long>, MedicalRecordRepositoryCustom {
 
     Optional<MedicalRecord> findByAppointmentId(Long appointmentId);
+
+    // Khóa dòng bệnh án khi sửa để 2 lần lưu đồng thời không cấp trùng số phiên bản
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM MedicalRecord m WHERE m.appointment.id = :appointmentId")
+    Optional<MedicalRecord> lockByAppointmentId(@Param("appointmentId") Long appointmentId);
     /*
 SELECT m.* FROM medical_record m
 JOIN appointment a ON m.appointment_id = a.id
@@ -29,4 +42,162 @@ Vào MedicalRecord, đi sang appointment, lấy field appointmentDate
 dấu - là dấu đi sâu vào mối quan hệ
      */
     List<MedicalRecord> findByAppointment_PetIdOrderByAppointment_AppointmentDateDesc(Long petId);
+
+    // Bệnh án của cả nhóm booking kèm appointment + pet trong 1 query (không nạp entity, không lazy load)
+    @Query("SELECT m.id AS id, a.id AS appointmentId, a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, " +
+           "p.name AS petName, p.imageUrl AS petImageUrl, p.species AS petSpecies, " +
+           "m.diagnosis AS diagnosis, m.treatment AS treatment, m.prescription AS prescription, m.notes AS notes, " +
+           "m.followUpDate AS followUpDate, m.weight AS weight, m.temperature AS temperature " +
+           "FROM MedicalRecord m JOIN m.appointment a JOIN a.pet p " +
+           "WHERE a.bookingCode = :code ORDER BY a.id")
+    List<MedicalRecordView> findViewsByBookingCode(@Param("code") String bookingCode);
+
+    @Query("SELECT m.id AS id, a.id AS appointmentId, a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, " +
+           "p.name AS petName, p.imageUrl AS petImageUrl, p.species AS petSpecies, " +
+           "m.diagnosis AS diagnosis, m.treatment AS treatment, m.prescription AS prescription, m.notes AS notes, " +
+           "m.followUpDate AS followUpDate, m.weight AS weight, m.temperature AS temperature " +
+           "FROM MedicalRecord m JOIN m.appointment a JOIN a.pet p " +
+           "WHERE p.id = :petId ORDER BY a.appointmentDate DESC, m.id DESC")
+    List<MedicalRecordView> findViewsByPetId(@Param("petId") Long petId);
+
+    @Query("SELECT m.id AS id, a.id AS appointmentId, a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, " +
+           "p.name AS petName, p.imageUrl AS petImageUrl, p.species AS petSpecies, " +
+           "m.diagnosis AS diagnosis, m.treatment AS treatment, m.prescription AS prescription, m.notes AS notes, " +
+           "m.followUpDate AS followUpDate, m.weight AS weight, m.temperature AS temperature " +
+           "FROM MedicalRecord m JOIN m.appointment a JOIN a.pet p WHERE m.id = :id")
+    Optional<MedicalRecordView> findViewById(@Param("id") Long id);
+
+    // ── Timeline bệnh án của pet (1 lần khám = bệnh án đã có chẩn đoán hoặc lịch đã hoàn thành) ──
+
+    // Keyset theo (ngày khám, id) giảm dần; chỉ lấy đoạn đầu chẩn đoán và số ảnh, không nạp ảnh
+    @Query("SELECT m.id AS id, a.id AS appointmentId, a.bookingCode AS bookingCode, a.appointmentDate AS appointmentDate, " +
+           "d.fullName AS doctorName, SUBSTRING(m.diagnosis, 1, 160) AS diagnosisExcerpt, " +
+           "m.weight AS weight, m.temperature AS temperature, m.followUpDate AS followUpDate, " +
+           "SIZE(m.imageUrls) AS imageCount " +
+           "FROM MedicalRecord m JOIN m.appointment a LEFT JOIN a.doctor d " +
+           "WHERE a.pet.id = :petId " +
+           "AND (m.diagnosis <> '' OR a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED) " +
+           "AND (a.appointmentDate < :cursorDate OR (a.appointmentDate = :cursorDate AND m.id < :cursorId)) " +
+           "ORDER BY a.appointmentDate DESC, m.id DESC")
+    List<TimelineView> findTimelinePage(@Param("petId") Long petId,
+                                        @Param("cursorDate") LocalDate cursorDate,
+                                        @Param("cursorId") long cursorId,
+                                        Pageable pageable);
+
+    // Số lần khám và ngày khám gần nhất của pet
+    @Query("SELECT COUNT(m) AS visitCount, MAX(a.appointmentDate) AS lastVisitDate " +
+           "FROM MedicalRecord m JOIN m.appointment a " +
+           "WHERE a.pet.id = :petId " +
+           "AND (m.diagnosis <> '' OR a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED)")
+    VisitStatsView findVisitStats(@Param("petId") Long petId);
+
+    // Ngày tái khám sắp tới tính theo hôm nay — đọc mỗi lần xem, không lưu trong dòng tóm tắt (sẽ cũ theo ngày)
+    @Query("SELECT MIN(m.followUpDate) FROM MedicalRecord m JOIN m.appointment a " +
+           "WHERE a.pet.id = :petId AND m.followUpDate >= :today " +
+           "AND (m.diagnosis <> '' OR a.status = com.example.backend_pet.entity.Appointment.AppointmentStatus.COMPLETED)")
+    Optional<LocalDate> findNextFollowUpDate(@Param("petId") Long petId, @Param("today") LocalDate today);
+
+    // Lần đo cân nặng / nhiệt độ gần nhất
+    @Query("SELECT m.id AS id, a.appointmentDate AS appointmentDate, m.weight AS weight, m.temperature AS temperature " +
+           "FROM MedicalRecord m JOIN m.appointment a " +
+           "WHERE a.pet.id = :petId AND (m.weight IS NOT NULL OR m.temperature IS NOT NULL) " +
+           "ORDER BY a.appointmentDate DESC, m.id DESC")
+    List<VitalsView> findLatestVitals(@Param("petId") Long petId, Pageable pageable);
+
+    // Các chẩn đoán gần nhất
+    @Query("SELECT a.appointmentDate AS appointmentDate, SUBSTRING(m.diagnosis, 1, 160) AS diagnosisExcerpt " +
+           "FROM MedicalRecord m JOIN m.appointment a " +
+           "WHERE a.pet.id = :petId AND m.diagnosis <> '' " +
+           "ORDER BY a.appointmentDate DESC, m.id DESC")
+    List<RecentDiagnosisView> findRecentDiagnoses(@Param("petId") Long petId, Pageable pageable);
+
+    // Ảnh của nhiều bệnh án trong 1 query
+    @Query("SELECT m.id AS recordId, i AS imageUrl FROM MedicalRecord m JOIN m.imageUrls i WHERE m.id IN :ids ORDER BY m.id")
+    List<RecordImageView> findImagesByRecordIds(@Param("ids") Collection<Long> recordIds);
+
+    // ── Tìm kiếm toàn văn (MedicalRecordSearchService) — dùng GIN index idx_medical_records_search_vector ──
+
+    // query là tsquery đã dựng sẵn từ các từ [a-z0-9] đã bỏ dấu; xếp theo độ liên quan rồi id mới nhất
+    @Query(value = "SELECT m.id AS \"id\", a.id AS \"appointmentId\", a.booking_code AS \"bookingCode\", " +
+                   "to_char(a.appointment_date, 'YYYY-MM-DD') AS \"appointmentDate\", p.id AS \"petId\", " +
+                   "p.name AS \"petName\", p.species AS \"petSpecies\", LEFT(m.diagnosis, 160) AS \"diagnosisExcerpt\", " +
+                   "CAST(ts_rank(m.search_vector, q) AS double precision) AS \"rank\" " +
+                   "FROM medical_records m JOIN appointments a ON a.id = m.appointment_id JOIN pets p ON p.id = a.pet_id, " +
+                   "to_tsquery('simple', :query) q " +
+                   "WHERE m.search_vector @@ q " +
+                   "AND (:anySpecies = true OR p.species = :species) " +
+                   "AND a.appointment_date BETWEEN :from AND :to " +
+                   "ORDER BY \"rank\" DESC, m.id DESC LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<SearchHitView> searchRecords(@Param("query") String query,
+                                      @Param("anySpecies") boolean anySpecies,
+                                      @Param("species") String species,
+                                      @Param("from") LocalDate from,
+                                      @Param("to") LocalDate to,
+                                      @Param("limit") int limit,
+                                      @Param("offset") long offset);
+
+    interface SearchHitView {
+        Long getId();
+        Long getAppointmentId();
+        String getBookingCode();
+        String getAppointmentDate();
+        Long getPetId();
+        String getPetName();
+        String getPetSpecies();
+        String getDiagnosisExcerpt();
+        Double getRank();
+    }
+
+    interface MedicalRecordView {
+        Long getId();
+        Long getAppointmentId();
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        String getPetName();
+        String getPetImageUrl();
+        Pet.Species getPetSpecies();
+        String getDiagnosis();
+        String getTreatment();
+        String getPrescription();
+        String getNotes();
+        LocalDate getFollowUpDate();
+        Double getWeight();
+        Double getTemperature();
+    }
+
+    interface TimelineView {
+        Long getId();
+        Long getAppointmentId();
+        String getBookingCode();
+        LocalDate getAppointmentDate();
+        String getDoctorName();
+        String getDiagnosisExcerpt();
+        Double getWeight();
+        Double getTemperature();
+        LocalDate getFollowUpDate();
+        int getImageCount();
+    }
+
+    interface VisitStatsView {
+        long getVisitCount();
+        LocalDate getLastVisitDate();
+    }
+
+    interface VitalsView {
+        Long getId();
+        LocalDate getAppointmentDate();
+        Double getWeight();
+        Double getTemperature();
+    }
+
+    interface RecentDiagnosisView {
+        LocalDate getAppointmentDate();
+        String getDiagnosisExcerpt();
+    }
+
+    interface RecordImageView {
+        Long getRecordId();
+        String getImageUrl();
+    }
 }
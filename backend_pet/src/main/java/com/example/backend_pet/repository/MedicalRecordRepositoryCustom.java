@@ -0,0 +1,23 @@
+package com.example.backend_pet.repository;
+
+import java.util.List;
+
+// Chỉ mục tìm kiếm toàn văn trên medical_records.search_text chạy bằng JDBC (xem MedicalRecordRepositoryImpl)
+public interface MedicalRecordRepositoryCustom {
+
+    // Cột generated search_vector = to_tsvector('simple', search_text) và GIN index trên cột đó —
+    // Hibernate ddl-auto không tạo được cột generated / index GIN
+    void createSearchIndexIfMissing();
+
+    // Bệnh án chưa có search_text, theo id tăng dần sau afterId
+    List<SearchSource> findUnindexed(long afterId, int limit);
+
+    // Ghi search_text cho nhiều bệnh án bằng 1 lô câu lệnh
+    void updateSearchText(List<SearchTextUpdate> updates);
+
+    record SearchSource(Long id, String diagnosis, String treatment, String prescription, String notes) {
+    }
+
+    record SearchTextUpdate(Long id, String searchText) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.backend_pet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+// Spring Data tự ghép class này vào MedicalRecordRepository (hậu tố "Impl")
+@RequiredArgsConstructor
+public class MedicalRecordRepositoryImpl implements MedicalRecordRepositoryCustom {
+
+    // tsvector tính 1 lần khi ghi (cột generated), truy vấn xếp hạng không phải parse lại văn bản từng dòng
+    private static final String ADD_SEARCH_VECTOR_SQL =
+            "ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+            "GENERATED ALWAYS AS (to_tsvector('simple', coalesce(search_text, ''))) STORED";
+
+    private static final String CREATE_SEARCH_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS idx_medical_records_search_vector " +
+            "ON medical_records USING gin (search_vector)";
+
+    // Index biểu thức của bản trước, thay bằng index trên cột search_vector
+    private static final String DROP_EXPRESSION_INDEX_SQL =
+            "DROP INDEX IF EXISTS idx_medical_records_search";
+
+    private static final String FIND_UNINDEXED_SQL =
+            "SELECT id, diagnosis, treatment, prescription, notes FROM medical_records " +
+            "WHERE search_text IS NULL AND id > ? ORDER BY id LIMIT ?";
+
+    // Bệnh án vừa được sửa (saveRecord đã ghi search_text mới) trong lúc backfill thì không ghi đè
+    private static final String UPDATE_SEARCH_TEXT_SQL =
+            "UPDATE medical_records SET search_text = ? WHERE id = ? AND search_text IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void createSearchIndexIfMissing() {
+        jdbcTemplate.execute(ADD_SEARCH_VECTOR_SQL);
+        jdbcTemplate.execute(CREATE_SEARCH_INDEX_SQL);
+        jdbcTemplate.execute(DROP_EXPRESSION_INDEX_SQL);
+    }
+
+    @Override
+    public List<SearchSource> findUnindexed(long afterId, int limit) {
+        return jdbcTemplate.query(FIND_UNINDEXED_SQL, (rs, rowNum) -> new SearchSource(
+                rs.getLong("id"),
+                rs.getString("diagnosis"),
+                rs.getString("treatment"),
+                rs.getString("prescription"),
+                rs.getString("notes")), afterId, limit);
+    }
+
+    @Override
+    public void updateSearchText(List<SearchTextUpdate> updates) {
+        jdbcTemplate.batchUpdate(UPDATE_SEARCH_TEXT_SQL, updates, updates.size(), (ps, update) -> {
+            ps.setString(1, update.searchText());
+            ps.setLong(2, update.id());
+        });
+    }
+}
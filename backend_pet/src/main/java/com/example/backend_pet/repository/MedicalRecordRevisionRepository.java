@@ -0,0 +1,34 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.MedicalRecordRevision;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MedicalRecordRevisionRepository extends JpaRepository<MedicalRecordRevision, Long> {
+
+    // Danh sách phiên bản (không đọc cột data)
+    @Query("SELECT r.revision AS revision, r.snapshot AS snapshot, r.changedFields AS changedFields, r.createdAt AS createdAt " +
+           "FROM MedicalRecordRevision r WHERE r.medicalRecordId = :recordId ORDER BY r.revision DESC")
+    List<RevisionSummaryView> findSummaries(@Param("recordId") Long recordId);
+
+    // Snapshot gần nhất ≤ revision cùng các delta sau nó tới revision — đủ để dựng lại phiên bản đó trong 1 query
+    @Query("SELECT r FROM MedicalRecordRevision r " +
+           "WHERE r.medicalRecordId = :recordId AND r.revision <= :revision " +
+           "AND r.revision >= (SELECT MAX(s.revision) FROM MedicalRecordRevision s " +
+           "WHERE s.medicalRecordId = :recordId AND s.revision <= :revision AND s.snapshot = true) " +
+           "ORDER BY r.revision")
+    List<MedicalRecordRevision> findReplayChain(@Param("recordId") Long recordId, @Param("revision") int revision);
+
+    interface RevisionSummaryView {
+        int getRevision();
+        boolean getSnapshot();
+        String getChangedFields();
+        LocalDateTime getCreatedAt();
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.backend_pet.repository;
 
 import com.example.backend_pet.entity.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,4 +23,44 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     boolean existsByOrderNumber(String orderNumber);
 
     Optional<Order> findByOrderNumberAndPaymentStatus(String orderNumber, Order.PaymentStatus paymentStatus);
+
+    // Lịch sử đơn hàng phân trang theo con trỏ: lấy các đơn có id < cursor, mới nhất trước.
+    // Chạy trên index (user_id, id) nên trang đầu tiên luôn tốn như nhau dù user có bao nhiêu đơn.
+    @Query("SELECT o.id AS id, o.orderNumber AS orderNumber, o.createdAt AS createdAt, " +
+           "o.totalAmount AS totalAmount, o.status AS status, o.paymentStatus AS paymentStatus " +
+           "FROM Order o WHERE o.user.id = :userId AND o.id < :cursor ORDER BY o.id DESC")
+    List<OrderSummaryView> findSummaryPage(@Param("userId") Long userId,
+                                           @Param("cursor") Long cursor,
+                                           Pageable pageable);
+
+    // Số item và id item đầu tiên của từng đơn trong trang — 1 query cho cả trang
+    @Query("SELECT i.order.id AS orderId, COUNT(i) AS itemCount, MIN(i.id) AS firstItemId " +
+           "FROM OrderItem i WHERE i.order.id IN :orderIds GROUP BY i.order.id")
+    List<OrderItemStatsView> findItemStats(@Param("orderIds") Collection<Long> orderIds);
+
+    // Ảnh + tên sản phẩm của các item đầu tiên (thumbnail)
+    @Query("SELECT i.id AS itemId, p.name AS productName, p.imageUrl AS imageUrl " +
+           "FROM OrderItem i JOIN i.product p WHERE i.id IN :itemIds")
+    List<OrderThumbnailView> findThumbnails(@Param("itemIds") Collection<Long> itemIds);
+
+    interface OrderSummaryView {
+        Long getId();
+        String getOrderNumber();
+        LocalDateTime getCreatedAt();
+        BigDecimal getTotalAmount();
+        Order.OrderStatus getStatus();
+        Order.PaymentStatus getPaymentStatus();
+    }
+
+    interface OrderItemStatsView {
+        Long getOrderId();
+        Long getItemCount();
+        Long getFirstItemId();
+    }
+
+    interface OrderThumbnailView {
+        Long getItemId();
+        String getProductName();
+        String getImageUrl();
+    }
 }
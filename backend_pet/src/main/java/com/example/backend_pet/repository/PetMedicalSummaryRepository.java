@@ -0,0 +1,36 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.PetMedicalSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface PetMedicalSummaryRepository extends JpaRepository<PetMedicalSummary, Long> {
+
+    Optional<PetMedicalSummary> findByPetId(Long petId);
+
+    // Ghi dòng tóm tắt của pet; 2 request cùng dựng lần đầu không vi phạm unique pet_id
+    @Modifying
+    @Query(value = "INSERT INTO pet_medical_summaries (pet_id, visit_count, last_visit_date, latest_weight, " +
+                   "latest_temperature, vitals_date, recent_diagnoses, created_at, updated_at) " +
+                   "VALUES (:petId, :visitCount, CAST(:lastVisitDate AS date), CAST(:latestWeight AS double precision), " +
+                   "CAST(:latestTemperature AS double precision), CAST(:vitalsDate AS date), :recentDiagnoses, now(), now()) " +
+                   "ON CONFLICT (pet_id) DO UPDATE SET visit_count = EXCLUDED.visit_count, " +
+                   "last_visit_date = EXCLUDED.last_visit_date, latest_weight = EXCLUDED.latest_weight, " +
+                   "latest_temperature = EXCLUDED.latest_temperature, vitals_date = EXCLUDED.vitals_date, " +
+                   "recent_diagnoses = EXCLUDED.recent_diagnoses, updated_at = now()",
+           nativeQuery = true)
+    int upsert(@Param("petId") Long petId,
+               @Param("visitCount") int visitCount,
+               @Param("lastVisitDate") LocalDate lastVisitDate,
+               @Param("latestWeight") Double latestWeight,
+               @Param("latestTemperature") Double latestTemperature,
+               @Param("vitalsDate") LocalDate vitalsDate,
+               @Param("recentDiagnoses") String recentDiagnoses);
+}
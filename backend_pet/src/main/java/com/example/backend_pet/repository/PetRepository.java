@@ -4,10 +4,13 @@ import com.example.backend_pet.entity.Pet;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PetRepository extends JpaRepository<Pet, Long> {
 
     List<Pet> findByOwnerId(Long ownerId);
+
+    List<Pet> findByOwnerIdIn(Collection<Long> ownerIds);
 }
@@ -0,0 +1,18 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.Promotion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PromotionRepository extends JpaRepository<Promotion, Long> {
+
+    List<Promotion> findByActiveTrue();
+
+    List<Promotion> findAllByOrderByIdDesc();
+
+    Optional<Promotion> findByVoucherCode(String voucherCode);
+}
@@ -0,0 +1,45 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.SlotCapacity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@Repository
+public interface SlotCapacityRepository extends JpaRepository<SlotCapacity, Long> {
+
+    // Tạo dòng sức chứa cho slot nếu chưa có, booked khởi tạo từ số booking đang active trong appointments
+    @Modifying
+    @Query(value = "INSERT INTO slot_capacities (slot_date, slot_time, capacity, booked, created_at, updated_at) " +
+                   "SELECT :date, :time, :capacity, COUNT(DISTINCT a.booking_code), now(), now() " +
+                   "FROM appointments a " +
+                   "WHERE a.appointment_date = :date AND a.appointment_time = :time AND a.status <> 'CANCELLED' " +
+                   "ON CONFLICT (slot_date, slot_time) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("date") LocalDate date, @Param("time") LocalTime time, @Param("capacity") int capacity);
+
+    // Giữ count chỗ nếu còn đủ; trả về 0 khi slot đã đầy. Khóa dòng tới hết transaction
+    // nên chỉ các booking cùng slot phải chờ nhau
+    @Modifying
+    @Query(value = "UPDATE slot_capacities SET booked = booked + :count, updated_at = now() " +
+                   "WHERE slot_date = :date AND slot_time = :time AND booked + :count <= capacity",
+           nativeQuery = true)
+    int tryReserve(@Param("date") LocalDate date, @Param("time") LocalTime time, @Param("count") int count);
+
+    // Số chỗ còn lại, khóa dòng tới hết transaction (dùng khi giữ nhiều chỗ một lúc)
+    @Query(value = "SELECT GREATEST(capacity - booked, 0) FROM slot_capacities " +
+                   "WHERE slot_date = :date AND slot_time = :time FOR UPDATE",
+           nativeQuery = true)
+    int lockRemaining(@Param("date") LocalDate date, @Param("time") LocalTime time);
+
+    @Modifying
+    @Query(value = "UPDATE slot_capacities SET booked = GREATEST(booked - :count, 0), updated_at = now() " +
+                   "WHERE slot_date = :date AND slot_time = :time",
+           nativeQuery = true)
+    int release(@Param("date") LocalDate date, @Param("time") LocalTime time, @Param("count") int count);
+}
@@ -4,6 +4,7 @@ import com.example.backend_pet.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +16,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmail(String email);
 
     List<User> findByRole(User.Role role);
+
+    boolean existsByIdAndRole(Long id, User.Role role);
+
+    Optional<User> findByCalendarToken(String calendarToken);
+
+    List<User> findByEmailIn(Collection<String> emails);
 }
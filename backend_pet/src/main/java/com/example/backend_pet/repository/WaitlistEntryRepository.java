@@ -0,0 +1,85 @@
+package com.example.backend_pet.repository;
+
+import com.example.backend_pet.entity.WaitlistEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WaitlistEntryRepository extends JpaRepository<WaitlistEntry, Long> {
+
+    List<WaitlistEntry> findByUserIdAndStatusInOrderByIdDesc(Long userId, Collection<WaitlistEntry.WaitlistStatus> statuses);
+
+    boolean existsByUserIdAndSlotDateAndSlotTimeAndStatusIn(Long userId, LocalDate slotDate, LocalTime slotTime,
+                                                            Collection<WaitlistEntry.WaitlistStatus> statuses);
+
+    // Vị trí trong hàng đợi = số người WAITING xếp trước + 1
+    long countBySlotDateAndSlotTimeAndStatusAndIdLessThan(LocalDate slotDate, LocalTime slotTime,
+                                                          WaitlistEntry.WaitlistStatus status, Long id);
+
+    // Người kế tiếp trong hàng đợi của slot (đầu hàng theo idx_waitlist_slot_status), bỏ qua user đã có lịch
+    // ở slot đó. SKIP LOCKED: 2 lượt nhả chỗ cùng slot lấy 2 người khác nhau, không chờ nhau
+    @Query(value = "SELECT w.id FROM waitlist_entries w " +
+                   "WHERE w.slot_date = :date AND w.slot_time = :time AND w.status = 'WAITING' " +
+                   "AND NOT EXISTS (SELECT 1 FROM appointments a WHERE a.user_id = w.user_id " +
+                   "AND a.appointment_date = w.slot_date AND a.appointment_time = w.slot_time " +
+                   "AND a.status <> 'CANCELLED') " +
+                   "ORDER BY w.id LIMIT 1 FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    Optional<Long> lockNextWaiting(@Param("date") LocalDate date, @Param("time") LocalTime time);
+
+    // Slot từ hôm nay còn người WAITING mà vẫn còn chỗ trống (theo slot_capacities, chưa có dòng thì đếm từ appointments).
+    // Trả về: [slotDate, slotTime], sớm nhất trước
+    @Query("SELECT DISTINCT w.slotDate, w.slotTime FROM WaitlistEntry w " +
+           "LEFT JOIN SlotCapacity c ON c.slotDate = w.slotDate AND c.slotTime = w.slotTime " +
+           "WHERE w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.WAITING AND w.slotDate >= :today " +
+           "AND COALESCE(c.capacity - c.booked, :capacity - (SELECT COUNT(DISTINCT a.bookingCode) FROM Appointment a " +
+           "WHERE a.appointmentDate = w.slotDate AND a.appointmentTime = w.slotTime " +
+           "AND a.status <> com.example.backend_pet.entity.Appointment.AppointmentStatus.CANCELLED)) > 0 " +
+           "ORDER BY w.slotDate, w.slotTime")
+    List<Object[]> findWaitingSlotsWithFreeSeats(@Param("today") LocalDate today, @Param("capacity") long capacity,
+                                                 Pageable pageable);
+
+    // Các lượt giữ chỗ đã quá hạn (dùng idx_waitlist_status_hold)
+    @Query(value = "SELECT id FROM waitlist_entries WHERE status = 'OFFERED' AND hold_until < :now " +
+                   "ORDER BY hold_until LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Long> lockExpiredOffers(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE WaitlistEntry w SET w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.OFFERED, " +
+           "w.holdUntil = :holdUntil, w.updatedAt = :now WHERE w.id = :id")
+    int markOffered(@Param("id") Long id, @Param("holdUntil") LocalDateTime holdUntil, @Param("now") LocalDateTime now);
+
+    // Đổi trạng thái chỉ khi lượt chờ vẫn ở trạng thái from: 0 dòng = request / job khác đã đổi trước
+    @Modifying
+    @Query("UPDATE WaitlistEntry w SET w.status = :to, w.updatedAt = :now WHERE w.id = :id AND w.status = :from")
+    int transition(@Param("id") Long id, @Param("from") WaitlistEntry.WaitlistStatus from,
+                   @Param("to") WaitlistEntry.WaitlistStatus to, @Param("now") LocalDateTime now);
+
+    // User dùng chỗ được giữ để đặt lịch: chỉ thành công nếu còn hạn và đúng slot
+    @Modifying
+    @Query("UPDATE WaitlistEntry w SET w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.BOOKED, " +
+           "w.updatedAt = :now " +
+           "WHERE w.id = :id AND w.user.id = :userId AND w.slotDate = :date AND w.slotTime = :time " +
+           "AND w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.OFFERED AND w.holdUntil > :now")
+    int claimOffer(@Param("id") Long id, @Param("userId") Long userId,
+                   @Param("date") LocalDate date, @Param("time") LocalTime time, @Param("now") LocalDateTime now);
+
+    // Slot đã qua: những người còn chờ không thể được nhận chỗ nữa
+    @Modifying
+    @Query("UPDATE WaitlistEntry w SET w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.EXPIRED, " +
+           "w.updatedAt = :now " +
+           "WHERE w.status = com.example.backend_pet.entity.WaitlistEntry.WaitlistStatus.WAITING AND w.slotDate < :today")
+    int expirePastWaiting(@Param("today") LocalDate today, @Param("now") LocalDateTime now);
+}
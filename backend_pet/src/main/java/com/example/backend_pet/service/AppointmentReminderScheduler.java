@@ -0,0 +1,356 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.AppointmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Nhắc lịch khám trước giờ hẹn (mặc định 24h và 2h), 1 lần nhắc / nhóm booking / mốc.
+ *
+ * Chỉ các lần nhắc đến hạn trong reminder.window-hours tới được giữ trong RAM, trên 1 timing wheel 2 tầng:
+ * 60 ô × 1 phút cho giờ hiện tại và (window + 2) ô × 1 giờ cho phần còn lại. Đầu mỗi giờ, ô giờ tương ứng
+ * được rải xuống các ô phút. Mỗi phút chỉ xử lý 1 ô, không đọc DB.
+ *
+ * DB chỉ được đọc khi khởi động (nạp cả cửa sổ) và mỗi giờ 1 lần (nạp thêm phần cửa sổ vừa mở ra).
+ * AppointmentService báo tạo / hủy / đổi trạng thái sau khi commit để thêm hoặc bỏ lần nhắc.
+ * Lần đọc DB chạy ngoài lock nên có thể trả về nhóm vừa bị đổi: nhóm nào có thay đổi commit sau lúc bắt đầu đọc
+ * thì kết quả đọc của nhóm đó bị bỏ, giữ trạng thái mà callback của thay đổi đã áp dụng.
+ * Lần nhắc đến hạn được gửi theo lô qua ReminderNotifier.
+ *
+ * Lần nhắc rơi vào lúc ứng dụng đang tắt sẽ bị bỏ qua; chạy nhiều instance sẽ nhắc trùng.
+ */
+@Slf4j
+@Component
+public class AppointmentReminderScheduler {
+
+    private final AppointmentRepository appointmentRepository;
+    private final ReminderNotifier notifier;
+    private final boolean enabled;
+    private final int windowHours;
+    private final int batchSize;
+    private final Map<ReminderNotifier.Kind, Integer> offsets;
+
+    private final TimingWheel wheel;
+    // Các lần nhắc đang nằm trên wheel theo bookingCode, để bỏ khi hủy / đổi lịch
+    private final Map<String, List<Entry>> byBookingCode = new HashMap<>();
+    // Cửa sổ đã nạp từ DB: mọi lịch hẹn trước thời điểm này (phút) đã có trên wheel
+    private long loadedUntil;
+    // Số thay đổi nhóm đã commit; bookingCode → số thứ tự lần đổi gần nhất, chỉ giữ khi có lần đọc DB đang chạy
+    private long mutations;
+    private final Map<String, Long> changedAt = new HashMap<>();
+    private int readsInFlight;
+
+    public AppointmentReminderScheduler(AppointmentRepository appointmentRepository,
+                                        ReminderNotifier notifier,
+                                        @Value("${reminder.enabled:true}") boolean enabled,
+                                        @Value("${reminder.window-hours:48}") int windowHours,
+                                        @Value("${reminder.batch-size:100}") int batchSize,
+                                        @Value("${reminder.day-before-minutes:1440}") int dayBeforeMinutes,
+                                        @Value("${reminder.hours-before-minutes:120}") int hoursBeforeMinutes) {
+        this.appointmentRepository = appointmentRepository;
+        this.notifier = notifier;
+        this.enabled = enabled;
+        this.windowHours = windowHours;
+        this.batchSize = batchSize;
+        this.offsets = Map.of(
+                ReminderNotifier.Kind.DAY_BEFORE, dayBeforeMinutes,
+                ReminderNotifier.Kind.HOURS_BEFORE, hoursBeforeMinutes);
+        this.wheel = new TimingWheel(windowHours + 2, epochMinute(LocalDateTime.now()));
+    }
+
+    // ── Cập nhật từ AppointmentService ───────────────────────────────────────
+
+    // Nhóm mới tạo: thêm các lần nhắc sau khi commit (nếu đến hạn trong cửa sổ đang giữ)
+    public void scheduleAfterCommit(String bookingCode, Long ownerId, String ownerEmail, String ownerName,
+                                    LocalDate date, LocalTime time, int petCount) {
+        Target target = new Target(bookingCode, ownerId, ownerEmail, ownerName, date, time, petCount);
+        afterCommit(() -> {
+            synchronized (wheel) {
+                markChanged(bookingCode);
+                addTarget(target);
+            }
+        });
+    }
+
+    // Nhóm bị hủy / hoàn thành: bỏ các lần nhắc chưa gửi
+    public void cancelAfterCommit(String bookingCode) {
+        afterCommit(() -> {
+            synchronized (wheel) {
+                markChanged(bookingCode);
+                removeTarget(bookingCode);
+            }
+        });
+    }
+
+    // Nhóm đổi giờ / được mở lại: bỏ lần nhắc cũ rồi đọc lại nhóm từ DB
+    public void rescheduleAfterCommit(String bookingCode) {
+        afterCommit(() -> {
+            long stamp = beginRead();
+            List<AppointmentRepository.ReminderTargetView> rows =
+                    readOrRelease(() -> appointmentRepository.findReminderTargetsByBookingCode(bookingCode));
+            synchronized (wheel) {
+                // Nhóm đã đổi tiếp trong lúc đọc → callback sau đã áp dụng trạng thái mới hơn
+                if (!changedSince(bookingCode, stamp)) {
+                    markChanged(bookingCode);
+                    removeTarget(bookingCode);
+                    rows.forEach(row -> addTarget(toTarget(row)));
+                }
+                endRead();
+            }
+        });
+    }
+
+    // Tắt nhắc lịch thì không giữ gì trên wheel
+    private void afterCommit(Runnable action) {
+        if (enabled) {
+            TransactionHooks.afterCommit(action);
+        }
+    }
+
+    // ── Chạy nền ─────────────────────────────────────────────────────────────
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        if (!enabled) {
+            return;
+        }
+        long now = epochMinute(LocalDateTime.now());
+        long until = now + windowHours * 60L;
+        int loaded = load(now, until);
+        log.info("Đã nạp {} nhóm lịch khám cần nhắc trong {} giờ tới", loaded, windowHours);
+    }
+
+    // Mỗi phút: lấy các lần nhắc đến hạn khỏi wheel rồi gửi; đầu mỗi giờ nạp thêm phần cửa sổ mới từ DB
+    @Scheduled(fixedDelayString = "${reminder.tick-ms:60000}")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        long now = epochMinute(LocalDateTime.now());
+        List<Entry> due;
+        boolean extend;
+        synchronized (wheel) {
+            due = wheel.advanceTo(now);
+            for (Entry entry : due) {
+                List<Entry> entries = byBookingCode.get(entry.reminder.bookingCode());
+                if (entries != null) {
+                    entries.remove(entry);
+                    if (entries.isEmpty()) {
+                        byBookingCode.remove(entry.reminder.bookingCode());
+                    }
+                }
+            }
+            extend = loadedUntil > 0 && now + windowHours * 60L - loadedUntil >= 60;
+        }
+        if (extend) {
+            load(loadedUntil, now + windowHours * 60L);
+        }
+        deliver(due);
+    }
+
+    private void deliver(List<Entry> due) {
+        for (int i = 0; i < due.size(); i += batchSize) {
+            List<ReminderNotifier.Reminder> batch = due.subList(i, Math.min(due.size(), i + batchSize)).stream()
+                    .map(entry -> entry.reminder)
+                    .toList();
+            try {
+                notifier.send(batch);
+            } catch (RuntimeException e) {
+                log.error("Gửi {} nhắc lịch thất bại", batch.size(), e);
+            }
+        }
+    }
+
+    // Nạp các nhóm có giờ hẹn trong [from, until) (phút), trả về số nhóm đã nạp
+    private int load(long from, long until) {
+        LocalDateTime fromTime = fromEpochMinute(from);
+        LocalDateTime untilTime = fromEpochMinute(until);
+        long stamp = beginRead();
+        List<AppointmentRepository.ReminderTargetView> rows =
+                readOrRelease(() -> appointmentRepository.findReminderTargets(fromTime.toLocalDate(), untilTime.toLocalDate()));
+        int count = 0;
+        synchronized (wheel) {
+            for (AppointmentRepository.ReminderTargetView row : rows) {
+                long start = epochMinute(row.getAppointmentDate().atTime(row.getAppointmentTime()));
+                // Nhóm bị hủy / đổi giờ trong lúc query: dòng vừa đọc có thể đã cũ
+                if (start >= from && start < until && !changedSince(row.getBookingCode(), stamp)) {
+                    addTarget(toTarget(row));
+                    count++;
+                }
+            }
+            loadedUntil = Math.max(loadedUntil, until);
+            endRead();
+        }
+        return count;
+    }
+
+    // Bắt đầu 1 lần đọc DB ngoài lock; trả về stamp để so với changedAt khi áp dụng kết quả
+    private long beginRead() {
+        synchronized (wheel) {
+            readsInFlight++;
+            return mutations;
+        }
+    }
+
+    // Query lỗi thì kết thúc lần đọc ngay rồi ném tiếp
+    private List<AppointmentRepository.ReminderTargetView> readOrRelease(
+            Supplier<List<AppointmentRepository.ReminderTargetView>> query) {
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            synchronized (wheel) {
+                endRead();
+            }
+            throw e;
+        }
+    }
+
+    // Gọi trong synchronized (wheel)
+    private void endRead() {
+        if (--readsInFlight == 0) {
+            changedAt.clear();
+        }
+    }
+
+    // Gọi trong synchronized (wheel)
+    private void markChanged(String bookingCode) {
+        mutations++;
+        if (readsInFlight > 0) {
+            changedAt.put(bookingCode, mutations);
+        }
+    }
+
+    // Gọi trong synchronized (wheel)
+    private boolean changedSince(String bookingCode, long stamp) {
+        Long at = changedAt.get(bookingCode);
+        return at != null && at > stamp;
+    }
+
+    // Gọi trong synchronized (wheel); mốc nào của nhóm đã nằm trên wheel thì không thêm lại
+    private void addTarget(Target target) {
+        long start = epochMinute(target.date().atTime(target.time()));
+        long horizon = wheel.currentMinute() + windowHours * 60L;
+        List<Entry> existing = byBookingCode.getOrDefault(target.bookingCode(), List.of());
+        for (Map.Entry<ReminderNotifier.Kind, Integer> offset : offsets.entrySet()) {
+            long dueMinute = start - offset.getValue();
+            // Mốc đã qua hoặc ngoài cửa sổ (sẽ được nạp khi cửa sổ mở tới) thì bỏ qua
+            if (dueMinute <= wheel.currentMinute() || dueMinute > horizon
+                    || existing.stream().anyMatch(e -> e.reminder.kind() == offset.getKey())) {
+                continue;
+            }
+            Entry entry = new Entry(dueMinute, new ReminderNotifier.Reminder(target.bookingCode(), offset.getKey(),
+                    target.ownerId(), target.ownerEmail(), target.ownerName(), target.date(), target.time(),
+                    target.petCount()));
+            wheel.add(entry);
+            byBookingCode.computeIfAbsent(target.bookingCode(), c -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    // Gọi trong synchronized (wheel); entry đã bỏ vẫn nằm trong ô của wheel nhưng bị bỏ qua khi tới hạn
+    private void removeTarget(String bookingCode) {
+        List<Entry> entries = byBookingCode.remove(bookingCode);
+        if (entries != null) {
+            entries.forEach(entry -> entry.cancelled = true);
+        }
+    }
+
+    private Target toTarget(AppointmentRepository.ReminderTargetView row) {
+        return new Target(row.getBookingCode(), row.getOwnerId(), row.getOwnerEmail(), row.getOwnerName(),
+                row.getAppointmentDate(), row.getAppointmentTime(), (int) row.getPetCount());
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    private static LocalDateTime fromEpochMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private record Target(String bookingCode, Long ownerId, String ownerEmail, String ownerName,
+                          LocalDate date, LocalTime time, int petCount) {
+    }
+
+    static final class Entry {
+        final long dueMinute;
+        final ReminderNotifier.Reminder reminder;
+        boolean cancelled;
+
+        Entry(long dueMinute, ReminderNotifier.Reminder reminder) {
+            this.dueMinute = dueMinute;
+            this.reminder = reminder;
+        }
+    }
+
+    // Timing wheel 2 tầng theo phút; không thread-safe (truy cập trong synchronized (wheel))
+    static final class TimingWheel {
+        private final List<Entry>[] minuteSlots;
+        private final List<Entry>[] hourSlots;
+        private long currentMinute;
+
+        @SuppressWarnings("unchecked")
+        TimingWheel(int hours, long startMinute) {
+            this.minuteSlots = new List[60];
+            this.hourSlots = new List[hours];
+            Arrays.setAll(minuteSlots, i -> new ArrayList<>());
+            Arrays.setAll(hourSlots, i -> new ArrayList<>());
+            this.currentMinute = startMinute;
+        }
+
+        long currentMinute() {
+            return currentMinute;
+        }
+
+        // dueMinute phải > currentMinute và trong phạm vi số ô giờ
+        void add(Entry entry) {
+            long delay = entry.dueMinute - currentMinute;
+            if (delay < 60) {
+                minuteSlots[(int) (entry.dueMinute % 60)].add(entry);
+            } else {
+                hourSlots[(int) ((entry.dueMinute / 60) % hourSlots.length)].add(entry);
+            }
+        }
+
+        // Tiến tới phút now, trả về các entry đến hạn (bỏ entry đã hủy)
+        List<Entry> advanceTo(long now) {
+            List<Entry> due = new ArrayList<>();
+            while (currentMinute < now) {
+                currentMinute++;
+                if (currentMinute % 60 == 0) {
+                    // Đầu giờ: rải ô giờ hiện tại xuống các ô phút
+                    List<Entry> slot = hourSlots[(int) ((currentMinute / 60) % hourSlots.length)];
+                    List<Entry> cascading = new ArrayList<>(slot);
+                    slot.clear();
+                    for (Entry entry : cascading) {
+                        if (!entry.cancelled) {
+                            add(entry);
+                        }
+                    }
+                }
+                List<Entry> slot = minuteSlots[(int) (currentMinute % 60)];
+                for (Entry entry : slot) {
+                    if (!entry.cancelled) {
+                        due.add(entry);
+                    }
+                }
+                slot.clear();
+            }
+            return due;
+        }
+    }
+}
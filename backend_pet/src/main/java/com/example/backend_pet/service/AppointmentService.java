@@ -2,17 +2,19 @@ package com.example.backend_pet.service;
 
 import com.example.backend_pet.dto.AppointmentRequest;
 import com.example.backend_pet.dto.AppointmentResponse;
+import com.example.backend_pet.dto.CursorPage;
+import com.example.backend_pet.dto.DoctorAvailabilityResponse;
 import com.example.backend_pet.entity.Appointment;
-import com.example.backend_pet.entity.MedicalRecord;
 import com.example.backend_pet.entity.Pet;
 import com.example.backend_pet.entity.PetService;
 import com.example.backend_pet.entity.User;
 import com.example.backend_pet.repository.AppointmentRepository;
-import com.example.backend_pet.repository.MedicalRecordRepository;
+import com.example.backend_pet.repository.AppointmentRepositoryCustom;
 import com.example.backend_pet.repository.PetRepository;
 import com.example.backend_pet.repository.PetServiceRepository;
 import com.example.backend_pet.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,20 +22,37 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentService {
 
+    private static final int DEFAULT_ADMIN_PAGE_SIZE = 20;
+    private static final int MAX_ADMIN_PAGE_SIZE = 100;
+    private static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
     private final AppointmentRepository appointmentRepository;
     private final UserRepository userRepository;
     private final PetRepository petRepository;
     private final PetServiceRepository petServiceRepository;
-    private final MedicalRecordRepository medicalRecordRepository;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final SlotCapacityService slotCapacityService;
+    private final DoctorTimelineIndex doctorTimelineIndex;
+    private final AppointmentReminderScheduler reminderScheduler;
+    private final WaitlistService waitlistService;
+    private final MedicalService medicalService;
 
     // Đặt lịch khám cho nhiều pet cùng lúc
     @Transactional
@@ -48,53 +67,86 @@ public class AppointmentService {
         String bookingCode = "BK-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
                 + "-" + UUID.randomUUID().toString().substring(0, 4);
 
-        // Lấy danh sách service một lần, dùng chung cho tất cả pets
-        List<PetService> services = new ArrayList<>();
-        for (Long serviceId : request.getServiceIds()) {
-            PetService service = petServiceRepository.findById(serviceId)
-                    .orElseThrow(() -> new RuntimeException("Service not found: " + serviceId));
-            services.add(service);
+        if (request.getPetIds() == null || request.getPetIds().isEmpty()) {
+            throw new RuntimeException("Vui lòng chọn ít nhất 1 thú cưng");
         }
 
-        List<Appointment> appointments = new ArrayList<>();
-
-        // Mỗi pet tạo 1 appointment (không loop theo service nữa)
-        for (Long petId : request.getPetIds()) {
-            Pet pet = petRepository.findById(petId)
-                    .orElseThrow(() -> new RuntimeException("Pet not found: " + petId));
+        // Lấy toàn bộ service và pet, mỗi loại 1 query; kiểm tra tồn tại + quyền sở hữu trong bộ nhớ
+        List<Long> serviceIds = new ArrayList<>(new LinkedHashSet<>(
+                request.getServiceIds() != null ? request.getServiceIds() : List.of()));
+        List<Long> petIds = new ArrayList<>(new LinkedHashSet<>(request.getPetIds()));
+
+        Map<Long, PetService> servicesById = petServiceRepository.findAllById(serviceIds).stream()
+                .collect(Collectors.toMap(PetService::getId, Function.identity()));
+        List<PetService> services = new ArrayList<>(serviceIds.size());
+        for (Long serviceId : serviceIds) {
+            PetService service = servicesById.get(serviceId);
+            if (service == null) {
+                throw new RuntimeException("Service not found: " + serviceId);
+            }
+            services.add(service);
+        }
 
+        Map<Long, Pet> petsById = petRepository.findAllById(petIds).stream()
+                .collect(Collectors.toMap(Pet::getId, Function.identity()));
+        for (Long petId : petIds) {
+            Pet pet = petsById.get(petId);
+            if (pet == null) {
+                throw new RuntimeException("Pet not found: " + petId);
+            }
             if (!pet.getOwner().getId().equals(user.getId())) {
                 throw new RuntimeException("Pet " + petId + " không thuộc user này");
             }
+        }
 
-            Appointment appointment = Appointment.builder()
-                    .user(user)
-                    .pet(pet)
-                    .services(new ArrayList<>(services))
-                    .appointmentDate(date)
-                    .appointmentTime(time)
-                    .bookingCode(bookingCode)
-                    .notes(request.getNotes())
-                    .build();
-
-            appointments.add(appointmentRepository.save(appointment));
+        // Giữ chỗ trước khi ghi appointment (dòng sức chứa khởi tạo từ số booking hiện có,
+        // nên phải chạy khi nhóm mới chưa nằm trong bảng appointments).
+        // Đặt bằng chỗ được giữ từ hàng đợi thì chỗ đã được tính sẵn.
+        boolean fromWaitlist = request.getWaitlistEntryId() != null;
+        if (fromWaitlist) {
+            waitlistService.claim(request.getWaitlistEntryId(), user.getId(), date, time);
+        } else {
+            slotCapacityService.reserve(date, time);
         }
 
-        // 1 appointment per pet → 1 MedicalRecord per pet
-        for (Appointment apt : appointments) {
-            MedicalRecord medicalRecord = MedicalRecord.builder()
-                    .appointment(apt)
-                    .diagnosis("")
-                    .treatment("")
-                    .prescription("")
-                    .notes("")
-                    .followUpDate(null)
-                    .build();
-            medicalRecordRepository.save(medicalRecord);
+        // Ghi appointments + appointment_services + medical_records (1 hồ sơ / pet) bằng 3 câu lệnh
+        List<AppointmentRepositoryCustom.InsertedAppointment> inserted = appointmentRepository.insertBookingGroup(
+                new AppointmentRepositoryCustom.NewBookingGroup(
+                        user.getId(), petIds, serviceIds, date, time, bookingCode, request.getNotes()));
+
+        // Cả nhóm chiếm 1 chỗ trong khung giờ (chỗ giữ từ hàng đợi đã được cộng lúc giữ)
+        if (!fromWaitlist) {
+            slotAvailabilityService.bookedAfterCommit(date, time);
         }
+        reminderScheduler.scheduleAfterCommit(bookingCode, user.getId(), user.getEmail(), user.getFullName(),
+                date, time, petIds.size());
 
-        return appointments.stream()
-                .map(this::mapToResponse)
+        // Response dựng từ dữ liệu đã có trong bộ nhớ, không đọc lại DB
+        List<AppointmentResponse.ServiceInfo> serviceInfos = services.stream()
+                .map(this::mapToServiceInfo)
+                .collect(Collectors.toList());
+        Map<Long, AppointmentRepositoryCustom.InsertedAppointment> insertedByPet = inserted.stream()
+                .collect(Collectors.toMap(AppointmentRepositoryCustom.InsertedAppointment::petId, Function.identity()));
+
+        return petIds.stream()
+                .map(petId -> {
+                    Pet pet = petsById.get(petId);
+                    AppointmentRepositoryCustom.InsertedAppointment row = insertedByPet.get(petId);
+                    return AppointmentResponse.builder()
+                            .id(row.id())
+                            .bookingCode(bookingCode)
+                            .petName(pet.getName())
+                            .petSpecies(pet.getSpecies().name())
+                            .petImageUrl(pet.getImageUrl())
+                            .services(serviceInfos)
+                            .ownerName(user.getFullName())
+                            .appointmentDate(date.toString())
+                            .appointmentTime(time.toString())
+                            .status(Appointment.AppointmentStatus.PENDING.name())
+                            .notes(request.getNotes())
+                            .createdAt(row.createdAt())
+                            .build();
+                })
                 .collect(Collectors.toList());
     }
 
@@ -106,31 +158,39 @@ public class AppointmentService {
                 .collect(Collectors.toList());
     }
 
+    // Các thao tác theo nhóm bên dưới: 1 query lấy khóa nhóm, 1 UPDATE có điều kiện theo bookingCode
+    // (điều kiện chuyển trạng thái nằm trong WHERE), 1 query dựng response.
+    // UPDATE không tác động dòng nào thì mới dùng khóa nhóm để báo lỗi cụ thể.
+
     // Hủy lịch khám — hủy toàn bộ nhóm cùng bookingCode
     @Transactional
     public List<AppointmentResponse> cancelAppointment(Long appointmentId, Long userId) {
-        Appointment appointment = appointmentRepository.findById(appointmentId)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
 
-        if (!appointment.getUser().getId().equals(userId)) {
+        if (!group.getUserId().equals(userId)) {
             throw new RuntimeException("Unauthorized");
         }
+        if (group.getCompletedCount() > 0) {
+            throw new RuntimeException("Không thể hủy lịch khám đã hoàn thành");
+        }
+        if (group.getActiveCount() == 0) {
+            return List.of();
+        }
 
-        // Lấy tất cả appointment cùng bookingCode
-        List<Appointment> group = appointmentRepository.findByBookingCode(appointment.getBookingCode());
-        List<Appointment> cancelled = new ArrayList<>();
-
-        for (Appointment apt : group) {
-            if (apt.getStatus() == Appointment.AppointmentStatus.COMPLETED) {
-                throw new RuntimeException("Không thể hủy lịch khám đã hoàn thành");
-            }
-            if (apt.getStatus() != Appointment.AppointmentStatus.CANCELLED) {
-                apt.setStatus(Appointment.AppointmentStatus.CANCELLED);
-                cancelled.add(appointmentRepository.save(apt));
-            }
+        // Nhả chỗ trước khi đổi trạng thái (dòng sức chứa có thể được khởi tạo từ số booking hiện có)
+        slotCapacityService.release(group.getAppointmentDate(), group.getAppointmentTime());
+        if (appointmentRepository.cancelGroup(group.getBookingCode(), userId, LocalDateTime.now()) == 0) {
+            // Request khác vừa hủy / hoàn thành nhóm này → rollback cả phần nhả chỗ
+            throw new RuntimeException("Lịch khám đã thay đổi trạng thái, vui lòng tải lại");
+        }
+        slotAvailabilityService.releasedAfterCommit(group.getAppointmentDate(), group.getAppointmentTime());
+        waitlistService.slotReleasedAfterCommit(group.getAppointmentDate(), group.getAppointmentTime());
+        if (group.getDoctorId() != null) {
+            doctorTimelineIndex.releaseAfterCommit(group.getDoctorId(), group.getAppointmentDate(), group.getBookingCode());
         }
+        reminderScheduler.cancelAfterCommit(group.getBookingCode());
 
-        return cancelled.stream().map(this::mapToResponse).collect(Collectors.toList());
+        return findGroupResponses(group.getBookingCode());
     }
 
     // === Doctor methods ===
@@ -144,24 +204,17 @@ public class AppointmentService {
     // Bác sĩ xác nhận đã khám xong — complete toàn bộ nhóm cùng bookingCode
     @Transactional
     public List<AppointmentResponse> completeAppointmentGroup(Long appointmentId, Long doctorId) {
-        Appointment appointment = appointmentRepository.findById(appointmentId)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
-
-        if (appointment.getDoctor() == null || !appointment.getDoctor().getId().equals(doctorId)) {
-            throw new RuntimeException("Bạn không được phân công lịch khám này");
-        }
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
 
-        if (appointment.getStatus() != Appointment.AppointmentStatus.CONFIRMED) {
+        if (appointmentRepository.completeGroup(group.getBookingCode(), doctorId, LocalDateTime.now()) == 0) {
+            if (group.getDoctorId() == null || !group.getDoctorId().equals(doctorId)) {
+                throw new RuntimeException("Bạn không được phân công lịch khám này");
+            }
             throw new RuntimeException("Chỉ có thể hoàn thành lịch đã được xác nhận");
         }
-
-        List<Appointment> group = appointmentRepository.findByBookingCode(appointment.getBookingCode());
-        List<AppointmentResponse> result = new ArrayList<>();
-        for (Appointment apt : group) {
-            apt.setStatus(Appointment.AppointmentStatus.COMPLETED);
-            result.add(mapToResponse(appointmentRepository.save(apt)));
-        }
-        return result;
+        reminderScheduler.cancelAfterCommit(group.getBookingCode());
+        medicalService.refreshSummaries(appointmentRepository.findPetIdsByBookingCode(group.getBookingCode()));
+        return findGroupResponses(group.getBookingCode());
     }
 
     // === Admin methods ===
@@ -172,59 +225,290 @@ public class AppointmentService {
                 .stream().map(this::mapToResponse).collect(Collectors.toList());
     }
 
-    // Bỏ phân công bác sĩ — áp dụng cho toàn bộ nhóm cùng bookingCode
+    // Danh sách lịch khám cho admin, mới nhất trước, phân trang theo con trỏ "ngày_giờ_id" của dòng cuối trang trước.
+    // Mỗi trang đúng 2 query có giới hạn: danh sách appointment (projection) và dịch vụ của các appointment đó.
+    // q lọc theo tiền tố mã booking hoặc tiền tố tên chủ nuôi (không phân biệt hoa thường)
+    public CursorPage<AppointmentResponse> getAdminAppointmentPage(LocalDate from, LocalDate to, String status,
+                                                                   Long doctorId, String category, String q,
+                                                                   String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_ADMIN_PAGE_SIZE : Math.max(1, Math.min(size, MAX_ADMIN_PAGE_SIZE));
+
+        LocalDate cursorDate = MAX_DATE;
+        LocalTime cursorTime = LocalTime.of(23, 59, 59);
+        long cursorId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.split("_");
+            try {
+                cursorDate = LocalDate.parse(parts[0]);
+                cursorTime = LocalTime.parse(parts[1]);
+                cursorId = Long.parseLong(parts[2]);
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException e) {
+                throw new RuntimeException("Cursor không hợp lệ");
+            }
+        }
+
+        EnumSet<Appointment.AppointmentStatus> statuses = EnumSet.allOf(Appointment.AppointmentStatus.class);
+        if (status != null && !status.isBlank()) {
+            try {
+                statuses = EnumSet.of(Appointment.AppointmentStatus.valueOf(status.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Trạng thái không hợp lệ: " + status);
+            }
+        }
+        boolean anyCategory = category == null || category.isBlank();
+        String text = q == null ? "" : q.trim();
+        String likeText = text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<AppointmentRepository.AppointmentSummaryView> rows = appointmentRepository.findAdminPage(
+                from != null ? from : MIN_DATE, to != null ? to : MAX_DATE,
+                cursorDate, cursorTime, cursorId, statuses,
+                doctorId == null, doctorId != null ? doctorId : 0L,
+                anyCategory, anyCategory ? "" : category.trim(),
+                text.isEmpty(), likeText.toUpperCase() + "%", likeText.toLowerCase() + "%",
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (rows.isEmpty()) {
+            return CursorPage.<AppointmentResponse>builder().items(List.of()).hasMore(false).build();
+        }
+
+        Map<Long, List<AppointmentResponse.ServiceInfo>> servicesById = new HashMap<>();
+        List<Long> ids = rows.stream().map(AppointmentRepository.AppointmentSummaryView::getId).collect(Collectors.toList());
+        for (AppointmentRepository.AppointmentServiceView service : appointmentRepository.findServicesByAppointmentIds(ids)) {
+            servicesById.computeIfAbsent(service.getAppointmentId(), id -> new ArrayList<>())
+                    .add(AppointmentResponse.ServiceInfo.builder()
+                            .id(service.getServiceId())
+                            .title(service.getServiceTitle())
+                            .price(service.getServicePrice())
+                            .build());
+        }
+
+        List<AppointmentResponse> items = rows.stream()
+                .map(row -> AppointmentResponse.builder()
+                        .id(row.getId())
+                        .bookingCode(row.getBookingCode())
+                        .petName(row.getPetName())
+                        .petSpecies(row.getPetSpecies().name())
+                        .petImageUrl(row.getPetImageUrl())
+                        .services(servicesById.getOrDefault(row.getId(), new ArrayList<>()))
+                        .doctorId(row.getDoctorId())
+                        .doctorName(row.getDoctorName())
+                        .ownerName(row.getOwnerName())
+                        .appointmentDate(row.getAppointmentDate().toString())
+                        .appointmentTime(row.getAppointmentTime().toString())
+                        .status(row.getStatus().name())
+                        .notes(row.getNotes())
+                        .createdAt(row.getCreatedAt())
+                        .build())
+                .collect(Collectors.toList());
+
+        AppointmentRepository.AppointmentSummaryView last = rows.get(rows.size() - 1);
+        return CursorPage.<AppointmentResponse>builder()
+                .items(items)
+                .nextCursor(hasMore
+                        ? last.getAppointmentDate() + "_" + last.getAppointmentTime() + "_" + last.getId()
+                        : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Bỏ phân công bác sĩ — áp dụng cho toàn bộ nhóm cùng bookingCode (trừ lịch đã hoàn thành)
     @Transactional
     public List<AppointmentResponse> unassignDoctor(Long appointmentId) {
-        Appointment appointment = appointmentRepository.findById(appointmentId)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
-        List<Appointment> group = appointmentRepository.findByBookingCode(appointment.getBookingCode());
-        List<AppointmentResponse> result = new ArrayList<>();
-        for (Appointment apt : group) {
-            apt.setDoctor(null);
-            result.add(mapToResponse(appointmentRepository.save(apt)));
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
+        if (appointmentRepository.unassignDoctorFromGroup(group.getBookingCode(), LocalDateTime.now()) > 0
+                && group.getDoctorId() != null) {
+            doctorTimelineIndex.releaseAfterCommit(group.getDoctorId(), group.getAppointmentDate(), group.getBookingCode());
         }
-        return result;
+        return findGroupResponses(group.getBookingCode());
     }
 
-    // Phân công bác sĩ — áp dụng cho toàn bộ nhóm cùng bookingCode
+    // Phân công bác sĩ — áp dụng cho toàn bộ nhóm cùng bookingCode (chỉ lịch PENDING / CONFIRMED)
     @Transactional
     public List<AppointmentResponse> assignDoctor(Long appointmentId, Long doctorId) {
-        Appointment appointment = appointmentRepository.findById(appointmentId)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
-        User doctor = userRepository.findById(doctorId)
-                .orElseThrow(() -> new RuntimeException("Doctor not found"));
-        List<Appointment> group = appointmentRepository.findByBookingCode(appointment.getBookingCode());
-        List<AppointmentResponse> result = new ArrayList<>();
-        for (Appointment apt : group) {
-            apt.setDoctor(doctor);
-            result.add(mapToResponse(appointmentRepository.save(apt)));
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
+        if (!userRepository.existsByIdAndRole(doctorId, User.Role.DOCTOR)) {
+            throw new RuntimeException("Doctor not found");
+        }
+
+        // Kiểm tra trùng giờ với lịch khác của bác sĩ và giữ khoảng thời gian trước khi ghi
+        // (UPDATE không tác động dòng nào → exception → rollback cũng bỏ khoảng vừa giữ)
+        boolean sameDoctor = doctorId.equals(group.getDoctorId());
+        if (!sameDoctor) {
+            doctorTimelineIndex.reserve(doctorId, group.getAppointmentDate(), groupInterval(group));
+        }
+        if (appointmentRepository.assignDoctorToGroup(group.getBookingCode(),
+                userRepository.getReferenceById(doctorId), LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Chỉ có thể phân công bác sĩ cho lịch đang chờ hoặc đã xác nhận");
         }
-        return result;
+        if (!sameDoctor && group.getDoctorId() != null) {
+            doctorTimelineIndex.releaseAfterCommit(group.getDoctorId(), group.getAppointmentDate(), group.getBookingCode());
+        }
+        return findGroupResponses(group.getBookingCode());
     }
 
     // Đổi trạng thái — áp dụng cho toàn bộ nhóm cùng bookingCode
     @Transactional
     public List<AppointmentResponse> updateStatus(Long appointmentId, String status) {
-        Appointment appointment = appointmentRepository.findById(appointmentId)
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
+        Appointment.AppointmentStatus newStatus;
+        try {
+            newStatus = Appointment.AppointmentStatus.valueOf(status.trim().toUpperCase());
+        } catch (NullPointerException | IllegalArgumentException e) {
+            throw new RuntimeException("Trạng thái không hợp lệ: " + status);
+        }
+
+        // Nhóm chuyển sang / ra khỏi CANCELLED thì nhả / chiếm lại chỗ trong khung giờ. Nhả / giữ chỗ trước khi
+        // đổi trạng thái (dòng sức chứa có thể được khởi tạo từ số booking hiện có), rồi UPDATE có điều kiện
+        // theo trạng thái đã đọc: 0 dòng = request khác vừa đổi nhóm → rollback cả phần nhả / giữ chỗ
+        boolean wasActive = group.getActiveCount() > 0;
+        boolean isActive = newStatus != Appointment.AppointmentStatus.CANCELLED;
+        LocalDateTime now = LocalDateTime.now();
+        if (wasActive && !isActive) {
+            slotCapacityService.release(group.getAppointmentDate(), group.getAppointmentTime());
+            if (appointmentRepository.cancelGroupByAdmin(group.getBookingCode(), now) == 0) {
+                throw new RuntimeException("Lịch khám đã thay đổi trạng thái, vui lòng tải lại");
+            }
+            slotAvailabilityService.releasedAfterCommit(group.getAppointmentDate(), group.getAppointmentTime());
+            waitlistService.slotReleasedAfterCommit(group.getAppointmentDate(), group.getAppointmentTime());
+            if (group.getDoctorId() != null) {
+                doctorTimelineIndex.releaseAfterCommit(group.getDoctorId(), group.getAppointmentDate(), group.getBookingCode());
+            }
+        } else if (!wasActive && isActive) {
+            slotCapacityService.reserve(group.getAppointmentDate(), group.getAppointmentTime());
+            if (appointmentRepository.reactivateGroup(group.getBookingCode(), newStatus, now) == 0) {
+                throw new RuntimeException("Lịch khám đã thay đổi trạng thái, vui lòng tải lại");
+            }
+            slotAvailabilityService.bookedAfterCommit(group.getAppointmentDate(), group.getAppointmentTime());
+            if (group.getDoctorId() != null) {
+                doctorTimelineIndex.restoreAfterCommit(group.getDoctorId(), group.getAppointmentDate(), groupInterval(group));
+            }
+        } else if (isActive) {
+            // Nhóm vừa bị hủy song song thì không có dòng nào đổi — không mở lại nhóm mà không giữ chỗ
+            appointmentRepository.updateActiveGroupStatus(group.getBookingCode(), newStatus, now);
+        }
+
+        // Lần khám hoàn thành được tính vào tóm tắt hồ sơ của pet: vào / ra khỏi COMPLETED thì tính lại
+        if (newStatus == Appointment.AppointmentStatus.COMPLETED || group.getCompletedCount() > 0) {
+            medicalService.refreshSummaries(appointmentRepository.findPetIdsByBookingCode(group.getBookingCode()));
+        }
+
+        // Chỉ nhóm còn lịch PENDING / CONFIRMED mới được nhắc lịch
+        if (!isUpcoming(newStatus)) {
+            reminderScheduler.cancelAfterCommit(group.getBookingCode());
+        } else if (group.getUpcomingCount() == 0) {
+            reminderScheduler.rescheduleAfterCommit(group.getBookingCode());
+        }
+        return findGroupResponses(group.getBookingCode());
+    }
+
+    // Bác sĩ nào rảnh trong khung giờ của nhóm (dropdown phân công): đọc từ DoctorTimelineIndex,
+    // các bác sĩ chưa có lịch trong RAM được nạp chung 1 query
+    public DoctorAvailabilityResponse getDoctorAvailability(Long appointmentId) {
+        AppointmentRepository.GroupKeyView group = findGroupKey(appointmentId);
+        DoctorTimelineIndex.Interval interval = groupInterval(group);
+
+        List<User> doctors = userRepository.findByRole(User.Role.DOCTOR);
+        Map<Long, List<DoctorTimelineIndex.Interval>> busyByDoctor = doctorTimelineIndex.getBusy(
+                doctors.stream().map(User::getId).collect(Collectors.toList()), group.getAppointmentDate());
+
+        List<DoctorAvailabilityResponse.DoctorSlot> slots = doctors.stream()
+                .map(doctor -> {
+                    List<DoctorTimelineIndex.Interval> busy = busyByDoctor.getOrDefault(doctor.getId(), List.of());
+                    List<DoctorAvailabilityResponse.BusyInterval> conflicts = busy.stream()
+                            .filter(b -> b.start() < interval.end() && b.end() > interval.start()
+                                    && !b.bookingCode().equals(interval.bookingCode()))
+                            .map(this::mapToBusyInterval)
+                            .collect(Collectors.toList());
+                    return DoctorAvailabilityResponse.DoctorSlot.builder()
+                            .doctorId(doctor.getId())
+                            .fullName(doctor.getFullName())
+                            .email(doctor.getEmail())
+                            .free(conflicts.isEmpty())
+                            .busyMinutes(busy.stream().mapToInt(DoctorTimelineIndex.Interval::minutes).sum())
+                            .conflicts(conflicts)
+                            .busy(busy.stream().map(this::mapToBusyInterval).collect(Collectors.toList()))
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        return DoctorAvailabilityResponse.builder()
+                .bookingCode(group.getBookingCode())
+                .appointmentDate(group.getAppointmentDate().toString())
+                .startTime(interval.startTime().toString())
+                .endTime(interval.endTime().toString())
+                .durationMinutes(interval.minutes())
+                .assignedDoctorId(group.getDoctorId())
+                .doctors(slots)
+                .build();
+    }
+
+    // Khoảng thời gian bác sĩ bận cho cả nhóm: giờ hẹn + tổng duration dịch vụ của mọi pet trong nhóm
+    private DoctorTimelineIndex.Interval groupInterval(AppointmentRepository.GroupKeyView group) {
+        int minutes = doctorTimelineIndex.durationOf(appointmentRepository.sumGroupServiceMinutes(group.getBookingCode()));
+        return doctorTimelineIndex.intervalOf(group.getBookingCode(), group.getAppointmentTime(), minutes);
+    }
+
+    private DoctorAvailabilityResponse.BusyInterval mapToBusyInterval(DoctorTimelineIndex.Interval interval) {
+        return DoctorAvailabilityResponse.BusyInterval.builder()
+                .bookingCode(interval.bookingCode())
+                .startTime(interval.startTime().toString())
+                .endTime(interval.endTime().toString())
+                .build();
+    }
+
+    private boolean isUpcoming(Appointment.AppointmentStatus status) {
+        return status == Appointment.AppointmentStatus.PENDING || status == Appointment.AppointmentStatus.CONFIRMED;
+    }
+
+    private AppointmentRepository.GroupKeyView findGroupKey(Long appointmentId) {
+        return appointmentRepository.findGroupKey(appointmentId)
                 .orElseThrow(() -> new RuntimeException("Appointment not found"));
-        Appointment.AppointmentStatus newStatus = Appointment.AppointmentStatus.valueOf(status);
-        List<Appointment> group = appointmentRepository.findByBookingCode(appointment.getBookingCode());
-        List<AppointmentResponse> result = new ArrayList<>();
-        for (Appointment apt : group) {
-            apt.setStatus(newStatus);
-            result.add(mapToResponse(appointmentRepository.save(apt)));
+    }
+
+    // Response của cả nhóm dựng từ 1 query phẳng (appointment × dịch vụ)
+    private List<AppointmentResponse> findGroupResponses(String bookingCode) {
+        return mapRowsToResponses(appointmentRepository.findRowsByBookingCode(bookingCode));
+    }
+
+    // Gộp các dòng phẳng (đã sắp theo appointment id) thành danh sách response, giữ thứ tự
+    private List<AppointmentResponse> mapRowsToResponses(List<AppointmentRepository.AppointmentRow> rows) {
+        Map<Long, AppointmentResponse> byId = new LinkedHashMap<>();
+        for (AppointmentRepository.AppointmentRow row : rows) {
+            AppointmentResponse response = byId.computeIfAbsent(row.getId(), id -> AppointmentResponse.builder()
+                    .id(row.getId())
+                    .bookingCode(row.getBookingCode())
+                    .petName(row.getPetName())
+                    .petSpecies(row.getPetSpecies().name())
+                    .petImageUrl(row.getPetImageUrl())
+                    .services(new ArrayList<>())
+                    .doctorId(row.getDoctorId())
+                    .doctorName(row.getDoctorName())
+                    .ownerName(row.getOwnerName())
+                    .appointmentDate(row.getAppointmentDate().toString())
+                    .appointmentTime(row.getAppointmentTime().toString())
+                    .status(row.getStatus().name())
+                    .notes(row.getNotes())
+                    .createdAt(row.getCreatedAt())
+                    .build());
+            if (row.getServiceId() != null) {
+                response.getServices().add(AppointmentResponse.ServiceInfo.builder()
+                        .id(row.getServiceId())
+                        .title(row.getServiceTitle())
+                        .price(row.getServicePrice())
+                        .build());
+            }
         }
-        return result;
+        return new ArrayList<>(byId.values());
     }
 
     // Map entity sang DTO
     private AppointmentResponse mapToResponse(Appointment appointment) {
         List<AppointmentResponse.ServiceInfo> serviceInfos = appointment.getServices().stream()
-                .map(s -> AppointmentResponse.ServiceInfo.builder()
-                        .id(s.getId())
-                        .title(s.getTitle())
-                        .price(s.getPrice())
-                        .build())
+                .map(this::mapToServiceInfo)
                 .collect(Collectors.toList());
 
         return AppointmentResponse.builder()
@@ -244,4 +528,12 @@ public class AppointmentService {
                 .createdAt(appointment.getCreatedAt())
                 .build();
     }
+
+    private AppointmentResponse.ServiceInfo mapToServiceInfo(PetService service) {
+        return AppointmentResponse.ServiceInfo.builder()
+                .id(service.getId())
+                .title(service.getTitle())
+                .price(service.getPrice())
+                .build();
+    }
 }
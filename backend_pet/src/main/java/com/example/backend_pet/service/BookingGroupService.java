@@ -0,0 +1,172 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.BookingGroupResponse;
+import com.example.backend_pet.dto.CursorPage;
+import com.example.backend_pet.entity.Appointment;
+import com.example.backend_pet.repository.AppointmentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lịch khám gộp theo nhóm booking (1 dòng / bookingCode) cho user, bác sĩ và admin.
+ *
+ * Mỗi trang đúng 3 query có giới hạn: danh sách nhóm (đã gộp số pet / trạng thái trong SQL),
+ * pet của các nhóm trong trang, dịch vụ của các nhóm trong trang (đã gộp số lượng / thành tiền trong SQL).
+ * Con trỏ = "ngày_giờ_bookingCode" của nhóm cuối trang trước.
+ */
+@Service
+@RequiredArgsConstructor
+public class BookingGroupService {
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final AppointmentRepository appointmentRepository;
+
+    // Lịch khám của tôi
+    public CursorPage<BookingGroupResponse> getGroupsByUser(Long userId, String cursor, Integer size) {
+        return findPage(null, null, userId, null, cursor, size);
+    }
+
+    // Lịch được phân công cho bác sĩ (chỉ tính các pet bác sĩ được phân công)
+    public CursorPage<BookingGroupResponse> getGroupsByDoctor(Long doctorId, String cursor, Integer size) {
+        return findPage(null, null, null, doctorId, cursor, size);
+    }
+
+    // Admin: toàn bộ nhóm, lọc theo khoảng ngày / bác sĩ
+    public CursorPage<BookingGroupResponse> getAllGroups(LocalDate from, LocalDate to, Long doctorId,
+                                                         String cursor, Integer size) {
+        return findPage(from, to, null, doctorId, cursor, size);
+    }
+
+    private CursorPage<BookingGroupResponse> findPage(LocalDate from, LocalDate to, Long userId, Long doctorId,
+                                                      String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        LocalDate cursorDate = MAX_DATE;
+        LocalTime cursorTime = LocalTime.of(23, 59, 59);
+        // bookingCode luôn bắt đầu bằng "BK-" nên mọi mã đều nhỏ hơn "~"
+        String cursorCode = "~";
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.split("_", 3);
+            try {
+                cursorDate = LocalDate.parse(parts[0]);
+                cursorTime = LocalTime.parse(parts[1]);
+                cursorCode = parts[2];
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+                throw new RuntimeException("Cursor không hợp lệ");
+            }
+        }
+
+        boolean anyDoctor = doctorId == null;
+        Long doctorParam = anyDoctor ? 0L : doctorId;
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<AppointmentRepository.BookingGroupView> rows = appointmentRepository.findBookingGroupPage(
+                from != null ? from : MIN_DATE, to != null ? to : MAX_DATE,
+                cursorDate, cursorTime, cursorCode,
+                userId == null, userId != null ? userId : 0L,
+                anyDoctor, doctorParam,
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (rows.isEmpty()) {
+            return CursorPage.<BookingGroupResponse>builder().items(List.of()).hasMore(false).build();
+        }
+
+        List<String> codes = rows.stream()
+                .map(AppointmentRepository.BookingGroupView::getBookingCode)
+                .collect(Collectors.toList());
+
+        Map<String, List<BookingGroupResponse.PetInfo>> petsByCode = new HashMap<>();
+        for (AppointmentRepository.BookingGroupPetView pet
+                : appointmentRepository.findBookingGroupPets(codes, anyDoctor, doctorParam)) {
+            petsByCode.computeIfAbsent(pet.getBookingCode(), c -> new ArrayList<>())
+                    .add(BookingGroupResponse.PetInfo.builder()
+                            .appointmentId(pet.getAppointmentId())
+                            .petId(pet.getPetId())
+                            .name(pet.getPetName())
+                            .species(pet.getPetSpecies().name())
+                            .imageUrl(pet.getPetImageUrl())
+                            .status(pet.getStatus().name())
+                            .build());
+        }
+
+        Map<String, List<BookingGroupResponse.ServiceLine>> servicesByCode = new HashMap<>();
+        for (AppointmentRepository.BookingGroupServiceView service
+                : appointmentRepository.findBookingGroupServices(codes, anyDoctor, doctorParam)) {
+            servicesByCode.computeIfAbsent(service.getBookingCode(), c -> new ArrayList<>())
+                    .add(BookingGroupResponse.ServiceLine.builder()
+                            .id(service.getServiceId())
+                            .title(service.getServiceTitle())
+                            .price(service.getServicePrice())
+                            .quantity((int) service.getQuantity())
+                            .lineTotal(service.getLineTotal())
+                            .build());
+        }
+
+        List<BookingGroupResponse> items = rows.stream()
+                .map(row -> {
+                    List<BookingGroupResponse.ServiceLine> services =
+                            servicesByCode.getOrDefault(row.getBookingCode(), List.of());
+                    return BookingGroupResponse.builder()
+                            .bookingCode(row.getBookingCode())
+                            .appointmentDate(row.getAppointmentDate().toString())
+                            .appointmentTime(row.getAppointmentTime().toString())
+                            .status(groupStatus(row).name())
+                            .doctorId(row.getDoctorId())
+                            .doctorName(row.getDoctorName())
+                            .ownerId(row.getOwnerId())
+                            .ownerName(row.getOwnerName())
+                            .notes(row.getNotes())
+                            .petCount((int) row.getPetCount())
+                            .totalPrice(services.stream()
+                                    .map(BookingGroupResponse.ServiceLine::getLineTotal)
+                                    .reduce(BigDecimal.ZERO, BigDecimal::add))
+                            .pets(petsByCode.getOrDefault(row.getBookingCode(), List.of()))
+                            .services(services)
+                            .createdAt(row.getCreatedAt())
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        AppointmentRepository.BookingGroupView last = rows.get(rows.size() - 1);
+        return CursorPage.<BookingGroupResponse>builder()
+                .items(items)
+                .nextCursor(hasMore
+                        ? last.getAppointmentDate() + "_" + last.getAppointmentTime() + "_" + last.getBookingCode()
+                        : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Trạng thái chung của nhóm: còn pet chờ → PENDING, còn pet đã xác nhận chưa khám → CONFIRMED,
+    // có pet đã khám → COMPLETED, còn lại là CANCELLED
+    private Appointment.AppointmentStatus groupStatus(AppointmentRepository.BookingGroupView row) {
+        if (row.getPendingCount() > 0) {
+            return Appointment.AppointmentStatus.PENDING;
+        }
+        if (row.getConfirmedCount() > 0) {
+            return Appointment.AppointmentStatus.CONFIRMED;
+        }
+        if (row.getCompletedCount() > 0) {
+            return Appointment.AppointmentStatus.COMPLETED;
+        }
+        return Appointment.AppointmentStatus.CANCELLED;
+    }
+}
@@ -0,0 +1,532 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.BookingImportResponse;
+import com.example.backend_pet.dto.BookingImportRow;
+import com.example.backend_pet.entity.Pet;
+import com.example.backend_pet.entity.PetService;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.AppointmentRepository;
+import com.example.backend_pet.repository.AppointmentRepositoryCustom;
+import com.example.backend_pet.repository.PetRepository;
+import com.example.backend_pet.repository.PetServiceRepository;
+import com.example.backend_pet.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Nhập lịch khám hàng loạt (lễ tân nhận qua điện thoại, trại cứu hộ đối tác gửi file) từ CSV hoặc JSON.
+ *
+ * - File được đọc tuần tự từng dòng (CSV) / từng phần tử mảng (JSON), gom thành lô chunk-size dòng;
+ *   chỉ giữ 1 lô trong bộ nhớ.
+ * - Mỗi lô 1 transaction: chủ nuôi, pet, dịch vụ kiểm tra bằng 1 query / loại cho cả lô; sức chứa giữ
+ *   theo từng khung giờ (SlotCapacityService.reserveUpTo) nên khung giờ thiếu chỗ chỉ làm hỏng các dòng vượt
+ *   quá, theo thứ tự trong file; ghi appointments / dịch vụ / bệnh án của cả lô bằng 3 câu lệnh.
+ * - Dòng lỗi không chặn các dòng khác; báo cáo trả về kết quả từng dòng.
+ *
+ * Khóa slot của cả lô được giữ tới khi lô commit; lô 200 dòng rải trên nhiều ngày có thể chiếm phần lớn 64 stripe
+ * của SlotCapacityService, khiến đặt lịch thường ở slot khác chung stripe phải chờ (tối đa lock-timeout-ms).
+ * Lô nhỏ hơn (chunk-size) giảm thời gian giữ khóa nhưng tốn thêm query và transaction cho mỗi file.
+ */
+@Slf4j
+@Service
+public class BookingImportService {
+
+    private static final String CREATED = "CREATED";
+    private static final String FAILED = "FAILED";
+
+    private final UserRepository userRepository;
+    private final PetRepository petRepository;
+    private final PetServiceRepository petServiceRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final SlotCapacityService slotCapacityService;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final AppointmentReminderScheduler reminderScheduler;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxRows;
+
+    public BookingImportService(UserRepository userRepository,
+                                PetRepository petRepository,
+                                PetServiceRepository petServiceRepository,
+                                AppointmentRepository appointmentRepository,
+                                SlotCapacityService slotCapacityService,
+                                SlotAvailabilityService slotAvailabilityService,
+                                AppointmentReminderScheduler reminderScheduler,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${appointment.import.chunk-size:200}") int chunkSize,
+                                @Value("${appointment.import.max-rows:5000}") int maxRows) {
+        this.userRepository = userRepository;
+        this.petRepository = petRepository;
+        this.petServiceRepository = petServiceRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.slotCapacityService = slotCapacityService;
+        this.slotAvailabilityService = slotAvailabilityService;
+        this.reminderScheduler = reminderScheduler;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.maxRows = maxRows;
+    }
+
+    // format = "csv" | "json"
+    public BookingImportResponse importBookings(InputStream input, String format) {
+        long startedAt = System.currentTimeMillis();
+        List<BookingImportResponse.RowResult> results = new ArrayList<>();
+        boolean truncated = false;
+        String error = null;
+
+        try (RowReader reader = "json".equals(format) ? new JsonRowReader(input) : new CsvRowReader(input)) {
+            List<BookingImportRow> chunk = new ArrayList<>(chunkSize);
+            int firstRow = 1;
+            int rowCount = 0;
+            while (true) {
+                BookingImportRow row;
+                try {
+                    if (!reader.hasNext()) {
+                        break;
+                    }
+                    if (rowCount == maxRows) {
+                        truncated = true;
+                        break;
+                    }
+                    row = reader.next();
+                } catch (IOException | RuntimeException e) {
+                    // File hỏng giữa chừng: vẫn xử lý các dòng đã đọc được, phần sau bỏ qua
+                    error = "Dừng đọc file ở dòng " + (rowCount + 1) + ": " + e.getMessage();
+                    break;
+                }
+                chunk.add(row);
+                rowCount++;
+                if (chunk.size() == chunkSize) {
+                    results.addAll(processChunk(firstRow, chunk));
+                    firstRow += chunk.size();
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                results.addAll(processChunk(firstRow, chunk));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Không đọc được file: " + e.getMessage());
+        }
+
+        int created = (int) results.stream().filter(r -> CREATED.equals(r.getStatus())).count();
+        return BookingImportResponse.builder()
+                .totalRows(results.size())
+                .createdCount(created)
+                .failedCount(results.size() - created)
+                .truncated(truncated)
+                .error(error)
+                .elapsedMillis(System.currentTimeMillis() - startedAt)
+                .rows(results)
+                .build();
+    }
+
+    // ── Xử lý 1 lô ───────────────────────────────────────────────────────────
+
+    // Dòng đã qua kiểm tra, chờ giữ chỗ và ghi DB
+    private record Candidate(int index, User owner, List<Pet> pets, List<Long> serviceIds,
+                             LocalDate date, LocalTime time, String notes) {
+    }
+
+    private List<BookingImportResponse.RowResult> processChunk(int firstRow, List<BookingImportRow> rows) {
+        List<BookingImportResponse.RowResult> results = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            results.add(BookingImportResponse.RowResult.builder().row(firstRow + i).build());
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> importChunk(rows, results));
+        } catch (RuntimeException e) {
+            // Cả lô rollback: các dòng định tạo đều không được ghi
+            log.warn("Nhập lịch: lô bắt đầu ở dòng {} bị rollback", firstRow, e);
+            for (BookingImportResponse.RowResult result : results) {
+                if (!FAILED.equals(result.getStatus())) {
+                    result.setStatus(FAILED);
+                    result.setBookingCode(null);
+                    result.setAppointmentIds(null);
+                    result.setMessage("Không ghi được lô dữ liệu: " + e.getMessage());
+                }
+            }
+        }
+        return results;
+    }
+
+    private void importChunk(List<BookingImportRow> rows, List<BookingImportResponse.RowResult> results) {
+        // Mỗi loại 1 query cho cả lô
+        Set<String> emails = new HashSet<>();
+        Set<Long> serviceIds = new HashSet<>();
+        for (BookingImportRow row : rows) {
+            if (row.getOwnerEmail() != null && !row.getOwnerEmail().isBlank()) {
+                emails.add(row.getOwnerEmail().trim());
+            }
+            if (row.getServiceIds() != null) {
+                serviceIds.addAll(row.getServiceIds());
+            }
+        }
+        Map<String, User> ownersByEmail = emails.isEmpty() ? Map.of() : userRepository.findByEmailIn(emails).stream()
+                .collect(Collectors.toMap(User::getEmail, Function.identity()));
+        Map<Long, List<Pet>> petsByOwner = ownersByEmail.isEmpty() ? Map.of()
+                : petRepository.findByOwnerIdIn(ownersByEmail.values().stream().map(User::getId).toList()).stream()
+                        .collect(Collectors.groupingBy(p -> p.getOwner().getId()));
+        Map<Long, PetService> servicesById = petServiceRepository.findAllById(serviceIds).stream()
+                .collect(Collectors.toMap(PetService::getId, Function.identity()));
+
+        // Kiểm tra từng dòng trong bộ nhớ, gom theo khung giờ (sắp theo thứ tự khóa của SlotCapacityService
+        // để 2 lần nhập song song không chờ khóa của nhau)
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> seenPetSlots = new HashSet<>();
+        Map<LocalDateTime, List<Candidate>> candidatesBySlot = new TreeMap<>(slotCapacityService.lockOrder());
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                Candidate candidate = validate(i, rows.get(i), ownersByEmail, petsByOwner, servicesById, now);
+                for (Pet pet : candidate.pets()) {
+                    if (!seenPetSlots.add(pet.getId() + "@" + candidate.date().atTime(candidate.time()))) {
+                        throw new RuntimeException("Pet " + pet.getName() + " đã có dòng khác cùng khung giờ trong file");
+                    }
+                }
+                candidatesBySlot.computeIfAbsent(candidate.date().atTime(candidate.time()), k -> new ArrayList<>())
+                        .add(candidate);
+            } catch (RuntimeException e) {
+                fail(results.get(i), e.getMessage());
+            }
+        }
+
+        // Giữ chỗ theo khung giờ: mỗi nhóm 1 chỗ, khung giờ thiếu chỗ thì các dòng sau trong file bị từ chối
+        List<Candidate> accepted = new ArrayList<>();
+        for (Map.Entry<LocalDateTime, List<Candidate>> slot : candidatesBySlot.entrySet()) {
+            List<Candidate> candidates = slot.getValue();
+            LocalDate date = slot.getKey().toLocalDate();
+            LocalTime time = slot.getKey().toLocalTime();
+            int granted;
+            try {
+                granted = slotCapacityService.reserveUpTo(date, time, candidates.size());
+            } catch (RuntimeException e) {
+                candidates.forEach(c -> fail(results.get(c.index()), e.getMessage()));
+                continue;
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                if (i < granted) {
+                    accepted.add(candidates.get(i));
+                } else {
+                    fail(results.get(candidates.get(i).index()), "Khung giờ " + time + " ngày " + date + " đã hết chỗ");
+                }
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        // Ghi cả lô bằng 3 câu lệnh
+        String codePrefix = "BK-" + now.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-";
+        Map<Candidate, String> codes = new HashMap<>();
+        List<AppointmentRepositoryCustom.NewBookingGroup> groups = new ArrayList<>(accepted.size());
+        for (Candidate candidate : accepted) {
+            String bookingCode = codePrefix + UUID.randomUUID().toString().substring(0, 8);
+            codes.put(candidate, bookingCode);
+            groups.add(new AppointmentRepositoryCustom.NewBookingGroup(
+                    candidate.owner().getId(), candidate.pets().stream().map(Pet::getId).toList(),
+                    candidate.serviceIds(), candidate.date(), candidate.time(), bookingCode, candidate.notes()));
+        }
+        Map<String, List<AppointmentRepositoryCustom.InsertedAppointment>> inserted =
+                appointmentRepository.insertBookingGroups(groups);
+
+        for (Candidate candidate : accepted) {
+            String bookingCode = codes.get(candidate);
+            User owner = candidate.owner();
+            slotAvailabilityService.bookedAfterCommit(candidate.date(), candidate.time());
+            reminderScheduler.scheduleAfterCommit(bookingCode, owner.getId(), owner.getEmail(), owner.getFullName(),
+                    candidate.date(), candidate.time(), candidate.pets().size());
+
+            BookingImportResponse.RowResult result = results.get(candidate.index());
+            result.setStatus(CREATED);
+            result.setBookingCode(bookingCode);
+            result.setAppointmentIds(inserted.getOrDefault(bookingCode, List.of()).stream()
+                    .map(AppointmentRepositoryCustom.InsertedAppointment::id)
+                    .toList());
+        }
+    }
+
+    private Candidate validate(int index, BookingImportRow row, Map<String, User> ownersByEmail,
+                               Map<Long, List<Pet>> petsByOwner, Map<Long, PetService> servicesById,
+                               LocalDateTime now) {
+        if (row.getOwnerEmail() == null || row.getOwnerEmail().isBlank()) {
+            throw new RuntimeException("Thiếu email chủ nuôi");
+        }
+        User owner = ownersByEmail.get(row.getOwnerEmail().trim());
+        if (owner == null) {
+            throw new RuntimeException("User not found: " + row.getOwnerEmail().trim());
+        }
+
+        LocalDate date;
+        LocalTime time;
+        try {
+            date = LocalDate.parse(row.getAppointmentDate().trim());
+            time = LocalTime.parse(row.getAppointmentTime().trim());
+        } catch (NullPointerException | DateTimeParseException e) {
+            throw new RuntimeException("Ngày / giờ khám không hợp lệ");
+        }
+        if (slotAvailabilityService.slotIndex(time) < 0) {
+            throw new RuntimeException("Khung giờ không hợp lệ: " + time);
+        }
+        if (date.atTime(time).isBefore(now)) {
+            throw new RuntimeException("Không thể đặt lịch trong quá khứ");
+        }
+
+        // Pet chọn theo id hoặc theo tên, đều phải thuộc chủ nuôi
+        List<Pet> ownedPets = petsByOwner.getOrDefault(owner.getId(), List.of());
+        Set<Pet> pets = new LinkedHashSet<>();
+        if (row.getPetIds() != null) {
+            for (Long petId : row.getPetIds()) {
+                pets.add(ownedPets.stream()
+                        .filter(p -> p.getId().equals(petId))
+                        .findFirst()
+                        .orElseThrow(() -> new RuntimeException("Pet " + petId + " không thuộc user này")));
+            }
+        }
+        if (row.getPetNames() != null) {
+            for (String name : row.getPetNames()) {
+                List<Pet> matches = ownedPets.stream()
+                        .filter(p -> p.getName() != null && p.getName().trim().equalsIgnoreCase(name.trim()))
+                        .toList();
+                if (matches.isEmpty()) {
+                    throw new RuntimeException("Không tìm thấy pet tên " + name.trim() + " của user này");
+                }
+                if (matches.size() > 1) {
+                    throw new RuntimeException("User có nhiều pet tên " + name.trim() + ", hãy dùng petIds");
+                }
+                pets.add(matches.get(0));
+            }
+        }
+        if (pets.isEmpty()) {
+            throw new RuntimeException("Vui lòng chọn ít nhất 1 thú cưng");
+        }
+
+        List<Long> serviceIds = new ArrayList<>(new LinkedHashSet<>(
+                row.getServiceIds() != null ? row.getServiceIds() : List.of()));
+        for (Long serviceId : serviceIds) {
+            if (!servicesById.containsKey(serviceId)) {
+                throw new RuntimeException("Service not found: " + serviceId);
+            }
+        }
+        return new Candidate(index, owner, new ArrayList<>(pets), serviceIds, date, time, row.getNotes());
+    }
+
+    private void fail(BookingImportResponse.RowResult result, String message) {
+        result.setStatus(FAILED);
+        result.setMessage(message);
+    }
+
+    // ── Đọc file tuần tự ─────────────────────────────────────────────────────
+
+    interface RowReader extends AutoCloseable {
+        boolean hasNext() throws IOException;
+
+        BookingImportRow next() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    // Mảng JSON các BookingImportRow, đọc từng phần tử bằng streaming parser
+    private class JsonRowReader implements RowReader {
+        private final JsonParser parser;
+        private JsonToken current;
+
+        JsonRowReader(InputStream input) {
+            this.parser = objectMapper.createParser(input);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new RuntimeException("File JSON phải là 1 mảng các dòng lịch khám");
+            }
+            this.current = parser.nextToken();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current == JsonToken.START_OBJECT;
+        }
+
+        @Override
+        public BookingImportRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BookingImportRow row = objectMapper.readValue(parser, BookingImportRow.class);
+            current = parser.nextToken();
+            return row;
+        }
+
+        @Override
+        public void close() {
+            parser.close();
+        }
+    }
+
+    // CSV có dòng tiêu đề (tên cột như BookingImportRow, không phân biệt hoa thường);
+    // danh sách trong 1 ô ngăn cách bằng "|", ô có dấu phẩy / xuống dòng đặt trong ngoặc kép
+    static class CsvRowReader implements RowReader {
+        private final BufferedReader reader;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private List<String> pending;
+
+        CsvRowReader(InputStream input) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            List<String> header = readRecord();
+            if (header == null) {
+                throw new RuntimeException("File CSV trống");
+            }
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT), i);
+            }
+            if (!columns.containsKey("owneremail")) {
+                throw new RuntimeException("File CSV thiếu cột ownerEmail");
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            while (pending == null) {
+                List<String> record = readRecord();
+                if (record == null) {
+                    return false;
+                }
+                // Bỏ dòng trống
+                if (record.size() > 1 || !record.get(0).isBlank()) {
+                    pending = record;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public BookingImportRow next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> record = pending;
+            pending = null;
+
+            BookingImportRow row = new BookingImportRow();
+            row.setOwnerEmail(cell(record, "owneremail"));
+            row.setPetIds(ids(cell(record, "petids")));
+            row.setPetNames(list(cell(record, "petnames")));
+            row.setServiceIds(ids(cell(record, "serviceids")));
+            row.setAppointmentDate(cell(record, "appointmentdate"));
+            row.setAppointmentTime(cell(record, "appointmenttime"));
+            row.setNotes(cell(record, "notes"));
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private String cell(List<String> record, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private List<String> list(String value) {
+            if (value == null) {
+                return null;
+            }
+            return Arrays.stream(value.split("\\|")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        }
+
+        // Id không phải số được giữ lại dưới dạng -1 để dòng đó báo lỗi "không tìm thấy" thay vì bị bỏ qua
+        private List<Long> ids(String value) {
+            List<String> parts = list(value);
+            if (parts == null) {
+                return null;
+            }
+            return parts.stream().map(s -> {
+                try {
+                    return Long.parseLong(s);
+                } catch (NumberFormatException e) {
+                    return -1L;
+                }
+            }).toList();
+        }
+
+        // 1 bản ghi CSV (RFC 4180), có thể trải nhiều dòng vật lý khi ô nằm trong ngoặc kép; null khi hết file
+        private List<String> readRecord() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            List<String> cells = new ArrayList<>();
+            StringBuilder cell = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            cell.append('"');
+                            i++;
+                        } else if (c == '"') {
+                            quoted = false;
+                        } else {
+                            cell.append(c);
+                        }
+                    } else if (c == '"') {
+                        quoted = true;
+                    } else if (c == ',') {
+                        cells.add(cell.toString());
+                        cell.setLength(0);
+                    } else {
+                        cell.append(c);
+                    }
+                }
+                if (!quoted) {
+                    break;
+                }
+                line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                cell.append('\n');
+            }
+            cells.add(cell.toString());
+            return cells;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.entity.Appointment;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.AppointmentRepository;
+import com.example.backend_pet.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Feed lịch ICS theo từng user: bác sĩ nhận lịch được phân công, khách nhận lịch mình đã đặt.
+ *
+ * URL feed chứa calendarToken bí mật thay cho JWT. Mỗi VEVENT là 1 nhóm booking, được gộp ngay khi đọc
+ * từ Stream của query (sắp theo ngày, giờ, bookingCode) và ghi thẳng ra response — không dựng list trong RAM.
+ * ETag = phiên bản lịch (số appointment + updatedAt mới nhất trong cửa sổ feed), app lịch poll định kỳ
+ * gửi If-None-Match và nhận 304 khi không có gì đổi, chỉ tốn 1 query đếm.
+ */
+@Service
+public class CalendarFeedService {
+
+    private static final String PRODID = "-//Backend Pet//Lich kham//VI";
+    private static final DateTimeFormatter UTC_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final int MAX_LINE_OCTETS = 75;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final UserRepository userRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorTimelineIndex doctorTimelineIndex;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ZoneId clinicZone;
+    private final int pastDays;
+    private final int futureDays;
+
+    public CalendarFeedService(UserRepository userRepository,
+                               AppointmentRepository appointmentRepository,
+                               DoctorTimelineIndex doctorTimelineIndex,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${calendar.time-zone:Asia/Ho_Chi_Minh}") String clinicZone,
+                               @Value("${calendar.feed.past-days:30}") int pastDays,
+                               @Value("${calendar.feed.future-days:180}") int futureDays) {
+        this.userRepository = userRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.doctorTimelineIndex = doctorTimelineIndex;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.clinicZone = ZoneId.of(clinicZone);
+        this.pastDays = pastDays;
+        this.futureDays = futureDays;
+    }
+
+    // Feed đã xác định user, cửa sổ ngày và phiên bản lịch
+    public record Feed(Long userId, boolean doctor, LocalDate from, LocalDate to, String etag) {
+    }
+
+    // ── Quản lý token ────────────────────────────────────────────────────────
+
+    // Lấy token feed của user, tạo mới nếu chưa có
+    @Transactional
+    public String getOrCreateToken(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        if (user.getCalendarToken() == null) {
+            user.setCalendarToken(newToken());
+        }
+        return user.getCalendarToken();
+    }
+
+    // Đổi token (URL cũ bị lộ) — các app lịch đang dùng URL cũ sẽ nhận 404
+    @Transactional
+    public String rotateToken(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        user.setCalendarToken(newToken());
+        return user.getCalendarToken();
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // ── Feed ─────────────────────────────────────────────────────────────────
+
+    public Feed open(String token) {
+        User user = userRepository.findByCalendarToken(token)
+                .filter(u -> u.getStatus() == User.Status.ACTIVE)
+                .orElseThrow(() -> new RuntimeException("Calendar feed not found"));
+        boolean doctor = user.getRole() == User.Role.DOCTOR;
+
+        LocalDate today = LocalDate.now(clinicZone);
+        LocalDate from = today.minusDays(pastDays);
+        LocalDate to = today.plusDays(futureDays);
+        AppointmentRepository.CalendarVersionView version = doctor
+                ? appointmentRepository.findDoctorCalendarVersion(user.getId(), from, to)
+                : appointmentRepository.findOwnerCalendarVersion(user.getId(), from, to);
+
+        // Cửa sổ trượt theo ngày nên ngày bắt đầu cũng là 1 phần của phiên bản
+        LocalDateTime lastUpdated = version.getLastUpdated();
+        String etag = "\"" + from.toEpochDay() + "-" + version.getTotal() + "-"
+                + (lastUpdated != null ? lastUpdated.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0)
+                + "\"";
+        return new Feed(user.getId(), doctor, from, to, etag);
+    }
+
+    public StreamingResponseBody stream(Feed feed) {
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writeLine(writer, "BEGIN:VCALENDAR");
+            writeLine(writer, "VERSION:2.0");
+            writeLine(writer, "PRODID:" + PRODID);
+            writeLine(writer, "CALSCALE:GREGORIAN");
+            writeLine(writer, "METHOD:PUBLISH");
+            writeLine(writer, "X-WR-CALNAME:" + escape(feed.doctor() ? "Lịch làm việc" : "Lịch khám thú cưng"));
+            writeLine(writer, "X-PUBLISHED-TTL:PT15M");
+
+            // Stream của Spring Data cần transaction mở suốt lúc đọc
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<AppointmentRepository.CalendarEventRow> rows = feed.doctor()
+                        ? appointmentRepository.streamDoctorCalendar(feed.userId(), feed.from(), feed.to())
+                        : appointmentRepository.streamOwnerCalendar(feed.userId(), feed.from(), feed.to())) {
+                    writeEvents(writer, rows.iterator(), feed.doctor());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            writeLine(writer, "END:VCALENDAR");
+            writer.flush();
+        };
+    }
+
+    // Gộp các dòng liên tiếp cùng bookingCode thành 1 VEVENT
+    private void writeEvents(Writer writer, Iterator<AppointmentRepository.CalendarEventRow> rows,
+                             boolean doctor) throws IOException {
+        EventBuilder current = null;
+        while (rows.hasNext()) {
+            AppointmentRepository.CalendarEventRow row = rows.next();
+            if (current != null && !current.bookingCode.equals(row.getBookingCode())) {
+                writeEvent(writer, current, doctor);
+                current = null;
+            }
+            if (current == null) {
+                current = new EventBuilder(row);
+            }
+            current.add(row);
+        }
+        if (current != null) {
+            writeEvent(writer, current, doctor);
+        }
+    }
+
+    private void writeEvent(Writer writer, EventBuilder event, boolean doctor) throws IOException {
+        // Thời lượng như lịch bác sĩ: tổng duration dịch vụ của các pet chưa hủy (nhóm đã hủy hết thì tính cả nhóm)
+        long minutes = event.activeCount > 0 ? event.activeMinutes : event.cancelledMinutes;
+        LocalDateTime start = event.date.atTime(event.time);
+        LocalDateTime end = start.plusMinutes(doctorTimelineIndex.durationOf(minutes));
+
+        String summary = doctor
+                ? "Khám: " + event.pets + " (" + event.ownerName + ")"
+                : "Lịch khám thú cưng: " + event.pets;
+        StringBuilder description = new StringBuilder("Mã đặt lịch: ").append(event.bookingCode);
+        if (doctor) {
+            description.append("\nChủ nuôi: ").append(event.ownerName);
+            if (event.ownerPhone != null && !event.ownerPhone.isBlank()) {
+                description.append(" - ").append(event.ownerPhone);
+            }
+        } else {
+            description.append("\nBác sĩ: ").append(event.doctorName != null ? event.doctorName : "Chưa phân công");
+        }
+        if (event.notes != null && !event.notes.isBlank()) {
+            description.append("\nGhi chú: ").append(event.notes);
+        }
+
+        writeLine(writer, "BEGIN:VEVENT");
+        writeLine(writer, "UID:" + event.bookingCode + (doctor ? "-doctor" : "") + "@backend-pet");
+        writeLine(writer, "DTSTAMP:" + utc(event.lastUpdated, ZoneId.systemDefault()));
+        writeLine(writer, "LAST-MODIFIED:" + utc(event.lastUpdated, ZoneId.systemDefault()));
+        writeLine(writer, "DTSTART:" + utc(start, clinicZone));
+        writeLine(writer, "DTEND:" + utc(end, clinicZone));
+        writeLine(writer, "SUMMARY:" + escape(summary));
+        writeLine(writer, "DESCRIPTION:" + escape(description.toString()));
+        writeLine(writer, "STATUS:" + (event.activeCount == 0 ? "CANCELLED"
+                : event.pendingCount > 0 ? "TENTATIVE" : "CONFIRMED"));
+        writeLine(writer, "END:VEVENT");
+    }
+
+    private String utc(LocalDateTime time, ZoneId zone) {
+        LocalDateTime value = time != null ? time : LocalDateTime.now();
+        return value.atZone(zone).withZoneSameInstant(ZoneOffset.UTC).format(UTC_FORMAT);
+    }
+
+    // Escape TEXT theo RFC 5545
+    private String escape(String text) {
+        return text.replace("\\", "\\\\")
+                .replace(";", "\\;")
+                .replace(",", "\\,")
+                .replace("\r\n", "\\n")
+                .replace("\n", "\\n");
+    }
+
+    // Dòng quá 75 octet (UTF-8) được gập: CRLF + 1 dấu cách, không cắt giữa 1 ký tự
+    private void writeLine(Writer writer, String line) throws IOException {
+        int octets = 0;
+        int i = 0;
+        while (i < line.length()) {
+            int codePoint = line.codePointAt(i);
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (octets + size > MAX_LINE_OCTETS) {
+                writer.write("\r\n ");
+                octets = 1;
+            }
+            writer.write(line, i, Character.charCount(codePoint));
+            octets += size;
+            i += Character.charCount(codePoint);
+        }
+        writer.write("\r\n");
+    }
+
+    // Trạng thái đang gộp của 1 nhóm booking
+    private static class EventBuilder {
+        private final String bookingCode;
+        private final LocalDate date;
+        private final LocalTime time;
+        private final String notes;
+        private final String ownerName;
+        private final String ownerPhone;
+        private String doctorName;
+        private final StringBuilder pets = new StringBuilder();
+        private LocalDateTime lastUpdated;
+        private long activeMinutes;
+        private long cancelledMinutes;
+        private int activeCount;
+        private int pendingCount;
+
+        EventBuilder(AppointmentRepository.CalendarEventRow first) {
+            this.bookingCode = first.getBookingCode();
+            this.date = first.getAppointmentDate();
+            this.time = first.getAppointmentTime();
+            this.notes = first.getNotes();
+            this.ownerName = first.getOwnerName();
+            this.ownerPhone = first.getOwnerPhone();
+        }
+
+        void add(AppointmentRepository.CalendarEventRow row) {
+            if (pets.length() > 0) {
+                pets.append(", ");
+            }
+            pets.append(row.getPetName());
+            if (doctorName == null) {
+                doctorName = row.getDoctorName();
+            }
+            if (row.getUpdatedAt() != null && (lastUpdated == null || row.getUpdatedAt().isAfter(lastUpdated))) {
+                lastUpdated = row.getUpdatedAt();
+            }
+            if (row.getStatus() == Appointment.AppointmentStatus.CANCELLED) {
+                cancelledMinutes += row.getTotalMinutes();
+            } else {
+                activeMinutes += row.getTotalMinutes();
+                activeCount++;
+                if (row.getStatus() == Appointment.AppointmentStatus.PENDING) {
+                    pendingCount++;
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,31 @@
 package com.example.backend_pet.service;
 
+import com.example.backend_pet.dto.CartBatchRequest;
 import com.example.backend_pet.dto.CartResponse;
 import com.example.backend_pet.entity.Cart;
 import com.example.backend_pet.entity.CartItem;
 import com.example.backend_pet.entity.Product;
-import com.example.backend_pet.entity.User;
 import com.example.backend_pet.repository.CartItemRepository;
 import com.example.backend_pet.repository.CartRepository;
 import com.example.backend_pet.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
@@ -25,6 +35,13 @@ public class CartService {
     private final CartItemRepository cartItemRepository;
     private final UserRepository userRepository;
     private final ProductService productService;
+    private final PricingEngine pricingEngine;
+    // Chỉ có bean khi cart.store.mode=memory, mặc định giỏ hàng đọc/ghi thẳng DB
+    private final ObjectProvider<CartWriteBehindStore> writeBehindStore;
+
+    private CartWriteBehindStore store() {
+        return writeBehindStore.getIfAvailable();
+    }
 
     // Lấy hoặc tạo cart cho user
     @Transactional
@@ -33,16 +50,14 @@ public class CartService {
             .orElseGet(() -> createCartForUser(userId));
     }
 
-    // Tạo cart mới cho user
+    // Tạo cart mới cho user (INSERT ... ON CONFLICT DO NOTHING nên không lỗi khi 2 request cùng tạo)
     private Cart createCartForUser(Long userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found with id: " + userId));
-
-        Cart cart = Cart.builder()
-            .user(user)
-            .build();
-
-        return cartRepository.save(cart);
+        if (!userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found with id: " + userId);
+        }
+        cartRepository.insertIfAbsent(userId);
+        return cartRepository.findByUserIdWithItems(userId)
+            .orElseThrow(() -> new RuntimeException("Cart not found"));
     }
 
     // Lấy cart của user (dạng DTO)
@@ -50,121 +65,303 @@ public class CartService {
     // vì getOrCreateCart có thể INSERT khi user chưa có cart
     @Transactional
     public CartResponse getCart(Long userId) {
+        return getCart(userId, null);
+    }
+
+    // Lấy cart kèm giá sau khi áp dụng mã voucher (voucherCode null = chỉ khuyến mãi tự động)
+    @Transactional
+    public CartResponse getCart(Long userId, String voucherCode) {
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            return mapToCartResponse(userId, store.get(userId), voucherCode);
+        }
         Cart cart = getOrCreateCart(userId);
-        return mapToCartResponse(cart);
+        return mapToCartResponse(cart, voucherCode);
     }
 
+    // Mỗi thao tác ghi bên dưới = 1 câu lệnh upsert/delete + 1 query đọc lại giỏ để trả response.
+    // Chỉ khi câu lệnh ghi không tác động dòng nào mới query thêm để báo lỗi cụ thể.
+
     // Thêm sản phẩm vào giỏ hàng
     @Transactional
     public CartResponse addItemToCart(Long userId, Long productId, Integer quantity) {
-        Cart cart = getOrCreateCart(userId);
-        Product product = productService.getProductById(productId);
-
-        // Kiểm tra stock
-        if (product.getStock() < quantity) {
-            throw new RuntimeException("Not enough stock for product: " + product.getName());
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            Product product = productService.getProductById(productId);
+            return mapToCartResponse(userId, store.update(userId, items -> {
+                int next = items.getOrDefault(productId, 0) + quantity;
+                if (product.getStock() < next) {
+                    throw new RuntimeException("Not enough stock for product: " + product.getName());
+                }
+                items.put(productId, next);
+            }), null);
         }
 
-        // Kiểm tra đã có sản phẩm này chưa
-        CartItem existingItem = cartItemRepository
-            .findByCartIdAndProductId(cart.getId(), productId)
-            .orElse(null);
+        int affected;
+        try {
+            affected = cartItemRepository.upsertAddQuantity(userId, productId, quantity);
+        } catch (DataIntegrityViolationException e) {
+            // FK carts.user_id → users.id không thỏa
+            throw new RuntimeException("User not found with id: " + userId);
+        }
 
-        if (existingItem != null) {
-            // Đã có → Tăng số lượng
-            existingItem.setQuantity(existingItem.getQuantity() + quantity);
-            cartItemRepository.save(existingItem);
-        } else {
-            // Chưa có → Thêm mới
-            CartItem newItem = CartItem.builder()
-                .cart(cart)
-                .product(product)
-                .quantity(quantity)
-                .build();
-            cart.addItem(newItem);
-            cartItemRepository.save(newItem);
+        if (affected == 0) {
+            Product product = productService.getProductById(productId);
+            throw new RuntimeException("Not enough stock for product: " + product.getName());
         }
 
-        return mapToCartResponse(cart);
+        return mapToCartResponse(getOrCreateCart(userId), null);
     }
 
     // Cập nhật số lượng
     @Transactional
     public CartResponse updateItemQuantity(Long userId, Long productId, Integer quantity) {
-        Cart cart = getOrCreateCart(userId);
-
         if (quantity <= 0) {
             // Số lượng <= 0 → Xóa item
             return removeItemFromCart(userId, productId);
         }
 
-        CartItem item = cartItemRepository
-            .findByCartIdAndProductId(cart.getId(), productId)
-            .orElseThrow(() -> new RuntimeException("Item not found in cart"));
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            Product product = productService.getProductById(productId);
+            return mapToCartResponse(userId, store.update(userId, items -> {
+                if (!items.containsKey(productId)) {
+                    throw new RuntimeException("Item not found in cart");
+                }
+                if (product.getStock() < quantity) {
+                    throw new RuntimeException("Not enough stock");
+                }
+                items.put(productId, quantity);
+            }), null);
+        }
 
-        // Kiểm tra stock
-        if (item.getProduct().getStock() < quantity) {
+        if (cartItemRepository.updateQuantity(userId, productId, quantity) == 0) {
+            if (!cartItemRepository.existsByCart_User_IdAndProduct_Id(userId, productId)) {
+                throw new RuntimeException("Item not found in cart");
+            }
             throw new RuntimeException("Not enough stock");
         }
 
-        item.setQuantity(quantity);
-        cartItemRepository.save(item);
-
-        return mapToCartResponse(cart);
+        return mapToCartResponse(getOrCreateCart(userId), null);
     }
 
     // Xóa sản phẩm khỏi giỏ
     @Transactional
     public CartResponse removeItemFromCart(Long userId, Long productId) {
-        Cart cart = getOrCreateCart(userId);
-        cartItemRepository.deleteByCartIdAndProductId(cart.getId(), productId);
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            return mapToCartResponse(userId, store.update(userId, items -> items.remove(productId)), null);
+        }
+        cartItemRepository.deleteByUserIdAndProductId(userId, productId);
+        return mapToCartResponse(getOrCreateCart(userId), null);
+    }
 
-        // Refresh cart
-        cart = cartRepository.findByUserIdWithItems(userId)
-            .orElseThrow(() -> new RuntimeException("Cart not found"));
+    // Áp dụng nhiều thao tác ADD/SET/REMOVE trong 1 transaction:
+    // 1 upsert lấy cart id (khóa dòng cart), 1 query tồn kho + số lượng hiện tại cho mọi sản phẩm liên quan,
+    // 1 DELETE cho các dòng bị xóa, 1 JDBC batch cho các dòng còn lại, 1 query đọc lại giỏ
+    @Transactional
+    public CartResponse applyBatch(Long userId, List<CartBatchRequest.Operation> operations) {
+        Set<Long> productIds = operations.stream()
+            .map(CartBatchRequest.Operation::getProductId)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            Map<Long, Product> products = productService.getProductsByIds(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+            return mapToCartResponse(userId, store.update(userId, items -> {
+                Map<Long, Integer> finalQuantities = foldOperations(operations, products.keySet(),
+                    productId -> items.getOrDefault(productId, 0));
+                finalQuantities.forEach((productId, quantity) -> {
+                    if (quantity == 0) {
+                        items.remove(productId);
+                    } else if (!quantity.equals(items.get(productId))) {
+                        Product product = products.get(productId);
+                        if (product.getStock() < quantity) {
+                            throw new RuntimeException("Not enough stock for product: " + product.getName());
+                        }
+                        items.put(productId, quantity);
+                    }
+                });
+            }), null);
+        }
 
-        return mapToCartResponse(cart);
+        Long cartId;
+        try {
+            cartId = cartRepository.upsertAndGetId(userId);
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException("User not found with id: " + userId);
+        }
+
+        Map<Long, CartItemRepository.CartLineStockView> lines = cartItemRepository
+            .findStockWithCartQuantity(cartId, productIds).stream()
+            .collect(Collectors.toMap(CartItemRepository.CartLineStockView::getProductId, Function.identity()));
+
+        Map<Long, Integer> finalQuantities = foldOperations(operations, lines.keySet(), productId -> {
+            Integer quantity = lines.get(productId).getQuantity();
+            return quantity != null ? quantity : 0;
+        });
+
+        List<Long> toDelete = new ArrayList<>();
+        Map<Long, Integer> toUpsert = new LinkedHashMap<>();
+        finalQuantities.forEach((productId, quantity) -> {
+            CartItemRepository.CartLineStockView line = lines.get(productId);
+            if (quantity == 0) {
+                if (line.getQuantity() != null) {
+                    toDelete.add(productId);
+                }
+            } else if (!quantity.equals(line.getQuantity())) {
+                if (line.getStock() < quantity) {
+                    throw new RuntimeException("Not enough stock for product: " + line.getName());
+                }
+                toUpsert.put(productId, quantity);
+            }
+        });
+
+        if (!toDelete.isEmpty()) {
+            cartItemRepository.deleteByCartIdAndProductIdIn(cartId, toDelete);
+        }
+        cartItemRepository.batchSetQuantities(cartId, toUpsert);
+
+        return mapToCartResponse(getOrCreateCart(userId), null);
+    }
+
+    // Số lượng cuối cùng của từng sản phẩm sau khi áp dụng lần lượt các thao tác
+    private Map<Long, Integer> foldOperations(List<CartBatchRequest.Operation> operations,
+                                              Set<Long> knownProductIds,
+                                              Function<Long, Integer> currentQuantity) {
+        Map<Long, Integer> finalQuantities = new LinkedHashMap<>();
+        for (CartBatchRequest.Operation op : operations) {
+            if (!knownProductIds.contains(op.getProductId())) {
+                throw new RuntimeException("Product not found with id: " + op.getProductId());
+            }
+            int current = finalQuantities.containsKey(op.getProductId())
+                ? finalQuantities.get(op.getProductId())
+                : currentQuantity.apply(op.getProductId());
+            int next = switch (op.getType()) {
+                case ADD -> {
+                    if (op.getQuantity() == null || op.getQuantity() <= 0) {
+                        throw new RuntimeException("Số lượng thêm phải lớn hơn 0");
+                    }
+                    yield current + op.getQuantity();
+                }
+                case SET -> {
+                    if (op.getQuantity() == null || op.getQuantity() < 0) {
+                        throw new RuntimeException("Số lượng không hợp lệ");
+                    }
+                    yield op.getQuantity();
+                }
+                case REMOVE -> 0;
+            };
+            finalQuantities.put(op.getProductId(), next);
+        }
+        return finalQuantities;
+    }
+
+    // Số lượng từng sản phẩm trong giỏ (productId → quantity) — dùng khi đặt hàng,
+    // đọc cùng nguồn với các API giỏ hàng (store trong RAM nếu bật write-behind)
+    public Map<Long, Integer> getCartQuantities(Long userId) {
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            return store.get(userId);
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (CartItemRepository.CartQuantityView row : cartItemRepository.findQuantitiesByUserId(userId)) {
+            quantities.put(row.getProductId(), row.getQuantity());
+        }
+        return quantities;
     }
 
     // Xóa toàn bộ giỏ hàng
     @Transactional
     public void clearCart(Long userId) {
-        System.out.println("đã đến function clearCart ");
-        Cart cart = getOrCreateCart(userId);
-        cart.getItems().clear();
-        cartRepository.save(cart);
-        System.out.println("đã xoá cart thành công ");
+        CartWriteBehindStore store = store();
+        if (store != null) {
+            // Store trong RAM không tham gia transaction: chỉ xóa (và ghi journal) khi đơn hàng đã commit,
+            // đơn rollback thì giỏ còn nguyên
+            TransactionHooks.afterCommit(() -> {
+                try {
+                    store.clear(userId);
+                } catch (RuntimeException e) {
+                    // Đơn đã commit, không để lỗi xóa giỏ làm request đặt hàng báo lỗi
+                    log.error("Không xóa được giỏ hàng của user {} sau khi đặt hàng", userId, e);
+                }
+            });
+            return;
+        }
+        cartItemRepository.deleteAllByUserId(userId);
     }
 
     // Map Cart entity sang DTO
-    private CartResponse mapToCartResponse(Cart cart) {
-        var items = cart.getItems().stream()
+    private CartResponse mapToCartResponse(Cart cart, String voucherCode) {
+        List<CartLine> lines = cart.getItems().stream()
             .sorted(Comparator.comparing(CartItem::getId)) // Sắp xếp theo ID để giữ thứ tự ổn định
-            .map(item -> CartResponse.CartItemResponse.builder()
-                .id(item.getId())
-                .product(mapToProductResponse(item.getProduct()))
-                .quantity(item.getQuantity())
-                .build())
+            .map(item -> new CartLine(item.getId(), item.getProduct(), item.getQuantity()))
             .collect(Collectors.toList());
 
-        int totalItems = cart.getItems().stream()
-            .mapToInt(CartItem::getQuantity)
-            .sum();
+        return buildCartResponse(cart.getId(), cart.getUser().getId(), lines, voucherCode);
+    }
+
+    // Map giỏ hàng trong store (productId → quantity) sang DTO, 1 query lấy sản phẩm.
+    // Dòng chưa ghi xuống DB nên không có id cart/item.
+    private CartResponse mapToCartResponse(Long userId, Map<Long, Integer> quantities, String voucherCode) {
+        Map<Long, Product> products = quantities.isEmpty() ? Map.of()
+            : productService.getProductsByIds(quantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<CartLine> lines = quantities.entrySet().stream()
+            .filter(e -> products.containsKey(e.getKey()))
+            .map(e -> new CartLine(null, products.get(e.getKey()), e.getValue()))
+            .collect(Collectors.toList());
+
+        return buildCartResponse(null, userId, lines, voucherCode);
+    }
+
+    // Tổng tiền + khuyến mãi tính qua PricingEngine — cùng cách tính với OrderService khi đặt hàng
+    private CartResponse buildCartResponse(Long cartId, Long userId, List<CartLine> lines, String voucherCode) {
+        PricingEngine.PricingResult pricing = pricingEngine.price(lines.stream()
+            .map(line -> new PricingEngine.Line(line.product(), line.quantity()))
+            .collect(Collectors.toList()), voucherCode);
 
-        BigDecimal totalPrice = cart.getItems().stream()
-            .map(item -> item.getProduct().getPrice()
-                .multiply(BigDecimal.valueOf(item.getQuantity())))
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        List<CartResponse.CartItemResponse> items = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            CartLine line = lines.get(i);
+            items.add(CartResponse.CartItemResponse.builder()
+                .id(line.itemId())
+                .product(mapToProductResponse(line.product()))
+                .quantity(line.quantity())
+                .discount(pricing.lineDiscounts().get(i))
+                .build());
+        }
+
+        int totalItems = lines.stream()
+            .mapToInt(CartLine::quantity)
+            .sum();
 
         return CartResponse.builder()
-            .id(cart.getId())
-            .userId(cart.getUser().getId())
+            .id(cartId)
+            .userId(userId)
             .items(items)
             .totalItems(totalItems)
-            .totalPrice(totalPrice)
+            .subtotal(pricing.subtotal())
+            .discountTotal(pricing.discountTotal())
+            .totalPrice(pricing.total())
+            .voucherCode(pricing.voucherCode())
+            .appliedPromotions(pricing.appliedDiscounts().stream()
+                .map(d -> CartResponse.AppliedPromotion.builder()
+                    .id(d.promotionId())
+                    .name(d.name())
+                    .type(d.type().name())
+                    .voucherCode(d.voucherCode())
+                    .amount(d.amount())
+                    .build())
+                .collect(Collectors.toList()))
             .build();
     }
 
+    private record CartLine(Long itemId, Product product, int quantity) {
+    }
+
     // Map Product sang DTO
     private CartResponse.ProductResponse mapToProductResponse(Product product) {
         return CartResponse.ProductResponse.builder()
@@ -0,0 +1,97 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.CartRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Dọn giỏ hàng không được đụng tới quá cart.sweeper.abandoned-after-days ngày.
+ *
+ * Mỗi lô (tối đa batch-size giỏ) chạy trong 1 transaction ngắn: khóa giỏ bằng FOR UPDATE SKIP LOCKED,
+ * cộng dồn thống kê vào cart_abandonment_stats, xóa cart_items rồi carts. Giữa 2 lô nghỉ pause-ms
+ * để không chiếm DB lâu; mỗi lần chạy xử lý tối đa max-batches-per-run lô, phần còn lại để lần sau.
+ *
+ * Ở chế độ mặc định mọi thao tác ghi giỏ hàng đều cập nhật carts.updated_at, nên giỏ còn được dùng sẽ không
+ * bị xóa. Ở chế độ cart.store.mode=memory, updated_at chỉ đổi khi giỏ được ghi xuống DB, còn giỏ chỉ được đọc
+ * vẫn có thể nằm trong RAM: sau khi lô commit, store bỏ các giỏ vừa xóa khỏi cache (hoặc ghi lại toàn bộ nếu
+ * giỏ đang có thay đổi chưa ghi) để cache và DB không lệch nhau.
+ */
+@Slf4j
+@Component
+public class CartSweeper {
+
+    private final CartRepository cartRepository;
+    // Chỉ có bean khi cart.store.mode=memory
+    private final ObjectProvider<CartWriteBehindStore> writeBehindStore;
+    private final TransactionTemplate transactionTemplate;
+    private final int abandonedAfterDays;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final int maxBatchesPerRun;
+
+    public CartSweeper(CartRepository cartRepository,
+                       ObjectProvider<CartWriteBehindStore> writeBehindStore,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${cart.sweeper.abandoned-after-days:30}") int abandonedAfterDays,
+                       @Value("${cart.sweeper.batch-size:500}") int batchSize,
+                       @Value("${cart.sweeper.pause-ms:200}") long pauseMillis,
+                       @Value("${cart.sweeper.max-batches-per-run:200}") int maxBatchesPerRun) {
+        this.cartRepository = cartRepository;
+        this.writeBehindStore = writeBehindStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.abandonedAfterDays = abandonedAfterDays;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(cron = "${cart.sweeper.cron:0 30 3 * * *}")
+    public void sweep() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(abandonedAfterDays);
+        int total = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Integer swept = transactionTemplate.execute(status -> sweepBatch(cutoff));
+            total += swept;
+            if (swept < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Đã dọn {} giỏ hàng không hoạt động từ trước {}", total, cutoff);
+        }
+    }
+
+    // Thống kê phải ghi trước khi xóa, trong cùng transaction với lệnh xóa
+    private int sweepBatch(LocalDateTime cutoff) {
+        List<CartRepository.AbandonedCartView> carts = cartRepository.lockAbandoned(cutoff, batchSize);
+        if (carts.isEmpty()) {
+            return 0;
+        }
+        List<Long> cartIds = carts.stream().map(CartRepository.AbandonedCartView::getId).collect(Collectors.toList());
+        cartRepository.accumulateAbandonmentStats(cartIds);
+        cartRepository.deleteItemsByCartIds(cartIds);
+        cartRepository.deleteByIds(cartIds);
+
+        CartWriteBehindStore store = writeBehindStore.getIfAvailable();
+        if (store != null) {
+            List<Long> userIds = carts.stream().map(CartRepository.AbandonedCartView::getUserId).collect(Collectors.toList());
+            TransactionHooks.afterCommit(() -> store.discardSwept(userIds));
+        }
+        return cartIds.size();
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.CartCoalescingStats;
+import com.example.backend_pet.dto.CartResponse;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gộp các lần cập nhật số lượng liên tiếp của cùng (user, sản phẩm).
+ *
+ * Cập nhật đầu tiên được ghi ngay trên thread của request và mở 1 "cửa sổ" (cart.coalescing.window-ms)
+ * cho (user, sản phẩm) đó, nên 1 lần bấm đơn lẻ không phải chờ. Chỉ khi có cập nhật tiếp theo tới trong
+ * cửa sổ thì nó mới được giữ lại: request đó chờ tới hết cửa sổ rồi ghi số lượng cuối cùng qua CartService
+ * (không có thread pool riêng nên số lần ghi song song không bị giới hạn), các request tới sau chỉ ghi đè
+ * số lượng chờ ghi và mọi request được gộp nhận chung 1 kết quả (giỏ hàng sau khi ghi hoặc cùng 1 lỗi).
+ * Mỗi lần ghi mở cửa sổ mới, nên chuỗi bấm +/- liên tục bị giới hạn ở khoảng 1 lần ghi mỗi cửa sổ.
+ *
+ * Các thao tác khác trên giỏ (thêm, xóa, batch, đặt hàng) phải gọi flushPending trước
+ * để cập nhật đang chờ không bị ghi sau chúng. Cập nhật đang chờ được gom theo user
+ * nên flushPending chỉ đụng tới các sản phẩm của user đó.
+ */
+@Component
+public class CartUpdateCoalescer {
+
+    private final CartService cartService;
+    private final long windowMillis;
+    private final long windowNanos;
+
+    // userId → (productId → cửa sổ đang mở); map con và Window chỉ được đọc / sửa trong compute của map ngoài
+    private final Map<Long, Map<Long, Window>> windows = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong absorbed = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    public CartUpdateCoalescer(CartService cartService,
+                               @Value("${cart.coalescing.window-ms:150}") long windowMillis) {
+        this.cartService = cartService;
+        this.windowMillis = windowMillis;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    // Cập nhật số lượng: ghi ngay nếu (user, sản phẩm) chưa có cửa sổ mở, ngược lại chờ lần ghi gộp rồi trả về giỏ hàng
+    public CartResponse updateItemQuantity(Long userId, Long productId, Integer quantity) {
+        requests.incrementAndGet();
+        if (windowMillis <= 0) {
+            writes.incrementAndGet();
+            return cartService.updateItemQuantity(userId, productId, quantity);
+        }
+
+        Key key = new Key(userId, productId);
+        Pending[] slot = new Pending[1];
+        long[] closesAt = new long[1];
+        boolean[] opened = new boolean[1];
+        // compute chạy nguyên tử theo user, nên không có request nào chen vào giữa lúc slot bị lấy ra để ghi
+        windows.compute(userId, (u, products) -> {
+            Map<Long, Window> map = products != null ? products : new HashMap<>();
+            long now = System.nanoTime();
+            Window window = map.get(productId);
+            if (window == null || (window.next == null && now - window.closesAt >= 0)) {
+                // Không có cửa sổ nào đang mở: request này ghi ngay
+                map.put(productId, new Window(now + windowNanos));
+            } else if (window.next == null) {
+                opened[0] = true;
+                window.next = new Pending(quantity);
+                pendingCount.incrementAndGet();
+                slot[0] = window.next;
+                closesAt[0] = window.closesAt;
+            } else {
+                window.next.quantity = quantity;
+                absorbed.incrementAndGet();
+                slot[0] = window.next;
+            }
+            return map;
+        });
+        if (slot[0] == null) {
+            writes.incrementAndGet();
+            try {
+                return cartService.updateItemQuantity(userId, productId, quantity);
+            } catch (RuntimeException e) {
+                failedWrites.incrementAndGet();
+                throw e;
+            }
+        }
+        if (opened[0]) {
+            // Request giữ slot tự ghi khi hết cửa sổ; flushPending có thể đã ghi sớm hơn thì write bỏ qua
+            awaitWindow(slot[0], closesAt[0]);
+            write(key, slot[0]);
+        }
+
+        try {
+            return slot[0].result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Ghi ngay (trên thread gọi) mọi cập nhật đang chờ của user
+    public void flushPending(Long userId) {
+        List<Map.Entry<Long, Pending>> mine = new ArrayList<>();
+        windows.computeIfPresent(userId, (u, products) -> {
+            products.forEach((productId, window) -> {
+                if (window.next != null) {
+                    mine.add(Map.entry(productId, window.next));
+                }
+            });
+            return products;
+        });
+        for (Map.Entry<Long, Pending> e : mine) {
+            write(new Key(userId, e.getKey()), e.getValue());
+        }
+    }
+
+    // Bỏ các cửa sổ đã đóng mà không có cập nhật nào chờ (lần bấm đơn lẻ không quay lại)
+    @Scheduled(fixedDelayString = "${cart.coalescing.sweep-ms:60000}")
+    public void evictClosedWindows() {
+        for (Long userId : new ArrayList<>(windows.keySet())) {
+            windows.computeIfPresent(userId, (u, products) -> {
+                long now = System.nanoTime();
+                products.values().removeIf(window -> window.next == null && now - window.closesAt >= 0);
+                return products.isEmpty() ? null : products;
+            });
+        }
+    }
+
+    public CartCoalescingStats getStats() {
+        long total = requests.get();
+        long absorbedCount = absorbed.get();
+        return CartCoalescingStats.builder()
+            .windowMillis(windowMillis)
+            .requests(total)
+            .writes(writes.get())
+            .absorbed(absorbedCount)
+            .failedWrites(failedWrites.get())
+            .pending(pendingCount.get())
+            .absorbedRatio(total == 0 ? 0 : (double) absorbedCount / total)
+            .build();
+    }
+
+    // Chờ hết cửa sổ, hoặc tới khi slot đã có kết quả (flushPending ghi trước)
+    private void awaitWindow(Pending slot, long closesAt) {
+        long remaining = closesAt - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            slot.result.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Hết cửa sổ, hoặc đã ghi xong với lỗi — lỗi được ném lại ở join()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Lấy slot ra khỏi cửa sổ rồi mới ghi; nếu slot đã được ghi bởi lượt khác (flushPending / request giữ slot) thì bỏ qua
+    private void write(Key key, Pending slot) {
+        if (!take(key, slot)) {
+            return;
+        }
+        writes.incrementAndGet();
+        try {
+            slot.result.complete(cartService.updateItemQuantity(key.userId(), key.productId(), slot.quantity));
+        } catch (RuntimeException e) {
+            failedWrites.incrementAndGet();
+            slot.result.completeExceptionally(e);
+        } finally {
+            // Error vẫn được ném tiếp trên thread đang ghi; chỉ báo lỗi cho các request khác đang chờ slot để chúng không bị treo
+            if (!slot.result.isDone()) {
+                failedWrites.incrementAndGet();
+                slot.result.completeExceptionally(new RuntimeException("Không thể cập nhật giỏ hàng, vui lòng thử lại"));
+            }
+        }
+    }
+
+    // Lần ghi này mở cửa sổ mới cho (user, sản phẩm): cập nhật tới trong lúc đang ghi sẽ được gộp vào lượt sau
+    private boolean take(Key key, Pending slot) {
+        boolean[] taken = new boolean[1];
+        windows.computeIfPresent(key.userId(), (u, products) -> {
+            Window window = products.get(key.productId());
+            if (window != null && window.next == slot) {
+                window.next = null;
+                window.closesAt = System.nanoTime() + windowNanos;
+                taken[0] = true;
+            }
+            return products;
+        });
+        if (taken[0]) {
+            pendingCount.decrementAndGet();
+        }
+        return taken[0];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Ghi nốt các cập nhật còn chờ để request đang đợi không bị treo
+        for (Long userId : new ArrayList<>(windows.keySet())) {
+            flushPending(userId);
+        }
+    }
+
+    private record Key(Long userId, Long productId) {
+    }
+
+    private static class Window {
+        long closesAt;
+        Pending next;
+
+        Window(long closesAt) {
+            this.closesAt = closesAt;
+        }
+    }
+
+    private static class Pending {
+        // Chỉ được ghi trong compute() của ConcurrentHashMap, đọc sau take() → có happens-before
+        Integer quantity;
+        final CompletableFuture<CartResponse> result = new CompletableFuture<>();
+
+        Pending(Integer quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.CartItemRepository;
+import com.example.backend_pet.repository.CartItemRepositoryCustom.CartDelta;
+import com.example.backend_pet.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Kho giỏ hàng write-behind — chỉ bật khi cart.store.mode=memory.
+ *
+ * - Cache trong RAM (giới hạn số entry + TTL) là nguồn dữ liệu cho mọi thao tác đọc/ghi giỏ hàng.
+ * - Mỗi thay đổi được ghi vào journal append-only (fsync) trước khi trả về cho client. Journal dùng chung cho
+ *   mọi user và append là synchronized: mọi thao tác ghi giỏ hàng của cả hệ thống xếp hàng sau 1 lần fsync,
+ *   nên thông lượng ghi bị giới hạn bởi độ trễ fsync của đĩa.
+ * - Journal chia thành các đoạn đánh số tăng dần; mỗi lần flush đóng đoạn đang ghi, ghi các giỏ "dirty"
+ *   xuống carts/cart_items theo batch, thành công thì xóa các đoạn đã đóng. Đoạn chưa xóa được vẫn nằm
+ *   trên đĩa tới lần flush thành công sau, không bao giờ bị ghi đè.
+ * - Khởi động lại: mọi đoạn journal còn sót được replay theo thứ tự lên dữ liệu trong DB rồi ghi xuống ngay.
+ *
+ * Entry đang dirty hoặc đang được ghi xuống DB không bao giờ bị evict, nên khi cache miss
+ * thì dữ liệu trong DB luôn là bản mới nhất.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cart.store.mode", havingValue = "memory")
+public class CartWriteBehindStore {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final CartItemRepository cartItemRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Journal journal;
+
+    // Cache access-order: entry cũ nhất (ít dùng nhất) đứng đầu — mọi truy cập đều synchronized(cache)
+    private final LinkedHashMap<Long, CartEntry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final Object flushLock = new Object();
+
+    public CartWriteBehindStore(CartItemRepository cartItemRepository,
+                                UserRepository userRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${cart.store.max-entries:10000}") int maxEntries,
+                                @Value("${cart.store.ttl-minutes:30}") long ttlMinutes,
+                                @Value("${cart.store.journal-dir:cart-journal}") String journalDir) {
+        this.cartItemRepository = cartItemRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.journal = new Journal(Paths.get(journalDir));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // ── API cho CartService ──────────────────────────────────────────────────
+
+    // Bản sao số lượng hiện tại của giỏ: productId → quantity, theo thứ tự thêm vào giỏ
+    public Map<Long, Integer> get(Long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            return new LinkedHashMap<>(entryFor(userId).items);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sửa giỏ hàng: mutation chạy trên bản sao, ném exception thì giỏ giữ nguyên.
+    // Thay đổi được ghi journal trước khi áp dụng vào cache. Trả về trạng thái mới của giỏ.
+    public Map<Long, Integer> update(Long userId, Consumer<Map<Long, Integer>> mutation) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CartEntry entry = entryFor(userId);
+            LinkedHashMap<Long, Integer> next = new LinkedHashMap<>(entry.items);
+            mutation.accept(next);
+            next.values().removeIf(quantity -> quantity == null || quantity <= 0);
+
+            List<String> records = new ArrayList<>();
+            Set<Long> changed = new HashSet<>();
+            for (Long productId : entry.items.keySet()) {
+                if (!next.containsKey(productId)) {
+                    records.add("S " + userId + " " + productId + " 0");
+                    changed.add(productId);
+                }
+            }
+            next.forEach((productId, quantity) -> {
+                if (!quantity.equals(entry.items.get(productId))) {
+                    records.add("S " + userId + " " + productId + " " + quantity);
+                    changed.add(productId);
+                }
+            });
+            if (records.isEmpty()) {
+                return new LinkedHashMap<>(entry.items);
+            }
+
+            journal.append(records);
+            entry.items = next;
+            entry.dirtyProducts.addAll(changed);
+            pin(userId, entry);
+            return new LinkedHashMap<>(next);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Xóa toàn bộ giỏ (sau khi đặt hàng)
+    public void clear(Long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CartEntry entry = entryFor(userId);
+            journal.append(List.of("R " + userId));
+            entry.items = new LinkedHashMap<>();
+            entry.reset = true;
+            entry.dirtyProducts.clear();
+            pin(userId, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // CartSweeper vừa xóa giỏ của các user này khỏi DB (gọi sau commit). Entry sạch bị bỏ khỏi cache để lần sau
+    // đọc lại từ DB; entry còn thay đổi chưa ghi (hoặc đang ghi dở) được đánh dấu reset để lần flush sau
+    // ghi lại toàn bộ giỏ thay vì chỉ các sản phẩm đổi
+    public void discardSwept(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                CartEntry entry = peek(userId);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.isClean()) {
+                    synchronized (cache) {
+                        cache.remove(userId);
+                    }
+                } else {
+                    entry.reset = true;
+                    dirtyUsers.add(userId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // ── Ghi xuống DB ─────────────────────────────────────────────────────────
+
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:2000}")
+    public void flush() {
+        synchronized (flushLock) {
+            if (!dirtyUsers.isEmpty()) {
+                flushDirty();
+            }
+            evictExpired();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void flushDirty() {
+        // Đóng đoạn journal TRƯỚC khi chụp trạng thái: append journal và cập nhật cache diễn ra trong cùng khóa
+        // của user, snapshot bên dưới cũng lấy khóa đó → mọi bản ghi trong các đoạn đã đóng đều có trong snapshot.
+        long sealed = journal.rotate();
+
+        List<CartDelta> deltas = new ArrayList<>();
+        List<CartEntry> inFlight = new ArrayList<>();
+        for (Long userId : new ArrayList<>(dirtyUsers)) {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                CartEntry entry = peek(userId);
+                dirtyUsers.remove(userId);
+                if (entry == null) {
+                    continue;
+                }
+                Map<Long, Integer> changes = new LinkedHashMap<>();
+                Set<Long> products = entry.reset ? entry.items.keySet() : entry.dirtyProducts;
+                for (Long productId : products) {
+                    changes.put(productId, entry.items.getOrDefault(productId, 0));
+                }
+                deltas.add(new CartDelta(userId, entry.reset, changes));
+                entry.reset = false;
+                entry.dirtyProducts.clear();
+                entry.flushing = true;
+                inFlight.add(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> cartItemRepository.applyDeltas(deltas));
+            journal.deleteSealed(sealed);
+        } catch (RuntimeException e) {
+            // Ghi lại từng giỏ trong transaction riêng để 1 giỏ lỗi không chặn các giỏ khác
+            log.error("Không ghi được batch {} giỏ hàng xuống DB, thử ghi từng giỏ", deltas.size(), e);
+            List<CartDelta> failed = new ArrayList<>();
+            for (CartDelta delta : deltas) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> cartItemRepository.applyDeltas(List.of(delta)));
+                } catch (RuntimeException ex) {
+                    log.error("Không ghi được giỏ hàng của user {}, sẽ thử lại ở lần flush sau", delta.userId(), ex);
+                    failed.add(delta);
+                }
+            }
+            requeue(failed, sealed);
+        } finally {
+            for (CartEntry entry : inFlight) {
+                entry.flushing = false;
+            }
+        }
+    }
+
+    // Ghi thất bại: đánh dấu lại các giỏ là dirty (reset toàn bộ) và ghi lại trạng thái đầy đủ của chúng
+    // vào đoạn journal đang ghi, sau đó mới bỏ các đoạn đã đóng. Đánh dấu dirty trước khi ghi journal:
+    // ghi journal lỗi thì các đoạn cũ được giữ lại và giỏ vẫn được ghi xuống ở lần flush sau.
+    private void requeue(List<CartDelta> deltas, long sealed) {
+        for (CartDelta delta : deltas) {
+            ReentrantLock lock = lockFor(delta.userId());
+            lock.lock();
+            try {
+                CartEntry entry = peek(delta.userId());
+                if (entry == null) {
+                    continue;
+                }
+                entry.reset = true;
+                dirtyUsers.add(delta.userId());
+                List<String> records = new ArrayList<>();
+                records.add("R " + delta.userId());
+                entry.items.forEach((productId, quantity) ->
+                        records.add("S " + delta.userId() + " " + productId + " " + quantity));
+                journal.append(records);
+            } finally {
+                lock.unlock();
+            }
+        }
+        journal.deleteSealed(sealed);
+    }
+
+    // ── Cache ────────────────────────────────────────────────────────────────
+
+    // Gọi khi đang giữ khóa của user
+    private CartEntry entryFor(Long userId) {
+        CartEntry entry = peek(userId);
+        if (entry == null) {
+            entry = new CartEntry(loadFromDatabase(userId));
+            synchronized (cache) {
+                cache.put(userId, entry);
+            }
+            evictOverflow();
+        }
+        entry.lastAccess = System.nanoTime();
+        return entry;
+    }
+
+    // Entry vừa thành dirty phải chắc chắn nằm trong cache (có thể đã bị evict lúc còn sạch)
+    // để lần flush sau tìm thấy. Gọi khi đang giữ khóa của user nên không có entry nào khác chen vào.
+    private void pin(Long userId, CartEntry entry) {
+        synchronized (cache) {
+            cache.putIfAbsent(userId, entry);
+        }
+        dirtyUsers.add(userId);
+    }
+
+    private CartEntry peek(Long userId) {
+        synchronized (cache) {
+            return cache.get(userId);
+        }
+    }
+
+    private LinkedHashMap<Long, Integer> loadFromDatabase(Long userId) {
+        LinkedHashMap<Long, Integer> items = new LinkedHashMap<>();
+        for (CartItemRepository.CartQuantityView row : cartItemRepository.findQuantitiesByUserId(userId)) {
+            items.put(row.getProductId(), row.getQuantity());
+        }
+        // Chặn userId không tồn tại ngay từ đầu, nếu không lần flush sau sẽ lỗi FK mãi
+        if (items.isEmpty() && !userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found with id: " + userId);
+        }
+        return items;
+    }
+
+    private void evictOverflow() {
+        synchronized (cache) {
+            if (cache.size() > maxEntries) {
+                evict(false);
+            }
+        }
+    }
+
+    private void evictExpired() {
+        synchronized (cache) {
+            evict(true);
+        }
+    }
+
+    // Duyệt từ entry ít dùng nhất; chỉ evict entry sạch và không bị khóa bởi thao tác đang chạy
+    private void evict(boolean expiredOnly) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, CartEntry>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!expiredOnly && cache.size() <= maxEntries) {
+                return;
+            }
+            Map.Entry<Long, CartEntry> e = it.next();
+            CartEntry entry = e.getValue();
+            boolean expired = now - entry.lastAccess > ttlNanos;
+            if (expiredOnly && !expired) {
+                continue;
+            }
+            ReentrantLock lock = lockFor(e.getKey());
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (entry.isClean()) {
+                    it.remove();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock lockFor(Long userId) {
+        return stripes[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
+
+    // ── Replay journal khi khởi động ─────────────────────────────────────────
+
+    @PostConstruct
+    void replayJournal() {
+        List<String> records = journal.readAll();
+        if (records.isEmpty()) {
+            return;
+        }
+        log.info("Replay {} bản ghi journal giỏ hàng", records.size());
+
+        for (String record : records) {
+            String[] parts = record.trim().split(" ");
+            // Dòng cuối có thể bị ghi dở nếu process chết giữa chừng → bỏ qua
+            if (!(("R".equals(parts[0]) && parts.length == 2) || ("S".equals(parts[0]) && parts.length == 4))) {
+                log.warn("Bỏ qua bản ghi journal không hợp lệ: {}", record);
+                continue;
+            }
+            Long userId = Long.valueOf(parts[1]);
+            CartEntry entry = entryFor(userId);
+            if ("R".equals(parts[0])) {
+                entry.items = new LinkedHashMap<>();
+                entry.reset = true;
+                entry.dirtyProducts.clear();
+            } else {
+                Long productId = Long.valueOf(parts[2]);
+                int quantity = Integer.parseInt(parts[3]);
+                if (quantity > 0) {
+                    entry.items.put(productId, quantity);
+                } else {
+                    entry.items.remove(productId);
+                }
+                entry.dirtyProducts.add(productId);
+            }
+            pin(userId, entry);
+        }
+
+        // Ghi ngay xuống DB; nếu lỗi thì dừng khởi động, journal vẫn còn nguyên trên đĩa
+        List<CartDelta> deltas = new ArrayList<>();
+        for (Long userId : dirtyUsers) {
+            CartEntry entry = peek(userId);
+            Map<Long, Integer> changes = new LinkedHashMap<>();
+            for (Long productId : entry.reset ? entry.items.keySet() : entry.dirtyProducts) {
+                changes.put(productId, entry.items.getOrDefault(productId, 0));
+            }
+            deltas.add(new CartDelta(userId, entry.reset, changes));
+            entry.reset = false;
+            entry.dirtyProducts.clear();
+        }
+        transactionTemplate.executeWithoutResult(status -> cartItemRepository.applyDeltas(deltas));
+        dirtyUsers.clear();
+        journal.deleteAll();
+    }
+
+    // ── Kiểu dữ liệu nội bộ ──────────────────────────────────────────────────
+
+    private static class CartEntry {
+        LinkedHashMap<Long, Integer> items;
+        final Set<Long> dirtyProducts = new HashSet<>();
+        boolean reset;
+        volatile boolean flushing;
+        volatile long lastAccess = System.nanoTime();
+
+        CartEntry(LinkedHashMap<Long, Integer> items) {
+            this.items = items;
+        }
+
+        boolean isClean() {
+            return !reset && dirtyProducts.isEmpty() && !flushing;
+        }
+    }
+
+    /**
+     * Journal append-only dạng text, mỗi dòng 1 bản ghi:
+     *   "S userId productId quantity" — đặt số lượng (0 = xóa)
+     *   "R userId"                    — xóa toàn bộ giỏ
+     * Bản ghi mang giá trị tuyệt đối nên replay nhiều lần vẫn cho cùng kết quả.
+     *
+     * Ghi vào các đoạn cart.journal.<số thứ tự>; chỉ đoạn có số lớn nhất đang được ghi. rotate() đóng đoạn đó
+     * và chuyển sang số kế tiếp, nên file chưa flush xong không bao giờ bị ghi đè.
+     */
+    static class Journal {
+
+        private static final String PREFIX = "cart.journal.";
+        private static final Pattern SEGMENT = Pattern.compile("cart\\.journal\\.(\\d+)");
+
+        private final Path dir;
+        private long current;
+        private FileChannel channel;
+
+        Journal(Path dir) {
+            this.dir = dir;
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<Long> existing = segments();
+            this.current = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        }
+
+        synchronized void append(List<String> records) {
+            StringBuilder sb = new StringBuilder();
+            for (String record : records) {
+                sb.append(record).append('\n');
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(segment(current), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không ghi được journal giỏ hàng", e);
+            }
+        }
+
+        // Đóng đoạn đang ghi, lần append sau mở đoạn mới; trả về số của đoạn vừa đóng
+        synchronized long rotate() {
+            try {
+                closeChannel();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return current++;
+        }
+
+        // Xóa mọi đoạn có số <= upTo (kể cả đoạn còn sót từ lần flush trước xóa không được)
+        synchronized void deleteSealed(long upTo) {
+            try {
+                for (long seq : segments()) {
+                    if (seq <= upTo) {
+                        Files.deleteIfExists(segment(seq));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void deleteAll() {
+            try {
+                closeChannel();
+                for (long seq : segments()) {
+                    Files.deleteIfExists(segment(seq));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Đọc các đoạn theo thứ tự ghi (số nhỏ trước)
+        synchronized List<String> readAll() {
+            List<String> records = new ArrayList<>();
+            try {
+                for (long seq : segments()) {
+                    for (String line : Files.readAllLines(segment(seq), StandardCharsets.UTF_8)) {
+                        if (!line.isBlank()) {
+                            records.add(line);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return records;
+        }
+
+        private Path segment(long seq) {
+            return dir.resolve(PREFIX + seq);
+        }
+
+        private List<Long> segments() {
+            try (Stream<Path> files = Files.list(dir)) {
+                return files
+                        .map(file -> SEGMENT.matcher(file.getFileName().toString()))
+                        .filter(Matcher::matches)
+                        .map(m -> Long.parseLong(m.group(1)))
+                        .sorted()
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void closeChannel() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
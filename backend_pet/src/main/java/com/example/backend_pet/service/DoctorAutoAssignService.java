@@ -0,0 +1,247 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.AutoAssignResponse;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.AppointmentRepository;
+import com.example.backend_pet.repository.AppointmentRepositoryCustom;
+import com.example.backend_pet.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Phân công bác sĩ tự động cho các nhóm booking chưa có bác sĩ (PENDING / CONFIRMED) trong 1 khoảng ngày.
+ *
+ * Thuật toán tham lam: mỗi ngày xét các nhóm theo giờ bắt đầu (nhóm dài hơn trước nếu cùng giờ),
+ * giao cho bác sĩ rảnh đang có tổng thời gian bận ít nhất trong cả khoảng (rồi ít nhất trong ngày).
+ * Lịch bận sẵn có lấy từ DoctorTimelineIndex; thời lượng nhóm = tổng duration dịch vụ như khi phân công tay.
+ *
+ * dryRun chỉ trả về kế hoạch; ngược lại toàn bộ phân công được ghi bằng 1 câu UPDATE.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DoctorAutoAssignService {
+
+    private static final int MAX_DAYS = 31;
+
+    private final AppointmentRepository appointmentRepository;
+    private final UserRepository userRepository;
+    private final DoctorTimelineIndex doctorTimelineIndex;
+
+    @Transactional
+    public AutoAssignResponse autoAssign(LocalDate from, LocalDate to, boolean dryRun) {
+        if (to.isBefore(from)) {
+            throw new RuntimeException("Ngày kết thúc phải sau ngày bắt đầu");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new RuntimeException("Chỉ phân công tự động tối đa " + MAX_DAYS + " ngày mỗi lần");
+        }
+        long started = System.nanoTime();
+
+        List<User> doctors = userRepository.findByRole(User.Role.DOCTOR);
+        Map<Long, User> doctorsById = doctors.stream().collect(Collectors.toMap(User::getId, d -> d));
+        List<Long> doctorIds = new ArrayList<>(doctorsById.keySet());
+        doctorIds.sort(Comparator.naturalOrder());
+
+        Map<LocalDate, List<PlannedGroup>> groupsByDate = new TreeMap<>();
+        for (AppointmentRepository.UnassignedGroupView row : appointmentRepository.findUnassignedGroups(from, to)) {
+            DoctorTimelineIndex.Interval interval = doctorTimelineIndex.intervalOf(row.getBookingCode(),
+                    row.getAppointmentTime(), doctorTimelineIndex.durationOf(row.getTotalMinutes()));
+            groupsByDate.computeIfAbsent(row.getAppointmentDate(), d -> new ArrayList<>())
+                    .add(new PlannedGroup(row.getAppointmentDate(), interval));
+        }
+
+        // Lịch bận hiện có của mọi bác sĩ trong các ngày có nhóm cần phân công (mỗi ngày tối đa 1 query)
+        Map<Long, Long> rangeLoad = new HashMap<>();
+        Map<LocalDate, Map<Long, DoctorDay>> daysByDate = new HashMap<>();
+        for (LocalDate date : groupsByDate.keySet()) {
+            Map<Long, DoctorDay> doctorDays = new HashMap<>();
+            doctorTimelineIndex.getBusy(doctorIds, date).forEach((doctorId, busy) -> {
+                DoctorDay day = new DoctorDay(busy);
+                doctorDays.put(doctorId, day);
+                rangeLoad.merge(doctorId, day.minutes, Long::sum);
+            });
+            daysByDate.put(date, doctorDays);
+        }
+
+        List<PlannedGroup> planned = new ArrayList<>();
+        List<PlannedGroup> unplanned = new ArrayList<>();
+        Map<Long, Integer> assignedGroups = new HashMap<>();
+        for (Map.Entry<LocalDate, List<PlannedGroup>> entry : groupsByDate.entrySet()) {
+            Map<Long, DoctorDay> doctorDays = daysByDate.get(entry.getKey());
+            List<PlannedGroup> groups = entry.getValue();
+            groups.sort(Comparator.comparingInt((PlannedGroup g) -> g.interval.start())
+                    .thenComparing(g -> -g.interval.minutes())
+                    .thenComparing(g -> g.interval.bookingCode()));
+
+            for (PlannedGroup group : groups) {
+                Long best = null;
+                for (Long doctorId : doctorIds) {
+                    DoctorDay day = doctorDays.get(doctorId);
+                    if (!day.isFree(group.interval)) {
+                        continue;
+                    }
+                    if (best == null || isLessLoaded(doctorId, best, rangeLoad, doctorDays)) {
+                        best = doctorId;
+                    }
+                }
+                if (best == null) {
+                    group.reason = "Không còn bác sĩ rảnh trong khung giờ này";
+                    unplanned.add(group);
+                    continue;
+                }
+                doctorDays.get(best).add(group.interval);
+                rangeLoad.merge(best, (long) group.interval.minutes(), Long::sum);
+                assignedGroups.merge(best, 1, Integer::sum);
+                group.doctorId = best;
+                planned.add(group);
+            }
+        }
+
+        if (!dryRun) {
+            commit(planned, unplanned, assignedGroups, rangeLoad);
+        }
+
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        log.info("Phân công tự động {} → {} (dryRun={}): {} nhóm, {} được phân công trong {} ms",
+                from, to, dryRun, planned.size() + unplanned.size(), planned.size(), elapsedMillis);
+
+        return AutoAssignResponse.builder()
+                .from(from.toString())
+                .to(to.toString())
+                .dryRun(dryRun)
+                .totalGroups(planned.size() + unplanned.size())
+                .assignedCount(planned.size())
+                .unassignedCount(unplanned.size())
+                .elapsedMillis(elapsedMillis)
+                .assignments(planned.stream().map(g -> mapToAssignment(g, doctorsById)).collect(Collectors.toList()))
+                .unassigned(unplanned.stream().map(g -> mapToAssignment(g, doctorsById)).collect(Collectors.toList()))
+                .doctorLoads(doctorIds.stream()
+                        .map(id -> AutoAssignResponse.DoctorLoad.builder()
+                                .doctorId(id)
+                                .fullName(doctorsById.get(id).getFullName())
+                                .busyMinutes(rangeLoad.getOrDefault(id, 0L))
+                                .assignedGroups(assignedGroups.getOrDefault(id, 0))
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    // Giữ khoảng thời gian trong DoctorTimelineIndex rồi ghi tất cả bằng 1 câu UPDATE.
+    // Nhóm bị phân công tay / đổi trạng thái trong lúc chạy thì chuyển sang danh sách chưa phân công.
+    private void commit(List<PlannedGroup> planned, List<PlannedGroup> unplanned,
+                        Map<Long, Integer> assignedGroups, Map<Long, Long> rangeLoad) {
+        List<PlannedGroup> reserved = new ArrayList<>(planned.size());
+        for (PlannedGroup group : planned) {
+            try {
+                doctorTimelineIndex.reserve(group.doctorId, group.date, group.interval);
+                reserved.add(group);
+            } catch (RuntimeException e) {
+                skip(group, "Bác sĩ vừa được phân công lịch trùng giờ", unplanned, assignedGroups, rangeLoad);
+            }
+        }
+
+        Set<String> updated = new HashSet<>(appointmentRepository.assignDoctorsToGroups(
+                reserved.stream()
+                        .map(g -> new AppointmentRepositoryCustom.GroupAssignment(g.interval.bookingCode(), g.doctorId))
+                        .collect(Collectors.toList()),
+                LocalDateTime.now()));
+
+        for (PlannedGroup group : reserved) {
+            if (!updated.contains(group.interval.bookingCode())) {
+                doctorTimelineIndex.releaseAfterCommit(group.doctorId, group.date, group.interval.bookingCode());
+                skip(group, "Nhóm đã được phân công hoặc đổi trạng thái", unplanned, assignedGroups, rangeLoad);
+            }
+        }
+        planned.removeIf(g -> g.doctorId == null);
+    }
+
+    private void skip(PlannedGroup group, String reason, List<PlannedGroup> unplanned,
+                      Map<Long, Integer> assignedGroups, Map<Long, Long> rangeLoad) {
+        assignedGroups.merge(group.doctorId, -1, Integer::sum);
+        rangeLoad.merge(group.doctorId, (long) -group.interval.minutes(), Long::sum);
+        group.doctorId = null;
+        group.reason = reason;
+        unplanned.add(group);
+    }
+
+    private boolean isLessLoaded(Long candidate, Long best, Map<Long, Long> rangeLoad, Map<Long, DoctorDay> doctorDays) {
+        int byRange = Long.compare(rangeLoad.getOrDefault(candidate, 0L), rangeLoad.getOrDefault(best, 0L));
+        if (byRange != 0) {
+            return byRange < 0;
+        }
+        return doctorDays.get(candidate).minutes < doctorDays.get(best).minutes;
+    }
+
+    private AutoAssignResponse.Assignment mapToAssignment(PlannedGroup group, Map<Long, User> doctorsById) {
+        return AutoAssignResponse.Assignment.builder()
+                .bookingCode(group.interval.bookingCode())
+                .appointmentDate(group.date.toString())
+                .startTime(group.interval.startTime().toString())
+                .endTime(group.interval.endTime().toString())
+                .doctorId(group.doctorId)
+                .doctorName(group.doctorId != null ? doctorsById.get(group.doctorId).getFullName() : null)
+                .reason(group.reason)
+                .build();
+    }
+
+    private static final class PlannedGroup {
+        final LocalDate date;
+        final DoctorTimelineIndex.Interval interval;
+        Long doctorId;
+        String reason;
+
+        PlannedGroup(LocalDate date, DoctorTimelineIndex.Interval interval) {
+            this.date = date;
+            this.interval = interval;
+        }
+    }
+
+    // Lịch bận của 1 bác sĩ trong 1 ngày khi lập kế hoạch: các khoảng rời nhau, start → end
+    private static final class DoctorDay {
+        final TreeMap<Integer, Integer> busy = new TreeMap<>();
+        long minutes;
+
+        DoctorDay(List<DoctorTimelineIndex.Interval> intervals) {
+            // Lịch cũ có thể chồng nhau → gộp lại để floor / ceiling đủ kiểm tra trùng
+            for (DoctorTimelineIndex.Interval interval : intervals) {
+                minutes += interval.minutes();
+                Map.Entry<Integer, Integer> last = busy.lastEntry();
+                if (last != null && interval.start() < last.getValue()) {
+                    busy.put(last.getKey(), Math.max(last.getValue(), interval.end()));
+                } else {
+                    busy.put(interval.start(), interval.end());
+                }
+            }
+        }
+
+        boolean isFree(DoctorTimelineIndex.Interval interval) {
+            Map.Entry<Integer, Integer> before = busy.floorEntry(interval.start());
+            if (before != null && before.getValue() > interval.start()) {
+                return false;
+            }
+            Integer after = busy.ceilingKey(interval.start());
+            return after == null || after >= interval.end();
+        }
+
+        void add(DoctorTimelineIndex.Interval interval) {
+            busy.put(interval.start(), interval.end());
+            minutes += interval.minutes();
+        }
+    }
+}
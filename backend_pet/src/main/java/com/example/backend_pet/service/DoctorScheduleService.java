@@ -0,0 +1,128 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.AppointmentResponse;
+import com.example.backend_pet.dto.DoctorScheduleResponse;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.AppointmentRepository;
+import com.example.backend_pet.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lịch làm việc của bác sĩ theo ngày / tuần / khoảng ngày.
+ *
+ * Chỉ đọc đúng khoảng ngày cần xem qua index (doctor_id, appointment_date, appointment_time) — không phụ thuộc
+ * số lịch cũ của bác sĩ. Mỗi lần xem 3 query: lịch trong khoảng (projection, đã gộp duration và bệnh án),
+ * dịch vụ của các lịch đó, số lịch theo ngày của (các) tháng chứa khoảng cho mini-calendar.
+ */
+@Service
+@RequiredArgsConstructor
+public class DoctorScheduleService {
+
+    private static final int MAX_RANGE_DAYS = 31;
+
+    private final AppointmentRepository appointmentRepository;
+    private final UserRepository userRepository;
+    private final DoctorTimelineIndex doctorTimelineIndex;
+
+    // view = day (mặc định) | week (thứ 2 → chủ nhật chứa date) | range (from..to, tối đa 31 ngày)
+    public DoctorScheduleResponse getSchedule(Long doctorId, String view, LocalDate date, LocalDate from, LocalDate to) {
+        if (!userRepository.existsByIdAndRole(doctorId, User.Role.DOCTOR)) {
+            throw new RuntimeException("Doctor not found");
+        }
+
+        LocalDate day = date != null ? date : LocalDate.now();
+        LocalDate start;
+        LocalDate end;
+        switch (view == null ? "day" : view.toLowerCase()) {
+            case "day" -> {
+                start = day;
+                end = day;
+            }
+            case "week" -> {
+                start = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                end = start.plusDays(6);
+            }
+            case "range" -> {
+                if (from == null || to == null || to.isBefore(from)) {
+                    throw new RuntimeException("Khoảng ngày không hợp lệ");
+                }
+                if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+                    throw new RuntimeException("Chỉ xem được tối đa " + MAX_RANGE_DAYS + " ngày");
+                }
+                start = from;
+                end = to;
+            }
+            default -> throw new RuntimeException("Kiểu xem không hợp lệ: " + view);
+        }
+
+        List<AppointmentRepository.DoctorScheduleView> rows = appointmentRepository.findDoctorSchedule(doctorId, start, end);
+
+        Map<Long, List<AppointmentResponse.ServiceInfo>> servicesById = new HashMap<>();
+        if (!rows.isEmpty()) {
+            List<Long> ids = rows.stream().map(AppointmentRepository.DoctorScheduleView::getId).collect(Collectors.toList());
+            for (AppointmentRepository.AppointmentServiceView service : appointmentRepository.findServicesByAppointmentIds(ids)) {
+                servicesById.computeIfAbsent(service.getAppointmentId(), id -> new ArrayList<>())
+                        .add(AppointmentResponse.ServiceInfo.builder()
+                                .id(service.getServiceId())
+                                .title(service.getServiceTitle())
+                                .price(service.getServicePrice())
+                                .build());
+            }
+        }
+
+        List<DoctorScheduleResponse.ScheduleItem> items = rows.stream()
+                .map(row -> DoctorScheduleResponse.ScheduleItem.builder()
+                        .id(row.getId())
+                        .bookingCode(row.getBookingCode())
+                        .appointmentDate(row.getAppointmentDate().toString())
+                        .appointmentTime(row.getAppointmentTime().toString())
+                        .endTime(row.getAppointmentTime()
+                                .plusMinutes(doctorTimelineIndex.durationOf(row.getTotalMinutes())).toString())
+                        .status(row.getStatus().name())
+                        .notes(row.getNotes())
+                        .petId(row.getPetId())
+                        .petName(row.getPetName())
+                        .petSpecies(row.getPetSpecies().name())
+                        .petImageUrl(row.getPetImageUrl())
+                        .ownerId(row.getOwnerId())
+                        .ownerName(row.getOwnerName())
+                        .ownerPhone(row.getOwnerPhone())
+                        .services(servicesById.getOrDefault(row.getId(), List.of()))
+                        .medicalRecordId(row.getMedicalRecordId())
+                        .recordCompleted(row.getRecordFilled() > 0)
+                        .build())
+                .collect(Collectors.toList());
+
+        // Mini-calendar: trọn (các) tháng chứa khoảng đang xem
+        List<DoctorScheduleResponse.DayCount> days = appointmentRepository.countDoctorScheduleByDay(
+                        doctorId, start.withDayOfMonth(1), end.with(TemporalAdjusters.lastDayOfMonth()))
+                .stream()
+                .map(c -> DoctorScheduleResponse.DayCount.builder()
+                        .date(c.getAppointmentDate().toString())
+                        .total((int) c.getTotal())
+                        .pending((int) c.getPendingCount())
+                        .confirmed((int) c.getConfirmedCount())
+                        .completed((int) c.getCompletedCount())
+                        .cancelled((int) c.getCancelledCount())
+                        .build())
+                .collect(Collectors.toList());
+
+        return DoctorScheduleResponse.builder()
+                .from(start.toString())
+                .to(end.toString())
+                .days(days)
+                .appointments(items)
+                .build();
+    }
+}
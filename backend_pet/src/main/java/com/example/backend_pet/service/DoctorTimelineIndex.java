@@ -0,0 +1,331 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.AppointmentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lịch bận của từng bác sĩ theo ngày, giữ trong RAM để kiểm tra trùng giờ khi phân công.
+ *
+ * - Mỗi nhóm booking được phân công là 1 khoảng [giờ hẹn, giờ hẹn + tổng duration dịch vụ của cả nhóm);
+ *   nhóm không có dịch vụ tính tối thiểu clinic.slot-minutes.
+ * - (bác sĩ, ngày) chưa có trong RAM được nạp từ DB khi cần, nhiều bác sĩ cùng ngày nạp chung 1 query.
+ * - Khoảng được sắp theo giờ bắt đầu; kiểm tra trùng chỉ duyệt các khoảng bắt đầu trong
+ *   (start - khoảng dài nhất của ngày, end) → O(log n) + số khoảng trùng.
+ * - reserve ghi khoảng ngay (chặn request phân công song song), bỏ đi nếu transaction rollback;
+ *   các thay đổi khác (bỏ phân công, hủy, đổi trạng thái) chỉ áp dụng sau khi commit.
+ * - getBusySlots trả về bitmap bận theo lưới khung giờ (bit i = slot i có lịch chồng lên), dựng lại
+ *   chỉ khi lịch của ngày đó thay đổi — dùng cho tìm giờ trống (NextAvailableSlotService).
+ *
+ * Chỉ đồng bộ trong 1 instance, giống SlotAvailabilityService.
+ */
+@Component
+public class DoctorTimelineIndex {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    // Số lần nạp lại tối đa khi reserve cần bản timeline nằm trong cache
+    private static final int MAX_CACHED_LOAD_ATTEMPTS = 5;
+
+    private final AppointmentRepository appointmentRepository;
+    private final int slotMinutes;
+    private final int openingMinute;
+
+    private final Map<Key, DayTimeline> days = new ConcurrentHashMap<>();
+    // Số thay đổi lịch bác sĩ đã commit: timelines() chỉ cache kết quả nạp khi không có thay đổi nào chen vào lúc query
+    private final AtomicLong mutations = new AtomicLong();
+
+    public DoctorTimelineIndex(AppointmentRepository appointmentRepository,
+                               @Value("${clinic.slot-minutes:30}") int slotMinutes,
+                               @Value("${clinic.opening-time:08:00}") String openingTime) {
+        this.appointmentRepository = appointmentRepository;
+        this.slotMinutes = slotMinutes;
+        this.openingMinute = LocalTime.parse(openingTime).toSecondOfDay() / 60;
+    }
+
+    // Khoảng bận [start, end) tính bằng phút trong ngày
+    public record Interval(String bookingCode, int start, int end) {
+
+        public LocalTime startTime() {
+            return LocalTime.ofSecondOfDay(start * 60L);
+        }
+
+        // Khoảng kéo tới hết ngày thì trả về 23:59
+        public LocalTime endTime() {
+            return end >= MINUTES_PER_DAY ? LocalTime.of(23, 59) : LocalTime.ofSecondOfDay(end * 60L);
+        }
+
+        public int minutes() {
+            return end - start;
+        }
+    }
+
+    // Thời lượng dùng cho 1 nhóm có tổng duration dịch vụ = serviceMinutes
+    public int durationOf(long serviceMinutes) {
+        return (int) Math.max(slotMinutes, Math.min(serviceMinutes, MINUTES_PER_DAY));
+    }
+
+    public Interval intervalOf(String bookingCode, LocalTime time, int minutes) {
+        int start = time.toSecondOfDay() / 60;
+        return new Interval(bookingCode, start, Math.min(MINUTES_PER_DAY, start + minutes));
+    }
+
+    // ── Đọc ──────────────────────────────────────────────────────────────────
+
+    // Các khoảng bận của bác sĩ trùng với khoảng cần xếp (bỏ qua chính nhóm đó)
+    public List<Interval> findConflicts(Long doctorId, LocalDate date, Interval interval) {
+        DayTimeline timeline = timeline(doctorId, date);
+        synchronized (timeline) {
+            return timeline.overlapping(interval);
+        }
+    }
+
+    // Lịch bận trong ngày của nhiều bác sĩ (nạp các bác sĩ còn thiếu bằng 1 query), sắp theo giờ bắt đầu
+    public Map<Long, List<Interval>> getBusy(Collection<Long> doctorIds, LocalDate date) {
+        Map<Long, DayTimeline> timelines = timelines(doctorIds, date);
+        Map<Long, List<Interval>> result = new HashMap<>();
+        timelines.forEach((doctorId, timeline) -> {
+            synchronized (timeline) {
+                result.put(doctorId, new ArrayList<>(timeline.intervals));
+            }
+        });
+        return result;
+    }
+
+    // Bitmap bận theo lưới khung giờ của nhiều bác sĩ trong 1 ngày (bản sao, caller được sửa tùy ý)
+    public Map<Long, BitSet> getBusySlots(Collection<Long> doctorIds, LocalDate date) {
+        Map<Long, DayTimeline> timelines = timelines(doctorIds, date);
+        Map<Long, BitSet> result = new HashMap<>();
+        timelines.forEach((doctorId, timeline) -> {
+            synchronized (timeline) {
+                if (timeline.slots == null) {
+                    timeline.slots = toSlots(timeline.intervals);
+                }
+                result.put(doctorId, (BitSet) timeline.slots.clone());
+            }
+        });
+        return result;
+    }
+
+    private BitSet toSlots(Collection<Interval> intervals) {
+        BitSet slots = new BitSet();
+        for (Interval interval : intervals) {
+            int first = Math.floorDiv(interval.start() - openingMinute, slotMinutes);
+            // Slot cuối có phần giao: slot chứa phút (end - 1)
+            int last = Math.floorDiv(interval.end() - 1 - openingMinute, slotMinutes);
+            if (last >= 0) {
+                slots.set(Math.max(0, first), last + 1);
+            }
+        }
+        return slots;
+    }
+
+    // ── Cập nhật từ AppointmentService ───────────────────────────────────────
+
+    // Gọi trong transaction phân công: kiểm tra trùng rồi giữ khoảng ngay;
+    // transaction rollback thì khoảng bị bỏ, commit thì giữ lại
+    public void reserve(Long doctorId, LocalDate date, Interval interval) {
+        DayTimeline timeline = cachedTimeline(doctorId, date);
+        synchronized (timeline) {
+            List<Interval> conflicts = timeline.overlapping(interval);
+            if (!conflicts.isEmpty()) {
+                Interval first = conflicts.get(0);
+                throw new RuntimeException("Bác sĩ đã có lịch " + first.bookingCode() + " từ "
+                        + first.startTime() + " đến " + first.endTime() + ", trùng với lịch này");
+            }
+            timeline.put(interval);
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            mutations.incrementAndGet();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                mutations.incrementAndGet();
+                // Ngày có thể đã bị nạp lại trong lúc chờ commit → đảm bảo khoảng có mặt trong bản đang dùng
+                DayTimeline current = days.get(new Key(doctorId, date));
+                if (current != null) {
+                    synchronized (current) {
+                        current.putIfAbsent(interval);
+                    }
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    synchronized (timeline) {
+                        timeline.remove(interval);
+                    }
+                }
+            }
+        });
+    }
+
+    // Gọi trong transaction bỏ phân công / hủy: bỏ khoảng của nhóm sau khi commit
+    public void releaseAfterCommit(Long doctorId, LocalDate date, String bookingCode) {
+        afterCommit(() -> {
+            DayTimeline timeline = days.get(new Key(doctorId, date));
+            if (timeline != null) {
+                synchronized (timeline) {
+                    timeline.remove(bookingCode);
+                }
+            }
+        });
+    }
+
+    // Gọi khi nhóm đã phân công được mở lại (từ CANCELLED): thêm lại khoảng sau khi commit, không kiểm tra trùng
+    public void restoreAfterCommit(Long doctorId, LocalDate date, Interval interval) {
+        afterCommit(() -> {
+            DayTimeline timeline = days.get(new Key(doctorId, date));
+            if (timeline != null) {
+                synchronized (timeline) {
+                    timeline.putIfAbsent(interval);
+                }
+            }
+        });
+    }
+
+    // Mọi thay đổi sau commit đều tăng mutations để lần nạp đang chạy song song không được giữ lại
+    private void afterCommit(Runnable action) {
+        TransactionHooks.afterCommit(() -> {
+            mutations.incrementAndGet();
+            action.run();
+        });
+    }
+
+    // Không phân công vào ngày đã qua nữa → bỏ lịch bận của các ngày đó
+    @Scheduled(cron = "${clinic.availability.evict-cron:0 5 0 * * *}")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        days.keySet().removeIf(key -> key.date().isBefore(today));
+    }
+
+    // ── Nạp từ DB ────────────────────────────────────────────────────────────
+
+    private DayTimeline timeline(Long doctorId, LocalDate date) {
+        return timelines(List.of(doctorId), date).get(doctorId);
+    }
+
+    // reserve phải ghi vào bản nằm trong cache (bản tạm sẽ bị bỏ, request phân công song song không thấy khoảng
+    // vừa giữ): lần nạp bị thay đổi chen vào thì nạp lại; vẫn không được thì báo người dùng thử lại
+    private DayTimeline cachedTimeline(Long doctorId, LocalDate date) {
+        Key key = new Key(doctorId, date);
+        for (int attempt = 0; attempt < MAX_CACHED_LOAD_ATTEMPTS; attempt++) {
+            DayTimeline timeline = timeline(doctorId, date);
+            if (days.get(key) == timeline) {
+                return timeline;
+            }
+        }
+        throw new RuntimeException("Lịch bác sĩ đang thay đổi liên tục, vui lòng thử lại");
+    }
+
+    private Map<Long, DayTimeline> timelines(Collection<Long> doctorIds, LocalDate date) {
+        Map<Long, DayTimeline> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long doctorId : doctorIds) {
+            DayTimeline timeline = days.get(new Key(doctorId, date));
+            if (timeline != null) {
+                result.put(doctorId, timeline);
+            } else {
+                missing.add(doctorId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long stamp = mutations.get();
+        Map<Long, DayTimeline> loaded = new HashMap<>();
+        for (Long doctorId : missing) {
+            loaded.put(doctorId, new DayTimeline());
+        }
+        for (AppointmentRepository.BusyIntervalView row : appointmentRepository.findDoctorBusyIntervals(missing, date)) {
+            loaded.get(row.getDoctorId())
+                    .putIfAbsent(intervalOf(row.getBookingCode(), row.getAppointmentTime(), durationOf(row.getTotalMinutes())));
+        }
+
+        // Có thay đổi commit trong lúc đang query → kết quả có thể thiếu; chỉ dùng tạm để đọc, không giữ lại trong cache
+        boolean cacheable = mutations.get() == stamp;
+        loaded.forEach((doctorId, timeline) -> result.put(doctorId,
+                cacheable ? days.computeIfAbsent(new Key(doctorId, date), k -> timeline) : timeline));
+        return result;
+    }
+
+    private record Key(Long doctorId, LocalDate date) {
+    }
+
+    // Truy cập qua synchronized (timeline)
+    private static final class DayTimeline {
+        final NavigableSet<Interval> intervals = new TreeSet<>(Comparator
+                .comparingInt(Interval::start)
+                .thenComparingInt(Interval::end)
+                .thenComparing(Interval::bookingCode));
+        final Map<String, Interval> byBookingCode = new HashMap<>();
+        // Khoảng dài nhất từng có trong ngày: mọi khoảng trùng [start, end) đều bắt đầu sau start - longest
+        int longest;
+        // Bitmap theo lưới khung giờ, dựng lại khi cần sau mỗi thay đổi
+        BitSet slots;
+
+        List<Interval> overlapping(Interval interval) {
+            Interval from = new Interval("", interval.start() - longest, Integer.MIN_VALUE);
+            Interval to = new Interval("", interval.end(), Integer.MIN_VALUE);
+            List<Interval> result = new ArrayList<>();
+            for (Interval other : intervals.subSet(from, false, to, false)) {
+                if (other.end() > interval.start() && !other.bookingCode().equals(interval.bookingCode())) {
+                    result.add(other);
+                }
+            }
+            return result;
+        }
+
+        void put(Interval interval) {
+            remove(interval.bookingCode());
+            intervals.add(interval);
+            byBookingCode.put(interval.bookingCode(), interval);
+            slots = null;
+            longest = Math.max(longest, interval.minutes());
+        }
+
+        void putIfAbsent(Interval interval) {
+            if (!byBookingCode.containsKey(interval.bookingCode())) {
+                put(interval);
+            }
+        }
+
+        void remove(String bookingCode) {
+            Interval existing = byBookingCode.remove(bookingCode);
+            if (existing != null) {
+                intervals.remove(existing);
+                slots = null;
+            }
+        }
+
+        // Chỉ bỏ nếu đúng khoảng đã thêm (nhóm có thể đã được ghi lại bởi thao tác khác)
+        void remove(Interval interval) {
+            if (interval.equals(byBookingCode.get(interval.bookingCode()))) {
+                remove(interval.bookingCode());
+            }
+        }
+    }
+}
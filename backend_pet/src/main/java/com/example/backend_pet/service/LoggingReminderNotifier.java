@@ -0,0 +1,23 @@
+package com.example.backend_pet.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Notifier mặc định (reminder.notifier=log): chỉ ghi log, dùng khi chưa có kênh gửi thật và khi chạy local / test
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "reminder.notifier", havingValue = "log", matchIfMissing = true)
+public class LoggingReminderNotifier implements ReminderNotifier {
+
+    @Override
+    public void send(List<Reminder> batch) {
+        for (Reminder reminder : batch) {
+            log.info("[Nhắc lịch {}] {} <{}>: lịch {} lúc {} {} ({} thú cưng)",
+                    reminder.kind(), reminder.ownerName(), reminder.ownerEmail(), reminder.bookingCode(),
+                    reminder.appointmentTime(), reminder.appointmentDate(), reminder.petCount());
+        }
+    }
+}
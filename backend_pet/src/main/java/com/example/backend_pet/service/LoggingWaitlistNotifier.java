@@ -0,0 +1,23 @@
+package com.example.backend_pet.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Notifier mặc định (waitlist.notifier=log): chỉ ghi log, dùng khi chưa có kênh gửi thật và khi chạy local / test
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "waitlist.notifier", havingValue = "log", matchIfMissing = true)
+public class LoggingWaitlistNotifier implements WaitlistNotifier {
+
+    @Override
+    public void offered(List<Offer> offers) {
+        for (Offer offer : offers) {
+            log.info("[Hàng đợi #{}] {} <{}>: đã giữ chỗ lúc {} {} tới {}",
+                    offer.entryId(), offer.fullName(), offer.email(),
+                    offer.slotTime(), offer.slotDate(), offer.holdUntil());
+        }
+    }
+}
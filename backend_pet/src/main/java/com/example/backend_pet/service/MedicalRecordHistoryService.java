@@ -0,0 +1,251 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.MedicalRevisionDiffResponse;
+import com.example.backend_pet.dto.MedicalRevisionResponse;
+import com.example.backend_pet.entity.MedicalRecord;
+import com.example.backend_pet.entity.MedicalRecordRevision;
+import com.example.backend_pet.repository.MedicalRecordRepository;
+import com.example.backend_pet.repository.MedicalRecordRevisionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Lịch sử sửa bệnh án, chỉ ghi thêm (medical_record_revisions).
+ *
+ * Bản hiện tại vẫn nằm trong medical_records để đọc nhanh. Mỗi lần lưu có trường đổi thì ghi 1 phiên bản:
+ * thường chỉ là delta (các trường đổi), cứ snapshot-interval phiên bản lại ghi 1 snapshot đầy đủ, nên dựng lại
+ * phiên bản bất kỳ chỉ cần snapshot gần nhất + tối đa (snapshot-interval - 1) delta, đọc bằng 1 query.
+ */
+@Service
+public class MedicalRecordHistoryService {
+
+    private static final List<String> FIELDS = List.of(
+            "diagnosis", "treatment", "prescription", "notes", "followUpDate", "weight", "temperature", "imageUrls");
+    private static final TypeReference<Map<String, Object>> STATE_TYPE = new TypeReference<>() {
+    };
+
+    private final MedicalRecordRevisionRepository revisionRepository;
+    private final MedicalRecordRepository medicalRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final int snapshotInterval;
+
+    public MedicalRecordHistoryService(MedicalRecordRevisionRepository revisionRepository,
+                                       MedicalRecordRepository medicalRecordRepository,
+                                       ObjectMapper objectMapper,
+                                       @Value("${medical.revision.snapshot-interval:10}") int snapshotInterval) {
+        this.revisionRepository = revisionRepository;
+        this.medicalRecordRepository = medicalRecordRepository;
+        this.objectMapper = objectMapper;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    // ── Ghi phiên bản (gọi trong transaction của MedicalService.saveRecord, bệnh án đã bị khóa) ──
+
+    // Các trường được theo dõi của bệnh án, dạng lưu được ra JSON (ngày → chuỗi ISO)
+    public Map<String, Object> stateOf(MedicalRecord record) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("diagnosis", record.getDiagnosis());
+        state.put("treatment", record.getTreatment());
+        state.put("prescription", record.getPrescription());
+        state.put("notes", record.getNotes());
+        state.put("followUpDate", record.getFollowUpDate() != null ? record.getFollowUpDate().toString() : null);
+        state.put("weight", record.getWeight());
+        state.put("temperature", record.getTemperature());
+        state.put("imageUrls", record.getImageUrls() != null ? new ArrayList<>(record.getImageUrls()) : new ArrayList<>());
+        return state;
+    }
+
+    // Ghi 1 phiên bản nếu có trường đổi và tăng record.revision; trả về false khi không có gì đổi
+    public boolean append(MedicalRecord record, Map<String, Object> before, Map<String, Object> after) {
+        List<String> changed = changedFields(before, after);
+        if (changed.isEmpty()) {
+            return false;
+        }
+
+        int current = record.getRevision() != null ? record.getRevision() : 0;
+        // Bệnh án đã có nội dung từ trước khi có lịch sử: giữ lại nội dung cũ làm phiên bản 1
+        if (current == 0 && !isBlank(before)) {
+            current = 1;
+            save(record.getId(), current, true, changedFields(emptyState(), before), before);
+        }
+
+        int next = current + 1;
+        boolean snapshot = (next - 1) % snapshotInterval == 0;
+        Map<String, Object> data = after;
+        if (!snapshot) {
+            data = new LinkedHashMap<>();
+            for (String field : changed) {
+                data.put(field, after.get(field));
+            }
+        }
+        save(record.getId(), next, snapshot, changed, data);
+        record.setRevision(next);
+        return true;
+    }
+
+    private void save(Long recordId, int revision, boolean snapshot, List<String> changed, Map<String, Object> data) {
+        revisionRepository.save(MedicalRecordRevision.builder()
+                .medicalRecordId(recordId)
+                .revision(revision)
+                .snapshot(snapshot)
+                .changedFields(String.join(",", changed))
+                .data(objectMapper.writeValueAsString(data))
+                .build());
+    }
+
+    // ── Xem / so sánh phiên bản ──────────────────────────────────────────────
+
+    public List<MedicalRevisionResponse> getRevisions(Long recordId) {
+        ensureRecordExists(recordId);
+        return revisionRepository.findSummaries(recordId).stream()
+                .map(r -> MedicalRevisionResponse.builder()
+                        .recordId(recordId)
+                        .revision(r.getRevision())
+                        .snapshot(r.getSnapshot())
+                        .changedFields(splitFields(r.getChangedFields()))
+                        .createdAt(r.getCreatedAt())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    public MedicalRevisionResponse getRevision(Long recordId, int revision) {
+        ensureRecordExists(recordId);
+        if (revision == 0) {
+            return MedicalRevisionResponse.builder()
+                    .recordId(recordId)
+                    .revision(0)
+                    .changedFields(List.of())
+                    .state(toRecordState(emptyState()))
+                    .build();
+        }
+        List<MedicalRecordRevision> chain = replayChain(recordId, revision);
+        MedicalRecordRevision target = chain.get(chain.size() - 1);
+        return MedicalRevisionResponse.builder()
+                .recordId(recordId)
+                .revision(revision)
+                .snapshot(target.isSnapshot())
+                .changedFields(splitFields(target.getChangedFields()))
+                .createdAt(target.getCreatedAt())
+                .state(toRecordState(replay(chain)))
+                .build();
+    }
+
+    public MedicalRevisionDiffResponse diff(Long recordId, int fromRevision, int toRevision) {
+        ensureRecordExists(recordId);
+        Map<String, Object> before = stateAt(recordId, fromRevision);
+        Map<String, Object> after = stateAt(recordId, toRevision);
+        return MedicalRevisionDiffResponse.builder()
+                .recordId(recordId)
+                .fromRevision(fromRevision)
+                .toRevision(toRevision)
+                .changes(changedFields(before, after).stream()
+                        .map(field -> MedicalRevisionDiffResponse.FieldChange.builder()
+                                .field(field)
+                                .before(before.get(field))
+                                .after(after.get(field))
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private Map<String, Object> stateAt(Long recordId, int revision) {
+        return revision == 0 ? emptyState() : replay(replayChain(recordId, revision));
+    }
+
+    private List<MedicalRecordRevision> replayChain(Long recordId, int revision) {
+        List<MedicalRecordRevision> chain = revisionRepository.findReplayChain(recordId, revision);
+        if (chain.isEmpty() || chain.get(chain.size() - 1).getRevision() != revision) {
+            throw new RuntimeException("Revision not found: " + revision);
+        }
+        return chain;
+    }
+
+    // Snapshot đầu chuỗi rồi lần lượt áp các delta
+    private Map<String, Object> replay(List<MedicalRecordRevision> chain) {
+        Map<String, Object> state = new LinkedHashMap<>(emptyState());
+        for (MedicalRecordRevision revision : chain) {
+            state.putAll(objectMapper.readValue(revision.getData(), STATE_TYPE));
+        }
+        return state;
+    }
+
+    private void ensureRecordExists(Long recordId) {
+        if (!medicalRecordRepository.existsById(recordId)) {
+            throw new RuntimeException("Medical record not found");
+        }
+    }
+
+    // ── Tiện ích ─────────────────────────────────────────────────────────────
+
+    // Hồ sơ rỗng tạo sẵn lúc đặt lịch (phiên bản 0)
+    private Map<String, Object> emptyState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("diagnosis", "");
+        state.put("treatment", "");
+        state.put("prescription", "");
+        state.put("notes", "");
+        state.put("followUpDate", null);
+        state.put("weight", null);
+        state.put("temperature", null);
+        state.put("imageUrls", new ArrayList<>());
+        return state;
+    }
+
+    // Chuỗi null và chuỗi rỗng đều coi là chưa điền
+    private boolean isBlank(Map<String, Object> state) {
+        return FIELDS.stream().allMatch(field -> {
+            Object value = state.get(field);
+            return value == null
+                    || (value instanceof String s && s.isEmpty())
+                    || (value instanceof List<?> list && list.isEmpty());
+        });
+    }
+
+    private List<String> changedFields(Map<String, Object> before, Map<String, Object> after) {
+        List<String> changed = new ArrayList<>();
+        for (String field : FIELDS) {
+            if (!Objects.equals(normalize(before.get(field)), normalize(after.get(field)))) {
+                changed.add(field);
+            }
+        }
+        return changed;
+    }
+
+    // Số đọc lại từ JSON có thể là Integer / Double — so sánh theo giá trị
+    private Object normalize(Object value) {
+        return value instanceof Number number ? number.doubleValue() : value;
+    }
+
+    private List<String> splitFields(String fields) {
+        return fields == null || fields.isEmpty() ? List.of() : Arrays.asList(fields.split(","));
+    }
+
+    @SuppressWarnings("unchecked")
+    private MedicalRevisionResponse.RecordState toRecordState(Map<String, Object> state) {
+        Object followUpDate = state.get("followUpDate");
+        Object weight = state.get("weight");
+        Object temperature = state.get("temperature");
+        Object imageUrls = state.get("imageUrls");
+        return MedicalRevisionResponse.RecordState.builder()
+                .diagnosis((String) state.get("diagnosis"))
+                .treatment((String) state.get("treatment"))
+                .prescription((String) state.get("prescription"))
+                .notes((String) state.get("notes"))
+                .followUpDate(followUpDate != null ? LocalDate.parse(followUpDate.toString()) : null)
+                .weight(weight instanceof Number n ? n.doubleValue() : null)
+                .temperature(temperature instanceof Number n ? n.doubleValue() : null)
+                .imageUrls(imageUrls instanceof List<?> list ? (List<String>) list : List.of())
+                .build();
+    }
+}
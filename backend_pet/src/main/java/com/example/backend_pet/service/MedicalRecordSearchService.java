@@ -0,0 +1,128 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.MedicalSearchResponse;
+import com.example.backend_pet.entity.Pet;
+import com.example.backend_pet.repository.MedicalRecordRepository;
+import com.example.backend_pet.repository.MedicalRecordRepositoryCustom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tìm kiếm toàn văn trên bệnh án (chẩn đoán, điều trị, đơn thuốc, ghi chú).
+ *
+ * Chỉ mục đảo là GIN index của PostgreSQL trên cột generated search_vector = to_tsvector('simple', search_text)
+ * (tính 1 lần khi ghi, xếp hạng đọc thẳng từ cột), nằm cùng DB nên luôn
+ * nhất quán với dữ liệu và dùng chung được giữa nhiều node. search_text là văn bản đã bỏ dấu tiếng Việt
+ * (VietnameseTextFolder) — tính sẵn trong Java vì không phụ thuộc extension unaccent — và được ghi lại
+ * cùng transaction mỗi lần MedicalService.saveRecord. Bệnh án cũ chưa có search_text được bổ sung theo lô khi khởi động.
+ */
+@Slf4j
+@Service
+public class MedicalRecordSearchService {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final MedicalRecordRepository medicalRecordRepository;
+    private final int backfillBatchSize;
+
+    public MedicalRecordSearchService(MedicalRecordRepository medicalRecordRepository,
+                                      @Value("${medical.search.backfill-batch-size:1000}") int backfillBatchSize) {
+        this.medicalRecordRepository = medicalRecordRepository;
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    // q: các từ cần có (không phân biệt dấu / hoa thường), từ cuối khớp theo tiền tố ("bravec" → "Bravecto")
+    public MedicalSearchResponse search(String q, String species, LocalDate from, LocalDate to,
+                                        Integer page, Integer size) {
+        List<String> tokens = VietnameseTextFolder.tokens(q);
+        if (tokens.isEmpty()) {
+            throw new RuntimeException("Vui lòng nhập từ khóa tìm kiếm");
+        }
+        if (tokens.size() > MAX_QUERY_TOKENS) {
+            tokens = tokens.subList(0, MAX_QUERY_TOKENS);
+        }
+        // Từ chỉ gồm [a-z0-9] nên ghép thẳng vào tsquery được
+        String query = tokens.stream().collect(Collectors.joining(" & ")) + ":*";
+
+        String speciesParam = "";
+        if (species != null && !species.isBlank()) {
+            try {
+                speciesParam = Pet.Species.valueOf(species.trim().toUpperCase()).name();
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Loài không hợp lệ: " + species);
+            }
+        }
+        int pageNumber = page == null ? 0 : Math.max(0, page);
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<MedicalRecordRepository.SearchHitView> rows = medicalRecordRepository.searchRecords(
+                query, speciesParam.isEmpty(), speciesParam,
+                from != null ? from : MIN_DATE, to != null ? to : MAX_DATE,
+                pageSize + 1, (long) pageNumber * pageSize);
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+
+        return MedicalSearchResponse.builder()
+                .query(q)
+                .page(pageNumber)
+                .size(pageSize)
+                .hasMore(hasMore)
+                .items(rows.stream()
+                        .map(row -> MedicalSearchResponse.Hit.builder()
+                                .recordId(row.getId())
+                                .appointmentId(row.getAppointmentId())
+                                .bookingCode(row.getBookingCode())
+                                .appointmentDate(row.getAppointmentDate())
+                                .petId(row.getPetId())
+                                .petName(row.getPetName())
+                                .petSpecies(row.getPetSpecies())
+                                .diagnosisExcerpt(row.getDiagnosisExcerpt())
+                                .rank(row.getRank() != null ? row.getRank() : 0)
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    // Tạo cột search_vector và GIN index nếu chưa có rồi bổ sung search_text cho bệnh án cũ theo lô id tăng dần
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareIndex() {
+        try {
+            medicalRecordRepository.createSearchIndexIfMissing();
+
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<MedicalRecordRepositoryCustom.SearchSource> batch =
+                        medicalRecordRepository.findUnindexed(lastId, backfillBatchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                medicalRecordRepository.updateSearchText(batch.stream()
+                        .map(r -> new MedicalRecordRepositoryCustom.SearchTextUpdate(r.id(),
+                                VietnameseTextFolder.indexText(r.diagnosis(), r.treatment(), r.prescription(), r.notes())))
+                        .collect(Collectors.toList()));
+                lastId = batch.get(batch.size() - 1).id();
+                total += batch.size();
+            }
+            if (total > 0) {
+                log.info("Đã đánh chỉ mục tìm kiếm cho {} bệnh án", total);
+            }
+        } catch (RuntimeException e) {
+            log.error("Không chuẩn bị được chỉ mục tìm kiếm bệnh án", e);
+        }
+    }
+}
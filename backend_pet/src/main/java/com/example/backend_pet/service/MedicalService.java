@@ -1,49 +1,202 @@
 package com.example.backend_pet.service;
 
+import com.example.backend_pet.dto.CursorPage;
 import com.example.backend_pet.dto.MedicalRequest;
 import com.example.backend_pet.dto.MedicalResponse;
+import com.example.backend_pet.dto.MedicalTimelineItem;
+import com.example.backend_pet.dto.PetMedicalSummaryResponse;
 import com.example.backend_pet.entity.Appointment;
 import com.example.backend_pet.entity.MedicalRecord;
-import com.example.backend_pet.repository.AppointmentRepository;
+import com.example.backend_pet.entity.PetMedicalSummary;
 import com.example.backend_pet.repository.MedicalRecordRepository;
+import com.example.backend_pet.repository.PetMedicalSummaryRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 
 @Service
 @RequiredArgsConstructor
 public class MedicalService {
     private static final int MAX_IMAGES_PER_RECORD = 10;
+    private static final int DEFAULT_TIMELINE_SIZE = 10;
+    private static final int MAX_TIMELINE_SIZE = 50;
+    private static final int RECENT_DIAGNOSES = 3;
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
 
-    private final AppointmentRepository appointmentRepository;
     private final MedicalRecordRepository medicalRecordRepository;
+    private final PetMedicalSummaryRepository petMedicalSummaryRepository;
+    private final MedicalRecordHistoryService medicalRecordHistoryService;
 
+    // Bệnh án của cả nhóm booking: đúng 2 query bất kể số pet (bệnh án + appointment + pet, rồi ảnh của mọi bệnh án)
     public List<MedicalResponse> getRecord(String bookingCode) {
-        List<Appointment> appointments = appointmentRepository.findByBookingCode(bookingCode);
-        System.out.println("length cua appointments duoc tim boi booking code " + bookingCode + " la " + appointments.size());
-        List<MedicalResponse> result = new ArrayList<>();
-        for(Appointment apt : appointments) {
-            MedicalRecord record = medicalRecordRepository.findByAppointmentId(apt.getId()).orElse(null);
-            if(record != null) {
-                result.add(mapToMedicalResponse(apt, record));
-                System.out.println("Record trong for: " + record.toString());
+        return toResponses(medicalRecordRepository.findViewsByBookingCode(bookingCode));
+    }
+
+    public List<MedicalResponse> getRecordsByPet(Long petId) {
+        return toResponses(medicalRecordRepository.findViewsByPetId(petId));
+    }
+
+    // Chi tiết 1 bệnh án kèm ảnh (mở từ timeline)
+    public MedicalResponse getRecordDetail(Long recordId) {
+        MedicalRecordRepository.MedicalRecordView view = medicalRecordRepository.findViewById(recordId)
+                .orElseThrow(() -> new RuntimeException("Medical record not found"));
+        return toResponses(List.of(view)).get(0);
+    }
+
+    // Ảnh của mọi bệnh án trong danh sách được nạp bằng 1 query
+    private List<MedicalResponse> toResponses(List<MedicalRecordRepository.MedicalRecordView> records) {
+        if (records.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, List<String>> imagesByRecord = new HashMap<>();
+        List<Long> ids = records.stream().map(MedicalRecordRepository.MedicalRecordView::getId).collect(Collectors.toList());
+        for (MedicalRecordRepository.RecordImageView image : medicalRecordRepository.findImagesByRecordIds(ids)) {
+            imagesByRecord.computeIfAbsent(image.getRecordId(), id -> new ArrayList<>()).add(image.getImageUrl());
+        }
+
+        return records.stream()
+                .map(view -> MedicalResponse.builder()
+                        .id(view.getId())
+                        .appointmentId(view.getAppointmentId())
+                        .bookingCode(view.getBookingCode())
+                        .appointmentDate(view.getAppointmentDate())
+                        .petName(view.getPetName())
+                        .petImageUrl(view.getPetImageUrl())
+                        .petSpecies(view.getPetSpecies().name())
+                        .diagnosis(view.getDiagnosis())
+                        .treatment(view.getTreatment())
+                        .prescription(view.getPrescription())
+                        .notes(view.getNotes())
+                        .followUpDate(view.getFollowUpDate())
+                        .weight(view.getWeight())
+                        .temperature(view.getTemperature())
+                        .imageUrls(imagesByRecord.getOrDefault(view.getId(), new ArrayList<>()))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    // Timeline bệnh án của pet, mới nhất trước. Con trỏ = "ngày_id" của dòng cuối trang trước
+    public CursorPage<MedicalTimelineItem> getTimeline(Long petId, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_TIMELINE_SIZE : Math.max(1, Math.min(size, MAX_TIMELINE_SIZE));
+
+        LocalDate cursorDate = MAX_DATE;
+        long cursorId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.split("_", 2);
+            try {
+                cursorDate = LocalDate.parse(parts[0]);
+                cursorId = Long.parseLong(parts[1]);
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException e) {
+                throw new RuntimeException("Cursor không hợp lệ");
             }
         }
-//        System.out.println("record: " + result.get(0).toString());
 
-        return result;
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<MedicalRecordRepository.TimelineView> rows = medicalRecordRepository.findTimelinePage(
+                petId, cursorDate, cursorId, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+
+        List<MedicalTimelineItem> items = rows.stream()
+                .map(row -> MedicalTimelineItem.builder()
+                        .id(row.getId())
+                        .appointmentId(row.getAppointmentId())
+                        .bookingCode(row.getBookingCode())
+                        .appointmentDate(row.getAppointmentDate())
+                        .doctorName(row.getDoctorName())
+                        .diagnosisExcerpt(row.getDiagnosisExcerpt())
+                        .weight(row.getWeight())
+                        .temperature(row.getTemperature())
+                        .followUpDate(row.getFollowUpDate())
+                        .imageCount(row.getImageCount())
+                        .build())
+                .collect(Collectors.toList());
+
+        MedicalRecordRepository.TimelineView last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        return CursorPage.<MedicalTimelineItem>builder()
+                .items(items)
+                .nextCursor(hasMore ? last.getAppointmentDate() + "_" + last.getId() : null)
+                .hasMore(hasMore)
+                .build();
     }
-    public List<MedicalResponse> getRecordsByPet(Long petId) {
-        List<MedicalRecord> records = medicalRecordRepository
-                .findByAppointment_PetIdOrderByAppointment_AppointmentDateDesc(petId);
-        List<MedicalResponse> result = new ArrayList<>();
-        for (MedicalRecord record : records) {
-            result.add(mapToMedicalResponse(record.getAppointment(), record));
+
+    // Phần đầu timeline: đọc 1 dòng tóm tắt; pet chưa có dòng tóm tắt (dữ liệu cũ) thì dựng lần đầu.
+    // Ngày tái khám sắp tới luôn tính theo hôm nay
+    @Transactional
+    public PetMedicalSummaryResponse getSummary(Long petId) {
+        PetMedicalSummary summary = petMedicalSummaryRepository.findByPetId(petId)
+                .orElseGet(() -> refreshSummary(petId));
+
+        List<PetMedicalSummaryResponse.RecentDiagnosis> recent = new ArrayList<>();
+        if (summary.getRecentDiagnoses() != null && !summary.getRecentDiagnoses().isEmpty()) {
+            Arrays.stream(summary.getRecentDiagnoses().split("\n"))
+                    .map(line -> line.split("\\|", 2))
+                    .forEach(parts -> recent.add(PetMedicalSummaryResponse.RecentDiagnosis.builder()
+                            .date(LocalDate.parse(parts[0]))
+                            .diagnosis(parts.length > 1 ? parts[1] : "")
+                            .build()));
+        }
+
+        return PetMedicalSummaryResponse.builder()
+                .petId(petId)
+                .visitCount(summary.getVisitCount())
+                .lastVisitDate(summary.getLastVisitDate())
+                .latestWeight(summary.getLatestWeight())
+                .latestTemperature(summary.getLatestTemperature())
+                .vitalsDate(summary.getVitalsDate())
+                .nextFollowUpDate(medicalRecordRepository.findNextFollowUpDate(petId, LocalDate.now()).orElse(null))
+                .recentDiagnoses(recent)
+                .build();
+    }
+
+    // Gọi trong transaction đổi trạng thái lịch khám: lần khám hoàn thành (hoặc bị bỏ hoàn thành) đổi số lần khám
+    public void refreshSummaries(Collection<Long> petIds) {
+        new LinkedHashSet<>(petIds).forEach(this::refreshSummary);
+    }
+
+    // Tính lại dòng tóm tắt của pet từ bệnh án (vài query nhỏ có giới hạn trên index pet_id, appointment_date)
+    private PetMedicalSummary refreshSummary(Long petId) {
+        MedicalRecordRepository.VisitStatsView stats = medicalRecordRepository.findVisitStats(petId);
+        List<MedicalRecordRepository.VitalsView> vitals =
+                medicalRecordRepository.findLatestVitals(petId, PageRequest.of(0, 1));
+        String recentDiagnoses = medicalRecordRepository.findRecentDiagnoses(petId, PageRequest.of(0, RECENT_DIAGNOSES))
+                .stream()
+                // Chẩn đoán nằm trên 1 dòng để tách lại được khi đọc
+                .map(d -> d.getAppointmentDate() + "|" + d.getDiagnosisExcerpt().replace('\n', ' ').replace('\r', ' '))
+                .collect(Collectors.joining("\n"));
+
+        PetMedicalSummary summary = PetMedicalSummary.builder()
+                .petId(petId)
+                .visitCount((int) stats.getVisitCount())
+                .lastVisitDate(stats.getLastVisitDate())
+                .recentDiagnoses(recentDiagnoses)
+                .build();
+        if (!vitals.isEmpty()) {
+            summary.setLatestWeight(vitals.get(0).getWeight());
+            summary.setLatestTemperature(vitals.get(0).getTemperature());
+            summary.setVitalsDate(vitals.get(0).getAppointmentDate());
         }
-        return result;
+        // Upsert thay vì đọc rồi save: nhiều request cùng dựng tóm tắt của 1 pet không đụng unique pet_id
+        petMedicalSummaryRepository.upsert(petId, summary.getVisitCount(), summary.getLastVisitDate(),
+                summary.getLatestWeight(), summary.getLatestTemperature(), summary.getVitalsDate(),
+                summary.getRecentDiagnoses());
+        return summary;
     }
 
     private MedicalResponse mapToMedicalResponse(Appointment apt, MedicalRecord record) {
@@ -60,32 +213,49 @@ public class MedicalService {
                 .prescription(record.getPrescription())
                 .notes(record.getNotes())
                 .followUpDate(record.getFollowUpDate())
+                .weight(record.getWeight())
+                .temperature(record.getTemperature())
                 .imageUrls(record.getImageUrls() != null ? new ArrayList<>(record.getImageUrls()) : new ArrayList<>())
                 .build();
     }
 
+    @Transactional
     public MedicalResponse saveRecord(Long appointmentId, MedicalRequest medicalRequest) {
-        MedicalRecord record = medicalRecordRepository.findByAppointmentId(appointmentId).orElse(null);
-        System.out.println("medicalrequest: " + medicalRequest.toString());
-        System.out.println("record truoc khi set value: " + record.toString());
+        // Khóa dòng bệnh án: số phiên bản trong lịch sử được cấp tuần tự
+        MedicalRecord record = medicalRecordRepository.lockByAppointmentId(appointmentId)
+                .orElseThrow(() -> new RuntimeException("Medical record not found"));
+
+        List<String> incoming = medicalRequest.getImageUrls() != null ? medicalRequest.getImageUrls() : new ArrayList<>();
+        if (incoming.size() > MAX_IMAGES_PER_RECORD) {
+            throw new IllegalArgumentException("Mỗi bệnh án tối đa " + MAX_IMAGES_PER_RECORD + " ảnh");
+        }
+
+        Map<String, Object> before = medicalRecordHistoryService.stateOf(record);
 
         record.setDiagnosis(medicalRequest.getDiagnosis());
         record.setNotes((medicalRequest.getNotes()));
         record.setPrescription(medicalRequest.getPrescription());
         record.setTreatment(medicalRequest.getTreatment());
         record.setFollowUpDate(medicalRequest.getFollowUpDate());
+        record.setWeight(medicalRequest.getWeight());
+        record.setTemperature(medicalRequest.getTemperature());
 
-        // Validate + replace toàn bộ list ảnh — @ElementCollection sẽ tự xóa row cũ và insert mới
-        List<String> incoming = medicalRequest.getImageUrls() != null ? medicalRequest.getImageUrls() : new ArrayList<>();
-        if (incoming.size() > MAX_IMAGES_PER_RECORD) {
-            throw new IllegalArgumentException("Mỗi bệnh án tối đa " + MAX_IMAGES_PER_RECORD + " ảnh");
+        // Chỉ thay list ảnh khi thực sự đổi — thay list khiến @ElementCollection xóa hết row cũ rồi insert lại
+        if (!new ArrayList<>(record.getImageUrls()).equals(incoming)) {
+            record.getImageUrls().clear();
+            record.getImageUrls().addAll(incoming);
         }
-        record.getImageUrls().clear();
-        record.getImageUrls().addAll(incoming);
 
-        MedicalRecord savedRecord = medicalRecordRepository.save(record);
-        System.out.println("record sau khi set value" + record.toString());
+        // Không có trường nào đổi thì không ghi gì (không phiên bản mới, không UPDATE)
+        if (medicalRecordHistoryService.append(record, before, medicalRecordHistoryService.stateOf(record))) {
+            // Cập nhật chỉ mục tìm kiếm cùng transaction
+            record.setSearchText(VietnameseTextFolder.indexText(record.getDiagnosis(), record.getTreatment(),
+                    record.getPrescription(), record.getNotes()));
+            medicalRecordRepository.saveAndFlush(record);
+            // Tóm tắt tính từ DB nên phải flush bệnh án vừa sửa trước
+            refreshSummary(record.getAppointment().getPet().getId());
+        }
 
-        return mapToMedicalResponse(record.getAppointment(), savedRecord);
+        return mapToMedicalResponse(record.getAppointment(), record);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.NextAvailableSlotResponse;
+import com.example.backend_pet.entity.PetService;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.repository.PetServiceRepository;
+import com.example.backend_pet.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tìm các giờ bắt đầu sớm nhất đặt được cho 1 yêu cầu.
+ *
+ * Giờ bắt đầu ở slot i đặt được khi slot i còn chỗ (SlotAvailabilityService) và có bác sĩ rảnh
+ * liên tục từ slot i tới hết thời lượng — tức bitmap bận của bác sĩ (DoctorTimelineIndex.getBusySlots)
+ * không có bit nào trong [i, i + số slot cần). Xét lần lượt từng ngày, dừng ngay khi đủ K kết quả;
+ * ngày không còn slot trống thì không đọc lịch bác sĩ.
+ */
+@Service
+public class NextAvailableSlotService {
+
+    private static final int DEFAULT_LIMIT = 5;
+    private static final int MAX_LIMIT = 20;
+
+    private final PetServiceRepository petServiceRepository;
+    private final UserRepository userRepository;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final DoctorTimelineIndex doctorTimelineIndex;
+    private final int slotMinutes;
+    private final int maxSearchDays;
+
+    public NextAvailableSlotService(PetServiceRepository petServiceRepository,
+                                    UserRepository userRepository,
+                                    SlotAvailabilityService slotAvailabilityService,
+                                    DoctorTimelineIndex doctorTimelineIndex,
+                                    @Value("${clinic.slot-minutes:30}") int slotMinutes,
+                                    @Value("${clinic.next-available.max-search-days:60}") int maxSearchDays) {
+        this.petServiceRepository = petServiceRepository;
+        this.userRepository = userRepository;
+        this.slotAvailabilityService = slotAvailabilityService;
+        this.doctorTimelineIndex = doctorTimelineIndex;
+        this.slotMinutes = slotMinutes;
+        this.maxSearchDays = maxSearchDays;
+    }
+
+    public NextAvailableSlotResponse findNextAvailable(List<Long> serviceIds, Integer petCount, LocalDate from,
+                                                       Long doctorId, Integer limit) {
+        int pets = petCount == null ? 1 : Math.max(1, petCount);
+        int wanted = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        // Thời lượng như khi phân công bác sĩ: tổng duration dịch vụ của mọi pet trong nhóm
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(serviceIds != null ? serviceIds : List.of()));
+        List<PetService> services = petServiceRepository.findAllById(ids);
+        if (services.size() != ids.size()) {
+            throw new RuntimeException("Service not found");
+        }
+        long serviceMinutes = services.stream()
+                .mapToLong(s -> s.getDuration() != null ? s.getDuration() : 0)
+                .sum();
+        int minutes = doctorTimelineIndex.durationOf(serviceMinutes * pets);
+        int needed = (minutes + slotMinutes - 1) / slotMinutes;
+
+        List<User> doctors;
+        if (doctorId != null) {
+            User doctor = userRepository.findById(doctorId)
+                    .filter(u -> u.getRole() == User.Role.DOCTOR)
+                    .orElseThrow(() -> new RuntimeException("Doctor not found"));
+            doctors = List.of(doctor);
+        } else {
+            doctors = userRepository.findByRole(User.Role.DOCTOR);
+        }
+        List<Long> doctorIds = doctors.stream().map(User::getId).collect(Collectors.toList());
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate start = from == null || from.isBefore(now.toLocalDate()) ? now.toLocalDate() : from;
+        int slotCount = slotAvailabilityService.getSlotCount();
+
+        List<NextAvailableSlotResponse.AvailableSlot> result = new ArrayList<>(wanted);
+        int searchedDays = 0;
+        for (int day = 0; day < maxSearchDays && result.size() < wanted; day++) {
+            LocalDate date = start.plusDays(day);
+            searchedDays++;
+
+            int[] remaining = slotAvailabilityService.getRemaining(date);
+            int firstOpen = firstOpenSlot(date, remaining, needed, now);
+            if (firstOpen < 0) {
+                continue;
+            }
+            Map<Long, BitSet> busy = doctorIds.isEmpty() ? Map.of() : doctorTimelineIndex.getBusySlots(doctorIds, date);
+
+            for (int i = firstOpen; i + needed <= slotCount && result.size() < wanted; i++) {
+                LocalTime time = slotAvailabilityService.slotTime(i);
+                if (remaining[i] == 0 || date.atTime(time).isBefore(now)) {
+                    continue;
+                }
+                User doctor = pickDoctor(doctors, busy, i, needed);
+                if (doctor == null && !doctors.isEmpty()) {
+                    continue;
+                }
+                result.add(NextAvailableSlotResponse.AvailableSlot.builder()
+                        .date(date.toString())
+                        .startTime(time.toString())
+                        .endTime(time.plusMinutes(minutes).toString())
+                        .remaining(remaining[i])
+                        .doctorId(doctor != null ? doctor.getId() : null)
+                        .doctorName(doctor != null ? doctor.getFullName() : null)
+                        .build());
+            }
+        }
+
+        return NextAvailableSlotResponse.builder()
+                .durationMinutes(minutes)
+                .searchedDays(searchedDays)
+                .slots(result)
+                .build();
+    }
+
+    // Slot đầu tiên trong ngày còn chỗ, chưa qua và đủ chỗ cho thời lượng trước giờ đóng cửa; -1 nếu không có
+    private int firstOpenSlot(LocalDate date, int[] remaining, int needed, LocalDateTime now) {
+        for (int i = 0; i + needed <= remaining.length; i++) {
+            if (remaining[i] > 0 && !date.atTime(slotAvailabilityService.slotTime(i)).isBefore(now)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Bác sĩ rảnh suốt [slot, slot + needed), ưu tiên người ít slot bận nhất trong ngày
+    private User pickDoctor(List<User> doctors, Map<Long, BitSet> busy, int slot, int needed) {
+        User best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (User doctor : doctors) {
+            BitSet slots = busy.get(doctor.getId());
+            int nextBusy = slots != null ? slots.nextSetBit(slot) : -1;
+            if (nextBusy >= 0 && nextBusy < slot + needed) {
+                continue;
+            }
+            int load = slots != null ? slots.cardinality() : 0;
+            if (load < bestLoad) {
+                best = doctor;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+}
@@ -1,49 +1,61 @@
 package com.example.backend_pet.service;
 
+import com.example.backend_pet.dto.CursorPage;
 import com.example.backend_pet.dto.OrderResponse;
+import com.example.backend_pet.dto.OrderSummaryResponse;
 import com.example.backend_pet.entity.*;
-import com.example.backend_pet.repository.CartRepository;
 import com.example.backend_pet.repository.OrderRepository;
 import com.example.backend_pet.repository.ProductRepository;
 import com.example.backend_pet.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 10;
+    private static final int MAX_HISTORY_PAGE_SIZE = 50;
+
     private final OrderRepository orderRepository;
-    private final CartRepository cartRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final CartService cartService;
+    private final PricingEngine pricingEngine;
 
     // Tạo đơn hàng từ giỏ hàng
     @Transactional
-    public OrderResponse createOrderFromCart(Long userId, String shippingAddress, String paymentMethod, String notes, String contactPhone) {
+    public OrderResponse createOrderFromCart(Long userId, String shippingAddress, String paymentMethod, String notes, String contactPhone,
+                                             String voucherCode) {
         // 1. Lấy user
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        // 2. Lấy cart có items
-        Cart cart = cartRepository.findByUserIdWithItems(userId)
-                .orElseThrow(() -> new RuntimeException("Cart not found"));
+        // 2. Lấy số lượng trong giỏ (cùng nguồn với API giỏ hàng: DB hoặc store write-behind)
+        Map<Long, Integer> quantities = cartService.getCartQuantities(userId);
 
         // 3. Kiểm tra giỏ hàng có trống không
-        if (cart.getItems().isEmpty()) {
+        if (quantities.isEmpty()) {
             throw new RuntimeException("Giỏ hàng trống");
         }
 
-        // 3.1. Kiểm tra tồn kho đủ cho từng sản phẩm
-        for (CartItem cartItem : cart.getItems()) {
-            Product product = cartItem.getProduct();
-            if (product.getStock() < cartItem.getQuantity()) {
+        // 3.1. Lấy sản phẩm trong 1 query và kiểm tra tồn kho đủ cho từng sản phẩm
+        Map<Long, Product> products = productRepository.findAllById(quantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
+            if (product == null) {
+                throw new RuntimeException("Product not found with id: " + line.getKey());
+            }
+            if (product.getStock() < line.getValue()) {
                 throw new RuntimeException(
                         "Sản phẩm \"" + product.getName() + "\" chỉ còn "
                                 + product.getStock() + " trong kho"
@@ -51,34 +63,36 @@ public class OrderService {
             }
         }
 
-        // 4. Tính tổng tiền
-        BigDecimal totalAmount = cart.getItems().stream()
-                .map(item -> item.getProduct().getPrice()
-                        .multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // 4. Tính tổng tiền qua PricingEngine (cùng cách tính với giỏ hàng, đã trừ khuyến mãi/voucher)
+        PricingEngine.PricingResult pricing = pricingEngine.price(quantities.entrySet().stream()
+                .map(line -> new PricingEngine.Line(products.get(line.getKey()), line.getValue()))
+                .collect(Collectors.toList()), voucherCode);
+        BigDecimal totalAmount = pricing.total();
 
         // 5. Tạo Order (orderNumber đặt tạm, sẽ cập nhật sau khi có ID từ DB)
         Order order = Order.builder()
                 .user(user)
                 .orderNumber("TEMP")
                 .totalAmount(totalAmount)
+                .discountAmount(pricing.discountTotal().signum() > 0 ? pricing.discountTotal() : null)
+                .voucherCode(pricing.voucherCode())
                 .shippingAddress(shippingAddress)
                 .paymentMethod(paymentMethod)
                 .notes(notes)
                 .contactPhone(contactPhone)
                 .build();
 
-        // 7. Chuyển CartItem → OrderItem, đồng thời trừ tồn kho
-        for (CartItem cartItem : cart.getItems()) {
-            Product product = cartItem.getProduct();
+        // 7. Chuyển dòng giỏ hàng → OrderItem, đồng thời trừ tồn kho
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
 
             // Trừ stock
-            product.setStock(product.getStock() - cartItem.getQuantity());
+            product.setStock(product.getStock() - line.getValue());
             productRepository.save(product);
 
             OrderItem orderItem = OrderItem.builder()
                     .product(product)
-                    .quantity(cartItem.getQuantity())
+                    .quantity(line.getValue())
                     .price(product.getPrice()) // Lưu giá tại thời điểm mua
                     .build();
             order.addItem(orderItem);
@@ -106,6 +120,66 @@ public class OrderService {
                 .collect(Collectors.toList());
     }
 
+    // Lịch sử đơn hàng dạng tóm tắt, phân trang theo con trỏ (cursor = id đơn cuối của trang trước)
+    // Mỗi trang đúng 3 query có giới hạn: danh sách đơn, thống kê item, thumbnail
+    public CursorPage<OrderSummaryResponse> getOrderHistory(Long userId, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_HISTORY_PAGE_SIZE : Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        long after = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                after = Long.parseLong(cursor.trim());
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Cursor không hợp lệ");
+            }
+        }
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<OrderRepository.OrderSummaryView> rows =
+                orderRepository.findSummaryPage(userId, after, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (rows.isEmpty()) {
+            return CursorPage.<OrderSummaryResponse>builder().items(List.of()).hasMore(false).build();
+        }
+
+        List<Long> orderIds = rows.stream().map(OrderRepository.OrderSummaryView::getId).collect(Collectors.toList());
+        Map<Long, OrderRepository.OrderItemStatsView> stats = orderRepository.findItemStats(orderIds).stream()
+                .collect(Collectors.toMap(OrderRepository.OrderItemStatsView::getOrderId, Function.identity()));
+        List<Long> firstItemIds = stats.values().stream()
+                .map(OrderRepository.OrderItemStatsView::getFirstItemId)
+                .collect(Collectors.toList());
+        Map<Long, OrderRepository.OrderThumbnailView> thumbnails = firstItemIds.isEmpty()
+                ? Map.of()
+                : orderRepository.findThumbnails(firstItemIds).stream()
+                        .collect(Collectors.toMap(OrderRepository.OrderThumbnailView::getItemId, Function.identity()));
+
+        List<OrderSummaryResponse> items = rows.stream()
+                .map(row -> {
+                    OrderRepository.OrderItemStatsView stat = stats.get(row.getId());
+                    OrderRepository.OrderThumbnailView thumb = stat != null ? thumbnails.get(stat.getFirstItemId()) : null;
+                    return OrderSummaryResponse.builder()
+                            .id(row.getId())
+                            .orderNumber(row.getOrderNumber())
+                            .createdAt(row.getCreatedAt())
+                            .totalAmount(row.getTotalAmount())
+                            .status(row.getStatus().name())
+                            .paymentStatus(row.getPaymentStatus().name())
+                            .itemCount(stat != null ? stat.getItemCount() : 0)
+                            .thumbnailUrl(thumb != null ? thumb.getImageUrl() : null)
+                            .firstProductName(thumb != null ? thumb.getProductName() : null)
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        return CursorPage.<OrderSummaryResponse>builder()
+                .items(items)
+                .nextCursor(hasMore ? String.valueOf(items.get(items.size() - 1).getId()) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
     // Lấy chi tiết 1 đơn hàng
     public OrderResponse getOrderById(Long orderId, Long userId) {
         Order order = orderRepository.findById(orderId)
@@ -169,6 +243,8 @@ public class OrderService {
                 .orderNumber(order.getOrderNumber())
                 .userName(order.getUser().getFullName())
                 .totalAmount(order.getTotalAmount())
+                .discountAmount(order.getDiscountAmount())
+                .voucherCode(order.getVoucherCode())
                 .status(order.getStatus().name())
                 .shippingAddress(order.getShippingAddress())
                 .paymentMethod(order.getPaymentMethod())
@@ -0,0 +1,279 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.entity.Product;
+import com.example.backend_pet.entity.Promotion;
+import com.example.backend_pet.entity.Promotion.PromotionType;
+import com.example.backend_pet.repository.PromotionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tính tiền giỏ hàng / đơn hàng kèm khuyến mãi — CartService và OrderService dùng chung để tổng tiền
+ * hiển thị ở giỏ luôn khớp với tổng tiền của đơn.
+ *
+ * - Khuyến mãi đang bật được biên dịch 1 lần thành RuleIndex (theo sản phẩm, danh mục, mã voucher)
+ *   và thay nguyên khối qua tham chiếu volatile khi có thay đổi.
+ * - Rule cấp dòng của 1 sản phẩm tra thẳng trong RuleIndex (theo id sản phẩm + danh mục), giá lấy từ Product
+ *   vừa nạp nên luôn là giá hiện tại.
+ * - Tính tiền 1 giỏ: 1 lượt qua các dòng + 1 lượt qua các danh mục có trong giỏ → O(số dòng).
+ *
+ * Quy tắc cộng dồn:
+ * - Mỗi dòng chỉ nhận 1 giảm giá cấp dòng tốt nhất (PERCENT_OFF hoặc BUY_X_GET_Y).
+ * - CATEGORY_BUNDLE: mỗi danh mục nhận 1 combo tốt nhất, tính trên tiền danh mục sau giảm cấp dòng.
+ * - VOUCHER: áp dụng cuối cùng trên toàn bộ giỏ.
+ * Tiền giảm làm tròn tới đồng.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PricingEngine {
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private final PromotionRepository promotionRepository;
+
+    private volatile RuleIndex index = RuleIndex.EMPTY;
+
+    // ── Biên dịch rule ───────────────────────────────────────────────────────
+
+    @PostConstruct
+    void init() {
+        reload();
+    }
+
+    // Gọi sau mỗi thay đổi khuyến mãi; định kỳ chạy lại để đồng bộ khi có nhiều instance
+    @Scheduled(fixedDelayString = "${pricing.reload-interval-ms:300000}",
+               initialDelayString = "${pricing.reload-interval-ms:300000}")
+    public synchronized void reload() {
+        RuleIndex next = RuleIndex.compile(promotionRepository.findByActiveTrue(), index.version() + 1);
+        index = next;
+        log.debug("Đã biên dịch {} khuyến mãi (phiên bản {})", next.size(), next.version());
+    }
+
+    // ── Tính tiền ────────────────────────────────────────────────────────────
+
+    public PricingResult price(List<Line> lines, String voucherCode) {
+        RuleIndex rules = index;
+        LocalDateTime now = LocalDateTime.now();
+
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal discountTotal = BigDecimal.ZERO;
+        List<BigDecimal> lineDiscounts = new ArrayList<>(lines.size());
+        Map<Long, AppliedDiscount> applied = new LinkedHashMap<>();
+        Map<String, CategoryTotal> categories = new HashMap<>();
+
+        for (Line line : lines) {
+            Product product = line.product();
+            BigDecimal lineSubtotal = product.getPrice().multiply(BigDecimal.valueOf(line.quantity()));
+
+            Rule best = null;
+            BigDecimal bestDiscount = BigDecimal.ZERO;
+            List<Rule> categoryRules = product.getCategory() != null
+                ? rules.byCategory().getOrDefault(product.getCategory(), List.of())
+                : List.of();
+            for (List<Rule> candidates : List.of(rules.byProduct().getOrDefault(product.getId(), List.of()), categoryRules)) {
+                for (Rule rule : candidates) {
+                    if (!rule.isLive(now)) {
+                        continue;
+                    }
+                    BigDecimal discount = rule.lineDiscount(product.getPrice(), line.quantity(), lineSubtotal);
+                    if (discount.compareTo(bestDiscount) > 0) {
+                        best = rule;
+                        bestDiscount = discount;
+                    }
+                }
+            }
+            if (best != null) {
+                addApplied(applied, best, bestDiscount);
+            }
+
+            subtotal = subtotal.add(lineSubtotal);
+            discountTotal = discountTotal.add(bestDiscount);
+            lineDiscounts.add(bestDiscount);
+
+            if (product.getCategory() != null) {
+                categories.computeIfAbsent(product.getCategory(), c -> new CategoryTotal())
+                    .add(line.quantity(), lineSubtotal.subtract(bestDiscount));
+            }
+        }
+
+        // Combo theo danh mục
+        for (Map.Entry<String, CategoryTotal> e : categories.entrySet()) {
+            Rule best = null;
+            BigDecimal bestDiscount = BigDecimal.ZERO;
+            for (Rule rule : rules.bundlesByCategory().getOrDefault(e.getKey(), List.of())) {
+                if (!rule.isLive(now) || e.getValue().quantity < rule.minQuantity()) {
+                    continue;
+                }
+                BigDecimal discount = roundMoney(e.getValue().amount.multiply(rule.rate()));
+                if (discount.compareTo(bestDiscount) > 0) {
+                    best = rule;
+                    bestDiscount = discount;
+                }
+            }
+            if (best != null) {
+                addApplied(applied, best, bestDiscount);
+                discountTotal = discountTotal.add(bestDiscount);
+            }
+        }
+
+        // Voucher
+        String appliedVoucher = null;
+        if (voucherCode != null && !voucherCode.isBlank()) {
+            Rule voucher = rules.vouchers().get(normalizeVoucherCode(voucherCode));
+            if (voucher == null || !voucher.isLive(now)) {
+                throw new RuntimeException("Mã giảm giá không hợp lệ hoặc đã hết hạn");
+            }
+            BigDecimal net = subtotal.subtract(discountTotal);
+            if (voucher.minOrderAmount() != null && net.compareTo(voucher.minOrderAmount()) < 0) {
+                throw new RuntimeException("Đơn hàng chưa đạt giá trị tối thiểu "
+                    + voucher.minOrderAmount().stripTrailingZeros().toPlainString() + " để dùng mã " + voucher.voucherCode());
+            }
+            BigDecimal discount = voucher.amountOff() != null
+                ? voucher.amountOff().min(net)
+                : roundMoney(net.multiply(voucher.rate()));
+            addApplied(applied, voucher, discount);
+            discountTotal = discountTotal.add(discount);
+            appliedVoucher = voucher.voucherCode();
+        }
+
+        BigDecimal total = subtotal.subtract(discountTotal).max(BigDecimal.ZERO);
+        return new PricingResult(subtotal, discountTotal, total, lineDiscounts,
+            new ArrayList<>(applied.values()), appliedVoucher);
+    }
+
+    // Mã voucher lưu và tra cứu dạng chữ hoa, bỏ khoảng trắng 2 đầu
+    public static String normalizeVoucherCode(String code) {
+        return code == null ? null : code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static void addApplied(Map<Long, AppliedDiscount> applied, Rule rule, BigDecimal amount) {
+        applied.merge(rule.id(), new AppliedDiscount(rule.id(), rule.name(), rule.type(), rule.voucherCode(), amount),
+            (a, b) -> new AppliedDiscount(a.promotionId(), a.name(), a.type(), a.voucherCode(), a.amount().add(b.amount())));
+    }
+
+    private static BigDecimal roundMoney(BigDecimal amount) {
+        return amount.setScale(0, RoundingMode.HALF_UP);
+    }
+
+    // ── Kiểu dữ liệu ─────────────────────────────────────────────────────────
+
+    public record Line(Product product, int quantity) {
+    }
+
+    // lineDiscounts: giảm giá cấp dòng, cùng thứ tự với danh sách Line đầu vào
+    public record PricingResult(BigDecimal subtotal, BigDecimal discountTotal, BigDecimal total,
+                                List<BigDecimal> lineDiscounts, List<AppliedDiscount> appliedDiscounts,
+                                String voucherCode) {
+    }
+
+    public record AppliedDiscount(Long promotionId, String name, PromotionType type, String voucherCode,
+                                  BigDecimal amount) {
+    }
+
+    private static class CategoryTotal {
+        int quantity;
+        BigDecimal amount = BigDecimal.ZERO;
+
+        void add(int quantity, BigDecimal amount) {
+            this.quantity += quantity;
+            this.amount = this.amount.add(amount);
+        }
+    }
+
+    // Dạng đã biên dịch của Promotion: % đã đổi sang tỉ lệ, các số nguyên đã unbox
+    private record Rule(Long id, String name, PromotionType type, BigDecimal rate, BigDecimal amountOff,
+                        int buyQuantity, int freeQuantity, int minQuantity, BigDecimal minOrderAmount,
+                        String voucherCode, LocalDateTime startsAt, LocalDateTime endsAt) {
+
+        static Rule of(Promotion p) {
+            return new Rule(p.getId(), p.getName(), p.getType(),
+                p.getPercentOff() != null ? p.getPercentOff().divide(HUNDRED, 6, RoundingMode.HALF_UP) : BigDecimal.ZERO,
+                p.getAmountOff(),
+                p.getBuyQuantity() != null ? p.getBuyQuantity() : 0,
+                p.getFreeQuantity() != null ? p.getFreeQuantity() : 0,
+                p.getMinQuantity() != null ? p.getMinQuantity() : 0,
+                p.getMinOrderAmount(),
+                normalizeVoucherCode(p.getVoucherCode()),
+                p.getStartsAt(), p.getEndsAt());
+        }
+
+        boolean isLive(LocalDateTime now) {
+            return (startsAt == null || !now.isBefore(startsAt)) && (endsAt == null || now.isBefore(endsAt));
+        }
+
+        BigDecimal lineDiscount(BigDecimal unitPrice, int quantity, BigDecimal lineSubtotal) {
+            return switch (type) {
+                case PERCENT_OFF -> roundMoney(lineSubtotal.multiply(rate));
+                case BUY_X_GET_Y -> {
+                    int freeUnits = quantity / (buyQuantity + freeQuantity) * freeQuantity;
+                    yield unitPrice.multiply(BigDecimal.valueOf(freeUnits));
+                }
+                default -> BigDecimal.ZERO;
+            };
+        }
+    }
+
+    private record RuleIndex(long version, Map<Long, List<Rule>> byProduct, Map<String, List<Rule>> byCategory,
+                             Map<String, List<Rule>> bundlesByCategory, Map<String, Rule> vouchers) {
+
+        static final RuleIndex EMPTY = new RuleIndex(0, Map.of(), Map.of(), Map.of(), Map.of());
+
+        static RuleIndex compile(List<Promotion> promotions, long version) {
+            Map<Long, List<Rule>> byProduct = new HashMap<>();
+            Map<String, List<Rule>> byCategory = new HashMap<>();
+            Map<String, List<Rule>> bundles = new HashMap<>();
+            Map<String, Rule> vouchers = new HashMap<>();
+
+            for (Promotion p : promotions) {
+                Rule rule = Rule.of(p);
+                switch (p.getType()) {
+                    case PERCENT_OFF, BUY_X_GET_Y -> {
+                        if (p.getProductId() != null) {
+                            byProduct.computeIfAbsent(p.getProductId(), k -> new ArrayList<>()).add(rule);
+                        } else if (p.getCategory() != null) {
+                            byCategory.computeIfAbsent(p.getCategory(), k -> new ArrayList<>()).add(rule);
+                        }
+                    }
+                    case CATEGORY_BUNDLE -> {
+                        if (p.getCategory() != null) {
+                            bundles.computeIfAbsent(p.getCategory(), k -> new ArrayList<>()).add(rule);
+                        }
+                    }
+                    case VOUCHER -> {
+                        if (rule.voucherCode() != null) {
+                            vouchers.put(rule.voucherCode(), rule);
+                        }
+                    }
+                }
+            }
+            return new RuleIndex(version, freeze(byProduct), freeze(byCategory), freeze(bundles), Map.copyOf(vouchers));
+        }
+
+        private static <K> Map<K, List<Rule>> freeze(Map<K, List<Rule>> map) {
+            Map<K, List<Rule>> frozen = new HashMap<>();
+            map.forEach((k, v) -> frozen.put(k, List.copyOf(v)));
+            return Map.copyOf(frozen);
+        }
+
+        int size() {
+            return byProduct.values().stream().mapToInt(List::size).sum()
+                + byCategory.values().stream().mapToInt(List::size).sum()
+                + bundlesByCategory.values().stream().mapToInt(List::size).sum()
+                + vouchers.size();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -26,6 +27,11 @@ public class ProductService {
             .orElseThrow(() -> new RuntimeException("Product not found with id: " + id));
     }
 
+    // Lấy nhiều sản phẩm theo danh sách ID trong 1 query (ID không tồn tại bị bỏ qua)
+    public List<Product> getProductsByIds(Collection<Long> ids) {
+        return productRepository.findAllById(ids);
+    }
+
     // Lấy sản phẩm theo category
     public List<Product> getProductsByCategory(String category) {
         return productRepository.findByCategory(category);
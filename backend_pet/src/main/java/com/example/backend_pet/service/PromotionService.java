@@ -0,0 +1,146 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.entity.Promotion;
+import com.example.backend_pet.repository.PromotionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class PromotionService {
+
+    private final PromotionRepository promotionRepository;
+    private final PricingEngine pricingEngine;
+
+    // Lấy tất cả khuyến mãi (mới nhất trước)
+    public List<Promotion> getAllPromotions() {
+        return promotionRepository.findAllByOrderByIdDesc();
+    }
+
+    public Promotion getPromotionById(Long id) {
+        return promotionRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("Promotion not found with id: " + id));
+    }
+
+    // Tạo khuyến mãi
+    @Transactional
+    public Promotion createPromotion(Promotion promotion) {
+        promotion.setId(null);
+        validate(promotion);
+        Promotion saved = promotionRepository.save(promotion);
+        reloadAfterCommit();
+        return saved;
+    }
+
+    // Cập nhật khuyến mãi
+    @Transactional
+    public Promotion updatePromotion(Long id, Promotion details) {
+        Promotion promotion = getPromotionById(id);
+        promotion.setName(details.getName());
+        promotion.setType(details.getType());
+        promotion.setProductId(details.getProductId());
+        promotion.setCategory(details.getCategory());
+        promotion.setPercentOff(details.getPercentOff());
+        promotion.setAmountOff(details.getAmountOff());
+        promotion.setBuyQuantity(details.getBuyQuantity());
+        promotion.setFreeQuantity(details.getFreeQuantity());
+        promotion.setMinQuantity(details.getMinQuantity());
+        promotion.setMinOrderAmount(details.getMinOrderAmount());
+        promotion.setVoucherCode(details.getVoucherCode());
+        promotion.setActive(details.getActive() != null ? details.getActive() : promotion.getActive());
+        promotion.setStartsAt(details.getStartsAt());
+        promotion.setEndsAt(details.getEndsAt());
+        validate(promotion);
+        reloadAfterCommit();
+        return promotion;
+    }
+
+    // Xóa khuyến mãi
+    @Transactional
+    public void deletePromotion(Long id) {
+        promotionRepository.delete(getPromotionById(id));
+        reloadAfterCommit();
+    }
+
+    private void validate(Promotion p) {
+        if (p.getName() == null || p.getName().isBlank()) {
+            throw new RuntimeException("Tên khuyến mãi không được để trống");
+        }
+        if (p.getType() == null) {
+            throw new RuntimeException("Loại khuyến mãi không được để trống");
+        }
+        if (p.getActive() == null) {
+            p.setActive(true);
+        }
+        if (p.getStartsAt() != null && p.getEndsAt() != null && !p.getStartsAt().isBefore(p.getEndsAt())) {
+            throw new RuntimeException("Thời gian bắt đầu phải trước thời gian kết thúc");
+        }
+
+        switch (p.getType()) {
+            case PERCENT_OFF -> {
+                requireScope(p);
+                requirePercent(p.getPercentOff());
+            }
+            case BUY_X_GET_Y -> {
+                requireScope(p);
+                if (p.getBuyQuantity() == null || p.getBuyQuantity() < 1
+                        || p.getFreeQuantity() == null || p.getFreeQuantity() < 1) {
+                    throw new RuntimeException("Mua X tặng Y cần số lượng mua và tặng lớn hơn 0");
+                }
+            }
+            case CATEGORY_BUNDLE -> {
+                if (p.getCategory() == null || p.getCategory().isBlank()) {
+                    throw new RuntimeException("Combo theo danh mục cần chọn danh mục");
+                }
+                if (p.getMinQuantity() == null || p.getMinQuantity() < 2) {
+                    throw new RuntimeException("Combo theo danh mục cần số lượng tối thiểu từ 2");
+                }
+                requirePercent(p.getPercentOff());
+            }
+            case VOUCHER -> {
+                if (p.getVoucherCode() == null || p.getVoucherCode().isBlank()) {
+                    throw new RuntimeException("Voucher cần có mã");
+                }
+                p.setVoucherCode(PricingEngine.normalizeVoucherCode(p.getVoucherCode()));
+                if ((p.getPercentOff() == null) == (p.getAmountOff() == null)) {
+                    throw new RuntimeException("Voucher cần đúng 1 trong 2: phần trăm giảm hoặc số tiền giảm");
+                }
+                if (p.getPercentOff() != null) {
+                    requirePercent(p.getPercentOff());
+                } else if (p.getAmountOff().signum() <= 0) {
+                    throw new RuntimeException("Số tiền giảm phải lớn hơn 0");
+                }
+                promotionRepository.findByVoucherCode(p.getVoucherCode())
+                    .filter(other -> !other.getId().equals(p.getId()))
+                    .ifPresent(other -> {
+                        throw new RuntimeException("Mã voucher đã tồn tại: " + p.getVoucherCode());
+                    });
+            }
+        }
+        if (p.getType() != Promotion.PromotionType.VOUCHER) {
+            p.setVoucherCode(null);
+        }
+    }
+
+    private void requireScope(Promotion p) {
+        if (p.getProductId() == null && (p.getCategory() == null || p.getCategory().isBlank())) {
+            throw new RuntimeException("Khuyến mãi cần chọn sản phẩm hoặc danh mục áp dụng");
+        }
+    }
+
+    private void requirePercent(BigDecimal percent) {
+        if (percent == null || percent.signum() <= 0 || percent.compareTo(BigDecimal.valueOf(100)) > 0) {
+            throw new RuntimeException("Phần trăm giảm phải trong khoảng (0, 100]");
+        }
+    }
+
+    // Biên dịch lại rule sau khi transaction commit để engine đọc được dữ liệu mới
+    private void reloadAfterCommit() {
+        TransactionHooks.afterCommit(pricingEngine::reload);
+    }
+}
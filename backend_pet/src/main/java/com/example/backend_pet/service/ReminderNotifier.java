@@ -0,0 +1,24 @@
+package com.example.backend_pet.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Kênh gửi nhắc lịch khám (email, SMS, push, ...). AppointmentReminderScheduler gọi send theo lô;
+ * muốn đổi kênh chỉ cần khai báo 1 bean khác implement interface này.
+ */
+public interface ReminderNotifier {
+
+    // Gửi 1 lô nhắc lịch; exception làm cả lô được ghi log là thất bại
+    void send(List<Reminder> batch);
+
+    enum Kind {
+        DAY_BEFORE,   // trước giờ hẹn 24h
+        HOURS_BEFORE  // trước giờ hẹn 2h
+    }
+
+    record Reminder(String bookingCode, Kind kind, Long ownerId, String ownerEmail, String ownerName,
+                    LocalDate appointmentDate, LocalTime appointmentTime, int petCount) {
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.SlotAvailabilityResponse;
+import com.example.backend_pet.repository.AppointmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Số nhóm booking (bookingCode) đang active theo từng ngày / khung giờ, giữ trong RAM.
+ *
+ * - Khung giờ sinh từ cấu hình clinic.* (mặc định 08:00 → 17:00, mỗi slot 30 phút, slot 17:00 vẫn đặt được).
+ * - Mỗi ngày là 1 AtomicIntegerArray; ngày chưa có trong RAM được nạp từ DB (1 query cho cả tháng),
+ *   lúc khởi động nạp sẵn preload-days ngày tới.
+ * - AppointmentService báo tạo/hủy qua bookedAfterCommit / releasedAfterCommit — chỉ cập nhật sau khi commit.
+ *   Giữa lúc commit và lúc cộng/trừ, DB đã có thay đổi mà RAM chưa có: ngày nào còn thay đổi đang chờ
+ *   (hoặc vừa được cộng/trừ trong lúc query) thì kết quả nạp không được giữ lại, tránh đếm 2 lần.
+ * - reconcile-ms: định kỳ đếm lại từ DB các ngày đang giữ trong RAM và thay số đếm nếu ngày đó không có thay đổi chen vào.
+ *
+ * Dữ liệu ở đây chỉ để hiển thị; giới hạn chỗ khi đặt lịch được kiểm tra riêng khi ghi DB.
+ */
+@Slf4j
+@Service
+public class SlotAvailabilityService {
+
+    private final AppointmentRepository appointmentRepository;
+    private final LocalTime openingTime;
+    private final int slotMinutes;
+    private final int slotCount;
+    private final int capacity;
+    private final int preloadDays;
+    private final List<String> slotLabels;
+
+    private final Map<LocalDate, AtomicIntegerArray> days = new ConcurrentHashMap<>();
+    // Thay đổi theo ngày: ensureLoaded / reconcile chỉ giữ số đếm vừa query nếu ngày đó không có thay đổi chen vào
+    private final Map<LocalDate, DayChanges> changes = new ConcurrentHashMap<>();
+
+    public SlotAvailabilityService(AppointmentRepository appointmentRepository,
+                                   @Value("${clinic.opening-time:08:00}") String openingTime,
+                                   @Value("${clinic.closing-time:17:00}") String closingTime,
+                                   @Value("${clinic.slot-minutes:30}") int slotMinutes,
+                                   @Value("${clinic.slot-capacity:3}") int capacity,
+                                   @Value("${clinic.availability.preload-days:60}") int preloadDays) {
+        this.appointmentRepository = appointmentRepository;
+        this.openingTime = LocalTime.parse(openingTime);
+        this.slotMinutes = slotMinutes;
+        this.capacity = capacity;
+        this.preloadDays = preloadDays;
+        // closing-time là giờ bắt đầu của slot cuối cùng
+        this.slotCount = (int) (ChronoUnit.MINUTES.between(this.openingTime, LocalTime.parse(closingTime)) / slotMinutes) + 1;
+
+        List<String> labels = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            labels.add(slotTime(i).toString());
+        }
+        this.slotLabels = List.copyOf(labels);
+    }
+
+    // ── Lưới khung giờ ───────────────────────────────────────────────────────
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    // Vị trí của giờ hẹn trong lưới, -1 nếu không trùng khung giờ nào
+    public int slotIndex(LocalTime time) {
+        long minutes = ChronoUnit.MINUTES.between(openingTime, time);
+        if (minutes < 0 || minutes % slotMinutes != 0 || time.getSecond() != 0 || time.getNano() != 0) {
+            return -1;
+        }
+        long index = minutes / slotMinutes;
+        return index < slotCount ? (int) index : -1;
+    }
+
+    public LocalTime slotTime(int index) {
+        return openingTime.plusMinutes((long) index * slotMinutes);
+    }
+
+    // ── Đọc ──────────────────────────────────────────────────────────────────
+
+    public SlotAvailabilityResponse getMonthAvailability(YearMonth month) {
+        LocalDate start = month.atDay(1);
+        LocalDate end = month.atEndOfMonth();
+        Map<LocalDate, AtomicIntegerArray> loaded = ensureLoaded(start, end);
+
+        List<SlotAvailabilityResponse.DayAvailability> result = new ArrayList<>(month.lengthOfMonth());
+        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+            AtomicIntegerArray counts = days.getOrDefault(date, loaded.get(date));
+            int[] remaining = new int[slotCount];
+            int freeSlots = 0;
+            for (int i = 0; i < slotCount; i++) {
+                int booked = counts != null ? counts.get(i) : 0;
+                remaining[i] = Math.max(0, capacity - booked);
+                if (remaining[i] > 0) {
+                    freeSlots++;
+                }
+            }
+            result.add(SlotAvailabilityResponse.DayAvailability.builder()
+                .date(date.toString())
+                .remaining(remaining)
+                .freeSlots(freeSlots)
+                .full(freeSlots == 0)
+                .build());
+        }
+
+        return SlotAvailabilityResponse.builder()
+            .month(month.toString())
+            .slotMinutes(slotMinutes)
+            .capacity(capacity)
+            .slots(slotLabels)
+            .days(result)
+            .build();
+    }
+
+    // Số nhóm booking đang giữ chỗ ở 1 slot
+    public int getBooked(LocalDate date, LocalTime time) {
+        int index = slotIndex(time);
+        if (index < 0) {
+            return 0;
+        }
+        AtomicIntegerArray counts = days.getOrDefault(date, ensureLoaded(date, date).get(date));
+        return counts != null ? counts.get(index) : 0;
+    }
+
+    // Số chỗ còn lại theo từng slot của 1 ngày
+    public int[] getRemaining(LocalDate date) {
+        AtomicIntegerArray counts = days.getOrDefault(date, ensureLoaded(date, date).get(date));
+        int[] remaining = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            remaining[i] = Math.max(0, capacity - (counts != null ? counts.get(i) : 0));
+        }
+        return remaining;
+    }
+
+    // Các khung giờ còn chỗ gần nhất với slot yêu cầu (không tính chính nó, bỏ qua giờ đã qua):
+    // trong cùng ngày ưu tiên slot gần nhất, sau đó lần lượt các ngày tiếp theo từ sáng tới chiều
+    public List<SlotFullException.FreeSlot> findNearestFree(LocalDate date, LocalTime time, int limit, int searchDays) {
+        LocalDate lastDay = date.plusDays(searchDays);
+        Map<LocalDate, AtomicIntegerArray> loaded = ensureLoaded(date, lastDay);
+        LocalDateTime now = LocalDateTime.now();
+        int requested = slotIndex(time);
+
+        List<SlotFullException.FreeSlot> result = new ArrayList<>(limit);
+        for (LocalDate day = date; !day.isAfter(lastDay) && result.size() < limit; day = day.plusDays(1)) {
+            AtomicIntegerArray counts = days.getOrDefault(day, loaded.get(day));
+            List<Integer> order = new ArrayList<>(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                order.add(i);
+            }
+            if (day.equals(date) && requested >= 0) {
+                order.sort(Comparator.comparingInt(i -> Math.abs(i - requested)));
+            }
+            for (int i : order) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if ((day.equals(date) && i == requested) || day.atTime(slotTime(i)).isBefore(now)) {
+                    continue;
+                }
+                int remaining = capacity - (counts != null ? counts.get(i) : 0);
+                if (remaining > 0) {
+                    result.add(new SlotFullException.FreeSlot(day, slotTime(i), remaining));
+                }
+            }
+        }
+        return result;
+    }
+
+    // ── Cập nhật từ AppointmentService ───────────────────────────────────────
+
+    // Gọi trong transaction tạo booking: +1 cho slot sau khi commit
+    public void bookedAfterCommit(LocalDate date, LocalTime time) {
+        adjustAfterCommit(date, time, 1);
+    }
+
+    // Gọi trong transaction hủy booking: -1 cho slot sau khi commit
+    public void releasedAfterCommit(LocalDate date, LocalTime time) {
+        adjustAfterCommit(date, time, -1);
+    }
+
+    // Như TransactionHooks.afterCommit, nhưng đánh dấu ngày có thay đổi đang chờ từ lúc đăng ký tới khi transaction kết thúc
+    private void adjustAfterCommit(LocalDate date, LocalTime time, int delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            adjust(date, time, delta);
+            return;
+        }
+        DayChanges day = changesOf(date);
+        day.inFlight.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                adjust(date, time, delta);
+            }
+
+            // Chạy sau afterCommit: khi inFlight về 0 thì mọi thay đổi đã commit của ngày đều đã tăng applied
+            @Override
+            public void afterCompletion(int status) {
+                day.inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private void adjust(LocalDate date, LocalTime time, int delta) {
+        changesOf(date).applied.incrementAndGet();
+        int index = slotIndex(time);
+        AtomicIntegerArray counts = days.get(date);
+        // Ngày chưa nạp thì bỏ qua: lần nạp sau sẽ đọc được dữ liệu đã commit
+        if (index >= 0 && counts != null) {
+            counts.updateAndGet(index, v -> Math.max(0, v + delta));
+        }
+    }
+
+    // ── Nạp từ DB ────────────────────────────────────────────────────────────
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        LocalDate today = LocalDate.now();
+        ensureLoaded(today, today.plusDays(preloadDays));
+        log.info("Đã nạp lịch trống {} ngày từ {}", preloadDays + 1, today);
+    }
+
+    // Sau nửa đêm: số đếm của ngày hôm qua không còn ai xem, bỏ khỏi RAM
+    @Scheduled(cron = "${clinic.availability.evict-cron:0 5 0 * * *}")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        days.keySet().removeIf(date -> date.isBefore(today));
+        changes.keySet().removeIf(date -> date.isBefore(today));
+    }
+
+    // Đếm lại từ DB các ngày từ hôm nay đang giữ trong RAM (1 query); ngày có thay đổi chen vào thì để lượt sau
+    @Scheduled(fixedDelayString = "${clinic.availability.reconcile-ms:300000}")
+    public void reconcile() {
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, AtomicIntegerArray> cached = new HashMap<>();
+        days.forEach((date, counts) -> {
+            if (!date.isBefore(today)) {
+                cached.put(date, counts);
+            }
+        });
+        if (cached.isEmpty()) {
+            return;
+        }
+
+        Map<LocalDate, Long> stamps = stamp(cached.keySet());
+        LocalDate first = Collections.min(cached.keySet());
+        LocalDate last = Collections.max(cached.keySet());
+        Map<LocalDate, AtomicIntegerArray> fresh = toCounts(first, last,
+            appointmentRepository.countActiveBookingsPerSlotBetween(first, last));
+
+        int corrected = 0;
+        for (Map.Entry<LocalDate, AtomicIntegerArray> e : cached.entrySet()) {
+            LocalDate date = e.getKey();
+            AtomicIntegerArray counts = fresh.get(date);
+            if (!differs(e.getValue(), counts) || !days.replace(date, e.getValue(), counts)) {
+                continue;
+            }
+            // Thay trước rồi mới kiểm tra (như ensureLoaded): cộng/trừ chen vào thì bỏ ngày đó để lần sau nạp lại
+            if (settled(date, stamps.get(date))) {
+                corrected++;
+            } else {
+                days.remove(date, counts);
+            }
+        }
+        if (corrected > 0) {
+            log.warn("Đã sửa số đếm lịch trống lệch với DB ở {} ngày", corrected);
+        }
+    }
+
+    // Nạp các ngày chưa có trong RAM; trả về dữ liệu vừa nạp (kể cả khi không được giữ lại trong cache)
+    private Map<LocalDate, AtomicIntegerArray> ensureLoaded(LocalDate start, LocalDate end) {
+        LocalDate first = start;
+        while (!first.isAfter(end) && days.containsKey(first)) {
+            first = first.plusDays(1);
+        }
+        LocalDate last = end;
+        while (!last.isBefore(first) && days.containsKey(last)) {
+            last = last.minusDays(1);
+        }
+        if (first.isAfter(last)) {
+            return Map.of();
+        }
+
+        Map<LocalDate, Long> stamps = stamp(first.datesUntil(last.plusDays(1)).toList());
+        LocalDate singleDay = first;
+        List<Object[]> rows = first.equals(last)
+            ? appointmentRepository.countActiveBookingsPerSlot(singleDay).stream()
+                .map(row -> new Object[]{singleDay, row[0], row[1]})
+                .toList()
+            : appointmentRepository.countActiveBookingsPerSlotBetween(first, last);
+
+        Map<LocalDate, AtomicIntegerArray> loaded = toCounts(first, last, rows);
+        loaded.forEach(days::putIfAbsent);
+
+        // Ngày có booking commit mà chưa kịp cộng/trừ (hoặc vừa cộng/trừ trong lúc query) → kết quả có thể lệch 1;
+        // bỏ đúng mảng vừa nạp (không đụng mảng của lượt nạp khác) để lần sau nạp lại
+        loaded.forEach((date, counts) -> {
+            if (!settled(date, stamps.get(date))) {
+                days.remove(date, counts);
+            }
+        });
+        return loaded;
+    }
+
+    // rows: [date, time, count] → mảng số đếm cho mọi ngày trong [first, last] (ngày không có dòng nào = 0)
+    private Map<LocalDate, AtomicIntegerArray> toCounts(LocalDate first, LocalDate last, List<Object[]> rows) {
+        Map<LocalDate, AtomicIntegerArray> result = new HashMap<>();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            result.put(date, new AtomicIntegerArray(slotCount));
+        }
+        for (Object[] row : rows) {
+            int index = slotIndex((LocalTime) row[1]);
+            AtomicIntegerArray counts = result.get((LocalDate) row[0]);
+            if (index >= 0 && counts != null) {
+                counts.set(index, ((Number) row[2]).intValue());
+            }
+        }
+        return result;
+    }
+
+    private boolean differs(AtomicIntegerArray cached, AtomicIntegerArray fresh) {
+        for (int i = 0; i < slotCount; i++) {
+            if (cached.get(i) != fresh.get(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DayChanges changesOf(LocalDate date) {
+        return changes.computeIfAbsent(date, d -> new DayChanges());
+    }
+
+    // Chụp số lần cộng/trừ đã chạy của từng ngày trước khi query
+    private Map<LocalDate, Long> stamp(Collection<LocalDate> dates) {
+        Map<LocalDate, Long> stamps = new HashMap<>();
+        for (LocalDate date : dates) {
+            stamps.put(date, changesOf(date).applied.get());
+        }
+        return stamps;
+    }
+
+    // Số đếm query được của ngày còn đúng: không còn transaction nào chờ cộng/trừ và không có lần cộng/trừ nào từ lúc chụp.
+    // Đọc inFlight trước applied: transaction tăng applied rồi mới giảm inFlight, nên inFlight = 0 thì applied đã phản ánh nó
+    private boolean settled(LocalDate date, long stamp) {
+        DayChanges day = changesOf(date);
+        return day.inFlight.get() == 0 && day.applied.get() == stamp;
+    }
+
+    private static final class DayChanges {
+        // Số transaction đã đăng ký cộng/trừ ngày này nhưng chưa kết thúc
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Số lần cộng/trừ đã chạy cho ngày này
+        final AtomicLong applied = new AtomicLong();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.SlotCapacityRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Giữ / nhả chỗ trong khung giờ khám, đúng cả khi nhiều request và nhiều node đặt cùng lúc.
+ *
+ * - Nguồn sự thật là bảng slot_capacities: UPDATE có điều kiện booked + n <= capacity,
+ *   dòng bị khóa tới hết transaction nên chỉ các booking cùng slot phải chờ nhau.
+ * - Trong 1 node, request cùng slot xếp hàng trên khóa striped (giữ tới khi transaction kết thúc)
+ *   thay vì cùng chiếm connection chờ khóa dòng trong DB.
+ * - Phải gọi trong transaction của thao tác đặt / hủy lịch. Transaction giữ nhiều slot cùng lúc phải khóa theo
+ *   lockOrder(), nếu không 2 transaction có thể chờ khóa của nhau tới lock-timeout-ms.
+ */
+@Service
+public class SlotCapacityService {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final SlotCapacityRepository slotCapacityRepository;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final long lockTimeoutMillis;
+    private final int suggestionCount;
+    private final int suggestionDays;
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    public SlotCapacityService(SlotCapacityRepository slotCapacityRepository,
+                               SlotAvailabilityService slotAvailabilityService,
+                               @Value("${clinic.booking.lock-timeout-ms:5000}") long lockTimeoutMillis,
+                               @Value("${clinic.booking.suggestions:3}") int suggestionCount,
+                               @Value("${clinic.booking.suggestion-days:7}") int suggestionDays) {
+        this.slotCapacityRepository = slotCapacityRepository;
+        this.slotAvailabilityService = slotAvailabilityService;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.suggestionCount = suggestionCount;
+        this.suggestionDays = suggestionDays;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // Giữ 1 chỗ cho 1 nhóm booking; hết chỗ → SlotFullException kèm gợi ý khung giờ trống gần nhất
+    public void reserve(LocalDate date, LocalTime time) {
+        reserve(date, time, 1);
+    }
+
+    // Giữ count chỗ cùng lúc (tất cả hoặc không)
+    public void reserve(LocalDate date, LocalTime time, int count) {
+        if (slotAvailabilityService.slotIndex(time) < 0) {
+            throw new RuntimeException("Khung giờ không hợp lệ: " + time);
+        }
+        lockUntilCompletion(date, time);
+
+        slotCapacityRepository.insertIfAbsent(date, time, slotAvailabilityService.getCapacity());
+        if (slotCapacityRepository.tryReserve(date, time, count) == 0) {
+            throw new SlotFullException("Khung giờ " + time + " ngày " + date + " đã hết chỗ",
+                slotAvailabilityService.findNearestFree(date, time, suggestionCount, suggestionDays));
+        }
+    }
+
+    // Giữ tối đa count chỗ, trả về số chỗ thực sự giữ được (0 nếu slot đã đầy) — dùng cho nhập lịch hàng loạt
+    public int reserveUpTo(LocalDate date, LocalTime time, int count) {
+        if (slotAvailabilityService.slotIndex(time) < 0) {
+            throw new RuntimeException("Khung giờ không hợp lệ: " + time);
+        }
+        lockUntilCompletion(date, time);
+
+        slotCapacityRepository.insertIfAbsent(date, time, slotAvailabilityService.getCapacity());
+        int granted = Math.min(count, slotCapacityRepository.lockRemaining(date, time));
+        if (granted > 0) {
+            slotCapacityRepository.tryReserve(date, time, granted);
+        }
+        return granted;
+    }
+
+    // Nhả chỗ khi nhóm booking bị hủy
+    public void release(LocalDate date, LocalTime time) {
+        lockUntilCompletion(date, time);
+        slotCapacityRepository.insertIfAbsent(date, time, slotAvailabilityService.getCapacity());
+        slotCapacityRepository.release(date, time, 1);
+    }
+
+    // Thứ tự khóa cho transaction giữ nhiều slot: theo stripe trước (nhiều slot chung 1 stripe), rồi theo thời
+    // điểm để khóa dòng slot_capacities trong DB cũng theo 1 thứ tự cố định
+    public Comparator<LocalDateTime> lockOrder() {
+        return Comparator.<LocalDateTime>comparingInt(slot -> stripeOf(slot.toLocalDate(), slot.toLocalTime()))
+                .thenComparing(Comparator.naturalOrder());
+    }
+
+    private int stripeOf(LocalDate date, LocalTime time) {
+        return Math.floorMod(Objects.hash(date, time), LOCK_STRIPES);
+    }
+
+    private void lockUntilCompletion(LocalDate date, LocalTime time) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("SlotCapacityService phải được gọi trong transaction");
+        }
+        ReentrantLock lock = stripes[stripeOf(date, time)];
+        try {
+            if (!lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Khung giờ đang có nhiều người đặt, vui lòng thử lại");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Đặt lịch bị gián đoạn, vui lòng thử lại");
+        }
+        // afterCompletion chạy trên cùng thread sau commit/rollback → mở khóa đúng thread đã khóa
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.backend_pet.service;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+// Khung giờ đã đủ chỗ — GlobalExceptionHandler trả 409 kèm các khung giờ trống gần nhất
+@Getter
+public class SlotFullException extends RuntimeException {
+
+    private final List<FreeSlot> suggestions;
+
+    public SlotFullException(String message, List<FreeSlot> suggestions) {
+        super(message);
+        this.suggestions = suggestions;
+    }
+
+    public record FreeSlot(LocalDate date, LocalTime time, int remaining) {
+    }
+}
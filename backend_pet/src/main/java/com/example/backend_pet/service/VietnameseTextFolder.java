@@ -0,0 +1,52 @@
+package com.example.backend_pet.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Chuẩn hóa tiếng Việt cho tìm kiếm: bỏ dấu ("viêm da" → "viem da"), đ → d, chữ thường, tách từ theo ký tự không phải chữ / số
+public final class VietnameseTextFolder {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+
+    private VietnameseTextFolder() {
+    }
+
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replace('đ', 'd')
+                .replace('Đ', 'D');
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    // Các từ đã bỏ dấu, chỉ gồm [a-z0-9] (an toàn khi ghép vào tsquery)
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(fold(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Văn bản dùng để đánh chỉ mục: các từ đã chuẩn hóa nối bằng dấu cách
+    public static String indexText(String... parts) {
+        StringBuilder text = new StringBuilder();
+        for (String part : parts) {
+            for (String token : tokens(part)) {
+                if (!text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(token);
+            }
+        }
+        return text.toString();
+    }
+}
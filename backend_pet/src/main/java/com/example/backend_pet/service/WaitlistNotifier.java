@@ -0,0 +1,16 @@
+package com.example.backend_pet.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+// Kênh báo cho người trong hàng đợi rằng đã có chỗ được giữ cho họ (xem WaitlistService)
+public interface WaitlistNotifier {
+
+    void offered(List<Offer> offers);
+
+    record Offer(Long entryId, Long userId, String email, String fullName,
+                 LocalDate slotDate, LocalTime slotTime, LocalDateTime holdUntil) {
+    }
+}
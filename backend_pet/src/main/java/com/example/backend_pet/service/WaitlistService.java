@@ -0,0 +1,275 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.WaitlistRequest;
+import com.example.backend_pet.dto.WaitlistResponse;
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.entity.WaitlistEntry;
+import com.example.backend_pet.repository.UserRepository;
+import com.example.backend_pet.repository.WaitlistEntryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Hàng đợi cho khung giờ đã đầy.
+ *
+ * - Mỗi slot là 1 hàng FIFO trong bảng waitlist_entries; lấy người đầu hàng là 1 lần đọc index
+ *   (slot_date, slot_time, status, id) với FOR UPDATE SKIP LOCKED.
+ * - Khi nhóm booking bị hủy, AppointmentService nhả chỗ như cũ rồi báo slotReleasedAfterCommit:
+ *   sau commit, 1 thread nền giữ lại chỗ vừa nhả cho người đầu hàng (OFFERED, hạn waitlist.hold-minutes)
+ *   và gửi thông báo — request hủy không phải chờ phần này.
+ * - User đặt lịch kèm waitlistEntryId để dùng chỗ được giữ (không giữ chỗ lần nữa).
+ *   Quá hạn mà chưa đặt thì chỗ chuyển cho người kế tiếp, hết người thì nhả hẳn.
+ * - Job định kỳ còn giữ chỗ cho người đầu hàng ở các slot sắp tới vẫn còn chỗ trống, phòng khi thread nền
+ *   không chạy được (app tắt trước khi chạy, lỗi DB...).
+ */
+@Slf4j
+@Service
+public class WaitlistService {
+
+    private static final EnumSet<WaitlistEntry.WaitlistStatus> OPEN =
+            EnumSet.of(WaitlistEntry.WaitlistStatus.WAITING, WaitlistEntry.WaitlistStatus.OFFERED);
+
+    private final WaitlistEntryRepository waitlistEntryRepository;
+    private final UserRepository userRepository;
+    private final SlotCapacityService slotCapacityService;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final WaitlistNotifier notifier;
+    private final TransactionTemplate transactionTemplate;
+    private final long holdMinutes;
+    private final int expiryBatchSize;
+    private final ExecutorService executor;
+
+    public WaitlistService(WaitlistEntryRepository waitlistEntryRepository,
+                           UserRepository userRepository,
+                           SlotCapacityService slotCapacityService,
+                           SlotAvailabilityService slotAvailabilityService,
+                           WaitlistNotifier notifier,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${waitlist.hold-minutes:15}") long holdMinutes,
+                           @Value("${waitlist.expiry-batch-size:100}") int expiryBatchSize,
+                           @Value("${waitlist.threads:2}") int threads) {
+        this.waitlistEntryRepository = waitlistEntryRepository;
+        this.userRepository = userRepository;
+        this.slotCapacityService = slotCapacityService;
+        this.slotAvailabilityService = slotAvailabilityService;
+        this.notifier = notifier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.holdMinutes = holdMinutes;
+        this.expiryBatchSize = expiryBatchSize;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "waitlist");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ── API cho user ─────────────────────────────────────────────────────────
+
+    // Vào hàng đợi của 1 khung giờ đã đầy
+    @Transactional
+    public WaitlistResponse join(Long userId, WaitlistRequest request) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        LocalDate date = LocalDate.parse(request.getAppointmentDate());
+        LocalTime time = LocalTime.parse(request.getAppointmentTime());
+
+        if (slotAvailabilityService.slotIndex(time) < 0) {
+            throw new RuntimeException("Khung giờ không hợp lệ: " + time);
+        }
+        if (date.atTime(time).isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("Khung giờ đã qua");
+        }
+        if (slotAvailabilityService.getBooked(date, time) < slotAvailabilityService.getCapacity()) {
+            throw new RuntimeException("Khung giờ vẫn còn chỗ, vui lòng đặt lịch trực tiếp");
+        }
+        if (waitlistEntryRepository.existsByUserIdAndSlotDateAndSlotTimeAndStatusIn(userId, date, time, OPEN)) {
+            throw new RuntimeException("Bạn đã có trong hàng đợi của khung giờ này");
+        }
+
+        WaitlistEntry entry = waitlistEntryRepository.save(WaitlistEntry.builder()
+                .user(user)
+                .slotDate(date)
+                .slotTime(time)
+                .build());
+        return mapToResponse(entry);
+    }
+
+    public List<WaitlistResponse> getMyEntries(Long userId) {
+        return waitlistEntryRepository.findByUserIdAndStatusInOrderByIdDesc(userId, OPEN).stream()
+                .map(this::mapToResponse)
+                .collect(Collectors.toList());
+    }
+
+    // Rời hàng đợi; nếu đang được giữ chỗ thì chỗ chuyển cho người kế tiếp
+    @Transactional
+    public void leave(Long entryId, Long userId) {
+        WaitlistEntry entry = waitlistEntryRepository.findById(entryId)
+                .orElseThrow(() -> new RuntimeException("Waitlist entry not found"));
+        if (!entry.getUser().getId().equals(userId)) {
+            throw new RuntimeException("Unauthorized");
+        }
+        if (!OPEN.contains(entry.getStatus())) {
+            throw new RuntimeException("Lượt chờ này đã kết thúc");
+        }
+
+        // Trạng thái vừa đọc có thể đã đổi (được giữ chỗ, hết hạn giữ chỗ): đổi có điều kiện theo trạng thái
+        // trong DB, và chỉ chuyển chỗ đang giữ khi chính lệnh này hủy lượt OFFERED
+        LocalDateTime now = LocalDateTime.now();
+        if (waitlistEntryRepository.transition(entryId, WaitlistEntry.WaitlistStatus.OFFERED,
+                WaitlistEntry.WaitlistStatus.CANCELLED, now) == 1) {
+            Optional<WaitlistNotifier.Offer> next = passOnHeldSeat(entry.getSlotDate(), entry.getSlotTime(), now);
+            next.ifPresent(offer -> TransactionHooks.afterCommit(() -> executor.execute(() -> send(List.of(offer)))));
+        } else if (waitlistEntryRepository.transition(entryId, WaitlistEntry.WaitlistStatus.WAITING,
+                WaitlistEntry.WaitlistStatus.CANCELLED, now) == 0) {
+            throw new RuntimeException("Lượt chờ này đã kết thúc");
+        }
+    }
+
+    // ── Gọi từ AppointmentService ────────────────────────────────────────────
+
+    // Gọi trong transaction đặt lịch có waitlistEntryId: dùng chỗ đang được giữ cho user.
+    // Chỗ đã được tính trong slot_capacities lúc giữ nên không giữ thêm.
+    public void claim(Long entryId, Long userId, LocalDate date, LocalTime time) {
+        if (waitlistEntryRepository.claimOffer(entryId, userId, date, time, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Chỗ được giữ từ hàng đợi không còn hiệu lực cho khung giờ này");
+        }
+    }
+
+    // Gọi trong transaction vừa nhả chỗ của slot: sau commit, giữ chỗ cho người đầu hàng trên thread nền
+    public void slotReleasedAfterCommit(LocalDate date, LocalTime time) {
+        TransactionHooks.afterCommit(() -> executor.execute(() -> offerReleasedSeat(date, time)));
+    }
+
+    // ── Chạy nền ─────────────────────────────────────────────────────────────
+
+    // Giữ lại chỗ vừa nhả (hoặc chỗ trống job định kỳ tìm thấy) cho người đầu hàng; người khác đã đặt mất chỗ đó thì thôi
+    private void offerReleasedSeat(LocalDate date, LocalTime time) {
+        LocalDateTime now = LocalDateTime.now();
+        if (date.atTime(time).isBefore(now)) {
+            return;
+        }
+        try {
+            WaitlistNotifier.Offer offer = transactionTemplate.execute(status -> {
+                Optional<Long> next = waitlistEntryRepository.lockNextWaiting(date, time);
+                if (next.isEmpty()) {
+                    return null;
+                }
+                slotCapacityService.reserve(date, time);
+                slotAvailabilityService.bookedAfterCommit(date, time);
+                return offer(next.get(), now);
+            });
+            if (offer != null) {
+                send(List.of(offer));
+            }
+        } catch (SlotFullException e) {
+            log.debug("Chỗ vừa nhả ở {} {} đã được đặt trước khi kịp giữ cho hàng đợi", date, time);
+        } catch (RuntimeException e) {
+            log.error("Không giữ được chỗ cho hàng đợi {} {}", date, time, e);
+        }
+    }
+
+    // Lượt giữ chỗ quá hạn → chuyển cho người kế tiếp; slot đã qua → người còn chờ hết lượt;
+    // sau đó bù cho các chỗ đã nhả mà chưa được giữ cho hàng đợi
+    @Scheduled(fixedDelayString = "${waitlist.expiry-check-ms:30000}")
+    public void expireOffers() {
+        LocalDateTime now = LocalDateTime.now();
+        List<WaitlistNotifier.Offer> offers = transactionTemplate.execute(status -> {
+            waitlistEntryRepository.expirePastWaiting(now.toLocalDate(), now);
+            List<WaitlistNotifier.Offer> result = new ArrayList<>();
+            for (Long id : waitlistEntryRepository.lockExpiredOffers(now, expiryBatchSize)) {
+                WaitlistEntry entry = waitlistEntryRepository.findById(id).orElseThrow();
+                // User vừa rời hàng / đặt lịch bằng chỗ giữ thì lệnh đó đã xử lý chỗ, không chuyển lần nữa
+                if (waitlistEntryRepository.transition(id, WaitlistEntry.WaitlistStatus.OFFERED,
+                        WaitlistEntry.WaitlistStatus.EXPIRED, now) == 1) {
+                    passOnHeldSeat(entry.getSlotDate(), entry.getSlotTime(), now).ifPresent(result::add);
+                }
+            }
+            return result;
+        });
+        if (offers != null && !offers.isEmpty()) {
+            send(offers);
+        }
+        offerFreeSeats(now);
+    }
+
+    // Lượt giữ chỗ sau khi nhả chỉ chạy trên thread nền trong RAM: task bị mất (tắt app) hoặc lỗi thì chỗ đã nhả
+    // mà người trong hàng vẫn WAITING mãi. Mỗi lượt quét giữ 1 chỗ cho người đầu hàng ở mỗi slot như vậy.
+    private void offerFreeSeats(LocalDateTime now) {
+        List<Object[]> slots = waitlistEntryRepository.findWaitingSlotsWithFreeSeats(now.toLocalDate(),
+                slotAvailabilityService.getCapacity(), PageRequest.of(0, expiryBatchSize));
+        for (Object[] slot : slots) {
+            offerReleasedSeat((LocalDate) slot[0], (LocalTime) slot[1]);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Gọi trong transaction: chỗ đang giữ chuyển cho người đầu hàng, không còn ai (hoặc slot đã qua) thì nhả chỗ
+    private Optional<WaitlistNotifier.Offer> passOnHeldSeat(LocalDate date, LocalTime time, LocalDateTime now) {
+        if (!date.atTime(time).isBefore(now)) {
+            Optional<Long> next = waitlistEntryRepository.lockNextWaiting(date, time);
+            if (next.isPresent()) {
+                return Optional.of(offer(next.get(), now));
+            }
+        }
+        slotCapacityService.release(date, time);
+        slotAvailabilityService.releasedAfterCommit(date, time);
+        return Optional.empty();
+    }
+
+    // Gọi trong transaction: đánh dấu OFFERED và lấy thông tin liên hệ để gửi sau commit
+    private WaitlistNotifier.Offer offer(Long entryId, LocalDateTime now) {
+        LocalDateTime holdUntil = now.plusMinutes(holdMinutes);
+        waitlistEntryRepository.markOffered(entryId, holdUntil, now);
+        WaitlistEntry entry = waitlistEntryRepository.findById(entryId).orElseThrow();
+        User user = entry.getUser();
+        return new WaitlistNotifier.Offer(entryId, user.getId(), user.getEmail(), user.getFullName(),
+                entry.getSlotDate(), entry.getSlotTime(), holdUntil);
+    }
+
+    private void send(List<WaitlistNotifier.Offer> offers) {
+        try {
+            notifier.offered(offers);
+        } catch (RuntimeException e) {
+            log.error("Gửi {} thông báo hàng đợi thất bại", offers.size(), e);
+        }
+    }
+
+    private WaitlistResponse mapToResponse(WaitlistEntry entry) {
+        boolean waiting = entry.getStatus() == WaitlistEntry.WaitlistStatus.WAITING;
+        return WaitlistResponse.builder()
+                .id(entry.getId())
+                .appointmentDate(entry.getSlotDate().toString())
+                .appointmentTime(entry.getSlotTime().toString())
+                .status(entry.getStatus().name())
+                .position(waiting
+                        ? waitlistEntryRepository.countBySlotDateAndSlotTimeAndStatusAndIdLessThan(
+                                entry.getSlotDate(), entry.getSlotTime(), WaitlistEntry.WaitlistStatus.WAITING,
+                                entry.getId()) + 1
+                        : null)
+                .holdUntil(entry.getStatus() == WaitlistEntry.WaitlistStatus.OFFERED ? entry.getHoldUntil() : null)
+                .createdAt(entry.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.backend_pet.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppointmentReminderSchedulerTest {
+
+    // Phút bắt đầu giữa giờ (10:45 của 1 ngày bất kỳ) để các lần nhắc phải đi qua ranh giới giờ
+    private static final long START = 1_000 * 60L + 45;
+
+    @Test
+    void entryWithinCurrentHourFiresAtDueMinuteAcrossHourBoundary() {
+        AppointmentReminderScheduler.TimingWheel wheel = new AppointmentReminderScheduler.TimingWheel(4, START);
+        AppointmentReminderScheduler.Entry entry = entry("BK-1", START + 20);
+        wheel.add(entry);
+
+        assertThat(wheel.advanceTo(START + 19)).isEmpty();
+        assertThat(wheel.advanceTo(START + 20)).containsExactly(entry);
+    }
+
+    @Test
+    void entryInLaterHourCascadesDownAndFiresExactlyOnce() {
+        AppointmentReminderScheduler.TimingWheel wheel = new AppointmentReminderScheduler.TimingWheel(4, START);
+        long due = START + 2 * 60 + 7;
+        AppointmentReminderScheduler.Entry entry = entry("BK-1", due);
+        wheel.add(entry);
+
+        List<AppointmentReminderScheduler.Entry> fired = new ArrayList<>();
+        for (long minute = START + 1; minute <= START + 4 * 60; minute++) {
+            List<AppointmentReminderScheduler.Entry> dueNow = wheel.advanceTo(minute);
+            if (!dueNow.isEmpty()) {
+                assertThat(minute).isEqualTo(due);
+            }
+            fired.addAll(dueNow);
+        }
+        assertThat(fired).containsExactly(entry);
+    }
+
+    @Test
+    void entryDueExactlyOnHourBoundaryFires() {
+        AppointmentReminderScheduler.TimingWheel wheel = new AppointmentReminderScheduler.TimingWheel(4, START);
+        long due = (START / 60 + 2) * 60;
+        AppointmentReminderScheduler.Entry entry = entry("BK-1", due);
+        wheel.add(entry);
+
+        assertThat(wheel.advanceTo(due - 1)).isEmpty();
+        assertThat(wheel.advanceTo(due)).containsExactly(entry);
+    }
+
+    @Test
+    void advancingManyHoursAtOnceReturnsEntriesInDueOrder() {
+        AppointmentReminderScheduler.TimingWheel wheel = new AppointmentReminderScheduler.TimingWheel(6, START);
+        AppointmentReminderScheduler.Entry later = entry("BK-2", START + 3 * 60 + 30);
+        AppointmentReminderScheduler.Entry sooner = entry("BK-1", START + 75);
+        AppointmentReminderScheduler.Entry soonest = entry("BK-3", START + 5);
+        wheel.add(later);
+        wheel.add(sooner);
+        wheel.add(soonest);
+
+        assertThat(wheel.advanceTo(START + 5 * 60)).containsExactly(soonest, sooner, later);
+        assertThat(wheel.currentMinute()).isEqualTo(START + 5 * 60);
+    }
+
+    @Test
+    void cancelledEntryIsSkippedBeforeAndAfterCascade() {
+        AppointmentReminderScheduler.TimingWheel wheel = new AppointmentReminderScheduler.TimingWheel(4, START);
+        AppointmentReminderScheduler.Entry inHourSlot = entry("BK-1", START + 2 * 60);
+        AppointmentReminderScheduler.Entry inMinuteSlot = entry("BK-2", START + 10);
+        wheel.add(inHourSlot);
+        wheel.add(inMinuteSlot);
+        inHourSlot.cancelled = true;
+        inMinuteSlot.cancelled = true;
+
+        assertThat(wheel.advanceTo(START + 3 * 60)).isEmpty();
+    }
+
+    private static AppointmentReminderScheduler.Entry entry(String bookingCode, long dueMinute) {
+        return new AppointmentReminderScheduler.Entry(dueMinute, new ReminderNotifier.Reminder(bookingCode,
+                ReminderNotifier.Kind.HOURS_BEFORE, 1L, "owner@example.com", "Owner",
+                LocalDate.of(2030, 1, 15), LocalTime.of(10, 0), 1));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.BookingImportRow;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookingImportCsvReaderTest {
+
+    private static final String HEADER = "ownerEmail,petIds,petNames,serviceIds,appointmentDate,appointmentTime,notes\n";
+
+    @Test
+    void readsPlainRowsWithListsAndEmptyCells() throws IOException {
+        List<BookingImportRow> rows = read(HEADER
+                + "a@example.com,1|2,,3,2030-01-15,09:00,\n"
+                + "b@example.com,,Milu | Lu,,2030-01-16,10:30,Khám định kỳ\n");
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).getOwnerEmail()).isEqualTo("a@example.com");
+        assertThat(rows.get(0).getPetIds()).containsExactly(1L, 2L);
+        assertThat(rows.get(0).getPetNames()).isNull();
+        assertThat(rows.get(0).getServiceIds()).containsExactly(3L);
+        assertThat(rows.get(0).getNotes()).isNull();
+        assertThat(rows.get(1).getPetNames()).containsExactly("Milu", "Lu");
+        assertThat(rows.get(1).getAppointmentTime()).isEqualTo("10:30");
+        assertThat(rows.get(1).getNotes()).isEqualTo("Khám định kỳ");
+    }
+
+    @Test
+    void quotedCellMaySpanSeveralLinesAndContainCommasAndQuotes() throws IOException {
+        List<BookingImportRow> rows = read(HEADER
+                + "a@example.com,1,,,2030-01-15,09:00,\"Dòng 1, có dấu phẩy\nDòng \"\"2\"\"\n\nDòng 4\"\n"
+                + "b@example.com,2,,,2030-01-15,09:30,Sau ô nhiều dòng\n");
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).getNotes()).isEqualTo("Dòng 1, có dấu phẩy\nDòng \"2\"\n\nDòng 4");
+        assertThat(rows.get(1).getOwnerEmail()).isEqualTo("b@example.com");
+        assertThat(rows.get(1).getNotes()).isEqualTo("Sau ô nhiều dòng");
+    }
+
+    @Test
+    void headerIsMatchedIgnoringCaseOrderAndByteOrderMark() throws IOException {
+        List<BookingImportRow> rows = read("\uFEFFAppointmentTime, OWNEREMAIL ,appointmentDate\n"
+                + "09:00,a@example.com,2030-01-15\n");
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).getOwnerEmail()).isEqualTo("a@example.com");
+        assertThat(rows.get(0).getAppointmentDate()).isEqualTo("2030-01-15");
+        assertThat(rows.get(0).getAppointmentTime()).isEqualTo("09:00");
+    }
+
+    @Test
+    void blankLinesAreSkippedAndBadIdsKeptAsMissing() throws IOException {
+        List<BookingImportRow> rows = read(HEADER
+                + "\n"
+                + "a@example.com,x|5,,,2030-01-15,09:00,\n"
+                + "\n");
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).getPetIds()).containsExactly(-1L, 5L);
+    }
+
+    @Test
+    void missingOwnerEmailColumnIsRejected() {
+        assertThatThrownBy(() -> read("petIds,appointmentDate\n1,2030-01-15\n"))
+                .hasMessage("File CSV thiếu cột ownerEmail");
+    }
+
+    @Test
+    void emptyFileIsRejected() {
+        assertThatThrownBy(() -> read("")).hasMessage("File CSV trống");
+    }
+
+    private static List<BookingImportRow> read(String csv) throws IOException {
+        List<BookingImportRow> rows = new ArrayList<>();
+        try (BookingImportService.CsvRowReader reader = new BookingImportService.CsvRowReader(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+            while (reader.hasNext()) {
+                rows.add(reader.next());
+            }
+        }
+        return rows;
+    }
+}
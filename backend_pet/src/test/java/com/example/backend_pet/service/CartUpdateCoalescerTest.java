@@ -0,0 +1,77 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.dto.CartResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartUpdateCoalescerTest {
+
+    private static final long USER = 1L;
+    private static final long PRODUCT = 10L;
+
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        cartService = mock(CartService.class);
+    }
+
+    @Test
+    void loneUpdateIsWrittenWithoutWaitingForWindow() {
+        CartResponse cart = mock(CartResponse.class);
+        when(cartService.updateItemQuantity(USER, PRODUCT, 2)).thenReturn(cart);
+        CartUpdateCoalescer coalescer = new CartUpdateCoalescer(cartService, 60_000);
+
+        long start = System.nanoTime();
+        CartResponse result = coalescer.updateItemQuantity(USER, PRODUCT, 2);
+
+        assertThat(result).isSameAs(cart);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+        assertThat(coalescer.getStats().getPending()).isZero();
+    }
+
+    @Test
+    void updatesInsideWindowAreWrittenOnceWithLastQuantity() throws Exception {
+        CartResponse cart = mock(CartResponse.class);
+        when(cartService.updateItemQuantity(eq(USER), eq(PRODUCT), anyInt())).thenReturn(cart);
+        CartUpdateCoalescer coalescer = new CartUpdateCoalescer(cartService, 300);
+
+        coalescer.updateItemQuantity(USER, PRODUCT, 1);
+        CompletableFuture<CartResponse> second = CompletableFuture.supplyAsync(
+                () -> coalescer.updateItemQuantity(USER, PRODUCT, 2));
+        while (coalescer.getStats().getPending() == 0) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<CartResponse> third = CompletableFuture.supplyAsync(
+                () -> coalescer.updateItemQuantity(USER, PRODUCT, 3));
+
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(cart);
+        assertThat(third.get(5, TimeUnit.SECONDS)).isSameAs(cart);
+        verify(cartService).updateItemQuantity(USER, PRODUCT, 1);
+        verify(cartService, never()).updateItemQuantity(USER, PRODUCT, 2);
+        verify(cartService).updateItemQuantity(USER, PRODUCT, 3);
+        verify(cartService, times(2)).updateItemQuantity(eq(USER), eq(PRODUCT), anyInt());
+    }
+
+    @Test
+    void errorFromWriteIsNotWrapped() {
+        when(cartService.updateItemQuantity(USER, PRODUCT, 2)).thenThrow(new StackOverflowError());
+        CartUpdateCoalescer coalescer = new CartUpdateCoalescer(cartService, 150);
+
+        assertThatThrownBy(() -> coalescer.updateItemQuantity(USER, PRODUCT, 2))
+                .isInstanceOf(StackOverflowError.class);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.CartItemRepository;
+import com.example.backend_pet.repository.CartItemRepositoryCustom.CartDelta;
+import com.example.backend_pet.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartWriteBehindStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private CartItemRepository cartItemRepository;
+    private UserRepository userRepository;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        cartItemRepository = mock(CartItemRepository.class);
+        userRepository = mock(UserRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        when(cartItemRepository.findQuantitiesByUserId(anyLong())).thenReturn(List.of());
+        when(userRepository.existsById(anyLong())).thenReturn(true);
+    }
+
+    // ── Journal ──────────────────────────────────────────────────────────────
+
+    @Test
+    void rotateStartsNewSegmentAndNeverOverwritesSealedOne() {
+        CartWriteBehindStore.Journal journal = new CartWriteBehindStore.Journal(dir);
+        journal.append(List.of("S 1 10 1"));
+        long first = journal.rotate();
+        journal.append(List.of("S 1 10 2"));
+        // Flush trước chưa xóa được đoạn đã đóng: rotate lần nữa vẫn giữ nguyên đoạn đó
+        long second = journal.rotate();
+        journal.append(List.of("S 1 10 3"));
+
+        assertThat(second).isGreaterThan(first);
+        assertThat(segmentNames()).hasSize(3);
+        assertThat(journal.readAll()).containsExactly("S 1 10 1", "S 1 10 2", "S 1 10 3");
+    }
+
+    @Test
+    void deleteSealedKeepsSegmentsWrittenAfterRotation() {
+        CartWriteBehindStore.Journal journal = new CartWriteBehindStore.Journal(dir);
+        journal.append(List.of("S 1 10 1"));
+        journal.rotate();
+        journal.append(List.of("S 1 10 2"));
+        long sealed = journal.rotate();
+        journal.append(List.of("R 2"));
+
+        journal.deleteSealed(sealed);
+
+        assertThat(journal.readAll()).containsExactly("R 2");
+    }
+
+    @Test
+    void newJournalContinuesAfterExistingSegments() throws IOException {
+        Files.writeString(dir.resolve("cart.journal.7"), "S 1 10 1\n", StandardCharsets.UTF_8);
+
+        CartWriteBehindStore.Journal journal = new CartWriteBehindStore.Journal(dir);
+        journal.append(List.of("S 1 10 2"));
+
+        assertThat(segmentNames()).containsExactly("cart.journal.7", "cart.journal.8");
+        assertThat(journal.readAll()).containsExactly("S 1 10 1", "S 1 10 2");
+    }
+
+    // ── Replay khi khởi động ─────────────────────────────────────────────────
+
+    @Test
+    void replayAppliesAllSegmentsInOrderThenDeletesThem() throws IOException {
+        Files.writeString(dir.resolve("cart.journal.1"),
+                "S 1 10 2\nS 1 11 1\nR 2\nS 2 20 3\n", StandardCharsets.UTF_8);
+        // Dòng cuối bị ghi dở khi process chết giữa chừng
+        Files.writeString(dir.resolve("cart.journal.2"),
+                "S 1 11 0\nS 3 30 1\nS 1\n", StandardCharsets.UTF_8);
+
+        newStore().replayJournal();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CartDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(cartItemRepository).applyDeltas(captor.capture());
+        Map<Long, CartDelta> byUser = captor.getValue().stream()
+                .collect(Collectors.toMap(CartDelta::userId, Function.identity()));
+
+        assertThat(byUser).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(byUser.get(1L).reset()).isFalse();
+        assertThat(byUser.get(1L).changes()).containsExactlyInAnyOrderEntriesOf(Map.of(10L, 2, 11L, 0));
+        assertThat(byUser.get(2L).reset()).isTrue();
+        assertThat(byUser.get(2L).changes()).containsExactlyInAnyOrderEntriesOf(Map.of(20L, 3));
+        assertThat(byUser.get(3L).changes()).containsExactlyInAnyOrderEntriesOf(Map.of(30L, 1));
+        assertThat(segmentNames()).isEmpty();
+    }
+
+    @Test
+    void replayWithoutJournalDoesNotTouchDatabase() {
+        newStore().replayJournal();
+
+        verify(cartItemRepository, never()).applyDeltas(any());
+    }
+
+    @Test
+    void failedFlushKeepsJournalUntilNextSuccessfulFlush() {
+        CartWriteBehindStore store = newStore();
+        store.update(1L, items -> items.put(10L, 2));
+        doThrow(new RuntimeException("DB down")).when(cartItemRepository).applyDeltas(any());
+
+        store.flush();
+
+        // Lần flush lỗi: giỏ được ghi lại đầy đủ vào journal, khởi động lại vẫn khôi phục được
+        assertThat(new CartWriteBehindStore.Journal(dir).readAll()).contains("R 1", "S 1 10 2");
+    }
+
+    private CartWriteBehindStore newStore() {
+        return new CartWriteBehindStore(cartItemRepository, userRepository, transactionManager,
+                100, 30, dir.toString());
+    }
+
+    private List<String> segmentNames() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.AppointmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotAvailabilityServiceTest {
+
+    private static final LocalDate DATE = LocalDate.now().plusDays(5);
+    private static final LocalTime TIME = LocalTime.of(9, 30);
+
+    private AppointmentRepository repository;
+    private SlotAvailabilityService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AppointmentRepository.class);
+        service = new SlotAvailabilityService(repository, "08:00", "17:00", 30, 3, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void loadBetweenCommitAndAdjustDoesNotCountBookingTwice() {
+        TransactionSynchronizationManager.initSynchronization();
+        service.bookedAfterCommit(DATE, TIME);
+        List<TransactionSynchronization> syncs = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Booking đã commit nhưng afterCommit chưa chạy: DB đã đếm được nó
+        when(repository.countActiveBookingsPerSlot(DATE)).thenReturn(rows(1));
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(1);
+
+        syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(1);
+    }
+
+    @Test
+    void adjustAppliesToDayLoadedWithNothingInFlight() {
+        when(repository.countActiveBookingsPerSlot(DATE)).thenReturn(rows(1));
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(1);
+
+        service.bookedAfterCommit(DATE, TIME);
+
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(2);
+    }
+
+    @Test
+    void reconcileReplacesDriftedDayWithDatabaseCounts() {
+        when(repository.countActiveBookingsPerSlot(DATE)).thenReturn(rows(2));
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(2);
+
+        List<Object[]> between = new ArrayList<>();
+        between.add(new Object[]{DATE, TIME, 1L});
+        when(repository.countActiveBookingsPerSlotBetween(any(), any())).thenReturn(between);
+        service.reconcile();
+
+        assertThat(service.getBooked(DATE, TIME)).isEqualTo(1);
+    }
+
+    private static List<Object[]> rows(long count) {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{TIME, count});
+        return rows;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.repository.SlotCapacityRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SlotCapacityServiceTest {
+
+    private static final LocalDate DATE = LocalDate.of(2030, 1, 15);
+    private static final LocalTime TIME = LocalTime.of(9, 30);
+
+    private SlotCapacityRepository repository;
+    private SlotCapacityService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SlotCapacityRepository.class);
+        SlotAvailabilityService availability = mock(SlotAvailabilityService.class);
+        when(availability.slotIndex(any())).thenReturn(3);
+        when(availability.getCapacity()).thenReturn(3);
+        service = new SlotCapacityService(repository, availability, 100, 3, 7);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Mở các khóa stripe như khi transaction kết thúc
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void reserveUpToGrantsOnlyRemainingSeats() {
+        when(repository.lockRemaining(DATE, TIME)).thenReturn(2);
+
+        int granted = service.reserveUpTo(DATE, TIME, 5);
+
+        assertThat(granted).isEqualTo(2);
+        verify(repository).insertIfAbsent(DATE, TIME, 3);
+        verify(repository).tryReserve(DATE, TIME, 2);
+    }
+
+    @Test
+    void reserveUpToGrantsAllWhenEnoughSeats() {
+        when(repository.lockRemaining(DATE, TIME)).thenReturn(3);
+
+        assertThat(service.reserveUpTo(DATE, TIME, 2)).isEqualTo(2);
+        verify(repository).tryReserve(DATE, TIME, 2);
+    }
+
+    @Test
+    void reserveUpToOnFullSlotReservesNothing() {
+        when(repository.lockRemaining(DATE, TIME)).thenReturn(0);
+
+        assertThat(service.reserveUpTo(DATE, TIME, 4)).isZero();
+        verify(repository, never()).tryReserve(any(), any(), anyInt());
+    }
+
+    @Test
+    void reserveUpToHoldsStripeLockUntilTransactionCompletes() {
+        when(repository.lockRemaining(DATE, TIME)).thenReturn(1);
+
+        service.reserveUpTo(DATE, TIME, 1);
+
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).hasSize(1);
+    }
+
+    @Test
+    void reserveUpToOutsideTransactionIsRejected() {
+        TransactionSynchronizationManager.clearSynchronization();
+        try {
+            assertThatThrownBy(() -> service.reserveUpTo(DATE, TIME, 1))
+                    .isInstanceOf(IllegalStateException.class);
+        } finally {
+            TransactionSynchronizationManager.initSynchronization();
+        }
+    }
+}
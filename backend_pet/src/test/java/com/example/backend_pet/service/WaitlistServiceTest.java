@@ -0,0 +1,163 @@
+package com.example.backend_pet.service;
+
+import com.example.backend_pet.entity.User;
+import com.example.backend_pet.entity.WaitlistEntry;
+import com.example.backend_pet.repository.UserRepository;
+import com.example.backend_pet.repository.WaitlistEntryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WaitlistServiceTest {
+
+    private static final LocalDate DATE = LocalDate.now().plusDays(3);
+    private static final LocalTime TIME = LocalTime.of(9, 30);
+    private static final long LEAVING_ID = 10L;
+    private static final long NEXT_ID = 11L;
+
+    private WaitlistEntryRepository repository;
+    private SlotCapacityService slotCapacityService;
+    private SlotAvailabilityService slotAvailabilityService;
+    private WaitlistNotifier notifier;
+    private WaitlistService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(WaitlistEntryRepository.class);
+        slotCapacityService = mock(SlotCapacityService.class);
+        slotAvailabilityService = mock(SlotAvailabilityService.class);
+        notifier = mock(WaitlistNotifier.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        service = new WaitlistService(repository, mock(UserRepository.class), slotCapacityService,
+                slotAvailabilityService, notifier, transactionManager, 15, 100, 1);
+
+        when(repository.findById(LEAVING_ID)).thenReturn(Optional.of(entry(LEAVING_ID, 1L, WaitlistEntry.WaitlistStatus.OFFERED)));
+        when(repository.findById(NEXT_ID)).thenReturn(Optional.of(entry(NEXT_ID, 2L, WaitlistEntry.WaitlistStatus.WAITING)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void leavingWithHeldSeatHandsItToNextInLine() {
+        when(repository.transition(eq(LEAVING_ID), eq(WaitlistEntry.WaitlistStatus.OFFERED),
+                eq(WaitlistEntry.WaitlistStatus.CANCELLED), any())).thenReturn(1);
+        when(repository.lockNextWaiting(DATE, TIME)).thenReturn(Optional.of(NEXT_ID));
+
+        service.leave(LEAVING_ID, 1L);
+
+        verify(repository).markOffered(eq(NEXT_ID), any(), any());
+        verify(slotCapacityService, never()).release(any(), any());
+        verify(notifier, timeout(1000)).offered(any());
+    }
+
+    @Test
+    void leavingWithHeldSeatReleasesItWhenNoOneIsWaiting() {
+        when(repository.transition(eq(LEAVING_ID), eq(WaitlistEntry.WaitlistStatus.OFFERED),
+                eq(WaitlistEntry.WaitlistStatus.CANCELLED), any())).thenReturn(1);
+        when(repository.lockNextWaiting(DATE, TIME)).thenReturn(Optional.empty());
+
+        service.leave(LEAVING_ID, 1L);
+
+        verify(slotCapacityService).release(DATE, TIME);
+        verify(repository, never()).markOffered(anyLong(), any(), any());
+    }
+
+    @Test
+    void leavingWhileStillWaitingDoesNotPassOnAnySeat() {
+        when(repository.findById(LEAVING_ID)).thenReturn(Optional.of(entry(LEAVING_ID, 1L, WaitlistEntry.WaitlistStatus.WAITING)));
+        when(repository.transition(eq(LEAVING_ID), eq(WaitlistEntry.WaitlistStatus.WAITING),
+                eq(WaitlistEntry.WaitlistStatus.CANCELLED), any())).thenReturn(1);
+
+        service.leave(LEAVING_ID, 1L);
+
+        verify(repository, never()).lockNextWaiting(any(), any());
+        verify(slotCapacityService, never()).release(any(), any());
+    }
+
+    @Test
+    void leavingAfterOfferExpiredConcurrentlyDoesNotPassSeatOnTwice() {
+        // Entry đọc được là OFFERED, nhưng expireOffers đã chuyển nó sang EXPIRED trước khi leave kịp đổi
+        assertThatThrownBy(() -> service.leave(LEAVING_ID, 1L))
+                .hasMessage("Lượt chờ này đã kết thúc");
+
+        verify(repository, never()).lockNextWaiting(any(), any());
+        verify(slotCapacityService, never()).release(any(), any());
+    }
+
+    @Test
+    void expiryPassesOnSeatOnlyWhenItExpiredTheOffer() {
+        when(repository.lockExpiredOffers(any(), anyInt())).thenReturn(List.of(LEAVING_ID));
+        // User vừa rời hàng: lượt giữ chỗ không còn OFFERED
+        when(repository.transition(eq(LEAVING_ID), eq(WaitlistEntry.WaitlistStatus.OFFERED),
+                eq(WaitlistEntry.WaitlistStatus.EXPIRED), any())).thenReturn(0);
+
+        service.expireOffers();
+
+        verify(repository, never()).lockNextWaiting(any(), any());
+        verify(slotCapacityService, never()).release(any(), any());
+    }
+
+    @Test
+    void expiredOfferMovesToNextInLine() {
+        when(repository.lockExpiredOffers(any(), anyInt())).thenReturn(List.of(LEAVING_ID));
+        when(repository.transition(eq(LEAVING_ID), eq(WaitlistEntry.WaitlistStatus.OFFERED),
+                eq(WaitlistEntry.WaitlistStatus.EXPIRED), any())).thenReturn(1);
+        when(repository.lockNextWaiting(DATE, TIME)).thenReturn(Optional.of(NEXT_ID));
+
+        service.expireOffers();
+
+        verify(repository).markOffered(eq(NEXT_ID), any(), any());
+        verify(notifier).offered(any());
+        verify(slotCapacityService, never()).release(any(), any());
+    }
+
+    @Test
+    void expiryJobOffersFreeSeatWhenReleaseTaskWasLost() {
+        List<Object[]> slots = new ArrayList<>();
+        slots.add(new Object[]{DATE, TIME});
+        when(repository.findWaitingSlotsWithFreeSeats(any(), anyLong(), any())).thenReturn(slots);
+        when(repository.lockNextWaiting(DATE, TIME)).thenReturn(Optional.of(NEXT_ID));
+
+        service.expireOffers();
+
+        verify(slotCapacityService).reserve(DATE, TIME);
+        verify(repository).markOffered(eq(NEXT_ID), any(), any());
+        verify(notifier).offered(any());
+    }
+
+    private static WaitlistEntry entry(long id, long userId, WaitlistEntry.WaitlistStatus status) {
+        User user = User.builder().email("user" + userId + "@example.com").fullName("User " + userId).build();
+        user.setId(userId);
+        WaitlistEntry entry = WaitlistEntry.builder()
+                .user(user)
+                .slotDate(DATE)
+                .slotTime(TIME)
+                .status(status)
+                .build();
+        entry.setId(id);
+        return entry;
+    }
+}